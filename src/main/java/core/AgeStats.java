@@ -0,0 +1,229 @@
+package com.foldertree.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 按修改时间把文件分到固定的年龄段，统计各段的文件数和总大小
+ * 年龄以开始扫描的时间为基准，修改时间取自列目录时已经读取的属性，不额外读取磁盘
+ *
+ * 与ExtensionStats相同，按先序编号记录每个文件所在的年龄段（每个节点1字节，存放在NodeColumn中），
+ * 任意子树的分段统计只需扫描连续的一段
+ */
+public class AgeStats {
+
+    public static final int UNKNOWN = 0;
+    public static final int WITHIN_MONTH = 1;
+    public static final int ONE_TO_SIX_MONTHS = 2;
+    public static final int SIX_TO_TWELVE_MONTHS = 3;
+    public static final int ONE_TO_THREE_YEARS = 4;
+    public static final int OVER_THREE_YEARS = 5;
+    private static final String[] BUCKET_NAMES = {
+            "修改时间未知", "1个月内", "1-6个月", "6-12个月", "1-3年", "3年以上"};
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    // 各年龄段的下限（天），下标为年龄段
+    private static final long[] BUCKET_START_DAYS = {0, 0, 30, 182, 365, 3 * 365};
+    // 冷数据占比不低于该值的子树才算冷子树
+    public static final double COLD_SHARE = 0.9;
+
+    private static final byte NOT_A_FILE = -1;
+
+    private final long referenceTime;
+    private final long[] counts = new long[BUCKET_NAMES.length];
+    private final long[] bytes = new long[BUCKET_NAMES.length];
+    private final NodeColumn nodeBuckets = new NodeColumn(1, NOT_A_FILE);
+    private int nodeCount;
+    // 上次写入断点日志时的节点数，之后只追加新增节点的年龄段
+    private int journalNodes;
+
+    public AgeStats() {
+        this(System.currentTimeMillis());
+    }
+
+    private AgeStats(long referenceTime) {
+        this.referenceTime = referenceTime;
+    }
+
+    /**
+     * 计算年龄的基准时间（毫秒）
+     */
+    public long getReferenceTime() {
+        return referenceTime;
+    }
+
+    public static String getBucketName(int bucket) {
+        return BUCKET_NAMES[bucket];
+    }
+
+    /**
+     * 整个扫描结果中某个年龄段的文件数
+     */
+    public long getCount(int bucket) {
+        return counts[bucket];
+    }
+
+    /**
+     * 整个扫描结果中某个年龄段的总大小
+     */
+    public long getBytes(int bucket) {
+        return bytes[bucket];
+    }
+
+    int bucketOf(long lastModified) {
+        if (lastModified <= 0) {
+            return UNKNOWN;
+        }
+        long days = (referenceTime - lastModified) / DAY_MS;
+        for (int bucket = BUCKET_NAMES.length - 1; bucket > WITHIN_MONTH; bucket--) {
+            if (days >= BUCKET_START_DAYS[bucket]) {
+                return bucket;
+            }
+        }
+        return WITHIN_MONTH;
+    }
+
+    /**
+     * 记录先序编号为ordinal的文件，lastModified不大于0表示未知
+     */
+    void addFile(long ordinal, long size, long lastModified) {
+        int bucket = bucketOf(lastModified);
+        counts[bucket]++;
+        bytes[bucket] += size;
+        if (ordinal >= Integer.MAX_VALUE) {
+            return;
+        }
+        int index = (int) ordinal;
+        nodeBuckets.setByte(index, (byte) bucket);
+        nodeCount = Math.max(nodeCount, index + 1);
+    }
+
+    /**
+     * 整个扫描结果的统计，按年龄段顺序排列
+     */
+    public ExtensionStats.Table getTotals() {
+        return toTable(counts, bytes);
+    }
+
+    /**
+     * 先序编号为ordinal的节点的子树的统计，文件大小取自TreeIndex
+     */
+    public ExtensionStats.Table getSubtree(TreeIndex index, int ordinal) {
+        long[] subtreeCounts = new long[BUCKET_NAMES.length];
+        long[] subtreeBytes = new long[BUCKET_NAMES.length];
+        int end = Math.min(index.getSubtreeEnd(ordinal), nodeCount);
+        for (int i = ordinal; i < end; i++) {
+            int bucket = nodeBuckets.getByte(i);
+            if (bucket != NOT_A_FILE) {
+                subtreeCounts[bucket]++;
+                subtreeBytes[bucket] += index.getOwnSize(i);
+            }
+        }
+        return toTable(subtreeCounts, subtreeBytes);
+    }
+
+    /**
+     * 冷数据最多的子树：年龄段不小于minBucket的文件占子树总大小的比例不低于COLD_SHARE，
+     * 且不在另一个这样的子树之内；结果按冷数据的大小从大到小，最多limit个（路径未填写）
+     */
+    public List<SizeRanking.Entry> findColdSubtrees(TreeIndex index, int minBucket, int limit) {
+        int count = index.size();
+        long[] coldPrefix = new long[count + 1];
+        for (int i = 0; i < count; i++) {
+            boolean cold = i < nodeCount && nodeBuckets.getByte(i) >= minBucket;
+            coldPrefix[i + 1] = coldPrefix[i] + (cold ? index.getOwnSize(i) : 0);
+        }
+
+        TopHeap heap = new TopHeap(limit);
+        // 先序中祖先先于后代出现，已选中子树范围内的节点直接跳过
+        int coveredUntil = 0;
+        for (int i = 0; i < count; i++) {
+            if (i < coveredUntil || !index.isDirectory(i)) {
+                continue;
+            }
+            int end = index.getSubtreeEnd(i);
+            long cold = coldPrefix[end] - coldPrefix[i];
+            long total = index.getTotalSize(i);
+            if (cold > 0 && cold >= total * COLD_SHARE) {
+                heap.offer(cold, i);
+                coveredUntil = end;
+            }
+        }
+        return heap.toList(true);
+    }
+
+    private static ExtensionStats.Table toTable(long[] tableCounts, long[] tableBytes) {
+        // 没有未知的文件时省略该行，其余年龄段总是列出
+        int first = tableCounts[UNKNOWN] > 0 ? UNKNOWN : WITHIN_MONTH;
+        int rows = BUCKET_NAMES.length - first;
+        return new ExtensionStats.Table(
+                Arrays.copyOfRange(BUCKET_NAMES, first, BUCKET_NAMES.length),
+                Arrays.copyOfRange(tableCounts, first, first + rows),
+                Arrays.copyOfRange(tableBytes, first, first + rows));
+    }
+
+    /**
+     * 写出各年龄段的合计和上次写入之后新增节点的年龄段
+     */
+    void writeJournal(DataOutput out) throws IOException {
+        out.writeLong(referenceTime);
+        for (int bucket = 0; bucket < BUCKET_NAMES.length; bucket++) {
+            out.writeLong(counts[bucket]);
+            out.writeLong(bytes[bucket]);
+        }
+        out.writeInt(journalNodes);
+        out.writeInt(nodeCount);
+        nodeBuckets.write(out, journalNodes, nodeCount);
+        journalNodes = nodeCount;
+    }
+
+    /**
+     * 在stats上应用writeJournal写出的变化，stats为null时新建
+     */
+    static AgeStats readJournal(DataInput in, AgeStats stats) throws IOException {
+        long referenceTime = in.readLong();
+        if (stats == null) {
+            stats = new AgeStats(referenceTime);
+        }
+        for (int bucket = 0; bucket < BUCKET_NAMES.length; bucket++) {
+            stats.counts[bucket] = in.readLong();
+            stats.bytes[bucket] = in.readLong();
+        }
+        int from = in.readInt();
+        int count = in.readInt();
+        if (from != stats.nodeCount) {
+            throw new IOException("年龄统计不连续: " + from + " != " + stats.nodeCount);
+        }
+        stats.nodeBuckets.read(in, from, count);
+        stats.nodeCount = count;
+        stats.journalNodes = count;
+        return stats;
+    }
+
+    /**
+     * 下次写入断点日志时写出全部内容
+     */
+    void resetJournal() {
+        journalNodes = 0;
+    }
+
+    /**
+     * 把写满的页改为映射，不再占用堆内存
+     */
+    void spill() throws IOException {
+        nodeBuckets.spill();
+    }
+
+    /**
+     * 留在堆中的字节数
+     */
+    long getMemoryBytes() {
+        return nodeBuckets.getResidentBytes();
+    }
+
+    void dispose() {
+        nodeBuckets.dispose();
+    }
+}
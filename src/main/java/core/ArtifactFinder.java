@@ -0,0 +1,318 @@
+package com.foldertree.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * 可回收的构建产物和缓存 - 按文件夹名和旁边的标记文件（如target旁的pom.xml）识别，
+ * 大小取自扫描结果中汇总好的文件夹大小，按大小排行
+ * 扫描时跳过的和超出扫描深度的部分没有展开，这些候选的大小需要时再单独计算
+ */
+public class ArtifactFinder {
+
+    public enum Kind {
+        MAVEN_TARGET("target", "Maven/Cargo/sbt 构建输出", null, "pom.xml", "Cargo.toml", "build.sbt"),
+        GRADLE_BUILD("build", "Gradle/CMake 构建输出", null,
+                "build.gradle", "build.gradle.kts", "settings.gradle", "settings.gradle.kts", "CMakeLists.txt"),
+        NODE_MODULES("node_modules", "npm 依赖", null, "package.json"),
+        GRADLE_CACHE("caches", "Gradle 缓存", ".gradle"),
+        PYTHON_CACHE("__pycache__", "Python 字节码缓存", null),
+        PYTHON_VENV(".venv", "Python 虚拟环境", null);
+
+        private final String directoryName;
+        private final String displayName;
+        // 要求上级文件夹的名字，为null表示不限
+        private final String parentName;
+        // 要求同一文件夹中至少有其中一个文件，为空表示不需要
+        private final String[] siblingMarkers;
+
+        Kind(String directoryName, String displayName, String parentName, String... siblingMarkers) {
+            this.directoryName = directoryName;
+            this.displayName = displayName;
+            this.parentName = parentName;
+            this.siblingMarkers = siblingMarkers;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        boolean matches(String parent, Predicate<String> hasSibling) {
+            if (parentName != null && !parentName.equals(parent)) {
+                return false;
+            }
+            if (siblingMarkers.length == 0) {
+                return true;
+            }
+            for (String marker : siblingMarkers) {
+                if (hasSibling.test(marker)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    // 所有标记文件名，遍历时只记录这些文件
+    private static final Set<String> MARKERS = new HashSet<>();
+
+    static {
+        for (Kind kind : Kind.values()) {
+            Collections.addAll(MARKERS, kind.siblingMarkers);
+        }
+    }
+
+    /**
+     * 文件夹是否是构建产物，parentName为上级文件夹的名字，hasSibling判断同一文件夹中是否有某个文件；
+     * 不是时返回null
+     */
+    public static Kind match(String name, String parentName, Predicate<String> hasSibling) {
+        for (Kind kind : Kind.values()) {
+            if (kind.directoryName.equals(name) && kind.matches(parentName, hasSibling)) {
+                return kind;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 扫描时用的判断：siblings为同一文件夹中列出的全部子项
+     */
+    static Kind match(DirEntry entry, File parent, List<DirEntry> siblings) {
+        return match(entry.name, parent.getName(), marker -> {
+            for (DirEntry sibling : siblings) {
+                if (!sibling.directory && sibling.name.equals(marker)) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    /**
+     * 一个可回收的文件夹
+     */
+    public static class Candidate {
+        public final Kind kind;
+        public final String path;
+        public final long ordinal;
+        // 大小和文件数，sized为false时未知
+        public long size;
+        public int fileCount;
+        public boolean sized;
+
+        Candidate(Kind kind, String path, long ordinal) {
+            this.kind = kind;
+            this.path = path;
+            this.ordinal = ordinal;
+        }
+    }
+
+    /**
+     * 识别结果，候选按大小从大到小排列，未知大小的排在最后
+     */
+    public static class Result {
+        private final List<Candidate> candidates;
+
+        Result(List<Candidate> candidates) {
+            this.candidates = candidates;
+            sort();
+        }
+
+        public List<Candidate> getCandidates() {
+            return candidates;
+        }
+
+        /**
+         * 计算过大小之后重新排序
+         */
+        public void sort() {
+            candidates.sort(Comparator.comparing((Candidate c) -> !c.sized)
+                    .thenComparing(Comparator.comparingLong((Candidate c) -> c.size).reversed()));
+        }
+
+        public long getReclaimableBytes(Kind kind) {
+            long total = 0;
+            for (Candidate candidate : candidates) {
+                if (kind == null || candidate.kind == kind) {
+                    total += candidate.size;
+                }
+            }
+            return total;
+        }
+
+        public int getUnsizedCount() {
+            int count = 0;
+            for (Candidate candidate : candidates) {
+                if (!candidate.sized) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        public Set<Kind> getKinds() {
+            Set<Kind> kinds = EnumSet.noneOf(Kind.class);
+            for (Candidate candidate : candidates) {
+                kinds.add(candidate.kind);
+            }
+            return kinds;
+        }
+    }
+
+    /**
+     * 遍历中一个尚未结束的文件夹
+     */
+    private static class Frame {
+        final int depth;
+        final String name;
+        // 按名字可能是构建产物，要等上级结束、看到全部标记文件后才能确定
+        final Candidate candidate;
+        // 子项中出现的标记文件
+        Set<String> markers;
+        // 待上级确认的子文件夹
+        List<Frame> pending;
+        // 子树中已确认的候选
+        final List<Candidate> found = new ArrayList<>();
+        // 子树中有未展开的文件夹，汇总的大小不完整
+        boolean partial;
+
+        Frame(int depth, String name, Candidate candidate, boolean partial) {
+            this.depth = depth;
+            this.name = name;
+            this.candidate = candidate;
+            this.partial = partial;
+        }
+    }
+
+    /**
+     * 遍历一次扫描结果识别构建产物；options为扫描时的选项，用来判断哪些文件夹没有展开
+     * 候选中嵌套的候选（如node_modules里的node_modules）已包含在外层的大小中，不单独列出
+     */
+    public static Result find(ScanTree tree, File root, ScanOptions options) {
+        int maxDepth = options.getMaxDepth();
+        NameDictionary names = tree.getNames();
+        List<Frame> stack = new ArrayList<>();
+        List<Candidate> result = new ArrayList<>();
+        tree.visitPaths(root, (node, ordinal, path) -> {
+            while (!stack.isEmpty() && stack.get(stack.size() - 1).depth >= node.depth) {
+                close(stack, result);
+            }
+            Frame parent = stack.isEmpty() ? null : stack.get(stack.size() - 1);
+            String name = node.depth == 0 ? root.getName() : names.name(node.nameId);
+            if (!node.isDirectory()) {
+                if (parent != null && MARKERS.contains(name)) {
+                    if (parent.markers == null) {
+                        parent.markers = new HashSet<>();
+                    }
+                    parent.markers.add(name);
+                }
+                return;
+            }
+            Candidate candidate = null;
+            if (parent != null) {
+                // 先只按名字和上级判断，标记文件在上级结束时再检查
+                for (Kind kind : Kind.values()) {
+                    if (kind.directoryName.equals(name) && kind.matches(parent.name, marker -> true)) {
+                        candidate = new Candidate(kind, path, ordinal);
+                        candidate.size = node.size;
+                        candidate.fileCount = node.fileCount;
+                        break;
+                    }
+                }
+            }
+            boolean unexpanded = node.isPruned() || (maxDepth > 0 && node.depth >= maxDepth);
+            stack.add(new Frame(node.depth, name, candidate, unexpanded));
+        });
+        while (!stack.isEmpty()) {
+            close(stack, result);
+        }
+        return new Result(result);
+    }
+
+    /**
+     * 结束栈顶的文件夹：确认它的子文件夹中的候选，再把自己交给上级确认
+     */
+    private static void close(List<Frame> stack, List<Candidate> result) {
+        Frame frame = stack.remove(stack.size() - 1);
+        Frame parent = stack.isEmpty() ? null : stack.get(stack.size() - 1);
+        if (frame.partial && parent != null) {
+            parent.partial = true;
+        }
+        if (frame.candidate != null) {
+            // 子树没有全部展开时汇总的大小不准，留待计算
+            frame.candidate.sized = !frame.partial;
+            if (frame.partial) {
+                frame.candidate.size = 0;
+                frame.candidate.fileCount = 0;
+            }
+        }
+        if (frame.pending != null) {
+            for (Frame child : frame.pending) {
+                Candidate candidate = child.candidate;
+                if (candidate.kind.matches(frame.name, marker -> frame.markers != null && frame.markers.contains(marker))) {
+                    frame.found.add(candidate);
+                } else {
+                    frame.found.addAll(child.found);
+                }
+            }
+        }
+        if (parent == null) {
+            result.addAll(frame.found);
+        } else if (frame.candidate != null) {
+            if (parent.pending == null) {
+                parent.pending = new ArrayList<>();
+            }
+            parent.pending.add(frame);
+        } else {
+            parent.found.addAll(frame.found);
+        }
+    }
+
+    /**
+     * 计算未展开的候选的大小，每个文件夹占用一个操作令牌；不跟随符号链接
+     */
+    public static void measure(Candidate candidate, IoThrottle throttle) throws IOException {
+        long[] totals = new long[2];
+        Files.walkFileTree(new File(candidate.path).toPath(), EnumSet.noneOf(FileVisitOption.class),
+                Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        throttle.getOperations().acquire(1);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (!attrs.isDirectory()) {
+                            totals[0] += attrs.size();
+                            totals[1]++;
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        // 无权限读取的部分不计入
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+        candidate.size = totals[0];
+        candidate.fileCount = (int) Math.min(Integer.MAX_VALUE, totals[1]);
+        candidate.sized = true;
+    }
+}
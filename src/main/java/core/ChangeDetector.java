@@ -0,0 +1,368 @@
+package com.foldertree.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 变化查询 - 对照缓存的快照找出新增、删除和修改的项目，不重新扫描整棵树
+ * 按先序流式读取快照，每个文件夹只读取一次修改时间；只有修改时间与快照中不同、
+ * 或不早于快照时间的文件夹才重新列出并逐项比较。增删和重命名子项会更新所在文件夹的
+ * 修改时间，原地改写文件内容则不会，需要发现这类修改时打开逐个检查文件
+ */
+public class ChangeDetector {
+
+    // 最多保留的变化条目数，超出的只计数
+    public static final int MAX_CHANGES = 100_000;
+    private static final long PROGRESS_INTERVAL_MS = 100;
+
+    public enum Kind {
+        ADDED("新增", '+'),
+        REMOVED("删除", '-'),
+        MODIFIED("修改", '*');
+
+        private final String displayName;
+        private final char symbol;
+
+        Kind(String displayName, char symbol) {
+            this.displayName = displayName;
+            this.symbol = symbol;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        public char getSymbol() {
+            return symbol;
+        }
+    }
+
+    /**
+     * 一项变化；大小未知或不存在时为-1，文件夹的旧大小为快照中子树的总大小
+     */
+    public static class Change {
+        public final Kind kind;
+        public final String path;
+        public final boolean directory;
+        public final long oldSize;
+        public final long newSize;
+
+        Change(Kind kind, String path, boolean directory, long oldSize, long newSize) {
+            this.kind = kind;
+            this.path = path;
+            this.directory = directory;
+            this.oldSize = oldSize;
+            this.newSize = newSize;
+        }
+    }
+
+    /**
+     * 查询结果
+     */
+    public static class Result {
+        public final long snapshotTime;
+        private final List<Change> changes = new ArrayList<>();
+        private final long[] counts = new long[Kind.values().length];
+        int checkedDirectories;
+        int listedDirectories;
+        long statedFiles;
+        long elapsedMillis;
+
+        Result(long snapshotTime) {
+            this.snapshotTime = snapshotTime;
+        }
+
+        void add(Kind kind, String path, boolean directory, long oldSize, long newSize) {
+            counts[kind.ordinal()]++;
+            if (changes.size() < MAX_CHANGES) {
+                changes.add(new Change(kind, path, directory, oldSize, newSize));
+            }
+        }
+
+        /**
+         * 按遍历顺序排列的变化，最多MAX_CHANGES条
+         */
+        public List<Change> getChanges() {
+            return changes;
+        }
+
+        public long getCount(Kind kind) {
+            return counts[kind.ordinal()];
+        }
+
+        public long getTotalCount() {
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            return total;
+        }
+
+        public int getCheckedDirectories() {
+            return checkedDirectories;
+        }
+
+        public int getListedDirectories() {
+            return listedDirectories;
+        }
+
+        public String getSummary() {
+            String summary = String.format("新增 %d, 删除 %d, 修改 %d | 检查 %d 个文件夹, 重新列出 %d 个",
+                    getCount(Kind.ADDED), getCount(Kind.REMOVED), getCount(Kind.MODIFIED),
+                    checkedDirectories, listedDirectories);
+            if (statedFiles > 0) {
+                summary += String.format(", 逐个检查 %d 个文件", statedFiles);
+            }
+            return summary + String.format(" | 用时 %d 毫秒", elapsedMillis);
+        }
+    }
+
+    /**
+     * 快照中一个打开的文件夹；children为重新列出的当前子项，未变化的文件夹为null
+     */
+    private static class Frame {
+        final File dir;
+        final int depth;
+        final Map<String, DirEntry> children;
+        // 快照中该文件夹的子树已不需要比较（文件夹已删除或超出扫描深度）
+        final boolean skip;
+
+        Frame(File dir, int depth, Map<String, DirEntry> children, boolean skip) {
+            this.dir = dir;
+            this.depth = depth;
+            this.children = children;
+            this.skip = skip;
+        }
+    }
+
+    private final IoThrottle throttle;
+    private boolean checkFiles;
+    private volatile boolean cancelled;
+
+    /**
+     * @param throttle 列目录和读取属性时使用的限速器
+     */
+    public ChangeDetector(IoThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    /**
+     * 是否逐个读取未变化文件夹中文件的属性，以发现原地改写的文件
+     */
+    public void setCheckFiles(boolean checkFiles) {
+        this.checkFiles = checkFiles;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * 对照快照查询变化，maxDepth为生成快照时的扫描深度；取消时返回null
+     */
+    public Result detect(File snapshotFile, int maxDepth, FolderScanner.ProgressCallback callback)
+            throws IOException {
+        long startTime = System.currentTimeMillis();
+        try (ScanSnapshot.Reader reader = ScanSnapshot.open(snapshotFile);
+             DirectoryLister lister = new NioDirectoryLister(throttle.getOperations())) {
+            Result result = new Result(reader.getCreatedTime());
+            if (!reader.hasNext()) {
+                return result;
+            }
+            NameDictionary names = reader.getNames();
+            int total = (int) Math.min(reader.getNodeCount(), Integer.MAX_VALUE);
+            int processed = 0;
+            long lastProgress = 0;
+
+            File root = new File(reader.getRootPath());
+            ScanTree.NodeRecord rootNode = reader.next();
+            BasicFileAttributes rootAttributes = stat(root);
+            if (rootAttributes == null || !rootAttributes.isDirectory()) {
+                throw new IOException("文件夹不存在: " + root);
+            }
+            Deque<Frame> stack = new ArrayDeque<>();
+            stack.push(open(root, rootNode, rootAttributes.lastModifiedTime().toMillis(),
+                    maxDepth, lister, result));
+
+            while (reader.hasNext()) {
+                if (cancelled) {
+                    return null;
+                }
+                ScanTree.NodeRecord node = reader.next();
+                while (stack.peek().depth >= node.depth) {
+                    finish(stack.pop(), result);
+                }
+                Frame parent = stack.peek();
+
+                processed++;
+                long now = System.currentTimeMillis();
+                if (callback != null && now - lastProgress >= PROGRESS_INTERVAL_MS) {
+                    lastProgress = now;
+                    callback.onProgress(processed, total, parent.dir.getPath());
+                }
+
+                if (parent.skip) {
+                    if (node.isDirectory()) {
+                        stack.push(new Frame(parent.dir, node.depth, null, true));
+                    }
+                    continue;
+                }
+                if (node.isDenied()) {
+                    continue;
+                }
+                File file = new File(parent.dir, names.name(node.nameId));
+                compare(node, file, parent, stack, maxDepth, lister, result);
+            }
+            while (!stack.isEmpty()) {
+                finish(stack.pop(), result);
+            }
+            result.elapsedMillis = System.currentTimeMillis() - startTime;
+            return result;
+        }
+    }
+
+    /**
+     * 比较快照中的一个节点和它的当前状态，文件夹入栈以便继续比较其子树
+     */
+    private void compare(ScanTree.NodeRecord node, File file, Frame parent, Deque<Frame> stack,
+                         int maxDepth, DirectoryLister lister, Result result) {
+        DirEntry current = null;
+        if (parent.children != null) {
+            current = parent.children.remove(file.getName());
+            if (current == null || current.directory != node.isDirectory()) {
+                replaced(node, file, current, stack, result);
+                return;
+            }
+        }
+
+        if (node.isDirectory()) {
+            long modified = current != null ? current.lastModified : -1;
+            if (modified < 0) {
+                BasicFileAttributes attributes = stat(file);
+                if (attributes == null || !attributes.isDirectory()) {
+                    replaced(node, file, toEntry(file, attributes), stack, result);
+                    return;
+                }
+                modified = attributes.lastModifiedTime().toMillis();
+            }
+            stack.push(open(file, node, modified, maxDepth, lister, result));
+            return;
+        }
+
+        if (current == null) {
+            if (!checkFiles) {
+                return;
+            }
+            BasicFileAttributes attributes = stat(file);
+            result.statedFiles++;
+            if (attributes == null || attributes.isDirectory()) {
+                replaced(node, file, toEntry(file, attributes), stack, result);
+                return;
+            }
+            current = toEntry(file, attributes);
+        }
+        long size = Math.max(0, current.size);
+        if (size != node.size || isModified(current.lastModified, node, result.snapshotTime)) {
+            result.add(Kind.MODIFIED, file.getPath(), false, node.size, size);
+        }
+    }
+
+    /**
+     * 快照中的项目已不存在或变成了另一种类型（current不为null时）
+     */
+    private void replaced(ScanTree.NodeRecord node, File file, DirEntry current,
+                          Deque<Frame> stack, Result result) {
+        result.add(Kind.REMOVED, file.getPath(), node.isDirectory(), node.size, -1);
+        if (current != null) {
+            added(current, result);
+        }
+        if (node.isDirectory()) {
+            stack.push(new Frame(file, node.depth, null, true));
+        }
+    }
+
+    /**
+     * 打开快照中的一个文件夹：修改时间有变化时重新列出当前子项
+     */
+    private Frame open(File dir, ScanTree.NodeRecord node, long modified, int maxDepth,
+                       DirectoryLister lister, Result result) {
+        if ((maxDepth > 0 && node.depth >= maxDepth) || node.isPruned()) {
+            // 超出扫描深度和跳过的构建产物文件夹在快照中没有子项
+            return new Frame(dir, node.depth, null, true);
+        }
+        result.checkedDirectories++;
+        if (!isModified(modified, node, result.snapshotTime)) {
+            return new Frame(dir, node.depth, null, false);
+        }
+        result.listedDirectories++;
+        Map<String, DirEntry> children = new HashMap<>();
+        try {
+            for (DirEntry entry : lister.list(dir)) {
+                children.put(entry.name, entry);
+            }
+        } catch (UnreadableDirectoryException e) {
+            // 现在无法读取，不能判断子项的变化，按未修改处理
+            return new Frame(dir, node.depth, null, false);
+        }
+        return new Frame(dir, node.depth, children, false);
+    }
+
+    /**
+     * 快照中已比较完的文件夹：重新列出的子项中剩下的都是新增的
+     */
+    private void finish(Frame frame, Result result) {
+        if (frame.children == null) {
+            return;
+        }
+        for (DirEntry entry : frame.children.values()) {
+            added(entry, result);
+        }
+    }
+
+    private void added(DirEntry entry, Result result) {
+        result.add(Kind.ADDED, entry.file.getPath(), entry.directory, -1,
+                entry.directory ? -1 : Math.max(0, entry.size));
+    }
+
+    /**
+     * 修改时间是否表明有变化：快照中记录了修改时间时要求秒数相同，
+     * 不早于快照时间的修改可能发生在读取之后，也视为有变化
+     */
+    private static boolean isModified(long modified, ScanTree.NodeRecord node, long snapshotTime) {
+        if (modified < 0) {
+            return false;
+        }
+        if (modified >= snapshotTime) {
+            return true;
+        }
+        return node.modified != 0 && modified / 1000 != Integer.toUnsignedLong(node.modified);
+    }
+
+    /**
+     * 读取属性（跟随符号链接，与列目录一致），不存在或无法读取时返回null
+     */
+    private BasicFileAttributes stat(File file) {
+        throttle.getOperations().acquire(1);
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static DirEntry toEntry(File file, BasicFileAttributes attributes) {
+        if (attributes == null) {
+            return null;
+        }
+        return new DirEntry(file, attributes.isDirectory(), attributes.size(),
+                attributes.lastModifiedTime().toMillis());
+    }
+}
@@ -0,0 +1,169 @@
+package com.foldertree.core;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 清理候选 - 从扫描结果中找出空文件夹、只含空文件夹的文件夹、零字节文件和失效的符号链接
+ * 只遍历一次扫描结果，用栈在每个文件夹的子树结束时自底向上汇总是否含有内容，不重新访问磁盘
+ * 超出扫描深度、跳过的构建产物和无权限读取的文件夹内容未知，按有内容处理
+ */
+public class CleanupFinder {
+
+    // 每一类最多保留的条目数，超出的只计数
+    public static final int MAX_ITEMS = 100_000;
+
+    public enum Category {
+        EMPTY_DIRECTORY("空文件夹"),
+        RECURSIVELY_EMPTY("只含空文件夹的文件夹"),
+        ZERO_BYTE_FILE("零字节文件"),
+        BROKEN_LINK("失效的符号链接");
+
+        private final String displayName;
+
+        Category(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    /**
+     * 一个清理候选
+     */
+    public static class Item {
+        public final Category category;
+        public final String path;
+        public final long ordinal;
+
+        Item(Category category, String path, long ordinal) {
+            this.category = category;
+            this.path = path;
+            this.ordinal = ordinal;
+        }
+    }
+
+    /**
+     * 各类清理候选，按先序（树状图中的顺序）排列
+     */
+    public static class Result {
+        private final Map<Category, List<Item>> items = new EnumMap<>(Category.class);
+        private final long[] counts = new long[Category.values().length];
+
+        Result() {
+            for (Category category : Category.values()) {
+                items.put(category, new ArrayList<>());
+            }
+        }
+
+        void add(Category category, String path, long ordinal) {
+            counts[category.ordinal()]++;
+            List<Item> list = items.get(category);
+            if (list.size() < MAX_ITEMS) {
+                list.add(new Item(category, path, ordinal));
+            }
+        }
+
+        public List<Item> getItems(Category category) {
+            return items.get(category);
+        }
+
+        public long getCount(Category category) {
+            return counts[category.ordinal()];
+        }
+    }
+
+    /**
+     * 遍历中一个尚未结束的文件夹
+     */
+    private static class Frame {
+        final int depth;
+        final long ordinal;
+        final String path;
+        // 子项已列出（未超出扫描深度）
+        final boolean expanded;
+        int children;
+        // 子树中有文件、失效链接或内容未知的文件夹
+        boolean hasContent;
+        // 子树为空、且最上层尚待确定的文件夹
+        List<Item> emptyCandidates;
+
+        Frame(int depth, long ordinal, String path, boolean expanded) {
+            this.depth = depth;
+            this.ordinal = ordinal;
+            this.path = path;
+            this.expanded = expanded;
+        }
+    }
+
+    /**
+     * 查找清理候选，root和maxDepth为扫描时的根目录和深度；根目录本身不会成为候选
+     */
+    public static Result find(ScanTree tree, File root, int maxDepth) {
+        Result result = new Result();
+        List<Frame> stack = new ArrayList<>();
+        tree.visitPaths(root, (node, ordinal, path) -> {
+            while (!stack.isEmpty() && stack.get(stack.size() - 1).depth >= node.depth) {
+                close(stack, result);
+            }
+            Frame parent = stack.isEmpty() ? null : stack.get(stack.size() - 1);
+            if (parent != null) {
+                parent.children++;
+            }
+            if (node.isDirectory()) {
+                boolean expanded = !node.isPruned() && (maxDepth <= 0 || node.depth < maxDepth);
+                stack.add(new Frame(node.depth, ordinal, path, expanded));
+                return;
+            }
+            if (parent != null) {
+                parent.hasContent = true;
+            }
+            if (node.isBrokenLink()) {
+                result.add(Category.BROKEN_LINK, path, ordinal);
+            } else if (!node.isDenied() && node.size == 0) {
+                result.add(Category.ZERO_BYTE_FILE, path, ordinal);
+            }
+        });
+        while (!stack.isEmpty()) {
+            close(stack, result);
+        }
+        // 文件夹在子树结束时才确定，按先序重新排列
+        for (Category category : Category.values()) {
+            result.getItems(category).sort(Comparator.comparingLong(item -> item.ordinal));
+        }
+        return result;
+    }
+
+    /**
+     * 结束栈顶的文件夹：空的子树交给上级决定，否则把其中最上层的空文件夹作为候选
+     */
+    private static void close(List<Frame> stack, Result result) {
+        Frame frame = stack.remove(stack.size() - 1);
+        Frame parent = stack.isEmpty() ? null : stack.get(stack.size() - 1);
+        boolean empty = frame.expanded && !frame.hasContent;
+        if (frame.expanded && frame.children == 0 && parent != null) {
+            result.add(Category.EMPTY_DIRECTORY, frame.path, frame.ordinal);
+        }
+        if (empty && parent != null) {
+            if (parent.emptyCandidates == null) {
+                parent.emptyCandidates = new ArrayList<>();
+            }
+            parent.emptyCandidates.add(new Item(Category.RECURSIVELY_EMPTY, frame.path, frame.ordinal));
+            return;
+        }
+        if (frame.emptyCandidates != null) {
+            for (Item item : frame.emptyCandidates) {
+                result.add(Category.RECURSIVELY_EMPTY, item.path, item.ordinal);
+            }
+        }
+        if (parent != null) {
+            parent.hasContent = true;
+        }
+    }
+}
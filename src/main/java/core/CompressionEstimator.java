@@ -0,0 +1,412 @@
+package com.foldertree.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * 可压缩性估算 - 把子树中的文件首尾相接看成一段连续的字节，按读取上限等间隔抽取固定大小的块，
+ * 在多个线程中用Deflater分别压缩，按文件夹和扩展名推算压缩后的大小和95%的误差范围
+ * 大文件被抽到的块多，小文件可能一块也抽不到，推算时按各组的原始大小加权；
+ * 上限足够读完全部数据时逐个文件完整读取，结果是精确值；读取遵守扫描的限速设置
+ */
+public class CompressionEstimator {
+
+    public static final int BLOCK_SIZE = 64 * 1024;
+    public static final long DEFAULT_READ_BUDGET = 64L * 1024 * 1024;
+    // 子树中直接位于所选文件夹下的文件归到这一组
+    public static final String OWN_FILES = "[本层文件]";
+    private static final double Z_95 = 1.96;
+    private static final long PROGRESS_INTERVAL_MS = 100;
+
+    private static final ThreadLocal<byte[]> INPUT = ThreadLocal.withInitial(() -> new byte[BLOCK_SIZE]);
+    private static final ThreadLocal<byte[]> OUTPUT = ThreadLocal.withInitial(() -> new byte[BLOCK_SIZE]);
+
+    /**
+     * 估算进度回调，在调用estimate的线程中调用
+     */
+    public interface Listener {
+        void onProgress(int sampledBlocks, int plannedBlocks);
+    }
+
+    /**
+     * 一组文件（一个文件夹或一种扩展名）的估算
+     */
+    public static class Group {
+        public final String name;
+        public long bytes;
+        public int files;
+        public int samples;
+        private double weightSum;
+        private double ratioSum;
+        private double ratioSquares;
+        private double ratio;
+        private double error;
+
+        Group(String name) {
+            this.name = name;
+        }
+
+        /**
+         * 抽样时每块代表同样多的数据，权重相同；完整读取时按块的长度加权
+         */
+        void addSample(double sampleRatio, double weight) {
+            samples++;
+            weightSum += weight;
+            ratioSum += sampleRatio * weight;
+            ratioSquares += sampleRatio * sampleRatio * weight;
+        }
+
+        /**
+         * 样本不足两个时借用整体的比例和离散程度
+         */
+        void finish(Group total, long populationBlocks) {
+            double mean = samples > 0 ? ratioSum / weightSum : total.ratio;
+            double variance = samples > 1 ? getVariance() : total.getVariance();
+            int n = Math.max(1, samples);
+            // 抽到的块接近全部时误差趋于0
+            double coverage = populationBlocks == 0 ? 1 : Math.min(1, (double) n / populationBlocks);
+            ratio = mean;
+            error = Z_95 * Math.sqrt(variance / n * (1 - coverage)) * bytes;
+        }
+
+        private double getVariance() {
+            if (samples < 2) {
+                return 0;
+            }
+            double mean = ratioSum / weightSum;
+            return Math.max(0, ratioSquares / weightSum - mean * mean) * samples / (samples - 1);
+        }
+
+        /**
+         * 压缩后与原始大小之比
+         */
+        public double getRatio() {
+            return ratio;
+        }
+
+        public long getEstimatedBytes() {
+            return Math.round(bytes * ratio);
+        }
+
+        /**
+         * 估算的压缩后大小的95%误差范围（±字节）
+         */
+        public long getErrorBytes() {
+            return Math.round(error);
+        }
+
+        public double getSavingPercent() {
+            return bytes == 0 ? 0 : (1 - ratio) * 100;
+        }
+    }
+
+    /**
+     * 估算结果
+     */
+    public static class Result {
+        public final Group total;
+        public final List<Group> byDirectory;
+        public final List<Group> byExtension;
+        public final long readBytes;
+        public final int unreadableFiles;
+        public final long elapsedMillis;
+
+        Result(Group total, List<Group> byDirectory, List<Group> byExtension, long readBytes,
+               int unreadableFiles, long elapsedMillis) {
+            this.total = total;
+            this.byDirectory = byDirectory;
+            this.byExtension = byExtension;
+            this.readBytes = readBytes;
+            this.unreadableFiles = unreadableFiles;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public String getSummary() {
+            return String.format("原始 %s，估算压缩后 %s ± %s（节省 %.1f%%），抽样 %d 块共读取 %s，用时 %.1f 秒",
+                    TreeRenderer.formatSize(total.bytes), TreeRenderer.formatSize(total.getEstimatedBytes()),
+                    TreeRenderer.formatSize(total.getErrorBytes()), total.getSavingPercent(), total.samples,
+                    TreeRenderer.formatSize(readBytes), elapsedMillis / 1000.0);
+        }
+    }
+
+    private final IoThrottle throttle;
+    private long readBudget = DEFAULT_READ_BUDGET;
+    private int level = Deflater.DEFAULT_COMPRESSION;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private volatile boolean cancelled;
+
+    /**
+     * @param throttle 读取时使用的限速器，为null时不限速
+     */
+    public CompressionEstimator(IoThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    /**
+     * 最多读取的字节数，至少一块
+     */
+    public void setReadBudget(long readBudget) {
+        this.readBudget = Math.max(BLOCK_SIZE, readBudget);
+    }
+
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * 一个被抽中的块，ratio由读取线程填写，读取失败时为负
+     */
+    private static class Sample {
+        final Group directory;
+        final Group extension;
+        volatile double ratio = -1;
+        volatile int length;
+
+        Sample(Group directory, Group extension) {
+            this.directory = directory;
+            this.extension = extension;
+        }
+    }
+
+    /**
+     * 估算先序编号为ordinal的文件夹的子树，root为扫描的根目录；取消时返回null
+     */
+    public Result estimate(ScanTree tree, TreeIndex index, File root, int ordinal, Listener listener)
+            throws InterruptedException {
+        long startTime = System.currentTimeMillis();
+        long totalBytes = index.getTotalSize(ordinal);
+        boolean full = totalBytes <= readBudget;
+        double step = Math.max(BLOCK_SIZE, (double) totalBytes / Math.max(1, readBudget / BLOCK_SIZE));
+        // 随机的起点使各处被抽中的机会相同
+        double first = new Random().nextDouble() * step;
+        int planned = (int) Math.min(Integer.MAX_VALUE, full ? (totalBytes + BLOCK_SIZE - 1) / BLOCK_SIZE
+                : (long) Math.ceil(totalBytes / step));
+
+        Group total = new Group("全部");
+        Map<String, Group> directories = new HashMap<>();
+        Map<String, Group> extensions = new HashMap<>();
+        List<Sample> samples = new ArrayList<>();
+        AtomicInteger sampled = new AtomicInteger();
+        AtomicInteger unreadable = new AtomicInteger();
+
+        int maxInFlight = threads * 4;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "compression-estimator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long[] position = {0};
+        double[] next = {first};
+        int[] baseDepth = {-1};
+        Group[] currentDirectory = {null};
+        long[] lastProgress = {0};
+        try {
+            tree.visitPaths(root, index, ordinal, (node, nodeOrdinal, path) -> {
+                if (cancelled) {
+                    return;
+                }
+                if (baseDepth[0] < 0) {
+                    baseDepth[0] = node.depth;
+                    return;
+                }
+                String name = path.substring(path.lastIndexOf(File.separatorChar) + 1);
+                if (node.depth == baseDepth[0] + 1) {
+                    currentDirectory[0] = directories.computeIfAbsent(node.isDirectory() ? name : OWN_FILES,
+                            Group::new);
+                }
+                if ((node.flags & (ScanTree.FLAG_DIRECTORY | ScanTree.FLAG_DENIED)) != 0 || node.size <= 0) {
+                    return;
+                }
+                Group directory = currentDirectory[0];
+                Group extension = extensions.computeIfAbsent(EntrySorter.extension(name), Group::new);
+                for (Group group : new Group[]{total, directory, extension}) {
+                    group.bytes += node.size;
+                    group.files++;
+                }
+
+                List<Long> fileOffsets = full ? allBlocks(node.size) : sampleBlocks(node.size, position, next, step);
+                if (fileOffsets.isEmpty()) {
+                    return;
+                }
+                List<Sample> fileSamples = new ArrayList<>();
+                for (int i = 0; i < fileOffsets.size(); i++) {
+                    Sample sample = new Sample(directory, extension);
+                    fileSamples.add(sample);
+                    samples.add(sample);
+                }
+                inFlight.acquireUninterruptibly();
+                executor.execute(() -> {
+                    try {
+                        if (!cancelled && !sample(path, fileOffsets, fileSamples)) {
+                            unreadable.incrementAndGet();
+                        }
+                        sampled.addAndGet(fileSamples.size());
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+                long now = System.currentTimeMillis();
+                if (listener != null && now - lastProgress[0] >= PROGRESS_INTERVAL_MS) {
+                    listener.onProgress(sampled.get(), planned);
+                    lastProgress[0] = now;
+                }
+            });
+            // 等待已提交的读取全部完成
+            inFlight.acquire(maxInFlight);
+            if (listener != null) {
+                listener.onProgress(sampled.get(), planned);
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        if (cancelled) {
+            return null;
+        }
+
+        long readBytes = 0;
+        for (Sample sample : samples) {
+            if (sample.ratio >= 0) {
+                readBytes += sample.length;
+                double weight = full ? sample.length : 1;
+                total.addSample(sample.ratio, weight);
+                sample.directory.addSample(sample.ratio, weight);
+                sample.extension.addSample(sample.ratio, weight);
+            }
+        }
+        long populationBlocks = (total.bytes + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        total.finish(total, populationBlocks);
+        List<Group> byDirectory = finish(directories, total);
+        List<Group> byExtension = finish(extensions, total);
+        return new Result(total, byDirectory, byExtension, readBytes, unreadable.get(),
+                System.currentTimeMillis() - startTime);
+    }
+
+    private static List<Long> allBlocks(long size) {
+        List<Long> offsets = new ArrayList<>();
+        for (long offset = 0; offset < size; offset += BLOCK_SIZE) {
+            offsets.add(offset);
+        }
+        return offsets;
+    }
+
+    /**
+     * 落在下一个文件范围内的抽样位置所在的块，position为文件的起点，next为下一个抽样位置
+     * 块按文件内的固定边界对齐，与完整读取时的分块相同，文件末尾较短的块被抽中的机会也按长度成比例
+     */
+    private static List<Long> sampleBlocks(long size, long[] position, double[] next, double step) {
+        List<Long> offsets = new ArrayList<>();
+        long fileStart = position[0];
+        position[0] += size;
+        while (next[0] < position[0]) {
+            long offset = ((long) next[0] - fileStart) / BLOCK_SIZE * BLOCK_SIZE;
+            if (offsets.isEmpty() || offsets.get(offsets.size() - 1) != offset) {
+                offsets.add(offset);
+            }
+            next[0] += step;
+        }
+        return offsets;
+    }
+
+    /**
+     * 完成各组的估算，按原始大小从大到小排列
+     */
+    private static List<Group> finish(Map<String, Group> groups, Group total) {
+        List<Group> list = new ArrayList<>();
+        for (Group group : groups.values()) {
+            if (group.bytes > 0) {
+                group.finish(total, (group.bytes + BLOCK_SIZE - 1) / BLOCK_SIZE);
+                list.add(group);
+            }
+        }
+        list.sort((a, b) -> Long.compare(b.bytes, a.bytes));
+        return list;
+    }
+
+    /**
+     * 读取并压缩一个文件中被抽中的块；文件无法读取时返回false
+     */
+    private boolean sample(String path, List<Long> offsets, List<Sample> samples) {
+        Path file = Paths.get(path);
+        if (throttle != null) {
+            throttle.getOperations().acquire(1);
+        }
+        try {
+            // 打开命名管道会一直阻塞，设备等特殊文件也不读取
+            if (!Files.readAttributes(file, BasicFileAttributes.class).isRegularFile()) {
+                return false;
+            }
+        } catch (IOException | SecurityException e) {
+            return false;
+        }
+        byte[] input = INPUT.get();
+        Deflater deflater = new Deflater(level);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int i = 0; i < offsets.size() && !cancelled; i++) {
+                long offset = offsets.get(i);
+                if (throttle != null) {
+                    throttle.getBytes().acquire(BLOCK_SIZE);
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(input);
+                // 文件可能在扫描后变小，以实际读到的为准
+                while (buffer.hasRemaining()) {
+                    int read = channel.read(buffer, offset + buffer.position());
+                    if (read <= 0) {
+                        break;
+                    }
+                }
+                int length = buffer.position();
+                if (length == 0) {
+                    continue;
+                }
+                Sample sample = samples.get(i);
+                sample.length = length;
+                sample.ratio = (double) compressedLength(deflater, input, length) / length;
+            }
+            return true;
+        } catch (IOException | SecurityException e) {
+            return false;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static int compressedLength(Deflater deflater, byte[] input, int length) {
+        byte[] output = OUTPUT.get();
+        deflater.reset();
+        deflater.setInput(input, 0, length);
+        deflater.finish();
+        int compressed = 0;
+        while (!deflater.finished()) {
+            compressed += deflater.deflate(output);
+        }
+        return compressed;
+    }
+}
@@ -0,0 +1,631 @@
+package com.foldertree.core;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 全文索引 - 文本文件内容的倒排索引，保存在快照缓存旁边，由ContentIndexer建立和更新
+ * 索引分为若干段，每次更新只为新增和修改的文件写一个新段，删除和修改的文件在原来的段中记为已删除，
+ * 段多了再按大小归并；打开时只把各段的文件表和词典读入内存，查询时按词典中的位置读取用到的倒排表，
+ * 倒排表记录每个词出现的文件和位置，可以查询词和短语
+ *
+ * 索引文件只是段的清单：文件头、根目录、更新时间、下一个段的编号，以及每段的文件名和已删除文件的位图；
+ * 段文件：文件头、建立时间、文件表（相对路径、大小、修改时间秒数、是否文本）、按词排序的倒排表、
+ * 词典（词数，每个词的词、倒排表位置、文件数、字节数），最后8个字节是词典的位置
+ * 倒排表中每个文件依次为文件编号差、出现次数和各次位置的差，均为变长整数，文件编号在段内从0开始
+ */
+public class ContentIndex implements Closeable {
+
+    static final int MAGIC = 0x46544958; // "FTIX"
+    static final int VERSION = 2;
+    static final int SEGMENT_MAGIC = 0x46545347; // "FTSG"
+    // 超过该长度的词不收录，但仍占一个位置
+    static final int MAX_TOKEN_CHARS = 64;
+    public static final int DEFAULT_MAX_RESULTS = 1000;
+
+    private final String rootPath;
+    private final long createdTime;
+    private final long nextSegment;
+    private final List<Segment> segments;
+
+    /**
+     * 一个匹配的文件，count为各个查询词（短语）出现的总次数
+     */
+    public static class Hit {
+        public final String path;
+        public final long size;
+        public final int count;
+
+        Hit(String path, long size, int count) {
+            this.path = path;
+            this.size = size;
+            this.count = count;
+        }
+    }
+
+    /**
+     * 查询结果，hits按出现次数从多到少排列，最多为查询时指定的条数
+     */
+    public static class Result {
+        public final List<Hit> hits;
+        public final int totalMatches;
+        public final long elapsedMicros;
+
+        Result(List<Hit> hits, int totalMatches, long elapsedMicros) {
+            this.hits = hits;
+            this.totalMatches = totalMatches;
+            this.elapsedMicros = elapsedMicros;
+        }
+    }
+
+    private ContentIndex(File indexFile) throws IOException {
+        segments = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(indexFile), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("不是有效的索引文件: " + indexFile);
+            }
+            rootPath = in.readUTF();
+            createdTime = in.readLong();
+            nextSegment = in.readLong();
+            int segmentCount = in.readInt();
+            for (int i = 0; i < segmentCount; i++) {
+                String name = in.readUTF();
+                long[] words = new long[in.readInt()];
+                for (int j = 0; j < words.length; j++) {
+                    words[j] = in.readLong();
+                }
+                segments.add(new Segment(new File(indexFile.getParentFile(), name), BitSet.valueOf(words)));
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e instanceof IOException ? (IOException) e : new IOException("索引文件已损坏: " + indexFile, e);
+        }
+    }
+
+    /**
+     * 打开索引，文件不存在或格式不对时抛出IOException
+     */
+    public static ContentIndex open(File indexFile) throws IOException {
+        return new ContentIndex(indexFile);
+    }
+
+    public String getRootPath() {
+        return rootPath;
+    }
+
+    /**
+     * 建立或上次更新索引的时间
+     */
+    public long getCreatedTime() {
+        return createdTime;
+    }
+
+    /**
+     * 收录的文本文件数，不含已删除的
+     */
+    public int getDocumentCount() {
+        int count = 0;
+        for (Segment segment : segments) {
+            count += segment.liveTextCount;
+        }
+        return count;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    List<Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * 下一个新段的编号，段文件名为索引文件名加上编号
+     */
+    long getNextSegment() {
+        return nextSegment;
+    }
+
+    /**
+     * 查询：空格分开的每个词都要出现，一个词拆出多个词元时（如中文、带连字符的词）按短语匹配；
+     * 整个查询用双引号括起来时作为一个短语；maxResults为最多返回的文件数
+     */
+    public Result search(String query, int maxResults) throws IOException {
+        long startTime = System.nanoTime();
+        List<List<String>> clauses = parse(query);
+        if (clauses.isEmpty()) {
+            return new Result(new ArrayList<>(), 0, 0);
+        }
+        Set<String> distinct = new LinkedHashSet<>();
+        for (List<String> clause : clauses) {
+            distinct.addAll(clause);
+        }
+        List<String> queryTerms = new ArrayList<>(distinct);
+        List<Hit> hits = new ArrayList<>();
+        for (Segment segment : segments) {
+            segment.search(clauses, queryTerms, hits);
+        }
+        int totalMatches = hits.size();
+        hits.sort(Comparator.comparingInt((Hit hit) -> hit.count).reversed());
+        if (hits.size() > maxResults) {
+            hits = new ArrayList<>(hits.subList(0, maxResults));
+        }
+        return new Result(hits, totalMatches, (System.nanoTime() - startTime) / 1000);
+    }
+
+    /**
+     * 索引的一段：文件表和词典在内存中，倒排表按需读取；deleted中的文件已删除或已在更新的段中重新收录
+     */
+    class Segment implements Closeable {
+        final File segmentFile;
+        final BitSet deleted;
+        private final RandomAccessFile file;
+        private final FileChannel channel;
+        private final long fileLength;
+        private final long createdTime;
+        private final String[] paths;
+        private final long[] sizes;
+        private final int[] modifieds;
+        // 二进制文件也记在文件表中，未修改时不必重新读取，但没有倒排表
+        private final boolean[] texts;
+        private final int liveTextCount;
+        private final String[] terms;
+        private final long[] offsets;
+        private final int[] documentFrequencies;
+        private final int[] lengths;
+
+        Segment(File segmentFile, BitSet deleted) throws IOException {
+            this.segmentFile = segmentFile;
+            this.deleted = deleted;
+            file = new RandomAccessFile(segmentFile, "r");
+            channel = file.getChannel();
+            try {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(
+                        Channels.newInputStream(channel.position(0)), 64 * 1024));
+                if (in.readInt() != SEGMENT_MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("不是有效的索引段: " + segmentFile);
+                }
+                createdTime = in.readLong();
+                int documentCount = in.readInt();
+                paths = new String[documentCount];
+                sizes = new long[documentCount];
+                modifieds = new int[documentCount];
+                texts = new boolean[documentCount];
+                int textCount = 0;
+                for (int i = 0; i < documentCount; i++) {
+                    paths[i] = in.readUTF();
+                    sizes[i] = in.readLong();
+                    modifieds[i] = in.readInt();
+                    texts[i] = in.readBoolean();
+                    if (texts[i] && !deleted.get(i)) {
+                        textCount++;
+                    }
+                }
+                liveTextCount = textCount;
+
+                fileLength = file.length();
+                file.seek(fileLength - 8);
+                long dictionaryOffset = file.readLong();
+                in = new DataInputStream(new BufferedInputStream(
+                        Channels.newInputStream(channel.position(dictionaryOffset)), 64 * 1024));
+                int termCount = in.readInt();
+                terms = new String[termCount];
+                offsets = new long[termCount];
+                documentFrequencies = new int[termCount];
+                lengths = new int[termCount];
+                for (int i = 0; i < termCount; i++) {
+                    terms[i] = in.readUTF();
+                    offsets[i] = in.readLong();
+                    documentFrequencies[i] = in.readInt();
+                    lengths[i] = in.readInt();
+                }
+            } catch (IOException | RuntimeException e) {
+                file.close();
+                throw e instanceof IOException ? (IOException) e : new IOException("索引段已损坏: " + segmentFile, e);
+            }
+        }
+
+        /**
+         * 在这一段中查询，匹配的未删除文件加入hits
+         */
+        void search(List<List<String>> clauses, List<String> queryTerms, List<Hit> hits) throws IOException {
+            Postings[] postings = new Postings[queryTerms.size()];
+            for (int i = 0; i < postings.length; i++) {
+                int term = Arrays.binarySearch(terms, queryTerms.get(i));
+                if (term < 0) {
+                    return;
+                }
+                postings[i] = read(term);
+            }
+            // 从最少的倒排表出发，在其余的表中二分查找
+            Postings rarest = postings[0];
+            for (Postings candidate : postings) {
+                if (candidate.documents.length < rarest.documents.length) {
+                    rarest = candidate;
+                }
+            }
+
+            int[] entries = new int[postings.length];
+            for (int document : rarest.documents) {
+                if (deleted.get(document)) {
+                    continue;
+                }
+                boolean all = true;
+                for (int i = 0; i < postings.length && all; i++) {
+                    entries[i] = Arrays.binarySearch(postings[i].documents, document);
+                    all = entries[i] >= 0;
+                }
+                if (!all) {
+                    continue;
+                }
+                int count = 0;
+                for (List<String> clause : clauses) {
+                    int occurrences = countPhrase(clause, queryTerms, postings, entries);
+                    if (occurrences == 0) {
+                        count = 0;
+                        break;
+                    }
+                    count += occurrences;
+                }
+                if (count > 0) {
+                    String path = rootPath.endsWith(File.separator) ? rootPath + paths[document]
+                            : rootPath + File.separator + paths[document];
+                    hits.add(new Hit(path, sizes[document], count));
+                }
+            }
+        }
+
+        private Postings read(int term) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(lengths[term]);
+            long position = offsets[term];
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position + buffer.position());
+                if (read < 0) {
+                    throw new EOFException("索引文件不完整");
+                }
+            }
+            buffer.flip();
+            int documentCount = documentFrequencies[term];
+            int[] documents = new int[documentCount];
+            int[] positionStarts = new int[documentCount + 1];
+            int[] positions = new int[16];
+            int positionCount = 0;
+            int document = 0;
+            for (int i = 0; i < documentCount; i++) {
+                document += readVarInt(buffer);
+                documents[i] = document;
+                int occurrences = readVarInt(buffer);
+                if (positionCount + occurrences > positions.length) {
+                    positions = Arrays.copyOf(positions, Math.max(positions.length * 2, positionCount + occurrences));
+                }
+                int value = 0;
+                for (int j = 0; j < occurrences; j++) {
+                    value += readVarInt(buffer);
+                    positions[positionCount++] = value;
+                }
+                positionStarts[i + 1] = positionCount;
+            }
+            return new Postings(documents, positionStarts, positions);
+        }
+
+        /**
+         * 按文件编号顺序逐个读取全部倒排表，更新索引时合并旧的内容用
+         */
+        class Scanner {
+            private final DataInputStream in;
+            private int term = -1;
+
+            Scanner() throws IOException {
+                long start = terms.length == 0 ? 0 : offsets[0];
+                in = new DataInputStream(new BufferedInputStream(
+                        Channels.newInputStream(channel.position(start)), 256 * 1024));
+            }
+
+            /**
+             * 前进到下一个词，没有更多的词时返回null
+             */
+            String next() {
+                term++;
+                return term < terms.length ? terms[term] : null;
+            }
+
+            /**
+             * 读出当前词的倒排表，remap把旧文件编号换成新的编号，为-1的文件被丢弃
+             */
+            void copyTo(PostingWriter writer, int[] remap) throws IOException {
+                int document = 0;
+                for (int i = 0; i < documentFrequencies[term]; i++) {
+                    document += readVarInt(in);
+                    int occurrences = readVarInt(in);
+                    int target = remap[document];
+                    if (target >= 0) {
+                        writer.startDocument(target, occurrences);
+                    }
+                    for (int j = 0; j < occurrences; j++) {
+                        int delta = readVarInt(in);
+                        if (target >= 0) {
+                            writer.addPositionDelta(delta);
+                        }
+                    }
+                }
+            }
+        }
+
+        String getPath(int document) {
+            return paths[document];
+        }
+
+        long getSize(int document) {
+            return sizes[document];
+        }
+
+        int getModified(int document) {
+            return modifieds[document];
+        }
+
+        boolean isText(int document) {
+            return texts[document];
+        }
+
+        /**
+         * 文件表中的文件数，包括二进制文件
+         */
+        int getFileCount() {
+            return paths.length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+
+        long getCreatedTime() {
+            return createdTime;
+        }
+
+        /**
+         * 段文件的字节数
+         */
+        long getLength() {
+            return fileLength;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        for (Segment segment : segments) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * 短语在一个文件中出现的次数：第一个词的每个位置p，第i个词要出现在p+i
+     */
+    private static int countPhrase(List<String> clause, List<String> queryTerms, Postings[] postings,
+                                   int[] entries) {
+        Postings first = postings[queryTerms.indexOf(clause.get(0))];
+        int firstEntry = entries[queryTerms.indexOf(clause.get(0))];
+        if (clause.size() == 1) {
+            return first.positionStarts[firstEntry + 1] - first.positionStarts[firstEntry];
+        }
+        int count = 0;
+        for (int p = first.positionStarts[firstEntry]; p < first.positionStarts[firstEntry + 1]; p++) {
+            int position = first.positions[p];
+            boolean match = true;
+            for (int i = 1; i < clause.size() && match; i++) {
+                int term = queryTerms.indexOf(clause.get(i));
+                Postings postingsOfTerm = postings[term];
+                int entry = entries[term];
+                match = Arrays.binarySearch(postingsOfTerm.positions, postingsOfTerm.positionStarts[entry],
+                        postingsOfTerm.positionStarts[entry + 1], position + i) >= 0;
+            }
+            if (match) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    static List<List<String>> parse(String query) {
+        List<List<String>> clauses = new ArrayList<>();
+        String trimmed = query.trim();
+        if (trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+            List<String> phrase = new ArrayList<>();
+            tokenize(trimmed.substring(1, trimmed.length() - 1), phrase::add);
+            if (!phrase.isEmpty()) {
+                clauses.add(phrase);
+            }
+            return clauses;
+        }
+        for (String word : trimmed.split("\\s+")) {
+            List<String> phrase = new ArrayList<>();
+            tokenize(word, phrase::add);
+            if (!phrase.isEmpty()) {
+                clauses.add(phrase);
+            }
+        }
+        return clauses;
+    }
+
+    /**
+     * 一个词的倒排表：文件编号，以及每个文件的位置在positions中的范围
+     */
+    static class Postings {
+        final int[] documents;
+        final int[] positionStarts;
+        final int[] positions;
+
+        Postings(int[] documents, int[] positionStarts, int[] positions) {
+            this.documents = documents;
+            this.positionStarts = positionStarts;
+            this.positions = positions;
+        }
+    }
+
+    /**
+     * 分词：连续的字母和数字为一个词，统一为小写；汉字和日文假名每个字单独成词，
+     * 这样中文也能按短语查询
+     */
+    static void tokenize(CharSequence text, Consumer<String> consumer) {
+        Tokenizer tokenizer = new Tokenizer(consumer);
+        tokenizer.feed(text);
+        tokenizer.finish();
+    }
+
+    /**
+     * 可以分段送入文字的分词器，词可以跨越两段；每段不能以单独的高代理项结尾
+     */
+    static class Tokenizer {
+        private final Consumer<String> consumer;
+        private final StringBuilder token = new StringBuilder();
+
+        Tokenizer(Consumer<String> consumer) {
+            this.consumer = consumer;
+        }
+
+        void feed(CharSequence text) {
+            int length = text.length();
+            for (int i = 0; i < length; ) {
+                int codePoint = Character.codePointAt(text, i);
+                i += Character.charCount(codePoint);
+                if (!Character.isLetterOrDigit(codePoint)) {
+                    emit(token, consumer);
+                    continue;
+                }
+                if (isIdeographic(codePoint)) {
+                    emit(token, consumer);
+                    token.appendCodePoint(codePoint);
+                    emit(token, consumer);
+                    continue;
+                }
+                token.appendCodePoint(Character.toLowerCase(codePoint));
+            }
+        }
+
+        void finish() {
+            emit(token, consumer);
+        }
+    }
+
+    private static void emit(StringBuilder token, Consumer<String> consumer) {
+        if (token.length() == 0) {
+            return;
+        }
+        // 过长的词（如编码后的数据）不收录，用空串占位保持位置连续
+        consumer.accept(token.length() <= MAX_TOKEN_CHARS ? token.toString() : "");
+        token.setLength(0);
+    }
+
+    private static boolean isIdeographic(int codePoint) {
+        // 假名和汉字都在U+2E80之后，常见的拉丁字母不必查文字类别
+        if (codePoint < 0x2E80) {
+            return false;
+        }
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA;
+    }
+
+    /**
+     * 按词写出倒排表，文件编号必须递增
+     */
+    static class PostingWriter {
+        private byte[] data = new byte[64];
+        private int length;
+        private int documentCount;
+        private int lastDocument;
+
+        void startDocument(int document, int occurrences) {
+            writeVarInt(document - lastDocument);
+            writeVarInt(occurrences);
+            lastDocument = document;
+            documentCount++;
+        }
+
+        void addPositionDelta(int delta) {
+            writeVarInt(delta);
+        }
+
+        int getDocumentCount() {
+            return documentCount;
+        }
+
+        int getLength() {
+            return length;
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(data, 0, length);
+        }
+
+        void reset() {
+            length = 0;
+            documentCount = 0;
+            lastDocument = 0;
+        }
+
+        private void writeVarInt(int value) {
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            while ((value & ~0x7F) != 0) {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+    }
+
+    static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("索引文件不完整");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
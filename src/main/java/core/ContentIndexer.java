@@ -0,0 +1,837 @@
+package com.foldertree.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 全文索引的建立和更新 - 按扫描结果列出的文件并行分词，读取遵守扫描的限速设置
+ * 与变化查询相同按修改时间判断：大小和修改时间与索引中相同、且早于所在段建立时间的文件
+ * 沿用原来的倒排表，其余的重新读取；已删除和修改的文件在原来的段中记为已删除
+ * 新的倒排表在内存中积累到一定大小就按词排序写入临时文件，最后归并成一个新段，
+ * 只有较新的段加起来达到前一段的一半、或一段中删除的文件超过一半时才把这些段一起归并，
+ * 每次更新写出的数据与变化的文件成正比，每个倒排表被重写的次数只随索引大小对数增长
+ */
+public class ContentIndexer {
+
+    // 每个文件最多读取的字节数，超出部分不收录
+    static final int MAX_FILE_BYTES = 64 * 1024 * 1024;
+    // 每次读取和解码的块大小，文件按块流式分词，不整个读入内存
+    private static final int CHUNK_BYTES = 64 * 1024;
+    // 内存中的倒排表超过该大小时写入临时文件
+    private static final long SEGMENT_BYTES = 64L * 1024 * 1024;
+    // 每个词在内存中的额外开销的估计
+    private static final int TERM_OVERHEAD = 96;
+    private static final long PROGRESS_INTERVAL_MS = 100;
+    // 较新的段加起来达到前一段的1/MERGE_RATIO时一起归并
+    private static final int MERGE_RATIO = 2;
+
+    private static final ThreadLocal<ByteBuffer> BYTES =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(CHUNK_BYTES));
+    private static final ThreadLocal<CharBuffer> CHARS =
+            ThreadLocal.withInitial(() -> CharBuffer.allocate(CHUNK_BYTES));
+    private static final ThreadLocal<CharsetDecoder> DECODER =
+            ThreadLocal.withInitial(() -> StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE));
+
+    /**
+     * 更新的汇总
+     */
+    public static class Result {
+        public final int reusedFiles;
+        public final int indexedFiles;
+        public final int removedFiles;
+        public final int binaryFiles;
+        public final int unreadableFiles;
+        // 超过MAX_FILE_BYTES，只收录了开头部分的文件
+        public final int truncatedFiles;
+        // 新段的词数，以及归并进新段的旧段数和更新后的段数
+        public final int termCount;
+        public final int mergedSegments;
+        public final int segmentCount;
+        public final long elapsedMillis;
+
+        Result(int reusedFiles, int indexedFiles, int removedFiles, int binaryFiles, int unreadableFiles,
+               int truncatedFiles, int termCount, int mergedSegments, int segmentCount, long elapsedMillis) {
+            this.reusedFiles = reusedFiles;
+            this.indexedFiles = indexedFiles;
+            this.removedFiles = removedFiles;
+            this.binaryFiles = binaryFiles;
+            this.unreadableFiles = unreadableFiles;
+            this.truncatedFiles = truncatedFiles;
+            this.termCount = termCount;
+            this.mergedSegments = mergedSegments;
+            this.segmentCount = segmentCount;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public String getSummary() {
+            String summary = String.format("沿用 %,d 个文件，重新读取 %,d 个，去掉 %,d 个，新段 %,d 个词，用时 %.1f 秒",
+                    reusedFiles, indexedFiles, removedFiles, termCount, elapsedMillis / 1000.0);
+            if (mergedSegments > 0) {
+                summary += String.format("，归并了 %d 个旧段", mergedSegments);
+            }
+            summary += String.format("，共 %d 段", segmentCount);
+            if (binaryFiles > 0) {
+                summary += String.format("，跳过 %,d 个二进制文件", binaryFiles);
+            }
+            if (unreadableFiles > 0) {
+                summary += String.format("，%,d 个文件无法读取", unreadableFiles);
+            }
+            if (truncatedFiles > 0) {
+                summary += String.format("，%,d 个文件只收录了开头 %d MB", truncatedFiles,
+                        MAX_FILE_BYTES / (1024 * 1024));
+            }
+            return summary;
+        }
+    }
+
+    /**
+     * 文件表中的一项；新段中归并过来的文件在前，新读取的文件在后
+     */
+    private static class Document {
+        final String path;
+        final long size;
+        final int modified;
+        final boolean text;
+
+        Document(String path, long size, int modified, boolean text) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.text = text;
+        }
+    }
+
+    /**
+     * 一个文件中某个词的全部位置
+     */
+    private static class Occurrences {
+        int[] positions = new int[4];
+        int count;
+
+        void add(int position) {
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count * 2);
+            }
+            positions[count++] = position;
+        }
+    }
+
+    private final IoThrottle throttle;
+    private int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private volatile boolean cancelled;
+    private final AtomicInteger unreadableFiles = new AtomicInteger();
+    private final AtomicInteger truncatedFiles = new AtomicInteger();
+
+    // 以下在synchronized中访问：新读取的文件和内存中的倒排表
+    private final List<Document> newDocuments = new ArrayList<>();
+    private Map<String, ContentIndex.PostingWriter> segment = new HashMap<>();
+    private long segmentBytes;
+    private final List<File> runFiles = new ArrayList<>();
+    private File indexFile;
+    private IOException writeError;
+
+    /**
+     * @param throttle 读取时使用的限速器，为null时不限速
+     */
+    public ContentIndexer(IoThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * 按扫描结果建立或更新indexFile（root为扫描的根目录）；索引不存在、无法读取
+     * 或根目录不同时重新建立；取消时返回null，原来的索引保持不变
+     */
+    public Result update(ScanTree tree, File root, File indexFile, FolderScanner.ProgressCallback callback)
+            throws IOException, InterruptedException {
+        long startTime = System.currentTimeMillis();
+        this.indexFile = indexFile;
+        Files.createDirectories(indexFile.getParentFile().toPath());
+        ContentIndex old = null;
+        if (indexFile.isFile()) {
+            try {
+                old = ContentIndex.open(indexFile);
+                if (!old.getRootPath().equals(root.getPath())) {
+                    old.close();
+                    old = null;
+                }
+            } catch (IOException e) {
+                System.err.println("无法读取旧的索引，将重新建立: " + e.getMessage());
+            }
+        }
+        try {
+            return update(tree, root, old, startTime, callback);
+        } finally {
+            if (old != null) {
+                old.close();
+            }
+            for (File run : runFiles) {
+                Files.deleteIfExists(run.toPath());
+            }
+        }
+    }
+
+    private Result update(ScanTree tree, File root, ContentIndex old, long startTime,
+                          FolderScanner.ProgressCallback callback) throws IOException, InterruptedException {
+        List<ContentIndex.Segment> segments = old == null ? new ArrayList<>() : old.getSegments();
+        // 旧索引中未删除的文件：高32位为段的序号，低32位为段内的编号
+        Map<String, Long> oldDocuments = new HashMap<>();
+        BitSet[] reused = new BitSet[segments.size()];
+        for (int s = 0; s < segments.size(); s++) {
+            ContentIndex.Segment segment = segments.get(s);
+            for (int i = 0; i < segment.getFileCount(); i++) {
+                if (!segment.deleted.get(i)) {
+                    oldDocuments.put(segment.getPath(i), (long) s << 32 | i);
+                }
+            }
+            reused[s] = new BitSet(segment.getFileCount());
+        }
+        int liveFiles = oldDocuments.size();
+        int[] totalFiles = {0};
+        tree.visit(node -> {
+            if (isFile(node)) {
+                totalFiles[0]++;
+            }
+        });
+        // 索引中有、但已修改需要重新读取的文件
+        int[] changedFiles = {0};
+
+        String prefix = root.getPath().endsWith(File.separator) ? root.getPath() : root.getPath() + File.separator;
+        int maxInFlight = threads * 16;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicInteger processed = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long[] lastProgress = {0};
+        try {
+            tree.visitPaths(root, (node, ordinal, path) -> {
+                if (cancelled || !isFile(node) || !path.startsWith(prefix)) {
+                    return;
+                }
+                String relativePath = path.substring(prefix.length());
+                Long oldDocument = oldDocuments.get(relativePath);
+                if (oldDocument != null) {
+                    int s = (int) (oldDocument >>> 32);
+                    int document = oldDocument.intValue();
+                    ContentIndex.Segment segment = segments.get(s);
+                    if (segment.getSize(document) == node.size && segment.getModified(document) == node.modified
+                            && node.getModifiedMillis() < segment.getCreatedTime()) {
+                        reused[s].set(document);
+                        processed.incrementAndGet();
+                        return;
+                    }
+                    changedFiles[0]++;
+                }
+                long size = node.size;
+                int modified = node.modified;
+                inFlight.acquireUninterruptibly();
+                pool.execute(() -> {
+                    try {
+                        if (!cancelled) {
+                            index(path, relativePath, size, modified);
+                        }
+                        processed.incrementAndGet();
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+                long now = System.currentTimeMillis();
+                if (callback != null && now - lastProgress[0] >= PROGRESS_INTERVAL_MS) {
+                    callback.onProgress(processed.get(), totalFiles[0], path);
+                    lastProgress[0] = now;
+                }
+            });
+            // 等待已提交的分词全部完成
+            inFlight.acquire(maxInFlight);
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        synchronized (this) {
+            if (writeError != null) {
+                throw writeError;
+            }
+            if (cancelled) {
+                return null;
+            }
+            flushSegment();
+        }
+
+        // 没有沿用的旧文件（已删除或已修改）记为已删除
+        int reusedCount = 0;
+        BitSet[] deleted = new BitSet[segments.size()];
+        for (int s = 0; s < segments.size(); s++) {
+            ContentIndex.Segment segment = segments.get(s);
+            deleted[s] = new BitSet(segment.getFileCount());
+            deleted[s].set(0, segment.getFileCount());
+            deleted[s].andNot(reused[s]);
+            reusedCount += reused[s].cardinality();
+        }
+        long newBytes = 0;
+        for (File run : runFiles) {
+            newBytes += run.length();
+        }
+        boolean[] merge = chooseMerges(segments, deleted, newBytes);
+
+        // 归并的旧段中未删除的文件按原来的顺序排在前面，编号保持递增以便直接归并倒排表
+        List<ContentIndex.Segment> merged = new ArrayList<>();
+        List<int[]> remaps = new ArrayList<>();
+        List<Document> documents = new ArrayList<>();
+        for (int s = 0; s < segments.size(); s++) {
+            if (!merge[s]) {
+                continue;
+            }
+            ContentIndex.Segment segment = segments.get(s);
+            int[] remap = new int[segment.getFileCount()];
+            for (int i = 0; i < remap.length; i++) {
+                if (deleted[s].get(i)) {
+                    remap[i] = -1;
+                } else {
+                    remap[i] = documents.size();
+                    documents.add(new Document(segment.getPath(i), segment.getSize(i), segment.getModified(i),
+                            segment.isText(i)));
+                }
+            }
+            merged.add(segment);
+            remaps.add(remap);
+        }
+        int base = documents.size();
+        documents.addAll(newDocuments);
+        if (callback != null) {
+            callback.onProgress(processed.get(), totalFiles[0], "写入索引");
+        }
+        long segmentNumber = old == null ? 0 : old.getNextSegment();
+        File segmentFile = documents.isEmpty() ? null
+                : new File(indexFile.getParentFile(), indexFile.getName() + "." + segmentNumber);
+        int termCount = 0;
+        if (segmentFile != null) {
+            termCount = writeSegment(segmentFile, merged, remaps, base, documents, startTime);
+            if (cancelled) {
+                return null;
+            }
+        }
+
+        // 新的清单：未归并的段带上新的删除记录，最后是新段
+        List<String> names = new ArrayList<>();
+        List<BitSet> tombstones = new ArrayList<>();
+        for (int s = 0; s < segments.size(); s++) {
+            if (!merge[s]) {
+                names.add(segments.get(s).segmentFile.getName());
+                tombstones.add(deleted[s]);
+            }
+        }
+        if (segmentFile != null) {
+            names.add(segmentFile.getName());
+            tombstones.add(new BitSet());
+        }
+        try {
+            writeManifest(root, startTime, segmentNumber + 1, names, tombstones);
+        } catch (IOException e) {
+            if (segmentFile != null) {
+                Files.deleteIfExists(segmentFile.toPath());
+            }
+            throw e;
+        }
+        if (old != null) {
+            // 删除归并掉的段前先关闭，有的系统不能删除已打开的文件
+            old.close();
+        }
+        deleteUnusedSegments(names);
+
+        int binaryFiles = 0;
+        for (Document document : newDocuments) {
+            if (!document.text) {
+                binaryFiles++;
+            }
+        }
+        return new Result(reusedCount, newDocuments.size() - binaryFiles, liveFiles - reusedCount - changedFiles[0],
+                binaryFiles, unreadableFiles.get(), truncatedFiles.get(), termCount, merged.size(), names.size(),
+                System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * 选出要归并进新段的旧段：从最新的段往前，较新的段连同这次新增的数据加起来达到前一段的1/MERGE_RATIO时
+     * 一起归并，这样各段的大小大致按几何级数递减；删除的文件超过一半的段也归并，收回空间
+     */
+    private static boolean[] chooseMerges(List<ContentIndex.Segment> segments, BitSet[] deleted, long newBytes) {
+        boolean[] merge = new boolean[segments.size()];
+        long tail = newBytes;
+        for (int s = segments.size() - 1; s >= 0; s--) {
+            long bytes = liveBytes(segments.get(s), deleted[s]);
+            if (tail * MERGE_RATIO < bytes) {
+                break;
+            }
+            merge[s] = true;
+            tail += bytes;
+        }
+        for (int s = 0; s < segments.size(); s++) {
+            if (deleted[s].cardinality() * 2L > segments.get(s).getFileCount()) {
+                merge[s] = true;
+            }
+        }
+        return merge;
+    }
+
+    /**
+     * 段文件的字节数按未删除文件的比例折算
+     */
+    private static long liveBytes(ContentIndex.Segment segment, BitSet deleted) {
+        int files = segment.getFileCount();
+        return files == 0 ? 0 : segment.getLength() * (files - deleted.cardinality()) / files;
+    }
+
+    private static boolean isFile(ScanTree.NodeRecord node) {
+        return (node.flags & (ScanTree.FLAG_DIRECTORY | ScanTree.FLAG_DENIED)) == 0 && node.size > 0;
+    }
+
+    /**
+     * 读取一个文件并分词，结果加入内存中的倒排表
+     */
+    private void index(String path, String relativePath, long size, int modified) {
+        Path file = Paths.get(path);
+        if (throttle != null) {
+            throttle.getOperations().acquire(1);
+        }
+        try {
+            // 打开命名管道会一直阻塞，设备等特殊文件也不读取
+            if (!Files.readAttributes(file, BasicFileAttributes.class).isRegularFile()) {
+                return;
+            }
+        } catch (IOException | SecurityException e) {
+            unreadableFiles.incrementAndGet();
+            return;
+        }
+        Map<String, Occurrences> terms = new HashMap<>();
+        int[] position = {0};
+        ContentIndex.Tokenizer tokenizer = new ContentIndex.Tokenizer(token -> {
+            if (!token.isEmpty()) {
+                terms.computeIfAbsent(token, t -> new Occurrences()).add(position[0]);
+            }
+            position[0]++;
+        });
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long actualSize = channel.size();
+            if (actualSize > MAX_FILE_BYTES) {
+                truncatedFiles.incrementAndGet();
+            }
+            long remaining = Math.min(actualSize, MAX_FILE_BYTES);
+            // 先读文件头判断是否为文本，二进制文件只记入文件表
+            ByteBuffer bytes = BYTES.get();
+            bytes.clear();
+            bytes.limit((int) Math.min(remaining, ContentTypeDetector.HEAD_BYTES));
+            if (throttle != null) {
+                throttle.getBytes().acquire(bytes.limit());
+            }
+            long offset = read(channel, bytes, 0);
+            ContentType type = ContentType.detect(bytes, bytes.position());
+            if (type != ContentType.TEXT && type != ContentType.SCRIPT) {
+                addDocument(new Document(relativePath, size, modified, false), null);
+                return;
+            }
+            remaining = offset < bytes.limit() ? 0 : remaining - offset;
+
+            // 按块读取、解码并分词，位置计数和未完成的词跨块保留
+            CharBuffer chars = CHARS.get();
+            CharsetDecoder decoder = DECODER.get();
+            decoder.reset();
+            while (true) {
+                int chunk = (int) Math.min(bytes.capacity() - bytes.position(), remaining);
+                if (chunk > 0) {
+                    bytes.limit(bytes.position() + chunk);
+                    if (throttle != null) {
+                        throttle.getBytes().acquire(chunk);
+                    }
+                    long read = read(channel, bytes, offset) - offset;
+                    offset += read;
+                    remaining = read < chunk ? 0 : remaining - read;
+                }
+                boolean last = remaining == 0;
+                bytes.flip();
+                chars.clear();
+                decoder.decode(bytes, chars, last);
+                if (last) {
+                    decoder.flush(chars);
+                }
+                chars.flip();
+                tokenizer.feed(chars);
+                bytes.compact();
+                if (last || cancelled) {
+                    break;
+                }
+            }
+            tokenizer.finish();
+        } catch (IOException | SecurityException e) {
+            unreadableFiles.incrementAndGet();
+            return;
+        }
+        addDocument(new Document(relativePath, size, modified, true), terms);
+    }
+
+    /**
+     * 从文件的offset处读满buffer或读到文件末尾，返回读完后的文件位置
+     */
+    private static long read(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                break;
+            }
+            offset += read;
+        }
+        return offset;
+    }
+
+    private synchronized void addDocument(Document document, Map<String, Occurrences> terms) {
+        int id = newDocuments.size();
+        newDocuments.add(document);
+        if (terms == null) {
+            return;
+        }
+        for (Map.Entry<String, Occurrences> entry : terms.entrySet()) {
+            ContentIndex.PostingWriter writer = segment.get(entry.getKey());
+            if (writer == null) {
+                writer = new ContentIndex.PostingWriter();
+                segment.put(entry.getKey(), writer);
+                segmentBytes += TERM_OVERHEAD + entry.getKey().length() * 2L;
+            }
+            int before = writer.getLength();
+            Occurrences occurrences = entry.getValue();
+            writer.startDocument(id, occurrences.count);
+            int last = 0;
+            for (int i = 0; i < occurrences.count; i++) {
+                writer.addPositionDelta(occurrences.positions[i] - last);
+                last = occurrences.positions[i];
+            }
+            segmentBytes += writer.getLength() - before;
+        }
+        if (segmentBytes >= SEGMENT_BYTES && writeError == null) {
+            try {
+                flushSegment();
+            } catch (IOException e) {
+                writeError = e;
+                cancelled = true;
+            }
+        }
+    }
+
+    /**
+     * 把内存中的倒排表按词排序写入临时文件：开头是词数，之后每个词依次为词、文件数、字节数、倒排表
+     */
+    private void flushSegment() throws IOException {
+        if (segment.isEmpty()) {
+            return;
+        }
+        File run = new File(indexFile.getParentFile(), indexFile.getName() + "." + runFiles.size() + ".tmp");
+        runFiles.add(run);
+        String[] terms = segment.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(run), 256 * 1024))) {
+            out.writeInt(terms.length);
+            for (String term : terms) {
+                ContentIndex.PostingWriter writer = segment.get(term);
+                out.writeUTF(term);
+                out.writeInt(writer.getDocumentCount());
+                out.writeInt(writer.getLength());
+                writer.writeTo(out);
+            }
+        }
+        segment = new HashMap<>();
+        segmentBytes = 0;
+    }
+
+    /**
+     * 归并中的一个来源：一个旧段或一个临时文件，按词的顺序读出
+     */
+    private abstract static class Source implements Comparable<Source> {
+        final int order;
+        String term;
+
+        Source(int order) {
+            this.order = order;
+        }
+
+        abstract void advance() throws IOException;
+
+        abstract void copyTo(ContentIndex.PostingWriter writer) throws IOException;
+
+        @Override
+        public int compareTo(Source other) {
+            int result = term.compareTo(other.term);
+            return result != 0 ? result : Integer.compare(order, other.order);
+        }
+    }
+
+    private static class SegmentSource extends Source {
+        private final ContentIndex.Segment.Scanner scanner;
+        private final int[] remap;
+
+        SegmentSource(int order, ContentIndex.Segment segment, int[] remap) throws IOException {
+            super(order);
+            this.scanner = segment.new Scanner();
+            this.remap = remap;
+        }
+
+        @Override
+        void advance() {
+            term = scanner.next();
+        }
+
+        @Override
+        void copyTo(ContentIndex.PostingWriter writer) throws IOException {
+            scanner.copyTo(writer, remap);
+        }
+    }
+
+    private static class RunSource extends Source {
+        private final DataInputStream in;
+        // 临时文件中的编号从0开始，加上从旧段归并过来的文件数
+        private final int base;
+        // 还没有读出的词数
+        private int remainingTerms;
+        private int documentCount;
+
+        RunSource(int order, File run, int base) throws IOException {
+            super(order);
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), 256 * 1024));
+            this.base = base;
+            this.remainingTerms = in.readInt();
+        }
+
+        @Override
+        void advance() throws IOException {
+            if (remainingTerms == 0) {
+                term = null;
+                return;
+            }
+            remainingTerms--;
+            term = in.readUTF();
+            documentCount = in.readInt();
+            in.readInt();
+        }
+
+        @Override
+        void copyTo(ContentIndex.PostingWriter writer) throws IOException {
+            int document = 0;
+            for (int i = 0; i < documentCount; i++) {
+                document += ContentIndex.readVarInt(in);
+                int occurrences = ContentIndex.readVarInt(in);
+                writer.startDocument(base + document, occurrences);
+                for (int j = 0; j < occurrences; j++) {
+                    writer.addPositionDelta(ContentIndex.readVarInt(in));
+                }
+            }
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * 计数已写出的字节，用来记录倒排表的位置
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    /**
+     * 归并选中的旧段和临时文件，写出新段，返回词数；词典先写到单独的临时文件，
+     * 最后接在倒排表后面，内存中不保留全部的词；取消时删除写了一半的段
+     */
+    private int writeSegment(File segmentFile, List<ContentIndex.Segment> merged, List<int[]> remaps, int base,
+                             List<Document> documents, long createdTime) throws IOException {
+        File dictionaryFile = new File(segmentFile.getParentFile(), segmentFile.getName() + ".dict.tmp");
+        List<RunSource> runs = new ArrayList<>();
+        PriorityQueue<Source> queue = new PriorityQueue<>();
+        int termCount = 0;
+        boolean complete = false;
+        try {
+            for (int i = 0; i < merged.size(); i++) {
+                add(queue, new SegmentSource(i, merged.get(i), remaps.get(i)));
+            }
+            for (File run : runFiles) {
+                RunSource source = new RunSource(merged.size() + runs.size(), run, base);
+                runs.add(source);
+                add(queue, source);
+            }
+            CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(segmentFile), 256 * 1024));
+            try (DataOutputStream out = new DataOutputStream(counter);
+                 DataOutputStream dictionary = new DataOutputStream(new BufferedOutputStream(
+                         new FileOutputStream(dictionaryFile), 256 * 1024))) {
+                out.writeInt(ContentIndex.SEGMENT_MAGIC);
+                out.writeInt(ContentIndex.VERSION);
+                out.writeLong(createdTime);
+                out.writeInt(documents.size());
+                for (Document document : documents) {
+                    out.writeUTF(document.path);
+                    out.writeLong(document.size);
+                    out.writeInt(document.modified);
+                    out.writeBoolean(document.text);
+                }
+
+                ContentIndex.PostingWriter writer = new ContentIndex.PostingWriter();
+                List<Source> sameTerm = new ArrayList<>();
+                while (!queue.isEmpty()) {
+                    if (cancelled) {
+                        return 0;
+                    }
+                    Source first = queue.poll();
+                    String term = first.term;
+                    sameTerm.add(first);
+                    while (!queue.isEmpty() && queue.peek().term.equals(term)) {
+                        sameTerm.add(queue.poll());
+                    }
+                    // 旧段按原来的顺序、临时文件按写出顺序，编号依次递增，依次追加即可
+                    writer.reset();
+                    for (Source source : sameTerm) {
+                        source.copyTo(writer);
+                        add(queue, source);
+                    }
+                    sameTerm.clear();
+                    if (writer.getDocumentCount() > 0) {
+                        dictionary.writeUTF(term);
+                        dictionary.writeLong(counter.count);
+                        dictionary.writeInt(writer.getDocumentCount());
+                        dictionary.writeInt(writer.getLength());
+                        termCount++;
+                        writer.writeTo(out);
+                    }
+                }
+
+                long dictionaryOffset = counter.count;
+                out.writeInt(termCount);
+                dictionary.flush();
+                Files.copy(dictionaryFile.toPath(), out);
+                out.writeLong(dictionaryOffset);
+            }
+            complete = !cancelled;
+            return termCount;
+        } finally {
+            for (RunSource run : runs) {
+                run.close();
+            }
+            Files.deleteIfExists(dictionaryFile.toPath());
+            if (!complete) {
+                Files.deleteIfExists(segmentFile.toPath());
+            }
+        }
+    }
+
+    /**
+     * 写出段的清单，先写临时文件再原子替换
+     */
+    private void writeManifest(File root, long createdTime, long nextSegment, List<String> names,
+                               List<BitSet> tombstones) throws IOException {
+        File tempFile = new File(indexFile.getParentFile(), indexFile.getName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(tempFile), 64 * 1024))) {
+                out.writeInt(ContentIndex.MAGIC);
+                out.writeInt(ContentIndex.VERSION);
+                out.writeUTF(root.getPath());
+                out.writeLong(createdTime);
+                out.writeLong(nextSegment);
+                out.writeInt(names.size());
+                for (int i = 0; i < names.size(); i++) {
+                    out.writeUTF(names.get(i));
+                    long[] words = tombstones.get(i).toLongArray();
+                    out.writeInt(words.length);
+                    for (long word : words) {
+                        out.writeLong(word);
+                    }
+                }
+            }
+            Files.move(tempFile.toPath(), indexFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * 删除清单中没有的段文件：归并掉的段，以及中断的更新留下的段
+     */
+    private void deleteUnusedSegments(List<String> names) {
+        String prefix = indexFile.getName() + ".";
+        File[] files = indexFile.getParentFile().listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(prefix) && name.length() > prefix.length()
+                    && name.substring(prefix.length()).chars().allMatch(Character::isDigit)
+                    && !names.contains(name)) {
+                try {
+                    Files.deleteIfExists(file.toPath());
+                } catch (IOException e) {
+                    System.err.println("无法删除旧的索引段: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void add(PriorityQueue<Source> queue, Source source) throws IOException {
+        source.advance();
+        if (source.term != null) {
+            queue.add(source);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.foldertree.core;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 文件内容的搜索条件，创建时预先编译，可在多个线程中共用
+ * 文字搜索按UTF-8字节用Boyer-Moore-Horspool算法查找，忽略大小写时只折叠ASCII字母；
+ * 正则表达式按行解码为UTF-8后匹配，不能跨行
+ */
+public class ContentPattern {
+
+    // ASCII字母转小写，其余字节不变
+    private static final byte[] FOLD = new byte[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            FOLD[i] = (byte) (i >= 'A' && i <= 'Z' ? i + ('a' - 'A') : i);
+        }
+    }
+
+    private final String text;
+    private final byte[] needle;
+    // 坏字符表：文本中窗口末尾的字节为b时窗口可以后移的距离
+    private final int[] shift;
+    private final boolean ignoreCase;
+    private final Pattern regex;
+    private final ThreadLocal<LineDecoder> decoder;
+
+    private ContentPattern(String text, boolean ignoreCase, Pattern regex) {
+        this.text = text;
+        this.ignoreCase = ignoreCase;
+        this.regex = regex;
+        if (regex != null) {
+            needle = null;
+            shift = null;
+            decoder = ThreadLocal.withInitial(LineDecoder::new);
+            return;
+        }
+        decoder = null;
+        needle = text.getBytes(StandardCharsets.UTF_8);
+        if (ignoreCase) {
+            for (int i = 0; i < needle.length; i++) {
+                needle[i] = FOLD[needle[i] & 0xFF];
+            }
+        }
+        shift = new int[256];
+        Arrays.fill(shift, needle.length);
+        for (int i = 0; i < needle.length - 1; i++) {
+            shift[needle[i] & 0xFF] = needle.length - 1 - i;
+        }
+    }
+
+    /**
+     * 查找文字，text不能为空
+     */
+    public static ContentPattern literal(String text, boolean ignoreCase) {
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("搜索内容为空");
+        }
+        return new ContentPattern(text, ignoreCase, null);
+    }
+
+    /**
+     * 按行匹配正则表达式，表达式有误时抛出PatternSyntaxException
+     */
+    public static ContentPattern regex(String expression, boolean ignoreCase) {
+        int flags = ignoreCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+        return new ContentPattern(expression, ignoreCase, Pattern.compile(expression, flags));
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public boolean isRegex() {
+        return regex != null;
+    }
+
+    /**
+     * 在buffer的[from, to)范围内查找下一处匹配，返回匹配所在行中的某个位置，没有时返回-1
+     * from应为一行的开头
+     */
+    int find(ByteBuffer buffer, int from, int to) {
+        return regex != null ? findRegex(buffer, from, to) : findLiteral(buffer, from, to);
+    }
+
+    private int findLiteral(ByteBuffer buffer, int from, int to) {
+        int last = needle.length - 1;
+        byte[] fold = ignoreCase ? FOLD : null;
+        for (int i = from; i + last < to; ) {
+            int j = last;
+            while (j >= 0 && fold(buffer.get(i + j), fold) == needle[j]) {
+                j--;
+            }
+            if (j < 0) {
+                return i;
+            }
+            i += shift[fold(buffer.get(i + last), fold) & 0xFF];
+        }
+        return -1;
+    }
+
+    private static byte fold(byte b, byte[] fold) {
+        return fold == null ? b : fold[b & 0xFF];
+    }
+
+    private int findRegex(ByteBuffer buffer, int from, int to) {
+        LineDecoder lines = decoder.get();
+        for (int start = from; start < to; ) {
+            int end = start;
+            while (end < to && buffer.get(end) != '\n') {
+                end++;
+            }
+            // Windows换行的行尾不参与匹配，以免$匹配不上
+            int lineEnd = end > start && buffer.get(end - 1) == '\r' ? end - 1 : end;
+            if (lines.matches(regex, buffer, start, lineEnd)) {
+                return start;
+            }
+            start = end + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * 把一行字节解码为字符，每个线程一个，缓冲区按需扩大
+     */
+    private static class LineDecoder {
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private CharBuffer chars = CharBuffer.allocate(1024);
+        private Matcher matcher;
+
+        boolean matches(Pattern regex, ByteBuffer buffer, int start, int end) {
+            ByteBuffer line = buffer.duplicate();
+            line.limit(end).position(start);
+            // UTF-8解码后的字符数不会超过字节数
+            if (chars.capacity() < end - start) {
+                chars = CharBuffer.allocate(Math.max(end - start, chars.capacity() * 2));
+            }
+            chars.clear();
+            decoder.reset();
+            decoder.decode(line, chars, true);
+            decoder.flush(chars);
+            chars.flip();
+            if (matcher == null || matcher.pattern() != regex) {
+                matcher = regex.matcher(chars);
+            } else {
+                matcher.reset(chars);
+            }
+            return matcher.find();
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.foldertree.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 文件内容搜索 - 在扫描结果列出的文本文件中并行查找，不再重新遍历文件夹；
+ * 命中的行一找到就交给调用方，每行只报告一次；二进制文件按文件头跳过
+ * 文件的读取方式与行数统计相同：小文件读入缓冲区，大文件分段内存映射
+ */
+public class ContentSearcher {
+
+    public static final int DEFAULT_MAX_HITS = 10000;
+    // 命中行最多保留的字节数
+    private static final int MAX_LINE_BYTES = 300;
+    // 大文件的映射段大小，段在最后一个换行符处截断，下一段从该行开始
+    private static final long MAP_CHUNK = 1L << 30;
+    private static final long PROGRESS_INTERVAL_MS = 100;
+
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(LineCounter.MAP_THRESHOLD));
+
+    /**
+     * 一处命中：文件、先序编号、行号（从1开始）和该行的内容
+     */
+    public static class Hit {
+        public final String path;
+        public final long ordinal;
+        public final long line;
+        public final String text;
+
+        Hit(String path, long ordinal, long line, String text) {
+            this.path = path;
+            this.ordinal = ordinal;
+            this.line = line;
+            this.text = text;
+        }
+    }
+
+    /**
+     * 搜索的汇总
+     */
+    public static class Result {
+        public final int searchedFiles;
+        public final int matchedFiles;
+        public final int hits;
+        public final int binaryFiles;
+        public final int unreadableFiles;
+        // 命中数达到上限，提前结束
+        public final boolean truncated;
+        public final long elapsedMillis;
+
+        Result(int searchedFiles, int matchedFiles, int hits, int binaryFiles, int unreadableFiles,
+               boolean truncated, long elapsedMillis) {
+            this.searchedFiles = searchedFiles;
+            this.matchedFiles = matchedFiles;
+            this.hits = hits;
+            this.binaryFiles = binaryFiles;
+            this.unreadableFiles = unreadableFiles;
+            this.truncated = truncated;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public String getSummary() {
+            String summary = String.format("%,d 个文件中有 %,d 个匹配，共 %,d 行，跳过 %,d 个二进制文件，用时 %.1f 秒",
+                    searchedFiles, matchedFiles, hits, binaryFiles, elapsedMillis / 1000.0);
+            if (unreadableFiles > 0) {
+                summary += String.format("，%,d 个文件无法读取", unreadableFiles);
+            }
+            if (truncated) {
+                summary += "（已达到命中上限，结果不完整）";
+            }
+            return summary;
+        }
+    }
+
+    private final IoThrottle throttle;
+    private int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private int maxHits = DEFAULT_MAX_HITS;
+    private volatile boolean cancelled;
+    private volatile boolean truncated;
+    private final AtomicInteger searchedFiles = new AtomicInteger();
+    private final AtomicInteger matchedFiles = new AtomicInteger();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger binaryFiles = new AtomicInteger();
+    private final AtomicInteger unreadableFiles = new AtomicInteger();
+
+    /**
+     * @param throttle 读取时使用的限速器，为null时不限速
+     */
+    public ContentSearcher(IoThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public void setMaxHits(int maxHits) {
+        this.maxHits = Math.max(1, maxHits);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * 在先序编号为ordinal的文件夹的子树中搜索（root为扫描的根目录），
+     * 每处命中在工作线程中交给onHit；取消时返回null
+     */
+    public Result search(ScanTree tree, TreeIndex index, File root, int ordinal, ContentPattern pattern,
+                         Consumer<Hit> onHit, FolderScanner.ProgressCallback callback)
+            throws InterruptedException {
+        long startTime = System.currentTimeMillis();
+        int end = index.getSubtreeEnd(ordinal);
+        int totalFiles = 0;
+        for (int i = ordinal; i < end; i++) {
+            if (!index.isDirectory(i) && index.getOwnSize(i) > 0) {
+                totalFiles++;
+            }
+        }
+
+        int maxInFlight = threads * 16;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        int total = totalFiles;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long[] lastProgress = {0};
+        try {
+            tree.visitPaths(root, index, ordinal, (node, nodeOrdinal, path) -> {
+                if (cancelled || truncated
+                        || (node.flags & (ScanTree.FLAG_DIRECTORY | ScanTree.FLAG_DENIED)) != 0
+                        || node.size == 0) {
+                    return;
+                }
+                inFlight.acquireUninterruptibly();
+                pool.execute(() -> {
+                    try {
+                        if (!cancelled && !truncated) {
+                            searchFile(path, nodeOrdinal, pattern, onHit);
+                        }
+                        searchedFiles.incrementAndGet();
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+                long now = System.currentTimeMillis();
+                if (callback != null && now - lastProgress[0] >= PROGRESS_INTERVAL_MS) {
+                    callback.onProgress(searchedFiles.get(), total, path);
+                    lastProgress[0] = now;
+                }
+            });
+            // 等待已提交的搜索全部完成
+            inFlight.acquire(maxInFlight);
+            if (callback != null) {
+                callback.onProgress(searchedFiles.get(), total, root.getPath());
+            }
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        if (cancelled) {
+            return null;
+        }
+        return new Result(searchedFiles.get(), matchedFiles.get(), Math.min(hits.get(), maxHits),
+                binaryFiles.get(), unreadableFiles.get(), truncated,
+                System.currentTimeMillis() - startTime);
+    }
+
+    private void searchFile(String path, long ordinal, ContentPattern pattern, Consumer<Hit> onHit) {
+        Path file = Paths.get(path);
+        if (throttle != null) {
+            throttle.getOperations().acquire(1);
+        }
+        try {
+            // 打开命名管道会一直阻塞，设备等特殊文件也不读取
+            if (!Files.readAttributes(file, BasicFileAttributes.class).isRegularFile()) {
+                return;
+            }
+        } catch (IOException | SecurityException e) {
+            unreadableFiles.incrementAndGet();
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size == 0) {
+                return;
+            }
+            // 先只读文件头判断是否为文本，二进制文件不再预留和读取其余部分
+            ByteBuffer buffer = BUFFER.get();
+            buffer.clear();
+            buffer.limit((int) Math.min(size, ContentTypeDetector.HEAD_BYTES));
+            if (throttle != null) {
+                throttle.getBytes().acquire(buffer.limit());
+            }
+            read(channel, buffer);
+            int head = buffer.position();
+            if (head == 0 || !isText(buffer, head)) {
+                return;
+            }
+            if (throttle != null && size > head) {
+                throttle.getBytes().acquire(size - head);
+            }
+            FileHits fileHits = new FileHits(path, ordinal, onHit);
+            if (size <= LineCounter.MAP_THRESHOLD) {
+                buffer.limit((int) size);
+                read(channel, buffer);
+                fileHits.search(buffer, buffer.position(), pattern);
+            } else {
+                for (long offset = 0; offset < size && !cancelled && !truncated; ) {
+                    int length = (int) Math.min(MAP_CHUNK, size - offset);
+                    ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                    int searchEnd = length;
+                    if (offset + length < size) {
+                        // 不完整的最后一行留给下一段
+                        while (searchEnd > 0 && mapped.get(searchEnd - 1) != '\n') {
+                            searchEnd--;
+                        }
+                        if (searchEnd == 0) {
+                            searchEnd = length;
+                        }
+                    }
+                    fileHits.search(mapped, searchEnd, pattern);
+                    offset += searchEnd;
+                }
+            }
+            if (fileHits.found) {
+                matchedFiles.incrementAndGet();
+            }
+        } catch (IOException | SecurityException e) {
+            unreadableFiles.incrementAndGet();
+        }
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) <= 0) {
+                break;
+            }
+        }
+    }
+
+    private boolean isText(ByteBuffer buffer, int length) {
+        ContentType type = ContentType.detect(buffer, length);
+        if (type == ContentType.TEXT || type == ContentType.SCRIPT) {
+            return true;
+        }
+        binaryFiles.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * 一个文件的搜索状态，行号跨映射段累计
+     */
+    private class FileHits {
+        private final String path;
+        private final long ordinal;
+        private final Consumer<Hit> onHit;
+        // 当前段开头之前的行数
+        private long lines;
+        boolean found;
+
+        FileHits(String path, long ordinal, Consumer<Hit> onHit) {
+            this.path = path;
+            this.ordinal = ordinal;
+            this.onHit = onHit;
+        }
+
+        void search(ByteBuffer buffer, int length, ContentPattern pattern) {
+            int from = 0;
+            // 已数过换行符的位置
+            int counted = 0;
+            while (from < length && !cancelled && !truncated) {
+                int match = pattern.find(buffer, from, length);
+                if (match < 0) {
+                    break;
+                }
+                int lineStart = match;
+                while (lineStart > from && buffer.get(lineStart - 1) != '\n') {
+                    lineStart--;
+                }
+                int lineEnd = match;
+                while (lineEnd < length && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                lines += LineCounter.countNewlines(buffer, counted, lineStart);
+                counted = lineStart;
+                if (hits.incrementAndGet() > maxHits) {
+                    truncated = true;
+                    return;
+                }
+                found = true;
+                onHit.accept(new Hit(path, ordinal, lines + 1, lineText(buffer, lineStart, lineEnd)));
+                from = lineEnd + 1;
+            }
+            lines += LineCounter.countNewlines(buffer, counted, length);
+        }
+    }
+
+    private static String lineText(ByteBuffer buffer, int start, int end) {
+        int length = Math.min(end - start, MAX_LINE_BYTES);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8).trim();
+    }
+}
@@ -0,0 +1,245 @@
+package com.foldertree.core;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按文件开头的特征字节（magic number）识别的内容类型
+ *
+ * strict为true的类型只应出现在所列的扩展名上，出现在其他扩展名上视为不符；
+ * ELF、可执行文件等常带版本号后缀（libc.so.6），只在扩展名属于其他类型时才算不符
+ */
+public enum ContentType {
+    PDF("PDF", true, "pdf", "ai"),
+    PNG("PNG", true, "png", "apng"),
+    JPEG("JPEG", true, "jpg", "jpeg", "jpe", "jfif"),
+    GIF("GIF", true, "gif"),
+    WEBP("WebP", true, "webp"),
+    TIFF("TIFF", true, "tif", "tiff", "dng", "cr2", "nef", "arw"),
+    WAV("WAV", true, "wav"),
+    AVI("AVI", true, "avi"),
+    MP4("MP4/QuickTime", true, "mp4", "m4a", "m4v", "m4b", "mov", "3gp", "3g2", "heic", "heif", "avif"),
+    MATROSKA("Matroska/WebM", true, "mkv", "mka", "mk3d", "webm"),
+    MPEG_AUDIO("MPEG音频", true, "mp3", "mp2", "mpga", "aac"),
+    OGG("Ogg", true, "ogg", "oga", "ogv", "opus", "spx"),
+    FLAC("FLAC", true, "flac"),
+    ZIP("ZIP", true, "zip", "jar", "war", "ear", "apk", "aar", "ipa", "xpi", "whl", "nupkg", "epub",
+            "docx", "xlsx", "pptx", "docm", "xlsm", "pptm", "odt", "ods", "odp", "odg", "kmz", "vsix"),
+    GZIP("gzip", true, "gz", "tgz", "svgz", "emz", "gzip"),
+    BZIP2("bzip2", true, "bz2", "tbz", "tbz2"),
+    XZ("xz", true, "xz", "txz"),
+    ZSTD("Zstandard", true, "zst", "zstd", "tzst"),
+    SEVEN_ZIP("7z", true, "7z"),
+    RAR("RAR", true, "rar"),
+    TAR("tar", true, "tar"),
+    OLE2("OLE2复合文档", true, "doc", "xls", "ppt", "msi", "msg", "vsd", "pub"),
+    SQLITE("SQLite", false, "sqlite", "sqlite3", "db3"),
+    ELF("ELF", false, "so", "elf"),
+    PE("Windows可执行文件", false, "exe", "dll", "sys", "efi", "ocx", "scr", "cpl"),
+    MACH_O("Mach-O", false, "dylib"),
+    JAVA_CLASS("Java class", false, "class"),
+    WASM("WebAssembly", false, "wasm"),
+    SCRIPT("脚本", false),
+    TEXT("文本", false),
+    BINARY("其他二进制", false),
+    EMPTY("空文件", false),
+    SPECIAL("特殊文件", false),
+    UNREADABLE("无法读取", false);
+
+    private static final ContentType[] VALUES = values();
+    private static final Map<String, ContentType> BY_EXTENSION = new HashMap<>();
+
+    static {
+        for (ContentType type : VALUES) {
+            for (String extension : type.extensions) {
+                BY_EXTENSION.put(extension, type);
+            }
+        }
+    }
+
+    private final String displayName;
+    private final boolean strict;
+    private final String[] extensions;
+
+    ContentType(String displayName, boolean strict, String... extensions) {
+        this.displayName = displayName;
+        this.strict = strict;
+        this.extensions = extensions;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    static ContentType of(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    /**
+     * 扩展名（小写，不含点）与内容是否不符；没有扩展名时不判断
+     */
+    public boolean isMismatch(String extension) {
+        if (extension.isEmpty() || this == EMPTY || this == SPECIAL || this == UNREADABLE) {
+            return false;
+        }
+        ContentType expected = BY_EXTENSION.get(extension);
+        if (expected != null) {
+            return expected != this;
+        }
+        return strict;
+    }
+
+    /**
+     * 按开头的length个字节识别类型
+     */
+    static ContentType detect(ByteBuffer head, int length) {
+        if (length <= 0) {
+            return EMPTY;
+        }
+        if (startsWith(head, length, 0, 0x25, 0x50, 0x44, 0x46, 0x2D)) {
+            return PDF;
+        }
+        if (startsWith(head, length, 0, 0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return PNG;
+        }
+        if (startsWith(head, length, 0, 0xFF, 0xD8, 0xFF)) {
+            return JPEG;
+        }
+        if (startsWith(head, length, 0, "GIF87a") || startsWith(head, length, 0, "GIF89a")) {
+            return GIF;
+        }
+        if (startsWith(head, length, 0, "RIFF")) {
+            if (startsWith(head, length, 8, "WEBP")) {
+                return WEBP;
+            }
+            if (startsWith(head, length, 8, "WAVE")) {
+                return WAV;
+            }
+            if (startsWith(head, length, 8, "AVI ")) {
+                return AVI;
+            }
+        }
+        if (startsWith(head, length, 0, 0x49, 0x49, 0x2A, 0x00)
+                || startsWith(head, length, 0, 0x4D, 0x4D, 0x00, 0x2A)) {
+            return TIFF;
+        }
+        if (startsWith(head, length, 4, "ftyp")) {
+            return MP4;
+        }
+        if (startsWith(head, length, 0, 0x1A, 0x45, 0xDF, 0xA3)) {
+            return MATROSKA;
+        }
+        // UTF-16的BOM与MPEG帧同步相似，需要先判断
+        if (startsWith(head, length, 0, 0xFF, 0xFE) || startsWith(head, length, 0, 0xFE, 0xFF)) {
+            return TEXT;
+        }
+        if (startsWith(head, length, 0, "ID3") || isMpegFrame(head, length)) {
+            return MPEG_AUDIO;
+        }
+        if (startsWith(head, length, 0, "OggS")) {
+            return OGG;
+        }
+        if (startsWith(head, length, 0, "fLaC")) {
+            return FLAC;
+        }
+        if (startsWith(head, length, 0, 0x50, 0x4B, 0x03, 0x04)
+                || startsWith(head, length, 0, 0x50, 0x4B, 0x05, 0x06)) {
+            return ZIP;
+        }
+        if (startsWith(head, length, 0, 0x1F, 0x8B)) {
+            return GZIP;
+        }
+        if (startsWith(head, length, 0, "BZh")) {
+            return BZIP2;
+        }
+        if (startsWith(head, length, 0, 0xFD, 0x37, 0x7A, 0x58, 0x5A, 0x00)) {
+            return XZ;
+        }
+        if (startsWith(head, length, 0, 0x28, 0xB5, 0x2F, 0xFD)) {
+            return ZSTD;
+        }
+        if (startsWith(head, length, 0, 0x37, 0x7A, 0xBC, 0xAF, 0x27, 0x1C)) {
+            return SEVEN_ZIP;
+        }
+        if (startsWith(head, length, 0, "Rar!")) {
+            return RAR;
+        }
+        if (startsWith(head, length, 257, "ustar")) {
+            return TAR;
+        }
+        if (startsWith(head, length, 0, 0xD0, 0xCF, 0x11, 0xE0, 0xA1, 0xB1, 0x1A, 0xE1)) {
+            return OLE2;
+        }
+        if (startsWith(head, length, 0, "SQLite format 3")) {
+            return SQLITE;
+        }
+        if (startsWith(head, length, 0, 0x7F, 0x45, 0x4C, 0x46)) {
+            return ELF;
+        }
+        if (startsWith(head, length, 0, "MZ")) {
+            return PE;
+        }
+        if (startsWith(head, length, 0, 0xCA, 0xFE, 0xBA, 0xBE)) {
+            return JAVA_CLASS;
+        }
+        if (startsWith(head, length, 0, 0xFE, 0xED, 0xFA, 0xCE)
+                || startsWith(head, length, 0, 0xFE, 0xED, 0xFA, 0xCF)
+                || startsWith(head, length, 0, 0xCE, 0xFA, 0xED, 0xFE)
+                || startsWith(head, length, 0, 0xCF, 0xFA, 0xED, 0xFE)) {
+            return MACH_O;
+        }
+        if (startsWith(head, length, 0, 0x00, 0x61, 0x73, 0x6D)) {
+            return WASM;
+        }
+        if (startsWith(head, length, 0, "#!")) {
+            return SCRIPT;
+        }
+        // 开头没有NUL字节的按文本处理
+        for (int i = 0; i < length; i++) {
+            if (head.get(i) == 0) {
+                return BINARY;
+            }
+        }
+        return TEXT;
+    }
+
+    /**
+     * 没有ID3标签的MP3/AAC以帧同步开头：11个1，层和比特率字段不能是保留值
+     */
+    private static boolean isMpegFrame(ByteBuffer head, int length) {
+        if (length < 3 || (head.get(0) & 0xFF) != 0xFF) {
+            return false;
+        }
+        int second = head.get(1) & 0xFF;
+        int third = head.get(2) & 0xFF;
+        return (second & 0xE0) == 0xE0 && (second & 0x06) != 0 && second != 0xFF
+                && (third & 0xF0) != 0xF0;
+    }
+
+    private static boolean startsWith(ByteBuffer head, int length, int offset, int... signature) {
+        if (offset + signature.length > length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((head.get(offset + i) & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(ByteBuffer head, int length, int offset, String signature) {
+        byte[] bytes = signature.getBytes(StandardCharsets.US_ASCII);
+        if (offset + bytes.length > length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (head.get(offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,156 @@
+package com.foldertree.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 文件类型检测 - 扫描完成后的可选阶段，只读取每个文件开头的几百字节，
+ * 按特征字节识别真实的内容类型，不依赖扩展名
+ * 在多个线程中用FileChannel按位置读取，遵守扫描的限速设置；
+ * 已提交未完成的文件数有上限，遍历和读取同时进行，不需要先收集所有路径
+ */
+public class ContentTypeDetector {
+
+    // tar的特征位于偏移257，512字节足够覆盖所有支持的类型
+    public static final int HEAD_BYTES = 512;
+    private static final long PROGRESS_INTERVAL_MS = 100;
+
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(HEAD_BYTES));
+
+    private final IoThrottle throttle;
+    private int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private volatile boolean cancelled;
+
+    /**
+     * @param throttle 读取时使用的限速器，为null时不限速
+     */
+    public ContentTypeDetector(IoThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 检测扫描结果中所有文件的类型（root为扫描的根目录），取消时返回已检测部分的统计
+     */
+    public ContentTypeStats detect(ScanTree tree, File root, FolderScanner.ProgressCallback callback)
+            throws InterruptedException {
+        long nodeCount = tree.size();
+        int[] totalFiles = {0};
+        tree.visit(node -> {
+            if (isFile(node)) {
+                totalFiles[0]++;
+            }
+        });
+
+        ContentTypeStats stats = new ContentTypeStats((int) Math.min(nodeCount, Integer.MAX_VALUE - 8));
+        int maxInFlight = threads * 16;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicInteger detected = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "content-type-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long[] lastProgress = {0};
+        try {
+            tree.visitPaths(root, (node, ordinal, path) -> {
+                if (cancelled || !isFile(node)) {
+                    return;
+                }
+                String name = path.substring(path.lastIndexOf(File.separatorChar) + 1);
+                String extension = EntrySorter.extension(name);
+                long size = node.size;
+                inFlight.acquireUninterruptibly();
+                executor.execute(() -> {
+                    try {
+                        if (!cancelled) {
+                            ContentType type = size == 0 ? ContentType.EMPTY : read(path, size);
+                            stats.record(ordinal, path, extension, size, type);
+                        }
+                        detected.incrementAndGet();
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+                long now = System.currentTimeMillis();
+                if (callback != null && now - lastProgress[0] >= PROGRESS_INTERVAL_MS) {
+                    callback.onProgress(detected.get(), totalFiles[0], path);
+                    lastProgress[0] = now;
+                }
+            });
+            // 等待已提交的读取全部完成
+            inFlight.acquire(maxInFlight);
+            if (callback != null) {
+                callback.onProgress(detected.get(), totalFiles[0], root.getPath());
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        return stats;
+    }
+
+    private static boolean isFile(ScanTree.NodeRecord node) {
+        return (node.flags & (ScanTree.FLAG_DIRECTORY | ScanTree.FLAG_DENIED)) == 0;
+    }
+
+    private ContentType read(String path, long size) {
+        ByteBuffer buffer = BUFFER.get();
+        buffer.clear();
+        buffer.limit((int) Math.min(HEAD_BYTES, size));
+        Path file = Paths.get(path);
+        if (throttle != null) {
+            throttle.getOperations().acquire(1);
+        }
+        try {
+            // 打开命名管道会一直阻塞，设备等特殊文件也不读取
+            if (!Files.readAttributes(file, BasicFileAttributes.class).isRegularFile()) {
+                return ContentType.SPECIAL;
+            }
+        } catch (IOException | SecurityException e) {
+            return ContentType.UNREADABLE;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (throttle != null) {
+                throttle.getBytes().acquire(buffer.remaining());
+            }
+            int length = 0;
+            // 文件可能在扫描后变大或变小，以实际读到的为准
+            buffer.limit(HEAD_BYTES);
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, length);
+                if (read <= 0) {
+                    break;
+                }
+                length += read;
+            }
+            return ContentType.detect(buffer, length);
+        } catch (IOException | SecurityException e) {
+            return ContentType.UNREADABLE;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.foldertree.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 按文件头识别出的内容类型统计 - 与ExtensionStats相同，按先序编号记录每个文件的类型
+ * （每个节点1字节），任意子树的分类统计只需扫描连续的一段；
+ * 同时记录扩展名与内容不符的文件
+ */
+public class ContentTypeStats {
+
+    // 保存的不符文件数上限，超过后只计数
+    public static final int MAX_MISMATCHES = 10_000;
+    private static final byte NOT_DETECTED = -1;
+
+    private final byte[] nodeTypes;
+    private final long[] counts = new long[ContentType.values().length];
+    private final long[] bytes = new long[counts.length];
+    private final List<Mismatch> mismatches = new ArrayList<>();
+    private long mismatchCount;
+
+    /**
+     * 扩展名与内容不符的文件
+     */
+    public static class Mismatch {
+        public final long ordinal;
+        public final String path;
+        public final String extension;
+        public final ContentType type;
+
+        Mismatch(long ordinal, String path, String extension, ContentType type) {
+            this.ordinal = ordinal;
+            this.path = path;
+            this.extension = extension;
+            this.type = type;
+        }
+    }
+
+    ContentTypeStats(int nodeCount) {
+        nodeTypes = new byte[nodeCount];
+        Arrays.fill(nodeTypes, NOT_DETECTED);
+    }
+
+    /**
+     * 记录一个文件的识别结果（extension为小写扩展名），可在多个工作线程中调用
+     */
+    synchronized void record(long ordinal, String path, String extension, long size, ContentType type) {
+        if (ordinal < nodeTypes.length) {
+            nodeTypes[(int) ordinal] = (byte) type.ordinal();
+        }
+        counts[type.ordinal()]++;
+        bytes[type.ordinal()] += size;
+
+        if (type.isMismatch(extension)) {
+            mismatchCount++;
+            if (mismatches.size() < MAX_MISMATCHES) {
+                mismatches.add(new Mismatch(ordinal, path, extension, type));
+            }
+        }
+    }
+
+    /**
+     * 不符的文件，按在树中的顺序排列
+     */
+    public synchronized List<Mismatch> getMismatches() {
+        List<Mismatch> sorted = new ArrayList<>(mismatches);
+        sorted.sort((a, b) -> Long.compare(a.ordinal, b.ordinal));
+        return Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * 不符的文件总数（可能多于getMismatches返回的数量）
+     */
+    public synchronized long getMismatchCount() {
+        return mismatchCount;
+    }
+
+    public synchronized ExtensionStats.Table getTotals() {
+        return toTable(counts, bytes);
+    }
+
+    /**
+     * 先序编号为ordinal的节点的子树的统计，文件大小取自TreeIndex
+     */
+    public synchronized ExtensionStats.Table getSubtree(TreeIndex index, int ordinal) {
+        long[] subtreeCounts = new long[counts.length];
+        long[] subtreeBytes = new long[counts.length];
+        int end = Math.min(index.getSubtreeEnd(ordinal), nodeTypes.length);
+        for (int i = ordinal; i < end; i++) {
+            int type = nodeTypes[i];
+            if (type != NOT_DETECTED) {
+                subtreeCounts[type]++;
+                subtreeBytes[type] += index.getOwnSize(i);
+            }
+        }
+        return toTable(subtreeCounts, subtreeBytes);
+    }
+
+    private static ExtensionStats.Table toTable(long[] tableCounts, long[] tableBytes) {
+        int rows = 0;
+        for (long count : tableCounts) {
+            if (count > 0) {
+                rows++;
+            }
+        }
+        String[] names = new String[rows];
+        long[] rowCounts = new long[rows];
+        long[] rowBytes = new long[rows];
+        int row = 0;
+        for (int type = 0; type < tableCounts.length; type++) {
+            if (tableCounts[type] > 0) {
+                names[row] = ContentType.of(type).getDisplayName();
+                rowCounts[row] = tableCounts[type];
+                rowBytes[row] = tableBytes[type];
+                row++;
+            }
+        }
+        return new ExtensionStats.Table(names, rowCounts, rowBytes);
+    }
+}
@@ -0,0 +1,53 @@
+package com.foldertree.core;
+
+import java.io.File;
+
+/**
+ * 目录中的一个子项，列目录时一次性取得名称和类型，避免之后重复stat
+ */
+public class DirEntry {
+    public final File file;
+    public final String name;
+    public final boolean directory;
+    // 列目录时顺便取得的大小和修改时间，未取得时为-1
+    public final long size;
+    public final long lastModified;
+    // 审计扫描时读取的unix权限位（含类型位）和属主、属组，未读取时为-1
+    public final int mode;
+    public final int uid;
+    public final int gid;
+    // 目标不存在的符号链接
+    public final boolean brokenLink;
+
+    public DirEntry(File file, boolean directory) {
+        this(file, directory, -1, -1);
+    }
+
+    public DirEntry(File file, boolean directory, long size, long lastModified) {
+        this(file, directory, size, lastModified, -1, -1, -1);
+    }
+
+    public DirEntry(File file, boolean directory, long size, long lastModified, int mode, int uid, int gid) {
+        this(file, directory, size, lastModified, mode, uid, gid, false);
+    }
+
+    private DirEntry(File file, boolean directory, long size, long lastModified, int mode, int uid, int gid,
+                     boolean brokenLink) {
+        this.file = file;
+        this.name = file.getName();
+        this.directory = directory;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.mode = mode;
+        this.uid = uid;
+        this.gid = gid;
+        this.brokenLink = brokenLink;
+    }
+
+    /**
+     * 目标不存在的符号链接，按大小为0的文件处理
+     */
+    public static DirEntry brokenLink(File file) {
+        return new DirEntry(file, false, 0, -1, -1, -1, -1, true);
+    }
+}
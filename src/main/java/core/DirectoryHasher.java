@@ -0,0 +1,395 @@
+package com.foldertree.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * 重复文件夹查找 - 为每个文件夹计算Merkle哈希：把子项按名称编号排序后，
+ * 依次摘要子项的名称编号、类型、大小以及内容标识（文件）或哈希（文件夹）。
+ * 同一棵树中相同的名称总是同一个编号，因此不必解码名称，排序也只比较打包的long。
+ * 文件夹本身的名称不参与，因此"project"和"project (2)"内容相同时哈希相同。
+ *
+ * 从最深的一层开始逐层向上计算，同一层的文件夹并行计算。
+ * 按内容比较时，文件的内容标识来自DuplicateFinder：同一重复组的文件标识相同，
+ * 大小唯一的文件不必读取；只按结构比较时不读取任何文件内容，只比较名称和大小，结果是近似的。
+ * 未展开（达到递归深度）或无权限读取的文件夹无法比较，会得到唯一的哈希
+ */
+public class DirectoryHasher {
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final byte TYPE_FILE = 1;
+    private static final byte TYPE_DIRECTORY = 2;
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    /**
+     * 一组内容相同的文件夹，按在树中的顺序排列
+     */
+    public static class DirectoryGroup {
+        public final long size;
+        public final int fileCount;
+        public final List<String> paths = new ArrayList<>();
+        public final long[] ordinals;
+
+        DirectoryGroup(long size, int fileCount, long[] ordinals) {
+            this.size = size;
+            this.fileCount = fileCount;
+            this.ordinals = ordinals;
+        }
+
+        /**
+         * 只保留一份时可以节省的空间
+         */
+        public long getWastedBytes() {
+            return size * (ordinals.length - 1);
+        }
+    }
+
+    private final DuplicateFinder contentFinder;
+    private final boolean compareContent;
+    // 合并符号链接时读取属性使用的限速
+    private final RateLimiter limiter;
+    private volatile boolean cancelled;
+
+    // 读入内存的树，按先序编号
+    private int count;
+    private int[] nameIds;
+    private int[] depths;
+    private int[] parents;
+    private byte[] flags;
+    private long[] sizes;
+    private int[] fileCounts;
+    // 文件的内容标识
+    private long[] contentIds;
+    // 文件夹哈希的前128位
+    private long[] hashHigh;
+    private long[] hashLow;
+
+    /**
+     * @param compareContent 为false时只按结构比较
+     * @param throttle       读取内容时使用的限速器，为null时不限速
+     */
+    public DirectoryHasher(boolean compareContent, IoThrottle throttle) {
+        this.compareContent = compareContent;
+        this.limiter = throttle != null ? throttle.getOperations() : new RateLimiter();
+        this.contentFinder = compareContent ? new DuplicateFinder(throttle) : null;
+        if (contentFinder != null) {
+            // 硬链接的内容也相同，不能合并
+            contentFinder.setCollapseLinks(false);
+        }
+    }
+
+    public void cancel() {
+        cancelled = true;
+        if (contentFinder != null) {
+            contentFinder.cancel();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 查找重复的文件夹（root和scanOptions为扫描时使用的根目录和选项），
+     * 按可节省空间从大到小返回；子文件夹随上层一起重复时只报告上层。取消时返回null
+     *
+     * @param progress 按内容比较时读取文件的进度回调，可以为null
+     */
+    public List<DirectoryGroup> find(ScanTree tree, File root, ScanOptions scanOptions,
+                                     DuplicateFinder.Listener progress) throws InterruptedException {
+        if (!scanOptions.isShowFiles()) {
+            throw new IllegalArgumentException("需要包含文件的扫描结果");
+        }
+        load(tree);
+        if (compareContent) {
+            assignContentIds(tree, root, progress);
+        }
+        if (cancelled) {
+            return null;
+        }
+        hashDirectories(scanOptions.getMaxDepth());
+        if (cancelled) {
+            return null;
+        }
+        return group(tree, root);
+    }
+
+    private void load(ScanTree tree) {
+        long size = tree.size();
+        if (size >= Integer.MAX_VALUE) {
+            throw new IllegalStateException("节点过多: " + size);
+        }
+        count = (int) size;
+        nameIds = new int[count];
+        depths = new int[count];
+        parents = new int[count];
+        flags = new byte[count];
+        sizes = new long[count];
+        fileCounts = new int[count];
+        contentIds = new long[count];
+
+        int[][] pathStack = {new int[64]};
+        int[] next = {0};
+        tree.visit(node -> {
+            int i = next[0]++;
+            nameIds[i] = node.nameId;
+            depths[i] = node.depth;
+            flags[i] = node.flags;
+            sizes[i] = node.size;
+            fileCounts[i] = node.fileCount;
+            if (node.depth >= pathStack[0].length) {
+                pathStack[0] = Arrays.copyOf(pathStack[0], node.depth * 2);
+            }
+            parents[i] = node.depth == 0 ? -1 : pathStack[0][node.depth - 1];
+            pathStack[0][node.depth] = i;
+        });
+    }
+
+    /**
+     * 同一重复组的文件用组内最小的先序编号作为标识，其他文件用自己的编号，空文件统一为-1
+     */
+    private void assignContentIds(ScanTree tree, File root, DuplicateFinder.Listener progress)
+            throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            contentIds[i] = sizes[i] == 0 ? -1 : i;
+        }
+        contentFinder.find(tree, root, new DuplicateFinder.Listener() {
+            @Override
+            public void onGroup(DuplicateFinder.DuplicateGroup group) {
+                long id = Arrays.stream(group.ordinals).min().orElse(-1);
+                for (long ordinal : group.ordinals) {
+                    contentIds[(int) ordinal] = id;
+                }
+            }
+
+            @Override
+            public void onProgress(String stage, long hashedFiles, long totalFiles) {
+                if (progress != null) {
+                    progress.onProgress(stage, hashedFiles, totalFiles);
+                }
+            }
+        });
+    }
+
+    /**
+     * 按深度从深到浅逐层计算，同一层内并行
+     */
+    private void hashDirectories(int maxDepth) {
+        hashHigh = new long[count];
+        hashLow = new long[count];
+
+        // 按父节点分组子节点（计数排序，组内保持先序）
+        int[] childStart = new int[count + 1];
+        for (int i = 1; i < count; i++) {
+            childStart[parents[i] + 1]++;
+        }
+        for (int i = 0; i < count; i++) {
+            childStart[i + 1] += childStart[i];
+        }
+        int[] children = new int[Math.max(0, count - 1)];
+        int[] fill = Arrays.copyOf(childStart, count);
+        for (int i = 1; i < count; i++) {
+            children[fill[parents[i]]++] = i;
+        }
+
+        // 按深度分组文件夹
+        int maxSeen = 0;
+        for (int i = 0; i < count; i++) {
+            maxSeen = Math.max(maxSeen, depths[i]);
+        }
+        int[] levelStart = new int[maxSeen + 2];
+        for (int i = 0; i < count; i++) {
+            if (isDirectory(i)) {
+                levelStart[depths[i] + 1]++;
+            }
+        }
+        for (int d = 0; d <= maxSeen; d++) {
+            levelStart[d + 1] += levelStart[d];
+        }
+        int[] byLevel = new int[levelStart[maxSeen + 1]];
+        int[] levelFill = Arrays.copyOf(levelStart, maxSeen + 1);
+        for (int i = 0; i < count; i++) {
+            if (isDirectory(i)) {
+                byLevel[levelFill[depths[i]]++] = i;
+            }
+        }
+
+        for (int d = maxSeen; d >= 0 && !cancelled; d--) {
+            boolean unexpanded = maxDepth > 0 && d >= maxDepth;
+            IntStream.range(levelStart[d], levelStart[d + 1]).parallel().forEach(k -> {
+                int dir = byLevel[k];
+                if (unexpanded || (flags[dir] & ScanTree.FLAG_PRUNED) != 0) {
+                    unique(dir);
+                } else {
+                    hash(dir, children, childStart[dir], childStart[dir + 1]);
+                }
+            });
+        }
+    }
+
+    private void hash(int dir, int[] children, int from, int to) {
+        // 高32位为名称编号，低32位为子项在children中的位置
+        long[] sorted = new long[to - from];
+        for (int i = from; i < to; i++) {
+            if ((flags[children[i]] & ScanTree.FLAG_DENIED) != 0) {
+                unique(dir);
+                return;
+            }
+            sorted[i - from] = (long) nameIds[children[i]] << 32 | i;
+        }
+        Arrays.sort(sorted);
+
+        MessageDigest digest = DIGEST.get();
+        digest.reset();
+        ByteBuffer numbers = ByteBuffer.allocate(Integer.BYTES + 1 + 3 * Long.BYTES);
+        for (long key : sorted) {
+            int child = children[(int) key];
+            numbers.clear();
+            numbers.putInt(nameIds[child]);
+            if (isDirectory(child)) {
+                numbers.put(TYPE_DIRECTORY).putLong(sizes[child]).putLong(hashHigh[child]).putLong(hashLow[child]);
+            } else {
+                numbers.put(TYPE_FILE).putLong(sizes[child]).putLong(contentIds[child]).putLong(0);
+            }
+            digest.update(numbers.array());
+        }
+        ByteBuffer result = ByteBuffer.wrap(digest.digest());
+        hashHigh[dir] = result.getLong();
+        hashLow[dir] = result.getLong();
+    }
+
+    /**
+     * 无法比较的文件夹：用先序编号作为哈希，不会与任何其他文件夹相同
+     */
+    private void unique(int dir) {
+        hashHigh[dir] = -1;
+        hashLow[dir] = dir;
+    }
+
+    /**
+     * 按哈希分组。上层文件夹也在重复组中的成员已由上层的组报告，删除上层的多余副本后
+     * 每个不同的上层只剩一份，因此这些成员按上层的哈希各保留一个代表；
+     * 不在任何重复上层中的成员全部保留。合并后不足两个成员的组不报告
+     */
+    private List<DirectoryGroup> group(ScanTree tree, File root) {
+        Map<HashKey, List<Integer>> byHash = new HashMap<>();
+        for (int i = 1; i < count; i++) {
+            // 根目录和没有文件的文件夹不参与
+            if (isDirectory(i) && fileCounts[i] > 0) {
+                byHash.computeIfAbsent(new HashKey(hashHigh[i], hashLow[i]), k -> new ArrayList<>()).add(i);
+            }
+        }
+        byHash.values().removeIf(members -> members.size() < 2);
+
+        Map<Long, String> paths = new HashMap<>();
+        for (List<Integer> members : byHash.values()) {
+            for (int member : members) {
+                paths.put((long) member, null);
+            }
+        }
+        tree.visitPaths(root, (node, ordinal, path) -> paths.replace(ordinal, path));
+
+        Set<Integer> duplicated = new HashSet<>();
+        for (List<Integer> members : byHash.values()) {
+            collapseLinks(members, paths);
+            if (members.size() > 1) {
+                duplicated.addAll(members);
+            }
+        }
+
+        List<DirectoryGroup> groups = new ArrayList<>();
+        for (List<Integer> members : byHash.values()) {
+            if (members.size() < 2) {
+                continue;
+            }
+            List<Integer> kept = new ArrayList<>();
+            Set<HashKey> coveredParents = new HashSet<>();
+            boolean independent = false;
+            for (int member : members) {
+                int parent = parents[member];
+                if (!duplicated.contains(parent)) {
+                    kept.add(member);
+                    independent = true;
+                } else if (coveredParents.add(new HashKey(hashHigh[parent], hashLow[parent]))) {
+                    kept.add(member);
+                }
+            }
+            if (independent && kept.size() > 1) {
+                int first = kept.get(0);
+                DirectoryGroup group = new DirectoryGroup(sizes[first], fileCounts[first],
+                        kept.stream().mapToLong(Integer::longValue).toArray());
+                for (int member : kept) {
+                    group.paths.add(paths.get((long) member));
+                }
+                groups.add(group);
+            }
+        }
+        groups.sort((a, b) -> Long.compare(b.getWastedBytes(), a.getWastedBytes()));
+        return groups;
+    }
+
+    /**
+     * 通过符号链接到达的同一个文件夹只保留第一次出现的路径
+     */
+    private void collapseLinks(List<Integer> members, Map<Long, String> paths) {
+        Set<Object> keys = new HashSet<>();
+        members.removeIf(member -> {
+            limiter.acquire(1);
+            try {
+                Object key = Files.readAttributes(Paths.get(paths.get((long) member)),
+                        BasicFileAttributes.class).fileKey();
+                return key != null && !keys.add(key);
+            } catch (IOException | SecurityException e) {
+                return false;
+            }
+        });
+    }
+
+    private boolean isDirectory(int i) {
+        return (flags[i] & ScanTree.FLAG_DIRECTORY) != 0;
+    }
+
+    /**
+     * 128位哈希作为分组键
+     */
+    private static class HashKey {
+        final long high;
+        final long low;
+
+        HashKey(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof HashKey && ((HashKey) o).high == high && ((HashKey) o).low == low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high) * 31 + Long.hashCode(low);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.foldertree.core;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * 目录列举接口 - 不同的实现对应不同的扫描策略
+ * 无法读取的目录抛出UnreadableDirectoryException，不会当作空目录返回
+ */
+public interface DirectoryLister extends AutoCloseable {
+
+    /**
+     * 列出目录的直接子项（不排序）
+     */
+    List<DirEntry> list(File dir) throws SecurityException, UnreadableDirectoryException;
+
+    /**
+     * 提示这些子项中的目录即将被列出，并行实现可以提前开始
+     */
+    default void prefetch(List<DirEntry> entries) {
+    }
+
+    @Override
+    default void close() {
+    }
+}
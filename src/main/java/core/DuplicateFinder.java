@@ -0,0 +1,414 @@
+package com.foldertree.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 重复文件查找 - 基于扫描结果分三级筛选：
+ * 1. 按大小分组，大小不同的文件不可能重复
+ * 2. 读取候选文件开头和结尾各64KB计算部分哈希，重新分组
+ * 3. 部分哈希相同且文件较大的，才读取全部内容计算完整哈希
+ * 用FileChannel在多个线程中并行读取，已提交但未完成的读取量不超过字节预算；
+ * 确认的重复组立即通过回调交出，大的文件优先处理
+ */
+public class DuplicateFinder {
+
+    // 部分哈希读取开头和结尾的字节数
+    public static final int EDGE_BYTES = 64 * 1024;
+    public static final long DEFAULT_IN_FLIGHT_BYTES = 64L * 1024 * 1024;
+    private static final int CHUNK_BYTES = 1024 * 1024;
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final long PROGRESS_INTERVAL_MS = 100;
+
+    /**
+     * 结果回调，onGroup在工作线程中调用（不会并发调用），onProgress在调用find的线程中调用
+     */
+    public interface Listener {
+        void onGroup(DuplicateGroup group);
+
+        void onProgress(String stage, long hashedFiles, long totalFiles);
+    }
+
+    /**
+     * 一组内容相同的文件，按在树中的顺序排列
+     */
+    public static class DuplicateGroup {
+        public final long size;
+        public final List<String> paths;
+        public final long[] ordinals;
+
+        DuplicateGroup(long size, List<Candidate> members) {
+            this.size = size;
+            this.paths = new ArrayList<>(members.size());
+            this.ordinals = new long[members.size()];
+            for (int i = 0; i < members.size(); i++) {
+                paths.add(members.get(i).path);
+                ordinals[i] = members.get(i).ordinal;
+            }
+        }
+
+        /**
+         * 只保留一份时可以节省的空间
+         */
+        public long getWastedBytes() {
+            return size * (paths.size() - 1);
+        }
+    }
+
+    /**
+     * 候选文件及其哈希，读取失败时hash为null
+     */
+    private static class Candidate {
+        final String path;
+        final long ordinal;
+        final long size;
+        Object fileKey;
+        String hash;
+
+        Candidate(String path, long ordinal, long size) {
+            this.path = path;
+            this.ordinal = ordinal;
+            this.size = size;
+        }
+    }
+
+    /**
+     * 一批等待哈希的候选，最后一个完成的任务负责重新分组
+     */
+    private static class Batch {
+        final long size;
+        final List<Candidate> members;
+        final boolean full;
+        final AtomicInteger remaining;
+
+        Batch(long size, List<Candidate> members, boolean full) {
+            this.size = size;
+            this.members = members;
+            this.full = full;
+            this.remaining = new AtomicInteger(members.size());
+        }
+    }
+
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(CHUNK_BYTES));
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final IoThrottle throttle;
+    private int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private long inFlightBytes = DEFAULT_IN_FLIGHT_BYTES;
+    private long minSize = 1;
+    private boolean collapseLinks = true;
+    private volatile boolean cancelled;
+
+    private final AtomicLong hashedFiles = new AtomicLong();
+    private final AtomicLong hashedBytes = new AtomicLong();
+    private final AtomicLong failedFiles = new AtomicLong();
+    private final AtomicLong totalFiles = new AtomicLong();
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Batch> fullQueue = new ConcurrentLinkedQueue<>();
+    private final Object taskDone = new Object();
+    private Semaphore budget;
+    private Listener listener;
+
+    /**
+     * @param throttle 读取内容时使用的限速器，为null时不限速
+     */
+    public DuplicateFinder(IoThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public void setInFlightBytes(long inFlightBytes) {
+        this.inFlightBytes = Math.max(CHUNK_BYTES, inFlightBytes);
+    }
+
+    /**
+     * 小于该大小的文件不参与比较，默认跳过空文件
+     */
+    public void setMinSize(long minSize) {
+        this.minSize = Math.max(1, minSize);
+    }
+
+    /**
+     * 是否把指向同一个物理文件的路径（硬链接、符号链接）合并为一个，默认合并
+     */
+    public void setCollapseLinks(boolean collapseLinks) {
+        this.collapseLinks = collapseLinks;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long getHashedBytes() {
+        return hashedBytes.get();
+    }
+
+    public long getFailedFiles() {
+        return failedFiles.get();
+    }
+
+    /**
+     * 在扫描结果中查找重复文件（root为扫描的根目录），全部完成或取消后返回
+     */
+    public void find(ScanTree tree, File root, Listener listener) throws InterruptedException {
+        this.listener = listener;
+        List<List<Candidate>> sizeGroups = collectCandidates(tree, root);
+
+        // 预算以KB为单位
+        int budgetKb = (int) Math.min(Integer.MAX_VALUE, inFlightBytes / 1024);
+        budget = new Semaphore(budgetKb);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "duplicate-finder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long lastProgress = 0;
+        try {
+            for (List<Candidate> group : sizeGroups) {
+                Batch batch = new Batch(group.get(0).size, group, false);
+                for (Candidate candidate : group) {
+                    submit(executor, batch, candidate, budgetKb);
+                    if (cancelled) {
+                        return;
+                    }
+                }
+                submitQueuedFull(executor, budgetKb);
+                long now = System.currentTimeMillis();
+                if (now - lastProgress >= PROGRESS_INTERVAL_MS) {
+                    listener.onProgress("部分哈希", hashedFiles.get(), totalFiles.get());
+                    lastProgress = now;
+                }
+            }
+
+            while (pendingTasks.get() > 0 || !fullQueue.isEmpty()) {
+                if (cancelled) {
+                    return;
+                }
+                submitQueuedFull(executor, budgetKb);
+                synchronized (taskDone) {
+                    if (pendingTasks.get() > 0 && fullQueue.isEmpty()) {
+                        taskDone.wait(PROGRESS_INTERVAL_MS);
+                    }
+                }
+                listener.onProgress("完整哈希", hashedFiles.get(), totalFiles.get());
+            }
+            listener.onProgress("完成", hashedFiles.get(), totalFiles.get());
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 两次遍历：先排序找出出现多次的大小，再只收集这些大小的文件
+     */
+    private List<List<Candidate>> collectCandidates(ScanTree tree, File root) {
+        long[][] sizes = {new long[1024]};
+        int[] count = {0};
+        tree.visit(node -> {
+            if (isFile(node) && node.size >= minSize) {
+                if (count[0] == sizes[0].length) {
+                    sizes[0] = Arrays.copyOf(sizes[0], count[0] * 2);
+                }
+                sizes[0][count[0]++] = node.size;
+            }
+        });
+        long[] sorted = Arrays.copyOf(sizes[0], count[0]);
+        sizes[0] = null;
+        Arrays.sort(sorted);
+        // 原地压缩为出现多次的大小
+        int duplicated = 0;
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] == sorted[i - 1] && (duplicated == 0 || sorted[duplicated - 1] != sorted[i])) {
+                sorted[duplicated++] = sorted[i];
+            }
+        }
+        long[] duplicatedSizes = Arrays.copyOf(sorted, duplicated);
+
+        List<Candidate> candidates = new ArrayList<>();
+        tree.visitPaths(root, (node, ordinal, path) -> {
+            if (isFile(node) && node.size >= minSize
+                    && Arrays.binarySearch(duplicatedSizes, node.size) >= 0) {
+                candidates.add(new Candidate(path, ordinal, node.size));
+            }
+        });
+        totalFiles.set(candidates.size());
+
+        // 从大到小，同样大小的按在树中的顺序
+        candidates.sort((a, b) -> a.size != b.size ? Long.compare(b.size, a.size)
+                : Long.compare(a.ordinal, b.ordinal));
+        List<List<Candidate>> groups = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i <= candidates.size(); i++) {
+            if (i == candidates.size() || candidates.get(i).size != candidates.get(start).size) {
+                groups.add(new ArrayList<>(candidates.subList(start, i)));
+                start = i;
+            }
+        }
+        return groups;
+    }
+
+    private static boolean isFile(ScanTree.NodeRecord node) {
+        return (node.flags & (ScanTree.FLAG_DIRECTORY | ScanTree.FLAG_DENIED)) == 0;
+    }
+
+    private void submitQueuedFull(ExecutorService executor, int budgetKb) throws InterruptedException {
+        Batch batch;
+        while (!cancelled && (batch = fullQueue.poll()) != null) {
+            for (Candidate candidate : batch.members) {
+                submit(executor, batch, candidate, budgetKb);
+            }
+        }
+    }
+
+    /**
+     * 占用预算后提交一个哈希任务，预算不足时等待已提交的任务完成
+     */
+    private void submit(ExecutorService executor, Batch batch, Candidate candidate, int budgetKb)
+            throws InterruptedException {
+        long bytes = batch.full ? candidate.size : Math.min(candidate.size, 2L * EDGE_BYTES);
+        int permits = (int) Math.min(budgetKb, Math.max(1, bytes / 1024));
+        budget.acquire(permits);
+        pendingTasks.incrementAndGet();
+        executor.execute(() -> {
+            try {
+                if (!cancelled) {
+                    hash(candidate, batch.full);
+                }
+                hashedFiles.incrementAndGet();
+                if (batch.remaining.decrementAndGet() == 0 && !cancelled) {
+                    regroup(batch);
+                }
+            } finally {
+                budget.release(permits);
+                pendingTasks.decrementAndGet();
+                synchronized (taskDone) {
+                    taskDone.notifyAll();
+                }
+            }
+        });
+    }
+
+    private void hash(Candidate candidate, boolean full) {
+        MessageDigest digest = DIGEST.get();
+        digest.reset();
+        Path path = new File(candidate.path).toPath();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (throttle != null) {
+                throttle.getOperations().acquire(1);
+            }
+            if (!full) {
+                candidate.fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            }
+            long size = candidate.size;
+            if (full || size <= 2L * EDGE_BYTES) {
+                update(digest, channel, 0, size);
+            } else {
+                update(digest, channel, 0, EDGE_BYTES);
+                update(digest, channel, size - EDGE_BYTES, size);
+            }
+            candidate.hash = HexFormat.of().formatHex(digest.digest());
+        } catch (IOException | SecurityException e) {
+            candidate.hash = null;
+            failedFiles.incrementAndGet();
+        }
+    }
+
+    private void update(MessageDigest digest, FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer buffer = BUFFER.get();
+        long position = from;
+        while (position < to && !cancelled) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), to - position));
+            if (throttle != null) {
+                throttle.getBytes().acquire(buffer.remaining());
+            }
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("文件在扫描后被截短: " + channel);
+            }
+            position += read;
+            hashedBytes.addAndGet(read);
+            buffer.flip();
+            digest.update(buffer);
+        }
+    }
+
+    /**
+     * 一批候选都已哈希：按哈希重新分组，同一个物理文件（硬链接或符号链接）只保留一次。
+     * 部分哈希已覆盖整个文件时直接确认，否则把每组排入完整哈希队列
+     */
+    private void regroup(Batch batch) {
+        Map<String, List<Candidate>> byHash = new LinkedHashMap<>();
+        for (Candidate candidate : batch.members) {
+            if (candidate.hash != null) {
+                byHash.computeIfAbsent(candidate.hash, h -> new ArrayList<>()).add(candidate);
+            }
+        }
+        boolean complete = batch.full || batch.size <= 2L * EDGE_BYTES;
+        for (List<Candidate> members : byHash.values()) {
+            List<Candidate> distinct = collapseLinks ? distinctFiles(members) : members;
+            if (distinct.size() < 2) {
+                continue;
+            }
+            if (complete) {
+                emit(new DuplicateGroup(batch.size, distinct));
+            } else {
+                totalFiles.addAndGet(distinct.size());
+                fullQueue.add(new Batch(batch.size, distinct, true));
+            }
+        }
+    }
+
+    private static List<Candidate> distinctFiles(List<Candidate> members) {
+        Set<Object> keys = new HashSet<>();
+        List<Candidate> distinct = new ArrayList<>(members.size());
+        for (Candidate candidate : members) {
+            if (candidate.fileKey == null || keys.add(candidate.fileKey)) {
+                distinct.add(candidate);
+            }
+        }
+        return distinct;
+    }
+
+    private synchronized void emit(DuplicateGroup group) {
+        listener.onGroup(group);
+    }
+}
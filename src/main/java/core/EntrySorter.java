@@ -0,0 +1,173 @@
+package com.foldertree.core;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/**
+ * 子项排序 - 每个子项只计算一次排序键（字符串、CollationKey或数值），
+ * 比较时只比较键，不再反复调用getName或访问文件系统
+ * 子项很多时用Arrays.parallelSort并行排序，并行计算排序键
+ * 列举器没有给出大小或修改时间时，按大小或时间排序需要补读属性，每次补读占用一个限速令牌
+ */
+public class EntrySorter {
+
+    // 超过该数量时并行计算键和排序
+    static final int PARALLEL_THRESHOLD = 8192;
+
+    private static final ThreadLocal<Collator> COLLATOR = ThreadLocal.withInitial(() -> {
+        Collator collator = Collator.getInstance(Locale.CHINA);
+        collator.setStrength(Collator.SECONDARY);
+        return collator;
+    });
+
+    /**
+     * 带排序键的子项：先比较数值键，再比较文本键或CollationKey，最后按名称
+     */
+    private static class Keyed {
+        final DirEntry entry;
+        long number;
+        String text;
+        CollationKey collationKey;
+
+        Keyed(DirEntry entry) {
+            this.entry = entry;
+        }
+    }
+
+    private static final Comparator<Keyed> BY_KEY = (a, b) -> {
+        int c = Long.compare(a.number, b.number);
+        if (c != 0) {
+            return c;
+        }
+        if (a.collationKey != null) {
+            c = a.collationKey.compareTo(b.collationKey);
+        } else if (a.text != null) {
+            c = a.text.compareTo(b.text);
+        }
+        return c != 0 ? c : a.entry.name.compareTo(b.entry.name);
+    };
+
+    private static final Comparator<DirEntry> BY_NAME = Comparator.comparing(entry -> entry.name);
+
+    /**
+     * 按指定方式原地排序，补读属性不限速
+     */
+    public static void sort(List<DirEntry> entries, SortMode mode) {
+        sort(entries, mode, new RateLimiter());
+    }
+
+    /**
+     * 按指定方式原地排序，补读属性前从limiter取令牌
+     */
+    public static void sort(List<DirEntry> entries, SortMode mode, RateLimiter limiter) {
+        int n = entries.size();
+        if (n < 2) {
+            return;
+        }
+        boolean parallel = n >= PARALLEL_THRESHOLD;
+
+        if (mode == SortMode.NAME) {
+            // 名称已在DirEntry中缓存，直接比较
+            if (parallel) {
+                DirEntry[] array = entries.toArray(new DirEntry[0]);
+                Arrays.parallelSort(array, BY_NAME);
+                for (int i = 0; i < n; i++) {
+                    entries.set(i, array[i]);
+                }
+            } else {
+                entries.sort(BY_NAME);
+            }
+            return;
+        }
+
+        Keyed[] keyed = new Keyed[n];
+        IntStream indices = IntStream.range(0, n);
+        (parallel ? indices.parallel() : indices).forEach(i -> keyed[i] = key(entries.get(i), mode, limiter));
+
+        if (parallel) {
+            Arrays.parallelSort(keyed, BY_KEY);
+        } else {
+            Arrays.sort(keyed, BY_KEY);
+        }
+        for (int i = 0; i < n; i++) {
+            entries.set(i, keyed[i].entry);
+        }
+    }
+
+    private static Keyed key(DirEntry entry, SortMode mode, RateLimiter limiter) {
+        Keyed keyed = new Keyed(entry);
+        switch (mode) {
+            case NATURAL:
+                keyed.text = naturalKey(entry.name);
+                break;
+            case COLLATOR:
+                keyed.collationKey = COLLATOR.get().getCollationKey(entry.name);
+                break;
+            case SIZE:
+                long size = entry.directory ? 0 : entry.size;
+                if (size < 0) {
+                    limiter.acquire(1);
+                    size = entry.file.length();
+                }
+                keyed.number = -size;
+                break;
+            case MTIME:
+                long modified = entry.lastModified;
+                if (modified < 0) {
+                    limiter.acquire(1);
+                    modified = entry.file.lastModified();
+                }
+                keyed.number = -modified;
+                break;
+            case EXTENSION:
+                keyed.text = extension(entry.name);
+                break;
+            default:
+                break;
+        }
+        return keyed;
+    }
+
+    /**
+     * 自然排序键：转成小写，每段连续数字替换为"长度字符+去掉前导零的数字"，
+     * 这样普通的字符串比较就等价于按数值比较
+     */
+    static String naturalKey(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        StringBuilder sb = new StringBuilder(lower.length() + 4);
+        int i = 0;
+        while (i < lower.length()) {
+            char c = lower.charAt(i);
+            if (c < '0' || c > '9') {
+                sb.append(c);
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < lower.length() && lower.charAt(i) == '0') {
+                i++;
+            }
+            int digits = i;
+            while (i < lower.length() && lower.charAt(i) >= '0' && lower.charAt(i) <= '9') {
+                i++;
+            }
+            if (digits == i && digits > start) {
+                // 全是0
+                digits = i - 1;
+            }
+            sb.append((char) (i - digits));
+            sb.append(lower, digits, i);
+        }
+        return sb.toString();
+    }
+
+    static String extension(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(dot + 1).toLowerCase(Locale.ROOT) : "";
+    }
+}
@@ -0,0 +1,205 @@
+package com.foldertree.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * 按扩展名统计文件数和总大小 - 扩展名驻留在NameDictionary中得到int编号，
+ * 统计值放在以编号为下标的long数组里，不使用装箱的HashMap<String, Long>
+ *
+ * 扫描时同时按先序编号记录每个文件的扩展名编号（每个节点4字节，非文件为-1），
+ * 由于子树在先序中是连续的一段，任意子树的分类统计只需扫描这一段；
+ * 编号存放在NodeColumn中，接近内存预算时随节点一起写出到映射文件
+ * 分类不一定是扩展名，安全审计也用它按属主和属组统计
+ */
+public class ExtensionStats {
+
+    private static final int NOT_A_FILE = -1;
+
+    private final NameDictionary extensions = new NameDictionary();
+    private long[] counts = new long[64];
+    private long[] bytes = new long[64];
+    private final NodeColumn nodeExtensions = new NodeColumn(4, NOT_A_FILE);
+    private int nodeCount;
+    // 上次写入断点日志时的分类数和节点数，之后只追加新增的部分
+    private int journalCategories;
+    private int journalNodes;
+
+    /**
+     * 统计结果，只包含文件数大于0的分类（扩展名或内容类型）
+     */
+    public static class Table {
+        public final String[] names;
+        public final long[] counts;
+        public final long[] bytes;
+
+        Table(String[] names, long[] counts, long[] bytes) {
+            this.names = names;
+            this.counts = counts;
+            this.bytes = bytes;
+        }
+
+        public int size() {
+            return names.length;
+        }
+
+        public long getTotalCount() {
+            return Arrays.stream(counts).sum();
+        }
+
+        public long getTotalBytes() {
+            return Arrays.stream(bytes).sum();
+        }
+    }
+
+    /**
+     * 记录先序编号为ordinal的文件
+     */
+    void addFile(long ordinal, String name, long size) {
+        addToCategory(ordinal, EntrySorter.extension(name), size);
+    }
+
+    /**
+     * 把先序编号为ordinal的文件记到指定的分类下
+     */
+    void addToCategory(long ordinal, String category, long size) {
+        if (ordinal >= Integer.MAX_VALUE) {
+            return;
+        }
+        int id = extensions.intern(category);
+        if (id == counts.length) {
+            counts = Arrays.copyOf(counts, id * 2);
+            bytes = Arrays.copyOf(bytes, id * 2);
+        }
+        counts[id]++;
+        bytes[id] += size;
+
+        int index = (int) ordinal;
+        nodeExtensions.setInt(index, id);
+        nodeCount = Math.max(nodeCount, index + 1);
+    }
+
+    /**
+     * 整个扫描结果的统计
+     */
+    public Table getTotals() {
+        return toTable(counts, bytes);
+    }
+
+    /**
+     * 先序编号为ordinal的节点的子树的统计，文件大小取自TreeIndex
+     */
+    public Table getSubtree(TreeIndex index, int ordinal) {
+        int types = extensions.size();
+        long[] subtreeCounts = new long[types];
+        long[] subtreeBytes = new long[types];
+        int end = Math.min(index.getSubtreeEnd(ordinal), nodeCount);
+        for (int i = ordinal; i < end; i++) {
+            int id = nodeExtensions.getInt(i);
+            if (id != NOT_A_FILE) {
+                subtreeCounts[id]++;
+                subtreeBytes[id] += index.getOwnSize(i);
+            }
+        }
+        return toTable(subtreeCounts, subtreeBytes);
+    }
+
+    private Table toTable(long[] tableCounts, long[] tableBytes) {
+        int types = extensions.size();
+        int rows = 0;
+        for (int id = 0; id < types; id++) {
+            if (tableCounts[id] > 0) {
+                rows++;
+            }
+        }
+        String[] names = new String[rows];
+        long[] rowCounts = new long[rows];
+        long[] rowBytes = new long[rows];
+        int row = 0;
+        for (int id = 0; id < types; id++) {
+            if (tableCounts[id] > 0) {
+                names[row] = extensions.name(id);
+                rowCounts[row] = tableCounts[id];
+                rowBytes[row] = tableBytes[id];
+                row++;
+            }
+        }
+        return new Table(names, rowCounts, rowBytes);
+    }
+
+    /**
+     * 写出上次写入之后的变化：新增的分类、全部分类的计数和新增节点的分类编号
+     */
+    void writeJournal(DataOutput out) throws IOException {
+        extensions.writeDelta(out, journalCategories);
+        int types = extensions.size();
+        for (int id = 0; id < types; id++) {
+            out.writeLong(counts[id]);
+            out.writeLong(bytes[id]);
+        }
+        out.writeInt(journalNodes);
+        out.writeInt(nodeCount);
+        nodeExtensions.write(out, journalNodes, nodeCount);
+        journalCategories = types;
+        journalNodes = nodeCount;
+    }
+
+    /**
+     * 在stats上应用writeJournal写出的变化，stats为null时新建
+     */
+    static ExtensionStats readJournal(DataInput in, ExtensionStats stats) throws IOException {
+        if (stats == null) {
+            stats = new ExtensionStats();
+        }
+        stats.extensions.readDelta(in);
+        int types = stats.extensions.size();
+        if (types > stats.counts.length) {
+            stats.counts = Arrays.copyOf(stats.counts, types * 2);
+            stats.bytes = Arrays.copyOf(stats.bytes, types * 2);
+        }
+        for (int id = 0; id < types; id++) {
+            stats.counts[id] = in.readLong();
+            stats.bytes[id] = in.readLong();
+        }
+        int from = in.readInt();
+        int count = in.readInt();
+        if (from != stats.nodeCount) {
+            throw new IOException("分类统计不连续: " + from + " != " + stats.nodeCount);
+        }
+        stats.nodeExtensions.read(in, from, count);
+        stats.nodeCount = count;
+        stats.journalCategories = types;
+        stats.journalNodes = count;
+        return stats;
+    }
+
+    /**
+     * 下次写入断点日志时写出全部内容
+     */
+    void resetJournal() {
+        journalCategories = 0;
+        journalNodes = 0;
+    }
+
+    /**
+     * 把写满的页改为映射，不再占用堆内存
+     */
+    void spill() throws IOException {
+        nodeExtensions.spill();
+        extensions.spill();
+    }
+
+    /**
+     * 留在堆中的字节数
+     */
+    long getMemoryBytes() {
+        return nodeExtensions.getResidentBytes() + extensions.getMemoryBytes() + 16L * counts.length;
+    }
+
+    void dispose() {
+        nodeExtensions.dispose();
+        extensions.dispose();
+    }
+}
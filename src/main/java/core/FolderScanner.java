@@ -1,55 +1,68 @@
 package com.foldertree.core;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Set;
 
 /**
  * 文件夹扫描器类 - 支持进度回调
  */
 public class FolderScanner {
 
-    private static final String PREFIX_ENTRY = "├── ";
-    private static final String PREFIX_LAST_ENTRY = "└── ";
-    private static final String PREFIX_VERTICAL = "│   ";
-    private static final String PREFIX_SPACE = "    ";
-
     // 进度回调接口
     public interface ProgressCallback {
         void onProgress(int processed, int total, String currentPath);
     }
 
+    // 所有遍历共用的IO限速，可在扫描过程中调整
+    private final IoThrottle throttle = new IoThrottle();
+
+    public IoThrottle getThrottle() {
+        return throttle;
+    }
+
+    // 审计扫描时接收风险项的回调，可以为null
+    private volatile SecurityAudit.Listener auditListener;
+
     /**
-     * 统计文件夹中的总项目数
+     * 设置之后审计扫描发现风险项时的回调（在扫描线程中调用）
      */
-    public int countTotalItems(String folderPath, int maxDepth, boolean showFiles) {
-        File root = new File(folderPath);
-        if (!root.exists() || !root.isDirectory()) {
-            return 0;
-        }
-        return countItemsRecursive(root, maxDepth, 1, showFiles);
+    public void setAuditListener(SecurityAudit.Listener auditListener) {
+        this.auditListener = auditListener;
     }
 
-    private int countItemsRecursive(File dir, int maxDepth, int currentDepth, boolean showFiles) {
-        if (maxDepth > 0 && currentDepth > maxDepth) {
-            return 0;
-        }
-
+    /**
+     * 统计dir的子项items（深度为depth）及其子树中将被扫描的项目数，用于显示进度：
+     * 与扫描使用同一个列举器，不展开超过深度的文件夹和跳过的构建产物
+     */
+    private int countItems(DirectoryLister lister, File dir, List<DirEntry> items, int depth,
+                           ScanOptions options) {
+        int maxDepth = options.getMaxDepth();
+        prefetchChildren(lister, dir, items, 0, depth, options);
         int count = 0;
-        File[] items = dir.listFiles();
-        if (items == null) {
-            return 0;
-        }
-
-        for (File item : items) {
-            if (item.isDirectory()) {
-                count++;
-                count += countItemsRecursive(item, maxDepth, currentDepth + 1, showFiles);
-            } else if (showFiles) {
-                count++;
+        for (DirEntry item : items) {
+            if (!item.directory) {
+                if (options.isShowFiles()) {
+                    count++;
+                }
+                continue;
+            }
+            count++;
+            if (isPruned(item, dir, items, options) || (maxDepth > 0 && depth >= maxDepth)) {
+                continue;
+            }
+            List<DirEntry> children;
+            try {
+                children = lister.list(item.file);
+            } catch (SecurityException | UnreadableDirectoryException e) {
+                continue;
             }
+            count += countItems(lister, item.file, children, depth + 1, options);
         }
         return count;
     }
@@ -64,73 +77,310 @@ public class FolderScanner {
             return "错误: 路径不存在或不是一个文件夹";
         }
 
-        int totalItems = countTotalItems(folderPath, maxDepth, showFiles);
-        AtomicInteger processed = new AtomicInteger(0);
-
-        StringBuilder tree = new StringBuilder();
-        tree.append(root.getName()).append("/\n");
-
         try {
-            List<File> items = listSortedFiles(root);
-            generateTreeRecursiveWithProgress(items, tree, "", maxDepth, 1,
-                    showFiles, processed, totalItems,
-                    callback, root.getAbsolutePath());
+            return scan(folderPath, maxDepth, showFiles, callback).render();
         } catch (SecurityException e) {
             return "错误: 没有权限访问该文件夹";
         }
+    }
 
-        return tree.toString();
+    /**
+     * 扫描文件夹并构建紧凑的树模型
+     */
+    public ScanTree scan(String folderPath, int maxDepth,
+                         boolean showFiles, ProgressCallback callback) throws SecurityException {
+        ScanOptions options = new ScanOptions();
+        options.setMaxDepth(maxDepth);
+        options.setShowFiles(showFiles);
+        return scan(folderPath, options, callback);
     }
 
-    private void generateTreeRecursiveWithProgress(List<File> items, StringBuilder tree,
-                                                   String prefix, int maxDepth,
-                                                   int currentDepth, boolean showFiles,
-                                                   AtomicInteger processed, int totalItems,
-                                                   ProgressCallback callback, String basePath) {
-        if (maxDepth > 0 && currentDepth > maxDepth) {
-            return;
+    /**
+     * 按选项扫描文件夹，启用断点时定期写入断点日志，并可从已有断点继续
+     * 自动选择策略时，选中的策略会写回options
+     */
+    public ScanTree scan(String folderPath, ScanOptions options,
+                         ProgressCallback callback) throws SecurityException {
+        File root = new File(folderPath);
+        ScanAutotuner autotuner = null;
+        if (options.isAutoStrategy()) {
+            autotuner = new ScanAutotuner(throttle.getOperations());
+            options.setStrategy(autotuner.choose(root));
+            options.setAutoStrategy(false);
+        }
+
+        if (options.getWorkerProcesses() > 1 && options.getTopLevelNames() == null) {
+            return new ShardedScanner(this).scan(folderPath, options, callback);
         }
 
-        for (int i = 0; i < items.size(); i++) {
-            File item = items.get(i);
-            boolean isLast = (i == items.size() - 1);
+        ScanCheckpoint checkpoint = options.isCheckpointEnabled()
+                ? ScanCheckpoint.forScan(folderPath, options) : null;
 
-            processed.incrementAndGet();
+        boolean adaptive = autotuner != null && autotuner.isAdaptive();
+        try (DirectoryLister lister = options.getStrategy().createLister(throttle.getOperations(),
+                options.isAudit(), adaptive)) {
+            ScanState state = null;
+            if (checkpoint != null && options.isResume()) {
+                state = restoreState(checkpoint, options, lister);
+            }
+            if (state == null) {
+                state = newState(root, options, checkpoint, lister);
+            }
+
+            try {
+                walk(state, options, callback, checkpoint, root.getAbsolutePath());
+            } catch (RuntimeException e) {
+                // 启用断点时保留溢出文件，下次可以继续
+                if (checkpoint == null) {
+                    state.tree.dispose();
+                }
+                throw e;
+            }
+
+            if (checkpoint != null) {
+                checkpoint.complete();
+            }
+            if (adaptive) {
+                autotuner.record(root, options.getStrategy(), lister);
+            }
+            return state.tree;
+        }
+    }
+
+    /**
+     * 深度优先遍历中的一个打开目录
+     */
+    private static class Frame {
+        final File dir;
+        final int node;
+        final int depth;
+        final List<DirEntry> children;
+        int next;
+
+        Frame(File dir, int node, int depth, List<DirEntry> children) {
+            this.dir = dir;
+            this.node = node;
+            this.depth = depth;
+            this.children = children;
+        }
+    }
+
+    /**
+     * 一次扫描的可恢复状态
+     */
+    private static class ScanState {
+        final ScanTree tree;
+        final DirectoryLister lister;
+        final Deque<Frame> stack = new ArrayDeque<>();
+        int processed;
+        int totalItems;
+
+        ScanState(ScanTree tree, DirectoryLister lister) {
+            this.tree = tree;
+            this.lister = lister;
+        }
+    }
+
+    private ScanState newState(File root, ScanOptions options, ScanCheckpoint checkpoint,
+                               DirectoryLister lister) {
+        ScanTree tree = new ScanTree();
+        tree.setMemoryBudget(options.getMemoryBudget());
+        tree.setRanking(new SizeRanking(SizeRanking.DEFAULT_LIMIT));
+        tree.setExtensionStats(new ExtensionStats());
+        tree.setSizeDistribution(new SizeDistribution());
+        tree.setAgeStats(new AgeStats());
+        if (options.isAudit()) {
+            SecurityAudit audit = new SecurityAudit();
+            audit.setListener(auditListener);
+            tree.setSecurityAudit(audit);
+        }
+        if (checkpoint != null) {
+            checkpoint.discard();
+            tree.setSpillFile(checkpoint.newSpillFile());
+        }
+
+        ScanState state = new ScanState(tree, lister);
+        List<DirEntry> items;
+        boolean rootDenied = false;
+        try {
+            items = listSorted(lister, root, options.getSortMode());
+        } catch (UnreadableDirectoryException e) {
+            items = new ArrayList<>();
+            rootDenied = true;
+        }
+        Set<String> topLevelNames = options.getTopLevelNames();
+        if (topLevelNames != null) {
+            items.removeIf(item -> !topLevelNames.contains(item.name));
+        }
+        state.totalItems = countItems(lister, root, items, 1, options);
+
+        int rootNode = tree.addNode(root.getName(), 0, ScanTree.FLAG_DIRECTORY);
+        tree.beginChildren(rootNode);
+        if (rootDenied) {
+            tree.addDeniedNode(1);
+        }
+        state.stack.push(new Frame(root, rootNode, 0, items));
+        prefetchChildren(lister, root, items, 0, 1, options);
+        return state;
+    }
+
+    /**
+     * 从断点恢复状态：重新列出前沿中的每个目录，并跳过已处理的子项
+     */
+    private ScanState restoreState(ScanCheckpoint checkpoint, ScanOptions options,
+                                   DirectoryLister lister) {
+        ScanCheckpoint.State saved;
+        try {
+            saved = checkpoint.read();
+        } catch (IOException e) {
+            System.err.println("无法读取断点，将重新扫描: " + e.getMessage());
+            return null;
+        }
+        if (saved == null) {
+            return null;
+        }
+        SecurityAudit audit = saved.tree.getSecurityAudit();
+        if (options.isAudit() != (audit != null)) {
+            System.err.println("断点与本次的审计选项不一致，将重新扫描");
+            saved.tree.dispose();
+            return null;
+        }
+        if (audit != null) {
+            audit.setListener(auditListener);
+        }
+
+        saved.tree.setMemoryBudget(options.getMemoryBudget());
+        ScanState state = new ScanState(saved.tree, lister);
+        state.processed = saved.processed;
+        state.totalItems = saved.totalItems;
+
+        for (ScanCheckpoint.PendingDirectory pending : saved.frontier) {
+            File dir = new File(pending.path);
+            List<DirEntry> children;
+            try {
+                children = listSorted(lister, dir, options.getSortMode());
+            } catch (SecurityException | UnreadableDirectoryException e) {
+                children = new ArrayList<>();
+            }
+            Frame frame = new Frame(dir, pending.node, pending.depth, children);
+            frame.next = indexAfter(children, pending.resumeAfter);
+            state.stack.push(frame);
+            prefetchChildren(lister, dir, children, frame.next, pending.depth + 1, options);
+        }
+        return state;
+    }
+
+    /**
+     * 找到名为name的子项之后的位置；该子项已不存在时按名称顺序估计（非名称排序时只是近似）
+     */
+    private int indexAfter(List<DirEntry> children, String name) {
+        if (name == null) {
+            return 0;
+        }
+        for (int i = 0; i < children.size(); i++) {
+            if (children.get(i).name.equals(name)) {
+                return i + 1;
+            }
+        }
+        int index = 0;
+        while (index < children.size() && children.get(index).name.compareTo(name) < 0) {
+            index++;
+        }
+        return index;
+    }
+
+    private void walk(ScanState state, ScanOptions options, ProgressCallback callback,
+                      ScanCheckpoint checkpoint, String basePath) {
+        ScanTree tree = state.tree;
+        Deque<Frame> stack = state.stack;
+        int maxDepth = options.getMaxDepth();
+        SortMode sortMode = options.getSortMode();
+
+        while (!stack.isEmpty()) {
+            Frame frame = stack.peek();
+            if (frame.next >= frame.children.size()) {
+                stack.pop();
+                tree.endChildren();
+                if (!stack.isEmpty()) {
+                    afterSubtree(state, checkpoint);
+                }
+                continue;
+            }
+
+            DirEntry item = frame.children.get(frame.next++);
+            boolean isLast = frame.next == frame.children.size();
+            int depth = frame.depth + 1;
+
+            state.processed++;
             if (callback != null) {
-                String displayPath = item.getAbsolutePath();
+                String displayPath = item.file.getAbsolutePath();
                 if (displayPath.startsWith(basePath)) {
                     displayPath = displayPath.substring(basePath.length());
                     if (displayPath.startsWith(File.separator)) {
                         displayPath = displayPath.substring(1);
                     }
                 }
-                callback.onProgress(processed.get(), totalItems, displayPath);
+                callback.onProgress(state.processed, state.totalItems, displayPath);
             }
 
-            tree.append(prefix);
-            tree.append(isLast ? PREFIX_LAST_ENTRY : PREFIX_ENTRY);
-            tree.append(item.getName());
-
-            if (item.isDirectory()) {
-                tree.append("/");
+            boolean isDirectory = item.directory;
+            byte flags = 0;
+            if (isDirectory) {
+                flags |= ScanTree.FLAG_DIRECTORY;
+            }
+            if (isLast) {
+                flags |= ScanTree.FLAG_LAST;
+            }
+            if (item.brokenLink) {
+                flags |= ScanTree.FLAG_BROKEN_LINK;
+            }
+            boolean pruned = isPruned(item, frame.dir, frame.children, options);
+            if (pruned) {
+                flags |= ScanTree.FLAG_PRUNED;
+            }
+            int node = tree.addNode(item.name, depth, flags, Math.max(0, item.size), item.lastModified);
+            if (tree.getSecurityAudit() != null) {
+                tree.getSecurityAudit().record(tree.size() - 1, depth, item);
             }
-            tree.append("\n");
-
-            if (item.isDirectory()) {
-                String newPrefix = prefix + (isLast ? PREFIX_SPACE : PREFIX_VERTICAL);
 
+            if (isDirectory && !pruned && (maxDepth <= 0 || depth < maxDepth)) {
+                tree.beginChildren(node);
                 try {
-                    List<File> subItems = listSortedFiles(item);
-                    if (!subItems.isEmpty()) {
-                        generateTreeRecursiveWithProgress(subItems, tree, newPrefix,
-                                maxDepth, currentDepth + 1,
-                                showFiles, processed, totalItems,
-                                callback, basePath);
-                    }
-                } catch (SecurityException e) {
-                    tree.append(newPrefix).append("├── [权限拒绝]\n");
+                    List<DirEntry> children = listSorted(state.lister, item.file, sortMode);
+                    stack.push(new Frame(item.file, node, depth, children));
+                    prefetchChildren(state.lister, item.file, children, 0, depth + 1, options);
+                    continue;
+                } catch (SecurityException | UnreadableDirectoryException e) {
+                    tree.addDeniedNode(depth + 1);
+                    tree.endChildren();
                 }
             }
+
+            afterSubtree(state, checkpoint);
+        }
+    }
+
+    /**
+     * 一个子树刚完成：必要时溢出到磁盘，并按间隔写入断点
+     */
+    private void afterSubtree(ScanState state, ScanCheckpoint checkpoint) {
+        state.tree.checkBudget();
+        if (checkpoint == null || !checkpoint.isDue()) {
+            return;
+        }
+
+        List<ScanCheckpoint.PendingDirectory> frontier = new ArrayList<>();
+        Iterator<Frame> bottomUp = state.stack.descendingIterator();
+        while (bottomUp.hasNext()) {
+            Frame frame = bottomUp.next();
+            String resumeAfter = frame.next > 0 ? frame.children.get(frame.next - 1).name : null;
+            frontier.add(new ScanCheckpoint.PendingDirectory(frame.dir.getAbsolutePath(),
+                    frame.node, frame.depth, resumeAfter));
+        }
+        try {
+            checkpoint.write(state.tree, frontier, state.processed, state.totalItems);
+        } catch (IOException e) {
+            System.err.println("写入断点失败: " + e.getMessage());
         }
     }
 
@@ -142,68 +392,63 @@ public class FolderScanner {
     }
 
     /**
-     * 获取文件夹统计信息
+     * 获取文件夹统计信息，取自扫描结果和子树索引，不再重新遍历文件夹
      */
-    public String getFolderStats(String folderPath) {
-        File root = new File(folderPath);
-        if (!root.exists() || !root.isDirectory()) {
-            return "路径不存在";
-        }
-
-        int[] stats = countFilesAndFolders(root, 0);
-        return String.format("文件夹: %d, 文件: %d", stats[0], stats[1]);
+    public static String getFolderStats(ScanTree tree, TreeIndex index) {
+        int folders = index.size() == 0 ? 0 : index.getDirectoryCount(0);
+        return String.format("文件夹: %d, 文件: %d", folders, tree.getTotalFiles());
     }
 
     /**
-     * 递归统计文件和文件夹数量
+     * 只有dir的子项中从from开始的目录会被展开时才预取，不会展开的构建产物不预取
      */
-    private int[] countFilesAndFolders(File dir, int depth) {
-        int folders = 0;
-        int files = 0;
-
-        File[] items = dir.listFiles();
-        if (items == null) {
-            return new int[]{0, 0};
+    private void prefetchChildren(DirectoryLister lister, File dir, List<DirEntry> children, int from,
+                                  int childDepth, ScanOptions options) {
+        int maxDepth = options.getMaxDepth();
+        if (maxDepth > 0 && childDepth >= maxDepth) {
+            return;
         }
-
-        for (File item : items) {
-            if (item.isDirectory()) {
-                folders++;
-                int[] subStats = countFilesAndFolders(item, depth + 1);
-                folders += subStats[0];
-                files += subStats[1];
-            } else {
-                files++;
-            }
+        List<DirEntry> expanded = children.subList(from, children.size());
+        if (options.isPruneArtifacts()) {
+            expanded = new ArrayList<>(expanded);
+            expanded.removeIf(entry -> isPruned(entry, dir, children, options));
         }
+        lister.prefetch(expanded);
+    }
 
-        return new int[]{folders, files};
+    /**
+     * 勾选了跳过构建产物时，按名字和同一文件夹中的标记文件识别出的构建产物不展开
+     */
+    static boolean isPruned(DirEntry entry, File dir, List<DirEntry> siblings, ScanOptions options) {
+        return options.isPruneArtifacts() && entry.directory && ArtifactFinder.match(entry, dir, siblings) != null;
     }
 
     /**
      * 获取排序后的文件列表
      */
-    private List<File> listSortedFiles(File dir) throws SecurityException {
-        File[] files = dir.listFiles();
-        if (files == null) {
-            return new ArrayList<>();
-        }
+    List<DirEntry> listSorted(File dir, SortMode sortMode) throws SecurityException {
+        return listSorted(new IoDirectoryLister(throttle.getOperations()), dir, sortMode);
+    }
 
-        List<File> directories = new ArrayList<>();
-        List<File> fileList = new ArrayList<>();
+    /**
+     * 用指定的列举器获取排序后的文件列表：文件夹在前，各自按排序方式排序
+     */
+    List<DirEntry> listSorted(DirectoryLister lister, File dir, SortMode sortMode) throws SecurityException {
+        List<DirEntry> directories = new ArrayList<>();
+        List<DirEntry> fileList = new ArrayList<>();
 
-        for (File file : files) {
-            if (file.isDirectory()) {
-                directories.add(file);
+        for (DirEntry entry : lister.list(dir)) {
+            if (entry.directory) {
+                directories.add(entry);
             } else {
-                fileList.add(file);
+                fileList.add(entry);
             }
         }
 
-        directories.sort(Comparator.comparing(File::getName));
-        fileList.sort(Comparator.comparing(File::getName));
+        EntrySorter.sort(directories, sortMode, throttle.getOperations());
+        EntrySorter.sort(fileList, sortMode, throttle.getOperations());
 
-        List<File> result = new ArrayList<>(directories);
+        List<DirEntry> result = new ArrayList<>(directories);
         result.addAll(fileList);
 
         return result;
@@ -0,0 +1,60 @@
+package com.foldertree.core;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于java.io.File的实现：listFiles后对每个子项调用isDirectory，文件再读取大小
+ * 大小为0时再确认是否是失效的符号链接；列目录和每次读取属性各占用一个限速令牌
+ */
+class IoDirectoryLister implements DirectoryLister {
+    private final RateLimiter limiter;
+
+    IoDirectoryLister() {
+        this(new RateLimiter());
+    }
+
+    IoDirectoryLister(RateLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    @Override
+    public List<DirEntry> list(File dir) {
+        limiter.acquire(1);
+        File[] files = dir.listFiles();
+        if (files == null) {
+            throw new UnreadableDirectoryException(dir);
+        }
+        List<DirEntry> entries = new ArrayList<>(files.length);
+        for (File file : files) {
+            limiter.acquire(1);
+            if (file.isDirectory()) {
+                entries.add(new DirEntry(file, true));
+            } else {
+                limiter.acquire(1);
+                long length = file.length();
+                if (length == 0 && isBrokenLink(file.toPath(), limiter)) {
+                    entries.add(DirEntry.brokenLink(file));
+                } else {
+                    entries.add(new DirEntry(file, false, length, -1));
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * 是否是目标不存在的符号链接，只在大小为0或读取属性失败时调用
+     */
+    static boolean isBrokenLink(Path path, RateLimiter limiter) {
+        limiter.acquire(1);
+        if (!Files.isSymbolicLink(path)) {
+            return false;
+        }
+        limiter.acquire(1);
+        return Files.notExists(path);
+    }
+}
@@ -0,0 +1,46 @@
+package com.foldertree.core;
+
+/**
+ * 扫描的IO限速设置 - 避免扫描生产环境磁盘时影响正常业务的IO
+ * operations限制每秒的列目录和读取属性次数，bytes限制读取文件内容的每秒字节数
+ */
+public class IoThrottle {
+    private final RateLimiter operations = new RateLimiter();
+    private final RateLimiter bytes = new RateLimiter();
+
+    public RateLimiter getOperations() {
+        return operations;
+    }
+
+    public RateLimiter getBytes() {
+        return bytes;
+    }
+
+    public boolean isLimited() {
+        return operations.isLimited() || bytes.isLimited();
+    }
+
+    /**
+     * 因限速而等待的总时间（纳秒）
+     */
+    public long getWaitedNanos() {
+        return operations.getWaitedNanos() + bytes.getWaitedNanos();
+    }
+
+    /**
+     * 适合显示在界面上的限速说明，不限速时返回空字符串
+     */
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        if (operations.isLimited()) {
+            sb.append(String.format("限速 %.0f 次/秒", operations.getRate()));
+        }
+        if (bytes.isLimited()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(String.format("读取限速 %.1f MB/秒", bytes.getRate() / (1024.0 * 1024.0)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,231 @@
+package com.foldertree.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 行数统计 - 在ForkJoinPool中按文件并行统计扫描结果中每个文本文件的行数，
+ * 先按文件头的特征字节跳过二进制文件；较大的文件用内存映射读取，
+ * 用每次比较8个字节的循环数换行符；读取遵守扫描的限速设置
+ * 行数按换行符计，最后一行没有换行符时也算一行
+ */
+public class LineCounter {
+
+    // 不超过该大小的文件直接读入缓冲区：逐个映射小文件的开销更大，且映射要等GC才释放
+    static final int MAP_THRESHOLD = 256 * 1024;
+    // 超过2GB的文件分段映射
+    private static final long MAP_CHUNK = 1L << 30;
+    private static final long PROGRESS_INTERVAL_MS = 100;
+    private static final long BINARY = -1;
+    private static final long UNREADABLE = -2;
+
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    private static final ThreadLocal<ByteBuffer> BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(MAP_THRESHOLD));
+
+    private final IoThrottle throttle;
+    private int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private volatile boolean cancelled;
+
+    /**
+     * @param throttle 读取时使用的限速器，为null时不限速
+     */
+    public LineCounter(IoThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * 统计扫描结果中所有文本文件的行数（root为扫描的根目录）；取消时返回null
+     */
+    public LineCounts count(ScanTree tree, File root, FolderScanner.ProgressCallback callback)
+            throws InterruptedException {
+        long startTime = System.currentTimeMillis();
+        int[] totalFiles = {0};
+        tree.visit(node -> {
+            if (isFile(node)) {
+                totalFiles[0]++;
+            }
+        });
+
+        LineCounts counts = new LineCounts((int) Math.min(tree.size(), Integer.MAX_VALUE - 8));
+        int maxInFlight = threads * 16;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicInteger counted = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long[] lastProgress = {0};
+        try {
+            tree.visitPaths(root, (node, ordinal, path) -> {
+                if (cancelled || !isFile(node)) {
+                    return;
+                }
+                String name = path.substring(path.lastIndexOf(File.separatorChar) + 1);
+                String extension = EntrySorter.extension(name);
+                inFlight.acquireUninterruptibly();
+                pool.execute(() -> {
+                    try {
+                        if (!cancelled) {
+                            long lines = countFile(path);
+                            if (lines == BINARY) {
+                                counts.recordBinary();
+                            } else if (lines == UNREADABLE) {
+                                counts.recordUnreadable();
+                            } else {
+                                counts.record(ordinal, extension, lines);
+                            }
+                        }
+                        counted.incrementAndGet();
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+                long now = System.currentTimeMillis();
+                if (callback != null && now - lastProgress[0] >= PROGRESS_INTERVAL_MS) {
+                    callback.onProgress(counted.get(), totalFiles[0], path);
+                    lastProgress[0] = now;
+                }
+            });
+            // 等待已提交的统计全部完成
+            inFlight.acquire(maxInFlight);
+            if (callback != null) {
+                callback.onProgress(counted.get(), totalFiles[0], root.getPath());
+            }
+        } finally {
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        if (cancelled) {
+            return null;
+        }
+        counts.finish(System.currentTimeMillis() - startTime);
+        return counts;
+    }
+
+    /**
+     * 大小为0的文件没有行，不需要读取
+     */
+    private static boolean isFile(ScanTree.NodeRecord node) {
+        return (node.flags & (ScanTree.FLAG_DIRECTORY | ScanTree.FLAG_DENIED)) == 0 && node.size > 0;
+    }
+
+    /**
+     * 统计一个文件的行数，二进制文件返回BINARY，无法读取时返回UNREADABLE
+     */
+    private long countFile(String path) {
+        Path file = Paths.get(path);
+        if (throttle != null) {
+            throttle.getOperations().acquire(1);
+        }
+        try {
+            // 打开命名管道会一直阻塞，设备等特殊文件也不读取
+            if (!Files.readAttributes(file, BasicFileAttributes.class).isRegularFile()) {
+                return UNREADABLE;
+            }
+        } catch (IOException | SecurityException e) {
+            return UNREADABLE;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // 以打开时的实际大小为准，文件可能在扫描后变化
+            long size = channel.size();
+            if (size == 0) {
+                return 0;
+            }
+            // 先只读文件头判断是否为文本，二进制文件不再预留和读取其余部分
+            ByteBuffer buffer = BUFFER.get();
+            buffer.clear();
+            buffer.limit((int) Math.min(size, ContentTypeDetector.HEAD_BYTES));
+            if (throttle != null) {
+                throttle.getBytes().acquire(buffer.limit());
+            }
+            read(channel, buffer);
+            int head = buffer.position();
+            if (head == 0) {
+                return 0;
+            }
+            ContentType type = ContentType.detect(buffer, head);
+            if (type != ContentType.TEXT && type != ContentType.SCRIPT) {
+                return BINARY;
+            }
+            if (throttle != null && size > head) {
+                throttle.getBytes().acquire(size - head);
+            }
+            if (size <= MAP_THRESHOLD) {
+                buffer.limit((int) size);
+                read(channel, buffer);
+                return count(buffer, buffer.position());
+            }
+            long lines = 0;
+            for (long offset = 0; offset < size; offset += MAP_CHUNK) {
+                int length = (int) Math.min(MAP_CHUNK, size - offset);
+                ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+                long chunkLines = count(mapped, length);
+                // 只有最后一段才补上没有换行符的最后一行
+                if (offset + length < size && mapped.get(length - 1) != '\n') {
+                    chunkLines--;
+                }
+                lines += chunkLines;
+            }
+            return lines;
+        } catch (IOException | SecurityException e) {
+            return UNREADABLE;
+        }
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) <= 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 数buffer前length个字节中的行数
+     */
+    private static long count(ByteBuffer buffer, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        long lines = countNewlines(buffer, 0, length);
+        return buffer.get(length - 1) == '\n' ? lines : lines + 1;
+    }
+
+    /**
+     * 数buffer中[from, to)范围内的换行符：每次取8个字节与换行符逐字节异或，等于0的字节就是换行符；
+     * 最高位之外的7位加上0x7F会进位到最高位，再并上原来的最高位，只有0字节的最高位仍为0
+     */
+    static long countNewlines(ByteBuffer buffer, int from, int to) {
+        long lines = 0;
+        int i = from;
+        for (int last = to - 8; i <= last; i += 8) {
+            long x = buffer.getLong(i) ^ NEWLINES;
+            lines += Long.bitCount(~(((x & LOW_BITS) + LOW_BITS) | x | LOW_BITS));
+        }
+        for (; i < to; i++) {
+            if (buffer.get(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+}
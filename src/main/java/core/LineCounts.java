@@ -0,0 +1,234 @@
+package com.foldertree.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 行数统计 - 按先序编号记录每个文本文件的行数和扩展名，统计完成后建立前缀和，
+ * 任意子树的总行数只需读两次数组；二进制文件不计入
+ */
+public class LineCounts {
+
+    // 不是文本文件或没有统计
+    private static final int NOT_COUNTED = -1;
+
+    private final int[] nodeLines;
+    private final int[] nodeExtensions;
+    private final List<String> extensionNames = new ArrayList<>();
+    private final Map<String, Integer> extensionIds = new HashMap<>();
+    private long[] linePrefix;
+    private int[] filePrefix;
+    // 文本文件字节数的前缀和，第一次按文件夹汇总时建立
+    private long[] bytePrefix;
+    private int binaryFiles;
+    private int unreadableFiles;
+    private long elapsedMillis;
+
+    /**
+     * 一组统计行：名称、文本文件数、行数和字节数
+     */
+    public static class Table {
+        public final String[] names;
+        public final long[] files;
+        public final long[] lines;
+        public final long[] bytes;
+
+        Table(String[] names, long[] files, long[] lines, long[] bytes) {
+            this.names = names;
+            this.files = files;
+            this.lines = lines;
+            this.bytes = bytes;
+        }
+
+        public int size() {
+            return names.length;
+        }
+
+        public long getTotalLines() {
+            return Arrays.stream(lines).sum();
+        }
+
+        public long getTotalFiles() {
+            return Arrays.stream(files).sum();
+        }
+    }
+
+    LineCounts(int nodeCount) {
+        nodeLines = new int[nodeCount];
+        nodeExtensions = new int[nodeCount];
+        Arrays.fill(nodeLines, NOT_COUNTED);
+    }
+
+    /**
+     * 记录一个文本文件的行数（extension为小写扩展名），可在多个工作线程中调用
+     */
+    synchronized void record(long ordinal, String extension, long lines) {
+        if (ordinal >= nodeLines.length) {
+            return;
+        }
+        Integer id = extensionIds.get(extension);
+        if (id == null) {
+            id = extensionNames.size();
+            extensionNames.add(extension);
+            extensionIds.put(extension, id);
+        }
+        nodeLines[(int) ordinal] = (int) Math.min(Integer.MAX_VALUE, lines);
+        nodeExtensions[(int) ordinal] = id;
+    }
+
+    synchronized void recordBinary() {
+        binaryFiles++;
+    }
+
+    synchronized void recordUnreadable() {
+        unreadableFiles++;
+    }
+
+    /**
+     * 全部文件统计完成后建立前缀和
+     */
+    synchronized void finish(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+        linePrefix = new long[nodeLines.length + 1];
+        filePrefix = new int[nodeLines.length + 1];
+        for (int i = 0; i < nodeLines.length; i++) {
+            boolean counted = nodeLines[i] != NOT_COUNTED;
+            linePrefix[i + 1] = linePrefix[i] + (counted ? nodeLines[i] : 0);
+            filePrefix[i + 1] = filePrefix[i] + (counted ? 1 : 0);
+        }
+    }
+
+    /**
+     * 先序编号为ordinal的节点的子树中的总行数
+     */
+    public long getLines(TreeIndex index, int ordinal) {
+        int end = Math.min(index.getSubtreeEnd(ordinal), nodeLines.length);
+        return ordinal >= end ? 0 : linePrefix[end] - linePrefix[ordinal];
+    }
+
+    /**
+     * 先序编号为ordinal的节点的子树中统计了行数的文本文件数
+     */
+    public int getTextFiles(TreeIndex index, int ordinal) {
+        int end = Math.min(index.getSubtreeEnd(ordinal), nodeLines.length);
+        return ordinal >= end ? 0 : filePrefix[end] - filePrefix[ordinal];
+    }
+
+    public synchronized int getBinaryFiles() {
+        return binaryFiles;
+    }
+
+    public synchronized int getUnreadableFiles() {
+        return unreadableFiles;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * 先序编号为ordinal的节点的子树按扩展名的统计，按行数从多到少排列
+     */
+    public synchronized Table getByExtension(TreeIndex index, int ordinal) {
+        int extensions = extensionNames.size();
+        long[] files = new long[extensions];
+        long[] lines = new long[extensions];
+        long[] bytes = new long[extensions];
+        int end = Math.min(index.getSubtreeEnd(ordinal), nodeLines.length);
+        for (int i = ordinal; i < end; i++) {
+            if (nodeLines[i] != NOT_COUNTED) {
+                int id = nodeExtensions[i];
+                files[id]++;
+                lines[id] += nodeLines[i];
+                bytes[id] += index.getOwnSize(i);
+            }
+        }
+        List<Integer> ids = new ArrayList<>();
+        for (int id = 0; id < extensions; id++) {
+            if (files[id] > 0) {
+                ids.add(id);
+            }
+        }
+        ids.sort((a, b) -> Long.compare(lines[b], lines[a]));
+        String[] names = new String[ids.size()];
+        long[] rowFiles = new long[ids.size()];
+        long[] rowLines = new long[ids.size()];
+        long[] rowBytes = new long[ids.size()];
+        for (int row = 0; row < ids.size(); row++) {
+            int id = ids.get(row);
+            names[row] = extensionNames.get(id);
+            rowFiles[row] = files[id];
+            rowLines[row] = lines[id];
+            rowBytes[row] = bytes[id];
+        }
+        return new Table(names, rowFiles, rowLines, rowBytes);
+    }
+
+    /**
+     * 先序编号为ordinal的文件夹的各个子文件夹的汇总，直接位于其下的文件合为一行，按行数从多到少排列；
+     * 名称只读取子文件夹本身的节点，不含子文件夹的溢出段不会读回，仍应在后台线程中调用
+     */
+    public Table getByDirectory(ScanTree tree, TreeIndex index, int ordinal) {
+        int end = index.getSubtreeEnd(ordinal);
+        List<String> names = new ArrayList<>();
+        List<long[]> values = new ArrayList<>();
+        long[] childOrdinals = new long[16];
+        long[] ownFiles = new long[3];
+        long[] prefix = getBytePrefix(index);
+        for (int child = ordinal + 1; child < end; child = index.getSubtreeEnd(child)) {
+            if (index.isDirectory(child)) {
+                if (names.size() == childOrdinals.length) {
+                    childOrdinals = Arrays.copyOf(childOrdinals, names.size() * 2);
+                }
+                childOrdinals[names.size()] = child;
+                names.add(null);
+                int childEnd = Math.min(index.getSubtreeEnd(child), nodeLines.length);
+                values.add(new long[]{getTextFiles(index, child), getLines(index, child),
+                        child >= childEnd ? 0 : prefix[childEnd] - prefix[child]});
+            } else if (child < nodeLines.length && nodeLines[child] != NOT_COUNTED) {
+                ownFiles[0]++;
+                ownFiles[1] += nodeLines[child];
+                ownFiles[2] += index.getOwnSize(child);
+            }
+        }
+        NameDictionary dictionary = tree.getNames();
+        int[] named = {0};
+        tree.visit(Arrays.copyOf(childOrdinals, names.size()),
+                node -> names.set(named[0]++, dictionary.name(node.nameId)));
+        if (ownFiles[0] > 0) {
+            names.add(CompressionEstimator.OWN_FILES);
+            values.add(ownFiles);
+        }
+
+        List<Integer> order = new ArrayList<>();
+        for (int row = 0; row < names.size(); row++) {
+            order.add(row);
+        }
+        order.sort((a, b) -> Long.compare(values.get(b)[1], values.get(a)[1]));
+        String[] tableNames = new String[order.size()];
+        long[] files = new long[order.size()];
+        long[] lines = new long[order.size()];
+        long[] bytes = new long[order.size()];
+        for (int i = 0; i < order.size(); i++) {
+            int row = order.get(i);
+            tableNames[i] = names.get(row);
+            files[i] = values.get(row)[0];
+            lines[i] = values.get(row)[1];
+            bytes[i] = values.get(row)[2];
+        }
+        return new Table(tableNames, files, lines, bytes);
+    }
+
+    private synchronized long[] getBytePrefix(TreeIndex index) {
+        if (bytePrefix == null) {
+            bytePrefix = new long[nodeLines.length + 1];
+            for (int i = 0; i < nodeLines.length; i++) {
+                bytePrefix[i + 1] = bytePrefix[i] + (nodeLines[i] != NOT_COUNTED ? index.getOwnSize(i) : 0);
+            }
+        }
+        return bytePrefix;
+    }
+}
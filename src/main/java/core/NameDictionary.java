@@ -0,0 +1,232 @@
+package com.foldertree.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 名称字典 - 每个不同的名称只以UTF-8存储一次，通过int编号引用
+ * 内部使用开放寻址（线性探测）哈希表进行驻留
+ * 名称字节、偏移和哈希值存放在NodeColumn中，接近内存预算时可以写出到映射文件，只有哈希表始终在堆中
+ */
+public class NameDictionary {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // 所有名称的UTF-8字节依次存放在pool中，offsets[id]..offsets[id+1]为第id个名称
+    private final NodeColumn pool = new NodeColumn(1, 0);
+    private int poolSize;
+    private final NodeColumn offsets = new NodeColumn(4, 0);
+    private final NodeColumn hashes = new NodeColumn(4, 0);
+    private int size;
+
+    // 开放寻址表，存放 id + 1，0 表示空槽
+    private int[] table = new int[INITIAL_CAPACITY * 2];
+    private int mask = table.length - 1;
+
+    // intern调用次数，用于计算去重率
+    private long internCount;
+
+    /**
+     * 驻留名称，返回其编号；相同名称总是返回相同编号
+     */
+    public int intern(String name) {
+        internCount++;
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int hash = hash(bytes);
+
+        int slot = hash & mask;
+        while (true) {
+            int entry = table[slot];
+            if (entry == 0) {
+                break;
+            }
+            int id = entry - 1;
+            if (hashes.getInt(id) == hash && equalsAt(id, bytes)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int id = append(bytes, hash);
+        table[slot] = id + 1;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return id;
+    }
+
+    /**
+     * 根据编号取回名称
+     */
+    public String name(int id) {
+        int start = offsets.getInt(id);
+        byte[] bytes = new byte[offsets.getInt(id + 1) - start];
+        pool.getBytes(start, bytes, 0, bytes.length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 不同名称的数量
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * intern被调用的总次数
+     */
+    public long getInternCount() {
+        return internCount;
+    }
+
+    /**
+     * 去重率：被复用的名称占全部驻留请求的比例
+     */
+    public double getDedupRatio() {
+        return internCount == 0 ? 0 : 1.0 - (double) size / internCount;
+    }
+
+    /**
+     * 名称UTF-8字节总数
+     */
+    public int getPoolBytes() {
+        return poolSize;
+    }
+
+    /**
+     * 字典留在堆中的近似内存（字节）
+     */
+    public long getMemoryBytes() {
+        return pool.getResidentBytes() + offsets.getResidentBytes() + hashes.getResidentBytes() + 4L * table.length;
+    }
+
+    /**
+     * 把名称字节、偏移和哈希值写满的页改为映射，不再占用堆内存
+     */
+    void spill() throws IOException {
+        pool.spill();
+        offsets.spill();
+        hashes.spill();
+    }
+
+    void dispose() {
+        pool.dispose();
+        offsets.dispose();
+        hashes.dispose();
+    }
+
+    /**
+     * 按编号顺序写出全部名称
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        out.writeLong(internCount);
+        writeNames(out, 0);
+    }
+
+    /**
+     * 读取writeTo写出的字典，名称编号保持不变
+     */
+    public static NameDictionary readFrom(DataInput in) throws IOException {
+        NameDictionary dictionary = new NameDictionary();
+        int count = in.readInt();
+        long internCount = in.readLong();
+        byte[] buffer = new byte[256];
+        for (int i = 0; i < count; i++) {
+            int length = in.readUnsignedShort();
+            if (length > buffer.length) {
+                buffer = new byte[length];
+            }
+            in.readFully(buffer, 0, length);
+            dictionary.intern(new String(buffer, 0, length, StandardCharsets.UTF_8));
+        }
+        dictionary.internCount = internCount;
+        return dictionary;
+    }
+
+    /**
+     * 只写出编号从fromId开始的名称，断点日志用它追加上次写入之后新增的名称
+     */
+    void writeDelta(DataOutput out, int fromId) throws IOException {
+        out.writeInt(fromId);
+        out.writeInt(size);
+        out.writeLong(internCount);
+        writeNames(out, fromId);
+    }
+
+    /**
+     * 追加writeDelta写出的名称，起始编号必须与当前的名称数衔接
+     */
+    void readDelta(DataInput in) throws IOException {
+        int fromId = in.readInt();
+        int count = in.readInt();
+        if (fromId != size) {
+            throw new IOException("名称不连续: " + fromId + " != " + size);
+        }
+        long newInternCount = in.readLong();
+        byte[] buffer = new byte[256];
+        for (int i = fromId; i < count; i++) {
+            int length = in.readUnsignedShort();
+            if (length > buffer.length) {
+                buffer = new byte[length];
+            }
+            in.readFully(buffer, 0, length);
+            intern(new String(buffer, 0, length, StandardCharsets.UTF_8));
+        }
+        internCount = newInternCount;
+    }
+
+    private void writeNames(DataOutput out, int fromId) throws IOException {
+        byte[] buffer = new byte[256];
+        for (int id = fromId; id < size; id++) {
+            int start = offsets.getInt(id);
+            int length = offsets.getInt(id + 1) - start;
+            if (length > buffer.length) {
+                buffer = new byte[length];
+            }
+            pool.getBytes(start, buffer, 0, length);
+            out.writeShort(length);
+            out.write(buffer, 0, length);
+        }
+    }
+
+    private int append(byte[] bytes, int hash) {
+        pool.putBytes(poolSize, bytes, 0, bytes.length);
+        int id = size++;
+        offsets.setInt(id, poolSize);
+        hashes.setInt(id, hash);
+        poolSize += bytes.length;
+        offsets.setInt(size, poolSize);
+        return id;
+    }
+
+    private boolean equalsAt(int id, byte[] bytes) {
+        int start = offsets.getInt(id);
+        return offsets.getInt(id + 1) - start == bytes.length && pool.equalsBytes(start, bytes);
+    }
+
+    private void rehash(int newLength) {
+        table = new int[newLength];
+        mask = newLength - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes.getInt(id) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+    }
+
+    // FNV-1a，最后再做一次混合以改善低位分布
+    private static int hash(byte[] bytes) {
+        int h = 0x811c9dc5;
+        for (byte b : bytes) {
+            h ^= b;
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,89 @@
+package com.foldertree.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基于NIO的实现：目录流加一次readAttributes读取全部基本属性
+ * 审计扫描时改为读取unix视图，同一次调用中一并取得权限位和属主、属组
+ */
+class NioDirectoryLister implements DirectoryLister {
+    private static final String UNIX_ATTRIBUTES = "unix:isDirectory,size,lastModifiedTime,mode,uid,gid";
+
+    private final RateLimiter limiter;
+    private final boolean unixAttributes;
+
+    NioDirectoryLister() {
+        this(new RateLimiter());
+    }
+
+    NioDirectoryLister(RateLimiter limiter) {
+        this(limiter, false);
+    }
+
+    NioDirectoryLister(RateLimiter limiter, boolean unixAttributes) {
+        this.limiter = limiter;
+        this.unixAttributes = unixAttributes;
+    }
+
+    @Override
+    public List<DirEntry> list(File dir) {
+        limiter.acquire(1);
+        List<DirEntry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
+            for (Path path : stream) {
+                limiter.acquire(1);
+                if (unixAttributes) {
+                    entries.add(readUnix(path));
+                    continue;
+                }
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    // 失效的符号链接等，按文件处理
+                    entries.add(unreadable(path));
+                    continue;
+                }
+                entries.add(new DirEntry(path.toFile(), attributes.isDirectory(),
+                        attributes.size(), attributes.lastModifiedTime().toMillis()));
+            }
+        } catch (IOException e) {
+            throw new UnreadableDirectoryException(dir, e);
+        } catch (DirectoryIteratorException e) {
+            throw new UnreadableDirectoryException(dir, e.getCause());
+        }
+        return entries;
+    }
+
+    /**
+     * 读取不到属性的子项：失效的符号链接单独标记，其他（例如刚被删除）按文件处理
+     */
+    private DirEntry unreadable(Path path) {
+        if (IoDirectoryLister.isBrokenLink(path, limiter)) {
+            return DirEntry.brokenLink(path.toFile());
+        }
+        return new DirEntry(path.toFile(), false);
+    }
+
+    private DirEntry readUnix(Path path) {
+        Map<String, Object> attributes;
+        try {
+            attributes = Files.readAttributes(path, UNIX_ATTRIBUTES);
+        } catch (IOException e) {
+            return unreadable(path);
+        }
+        return new DirEntry(path.toFile(), (Boolean) attributes.get("isDirectory"),
+                (Long) attributes.get("size"), ((FileTime) attributes.get("lastModifiedTime")).toMillis(),
+                (Integer) attributes.get("mode"), (Integer) attributes.get("uid"), (Integer) attributes.get("gid"));
+    }
+}
@@ -0,0 +1,274 @@
+package com.foldertree.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 按编号存放的定长数据列 - 每节点的统计、名称字典和子树索引都用它代替数组
+ * 数据分成固定条目数的页，最后一页按需加倍；spill把最后一页之前的页写入列文件并改为内存映射，
+ * 映射的页由操作系统按需换入换出，不占用堆内存，之后对这些页的读写直接作用于映射
+ * 还没有写过的编号读出fill；多字节的值按大端顺序存放，与DataOutput写出的格式相同
+ */
+final class NodeColumn {
+
+    private static final int PAGE_SHIFT = 16;
+    // 每页的条目数
+    private static final int PAGE_ENTRIES = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = PAGE_ENTRIES - 1;
+    // 最后一页最少分配的条目数
+    private static final int MIN_ENTRIES = 1024;
+
+    private final int width;
+    private final long fill;
+    private ByteBuffer[] pages = new ByteBuffer[16];
+    private int pageCount;
+    // 编号小于mappedPages的页已经映射到列文件
+    private int mappedPages;
+    private FileChannel channel;
+
+    /**
+     * @param width 每个条目的字节数：1、4或8
+     * @param fill  新页的初始值
+     */
+    NodeColumn(int width, long fill) {
+        this.width = width;
+        this.fill = fill;
+    }
+
+    byte getByte(long index) {
+        int page = (int) (index >>> PAGE_SHIFT);
+        int offset = (int) (index & PAGE_MASK);
+        if (page >= pageCount || offset >= pages[page].capacity()) {
+            return (byte) fill;
+        }
+        return pages[page].get(offset);
+    }
+
+    void setByte(long index, byte value) {
+        writable(index).put((int) (index & PAGE_MASK), value);
+    }
+
+    int getInt(long index) {
+        int page = (int) (index >>> PAGE_SHIFT);
+        int offset = (int) (index & PAGE_MASK) << 2;
+        if (page >= pageCount || offset >= pages[page].capacity()) {
+            return (int) fill;
+        }
+        return pages[page].getInt(offset);
+    }
+
+    void setInt(long index, int value) {
+        writable(index).putInt((int) (index & PAGE_MASK) << 2, value);
+    }
+
+    long getLong(long index) {
+        int page = (int) (index >>> PAGE_SHIFT);
+        int offset = (int) (index & PAGE_MASK) << 3;
+        if (page >= pageCount || offset >= pages[page].capacity()) {
+            return fill;
+        }
+        return pages[page].getLong(offset);
+    }
+
+    void setLong(long index, long value) {
+        writable(index).putLong((int) (index & PAGE_MASK) << 3, value);
+    }
+
+    /**
+     * 单字节的列：从index开始读出length个字节，可以跨页
+     */
+    void getBytes(long index, byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            int page = (int) (index >>> PAGE_SHIFT);
+            int start = (int) (index & PAGE_MASK);
+            int chunk = Math.min(length, PAGE_ENTRIES - start);
+            pages[page].get(start, bytes, offset, chunk);
+            index += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * 单字节的列：从index开始写入length个字节，可以跨页
+     */
+    void putBytes(long index, byte[] bytes, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        writable(index + length - 1);
+        while (length > 0) {
+            int page = (int) (index >>> PAGE_SHIFT);
+            int start = (int) (index & PAGE_MASK);
+            int chunk = Math.min(length, PAGE_ENTRIES - start);
+            pages[page].put(start, bytes, offset, chunk);
+            index += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * 单字节的列：从index开始的bytes.length个字节是否与bytes相同
+     */
+    boolean equalsBytes(long index, byte[] bytes) {
+        for (int i = 0; i < bytes.length; ) {
+            int page = (int) (index >>> PAGE_SHIFT);
+            int start = (int) (index & PAGE_MASK);
+            int chunk = Math.min(bytes.length - i, PAGE_ENTRIES - start);
+            ByteBuffer buffer = pages[page];
+            for (int j = 0; j < chunk; j++) {
+                if (buffer.get(start + j) != bytes[i + j]) {
+                    return false;
+                }
+            }
+            index += chunk;
+            i += chunk;
+        }
+        return true;
+    }
+
+    /**
+     * 写出编号在[from, to)中的条目，这些条目必须都已写过
+     */
+    void write(DataOutput out, long from, long to) throws IOException {
+        byte[] buffer = new byte[16 * 1024];
+        while (from < to) {
+            int page = (int) (from >>> PAGE_SHIFT);
+            int start = (int) (from & PAGE_MASK);
+            int entries = (int) Math.min(to - from, Math.min(PAGE_ENTRIES - start, buffer.length / width));
+            pages[page].get(start * width, buffer, 0, entries * width);
+            out.write(buffer, 0, entries * width);
+            from += entries;
+        }
+    }
+
+    /**
+     * 读入write写出的编号在[from, to)中的条目
+     */
+    void read(DataInput in, long from, long to) throws IOException {
+        if (from >= to) {
+            return;
+        }
+        writable(to - 1);
+        byte[] buffer = new byte[16 * 1024];
+        while (from < to) {
+            int page = (int) (from >>> PAGE_SHIFT);
+            int start = (int) (from & PAGE_MASK);
+            int entries = (int) Math.min(to - from, Math.min(PAGE_ENTRIES - start, buffer.length / width));
+            in.readFully(buffer, 0, entries * width);
+            pages[page].put(start * width, buffer, 0, entries * width);
+            from += entries;
+        }
+    }
+
+    /**
+     * 把最后一页之前还在堆中的页写入列文件并改为映射；列文件建立后立即删除，只通过打开的通道访问
+     */
+    void spill() throws IOException {
+        if (mappedPages >= pageCount - 1) {
+            return;
+        }
+        if (channel == null) {
+            File file = File.createTempFile("foldertree-", ".column");
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+        long pageBytes = (long) PAGE_ENTRIES * width;
+        for (; mappedPages < pageCount - 1; mappedPages++) {
+            ByteBuffer page = pages[mappedPages];
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, mappedPages * pageBytes, pageBytes);
+            mapped.put(0, page.array(), 0, page.capacity());
+            pages[mappedPages] = mapped;
+        }
+    }
+
+    /**
+     * 留在堆中的页占用的字节数
+     */
+    long getResidentBytes() {
+        long bytes = 8L * pages.length;
+        for (int page = mappedPages; page < pageCount; page++) {
+            bytes += pages[page].capacity();
+        }
+        return bytes;
+    }
+
+    /**
+     * 关闭列文件；已映射的页在不再被引用后释放
+     */
+    void dispose() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("关闭列文件失败: " + e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    private ByteBuffer writable(long index) {
+        int page = (int) (index >>> PAGE_SHIFT);
+        int entries = (int) (index & PAGE_MASK) + 1;
+        if (page >= pageCount) {
+            if (page >= pages.length) {
+                pages = Arrays.copyOf(pages, Math.max(page + 1, pages.length * 2));
+            }
+            // 原来的最后一页补足整页，中间跳过的页整页分配
+            if (pageCount > 0) {
+                resize(pageCount - 1, PAGE_ENTRIES);
+            }
+            for (int p = pageCount; p < page; p++) {
+                pages[p] = allocate(PAGE_ENTRIES);
+            }
+            pages[page] = allocate(capacityFor(entries));
+            pageCount = page + 1;
+        } else if (pages[page].capacity() < entries * width) {
+            resize(page, capacityFor(entries));
+        }
+        return pages[page];
+    }
+
+    private static int capacityFor(int entries) {
+        return Math.min(PAGE_ENTRIES, Math.max(MIN_ENTRIES, Integer.highestOneBit(entries - 1) << 1));
+    }
+
+    private void resize(int page, int entries) {
+        ByteBuffer old = pages[page];
+        if (old.capacity() >= entries * width) {
+            return;
+        }
+        ByteBuffer buffer = allocate(entries);
+        buffer.put(0, old.array(), 0, old.capacity());
+        pages[page] = buffer;
+    }
+
+    private ByteBuffer allocate(int entries) {
+        ByteBuffer buffer = ByteBuffer.allocate(entries * width);
+        if (fill != 0) {
+            for (int i = 0; i < entries; i++) {
+                switch (width) {
+                    case 1:
+                        buffer.put(i, (byte) fill);
+                        break;
+                    case 4:
+                        buffer.putInt(i << 2, (int) fill);
+                        break;
+                    default:
+                        buffer.putLong(i << 3, fill);
+                        break;
+                }
+            }
+        }
+        return buffer;
+    }
+}
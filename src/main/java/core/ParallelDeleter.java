@@ -0,0 +1,183 @@
+package com.foldertree.core;
+
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 批量删除清理候选 - 在线程池中并行删除，每项删除前重新确认它仍然符合所属的类别
+ * （扫描之后可能已经有了新内容），不符合时跳过并记为失败；不跟随符号链接
+ */
+public class ParallelDeleter {
+
+    /**
+     * 删除进度回调，在调用delete的线程中调用
+     */
+    public interface Listener {
+        void onProgress(int done, int total, int failed);
+    }
+
+    /**
+     * 删除结果
+     */
+    public static class Outcome {
+        public final List<CleanupFinder.Item> deleted = new ArrayList<>();
+        public final List<String> failures = new ArrayList<>();
+    }
+
+    private final IoThrottle throttle;
+    private int threads = 8;
+    private volatile boolean cancelled;
+
+    /**
+     * @param throttle 每次读取属性和删除各占用一个操作令牌
+     */
+    public ParallelDeleter(IoThrottle throttle) {
+        this.throttle = throttle;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * 删除这些候选；取消后尚未开始的删除会被跳过
+     */
+    public Outcome delete(List<CleanupFinder.Item> items, Listener listener) throws InterruptedException {
+        Outcome outcome = new Outcome();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "parallel-deleter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletionService<CleanupFinder.Item> completion = new ExecutorCompletionService<>(executor);
+            int submitted = 0;
+            for (CleanupFinder.Item item : items) {
+                completion.submit(() -> {
+                    if (cancelled) {
+                        return null;
+                    }
+                    deleteItem(item);
+                    return item;
+                });
+                submitted++;
+            }
+            for (int done = 1; done <= submitted; done++) {
+                try {
+                    CleanupFinder.Item item = completion.take().get();
+                    if (item != null) {
+                        outcome.deleted.add(item);
+                    }
+                } catch (ExecutionException e) {
+                    outcome.failures.add(describe(e.getCause()));
+                }
+                if (listener != null) {
+                    listener.onProgress(done, submitted, outcome.failures.size());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return outcome;
+    }
+
+    private static String describe(Throwable e) {
+        if (e instanceof NoSuchFileException) {
+            return ((NoSuchFileException) e).getFile() + ": 已不存在";
+        }
+        if (e instanceof AccessDeniedException) {
+            return ((AccessDeniedException) e).getFile() + ": 没有权限";
+        }
+        return e.getMessage();
+    }
+
+    private void deleteItem(CleanupFinder.Item item) throws IOException {
+        Path path = Paths.get(item.path);
+        switch (item.category) {
+            case EMPTY_DIRECTORY:
+                requireDirectory(path);
+                delete(path);
+                break;
+            case RECURSIVELY_EMPTY:
+                requireDirectory(path);
+                deleteEmptyTree(path);
+                break;
+            case ZERO_BYTE_FILE: {
+                throttle.getOperations().acquire(1);
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class,
+                        LinkOption.NOFOLLOW_LINKS);
+                if (!attributes.isRegularFile() || attributes.size() != 0) {
+                    throw new IOException("已不是零字节文件: " + path);
+                }
+                delete(path);
+                break;
+            }
+            default:
+                throttle.getOperations().acquire(1);
+                if (!Files.isSymbolicLink(path) || Files.exists(path)) {
+                    throw new IOException("已不是失效的符号链接: " + path);
+                }
+                delete(path);
+                break;
+        }
+    }
+
+    private void requireDirectory(Path path) throws IOException {
+        throttle.getOperations().acquire(1);
+        if (!Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+            throw new IOException("已不是文件夹: " + path);
+        }
+    }
+
+    /**
+     * 先确认整个子树只有文件夹，再自底向上逐个删除，避免删到一半才发现有文件
+     */
+    private void deleteEmptyTree(Path root) throws IOException {
+        List<Path> directories = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                throttle.getOperations().acquire(1);
+                directories.add(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                throw new IOException("文件夹中已有内容: " + file);
+            }
+        });
+        for (int i = directories.size() - 1; i >= 0; i--) {
+            delete(directories.get(i));
+        }
+    }
+
+    private void delete(Path path) throws IOException {
+        throttle.getOperations().acquire(1);
+        try {
+            Files.delete(path);
+        } catch (DirectoryNotEmptyException e) {
+            throw new IOException("文件夹不为空: " + path, e);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.foldertree.core;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 并行预取：按深度优先的顺序提前在线程池中列出即将访问的目录
+ * 只由扫描线程调用list和prefetch，线程池中只执行底层列举
+ *
+ * 自适应时每列出一批目录就根据实测的列举延迟调整在途数量：
+ * 按Little定律，列举耗时之和除以经过的时间就是实际平均在途的列举数，
+ * 扫描线程经常在等待而在途数已经接近并发数时把窗口（连同并发数）加倍，几乎不用等待时减半；
+ * 调整后吞吐量没有达到要求就退回，并且不再朝这个方向调整
+ */
+class PrefetchingLister implements DirectoryLister {
+    // 每列出这么多个目录评估一次
+    private static final int ADJUST_INTERVAL = 512;
+    // 扫描线程等待列举结果的时间超过这个比例时认为并发不足
+    private static final double STARVED = 0.5;
+    // 等待时间低于这个比例时尝试减少并发
+    private static final double IDLE = 0.05;
+    // 实际在途数达到并发数的这个比例时认为并发已用满
+    private static final double FULL = 0.75;
+    // 加倍后吞吐量至少提升这么多才保留；减半后吞吐量下降不超过这么多才保留
+    private static final double MIN_GAIN = 1.10;
+
+    private final DirectoryLister base;
+    private final ExecutorService executor;
+    // 同时在途的预取数量上限
+    private int window;
+    private int minWindow;
+    private int maxWindow;
+    private final boolean adaptive;
+
+    private final Map<String, Future<List<DirEntry>>> pending = new HashMap<>();
+    // 尚未提交的候选目录，栈顶是深度优先顺序中最先访问的目录
+    private final Deque<File> candidates = new ArrayDeque<>();
+
+    // 当前这一批的统计：线程池中的列举耗时之和、扫描线程的等待时间
+    private final AtomicLong busyNanos = new AtomicLong();
+    private long waitNanos;
+    private int listed;
+    private long intervalStart = System.nanoTime();
+    // 上一次调整前的窗口和吞吐量，0表示上一批没有调整
+    private int previousWindow;
+    private double previousRate;
+
+    PrefetchingLister(DirectoryLister base, ExecutorService executor, int window) {
+        this(base, executor, window, window, window);
+    }
+
+    /**
+     * 窗口在minWindow和maxWindow之间自适应调整，两者相等时固定不变
+     */
+    PrefetchingLister(DirectoryLister base, ExecutorService executor, int window, int minWindow, int maxWindow) {
+        this.base = base;
+        this.executor = executor;
+        this.window = window;
+        this.minWindow = Math.min(minWindow, window);
+        this.maxWindow = Math.max(maxWindow, window);
+        this.adaptive = this.minWindow < this.maxWindow;
+    }
+
+    /**
+     * 窗口对应的并发数
+     */
+    int getConcurrency() {
+        return Math.max(1, window / ScanStrategy.PREFETCH_PER_THREAD);
+    }
+
+    @Override
+    public List<DirEntry> list(File dir) {
+        Future<List<DirEntry>> future = pending.remove(dir.getPath());
+        List<DirEntry> entries;
+        if (future != null) {
+            long start = System.nanoTime();
+            entries = await(future, dir);
+            waitNanos += System.nanoTime() - start;
+        } else {
+            candidates.removeFirstOccurrence(dir);
+            long start = System.nanoTime();
+            entries = base.list(dir);
+            long elapsed = System.nanoTime() - start;
+            waitNanos += elapsed;
+            busyNanos.addAndGet(elapsed);
+        }
+        if (adaptive && ++listed >= ADJUST_INTERVAL) {
+            adjust();
+        }
+        fill();
+        return entries;
+    }
+
+    @Override
+    public void prefetch(List<DirEntry> entries) {
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            DirEntry entry = entries.get(i);
+            if (entry.directory) {
+                candidates.push(entry.file);
+            }
+        }
+        fill();
+    }
+
+    private void fill() {
+        while (pending.size() < window && !candidates.isEmpty()) {
+            File dir = candidates.pop();
+            pending.put(dir.getPath(), executor.submit(() -> {
+                long start = System.nanoTime();
+                List<DirEntry> entries = base.list(dir);
+                busyNanos.addAndGet(System.nanoTime() - start);
+                return entries;
+            }));
+        }
+    }
+
+    /**
+     * 根据这一批的吞吐量、实际在途数和等待比例调整窗口
+     */
+    private void adjust() {
+        long now = System.nanoTime();
+        double elapsed = Math.max(1, now - intervalStart);
+        double rate = listed / elapsed;
+        double inFlight = busyNanos.getAndSet(0) / elapsed;
+        double waiting = waitNanos / elapsed;
+        listed = 0;
+        waitNanos = 0;
+        intervalStart = now;
+
+        if (previousWindow > 0) {
+            boolean grew = window > previousWindow;
+            if (rate < previousRate * (grew ? MIN_GAIN : 1 / MIN_GAIN)) {
+                if (grew) {
+                    maxWindow = previousWindow;
+                } else {
+                    minWindow = previousWindow;
+                }
+                resize(previousWindow);
+            }
+            previousWindow = 0;
+        } else if (waiting > STARVED && inFlight > getConcurrency() * FULL && window * 2 <= maxWindow) {
+            previousWindow = window;
+            previousRate = rate;
+            resize(window * 2);
+        } else if (waiting < IDLE && window / 2 >= minWindow) {
+            previousWindow = window;
+            previousRate = rate;
+            resize(window / 2);
+        }
+    }
+
+    /**
+     * 固定大小的线程池随窗口一起调整线程数；ForkJoinPool和虚拟线程只由窗口限制在途数量
+     */
+    private void resize(int newWindow) {
+        window = newWindow;
+        if (executor instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+            int threads = getConcurrency();
+            if (threads > pool.getMaximumPoolSize()) {
+                pool.setMaximumPoolSize(threads);
+                pool.setCorePoolSize(threads);
+            } else {
+                pool.setCorePoolSize(threads);
+                pool.setMaximumPoolSize(threads);
+            }
+        }
+    }
+
+    private List<DirEntry> await(Future<List<DirEntry>> future, File dir) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return base.list(dir);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SecurityException) {
+                throw (SecurityException) e.getCause();
+            }
+            if (e.getCause() instanceof UnreadableDirectoryException) {
+                throw (UnreadableDirectoryException) e.getCause();
+            }
+            return base.list(dir);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Future<List<DirEntry>> future : pending.values()) {
+            future.cancel(true);
+        }
+        pending.clear();
+        candidates.clear();
+        executor.shutdownNow();
+        base.close();
+    }
+}
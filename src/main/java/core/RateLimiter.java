@@ -0,0 +1,93 @@
+package com.foldertree.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 令牌桶限速器 - 按每秒速率补充令牌，桶容量为一秒的量
+ * 速率可以在使用过程中随时调整，小于等于0表示不限速
+ * 可以被多个线程共享
+ */
+public class RateLimiter {
+
+    // 等待时最长一次休眠，以便及时响应速率调整
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private volatile double rate;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private final AtomicLong waitedNanos = new AtomicLong();
+
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * 设置每秒允许的数量，小于等于0表示不限速
+     */
+    public synchronized void setRate(double rate) {
+        refill();
+        this.rate = rate;
+        tokens = Math.min(tokens, capacity(rate));
+    }
+
+    public boolean isLimited() {
+        return rate > 0;
+    }
+
+    /**
+     * 累计因限速而等待的时间（多个线程的等待时间相加）
+     */
+    public long getWaitedNanos() {
+        return waitedNanos.get();
+    }
+
+    /**
+     * 取得permits个令牌，不足时阻塞等待
+     * 超过桶容量的请求在桶满时放行并记为欠账，由之后的请求偿还
+     */
+    public void acquire(long permits) {
+        if (rate <= 0) {
+            return;
+        }
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                double current = rate;
+                if (current <= 0) {
+                    return;
+                }
+                refill();
+                double needed = Math.min(permits, capacity(current));
+                if (tokens >= needed) {
+                    tokens -= permits;
+                    return;
+                }
+                waitNanos = (long) ((needed - tokens) / current * 1e9);
+            }
+
+            long park = Math.max(1, Math.min(waitNanos, MAX_PARK_NANOS));
+            LockSupport.parkNanos(park);
+            waitedNanos.addAndGet(park);
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        double current = rate;
+        if (current > 0) {
+            tokens = Math.min(capacity(current), tokens + (now - lastRefill) * current / 1e9);
+        } else {
+            tokens = 0;
+        }
+        lastRefill = now;
+    }
+
+    private static double capacity(double rate) {
+        return Math.max(1, rate);
+    }
+}
@@ -0,0 +1,321 @@
+package com.foldertree.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 扫描策略自动调优 - 正式扫描前在目标卷上抽取几千个目录，
+ * 把它们分成互不重叠的几份，分别用各个候选策略列出并计时，选出吞吐量最高的策略；
+ * 胜出的是并行策略时，再用剩余的目录把并发数加倍或减半，按实测结果调整线程数；
+ * 正式扫描时并行列举器继续按实测延迟调整并发数，扫描结束后的并发数用于该挂载点之后的扫描
+ *
+ * 每次选择都追加到 ~/.foldertree/strategy.log；在 ~/.foldertree/strategy.properties 中
+ * 写入 "挂载点=策略"（如 /mnt/data=NIO+FORK_JOIN+16）即可为该挂载点固定策略，不再测试
+ */
+public class ScanAutotuner {
+
+    private static final File CONFIG_DIR = new File(System.getProperty("user.home"), ".foldertree");
+    private static final File PIN_FILE = new File(CONFIG_DIR, "strategy.properties");
+    private static final File LOG_FILE = new File(CONFIG_DIR, "strategy.log");
+
+    // 抽样的目录数
+    private static final int SAMPLE_DIRS = 3000;
+    // 每个候选策略至少要测试的目录数，样本不足时不值得调优
+    private static final int MIN_SLICE = 50;
+    // 每个候选策略的测试时间上限
+    private static final long SLICE_TIME_LIMIT_MS = 1500;
+    // 调整并发数时留出的样本份数（加倍和减半各一份）
+    private static final int TUNING_SLICES = 2;
+    // 并发数调整至少要带来这么多提升才采用
+    private static final double MIN_GAIN = 1.10;
+
+    // 本次运行中已经调优过的挂载点
+    private static final Map<String, ScanStrategy> tuned = new ConcurrentHashMap<>();
+
+    // 抽样和测试时的列举同样遵守扫描的限速
+    private final RateLimiter limiter;
+
+    // 本次选中的策略由测试得出时为true，固定的策略和限速时不在扫描中调整
+    private boolean adaptive;
+
+    public ScanAutotuner(RateLimiter limiter) {
+        this.limiter = limiter;
+    }
+
+    /**
+     * 正式扫描是否应按实测延迟继续调整并发数，在choose之后调用
+     */
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * 为根目录所在的挂载点选择扫描策略
+     */
+    public ScanStrategy choose(File root) {
+        String mount = mountKey(root);
+
+        ScanStrategy pinned = loadPins().get(mount);
+        if (pinned != null) {
+            return pinned;
+        }
+        ScanStrategy cached = tuned.get(mount);
+        if (cached != null) {
+            adaptive = !limiter.isLimited();
+            return cached;
+        }
+        // 限速时各个策略测出的都是限速本身，不值得为此多读几千个目录
+        if (limiter.isLimited()) {
+            return ScanStrategy.DEFAULT;
+        }
+
+        List<ScanStrategy> candidates = candidates();
+        List<File> sample = sampleDirectories(root, SAMPLE_DIRS);
+        int sliceSize = sample.size() / (candidates.size() + TUNING_SLICES);
+        if (sliceSize < MIN_SLICE) {
+            return ScanStrategy.DEFAULT;
+        }
+        // 打乱顺序，使每份样本都来自树的不同位置
+        Collections.shuffle(sample, new Random(sample.size()));
+
+        StringBuilder details = new StringBuilder();
+        int slice = 0;
+        ScanStrategy best = null;
+        double bestRate = -1;
+        for (ScanStrategy candidate : candidates) {
+            Measurement m = measure(candidate, sample.subList(slice * sliceSize, (slice + 1) * sliceSize));
+            slice++;
+            details.append(String.format(" %s=%.0f项/秒(%.2f毫秒/目录)", candidate, m.rate, m.latencyMillis));
+            if (m.rate > bestRate) {
+                best = candidate;
+                bestRate = m.rate;
+            }
+        }
+
+        // 根据实测吞吐量调整并发数
+        if (best.getPool() != ScanStrategy.Pool.NONE) {
+            int[] trials = {best.getConcurrency() * 2, best.getConcurrency() / 2};
+            for (int concurrency : trials) {
+                if (concurrency < 1 || concurrency > ScanStrategy.MAX_CONCURRENCY) {
+                    slice++;
+                    continue;
+                }
+                ScanStrategy trial = best.withConcurrency(concurrency);
+                Measurement m = measure(trial, sample.subList(slice * sliceSize, (slice + 1) * sliceSize));
+                slice++;
+                details.append(String.format(" %s=%.0f项/秒(%.2f毫秒/目录)", trial, m.rate, m.latencyMillis));
+                if (m.rate > bestRate * MIN_GAIN) {
+                    best = trial;
+                    bestRate = m.rate;
+                    break;
+                }
+            }
+        }
+
+        tuned.put(mount, best);
+        adaptive = true;
+        log(String.format("挂载点 %s 选择 %s，样本 %d 个目录，每份 %d 个；结果:%s",
+                mount, best, sample.size(), sliceSize, details));
+        return best;
+    }
+
+    /**
+     * 记录正式扫描中调整后的策略，与选中的不同时更新本次运行的缓存并写入日志
+     */
+    public void record(File root, ScanStrategy chosen, DirectoryLister lister) {
+        ScanStrategy observed = chosen.observedIn(lister);
+        if (!adaptive || observed.equals(chosen)) {
+            return;
+        }
+        String mount = mountKey(root);
+        tuned.put(mount, observed);
+        log(String.format("挂载点 %s 扫描中由 %s 调整为 %s", mount, chosen, observed));
+    }
+
+    /**
+     * 候选策略
+     */
+    private List<ScanStrategy> candidates() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<ScanStrategy> candidates = new ArrayList<>();
+        candidates.add(new ScanStrategy(ScanStrategy.Api.IO, ScanStrategy.Pool.NONE, 1));
+        candidates.add(new ScanStrategy(ScanStrategy.Api.NIO, ScanStrategy.Pool.NONE, 1));
+        candidates.add(new ScanStrategy(ScanStrategy.Api.IO, ScanStrategy.Pool.FORK_JOIN, cores));
+        candidates.add(new ScanStrategy(ScanStrategy.Api.NIO, ScanStrategy.Pool.FORK_JOIN, cores));
+        candidates.add(new ScanStrategy(ScanStrategy.Api.NIO, ScanStrategy.Pool.HIGH_CONCURRENCY,
+                Math.min(ScanStrategy.MAX_CONCURRENCY, Math.max(32, cores * 8))));
+        return candidates;
+    }
+
+    private static class Measurement {
+        // 每秒列出的项目数（目录本身也计为一项）
+        double rate;
+        // 平均每个目录的列举延迟
+        double latencyMillis;
+    }
+
+    /**
+     * 用一个策略列出一份样本目录并计时，超过时间上限时只统计已完成的目录
+     */
+    private Measurement measure(ScanStrategy strategy, List<File> dirs) {
+        DirectoryLister base = strategy.createBaseLister(limiter);
+        long items = 0;
+        int completed = 0;
+        long latencyNanos = 0;
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(SLICE_TIME_LIMIT_MS);
+
+        if (strategy.getPool() == ScanStrategy.Pool.NONE) {
+            for (File dir : dirs) {
+                if (System.nanoTime() > deadline) {
+                    break;
+                }
+                long t = System.nanoTime();
+                try {
+                    items += base.list(dir).size() + 1;
+                } catch (SecurityException | UnreadableDirectoryException e) {
+                    // 无法读取的目录不计入
+                    continue;
+                }
+                latencyNanos += System.nanoTime() - t;
+                completed++;
+            }
+        } else {
+            ExecutorService executor = strategy.createExecutor();
+            try {
+                List<Callable<long[]>> tasks = new ArrayList<>();
+                for (File dir : dirs) {
+                    tasks.add(() -> {
+                        long t = System.nanoTime();
+                        int size = base.list(dir).size();
+                        return new long[]{size + 1, System.nanoTime() - t};
+                    });
+                }
+                for (Future<long[]> future : executor.invokeAll(tasks, SLICE_TIME_LIMIT_MS, TimeUnit.MILLISECONDS)) {
+                    try {
+                        long[] result = future.get();
+                        items += result[0];
+                        latencyNanos += result[1];
+                        completed++;
+                    } catch (CancellationException | ExecutionException e) {
+                        // 超时未完成或无法读取的目录不计入
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        Measurement m = new Measurement();
+        m.rate = items * 1e9 / elapsed;
+        m.latencyMillis = completed == 0 ? 0 : latencyNanos / 1e6 / completed;
+        return m;
+    }
+
+    /**
+     * 广度优先找出尚未列出过的目录作为样本，避免测试时命中刚读入的目录缓存；
+     * 整棵树的目录不够时再补上已列出过的目录
+     */
+    private List<File> sampleDirectories(File root, int limit) {
+        DirectoryLister lister = ScanStrategy.DEFAULT.createBaseLister(limiter);
+        List<File> listed = new ArrayList<>();
+        Deque<File> queue = new ArrayDeque<>();
+        queue.add(root);
+        while (!queue.isEmpty() && queue.size() < limit) {
+            File dir = queue.poll();
+            listed.add(dir);
+            try {
+                for (DirEntry entry : lister.list(dir)) {
+                    if (entry.directory) {
+                        queue.add(entry.file);
+                    }
+                }
+            } catch (SecurityException | UnreadableDirectoryException e) {
+                // 跳过无法读取的目录
+            }
+        }
+
+        List<File> sample = new ArrayList<>(queue);
+        for (int i = 0; i < listed.size() && sample.size() < limit; i++) {
+            sample.add(listed.get(i));
+        }
+        return sample;
+    }
+
+    /**
+     * 根目录所在挂载点的标识，取FileStore描述中的挂载路径部分
+     */
+    static String mountKey(File root) {
+        try {
+            String store = Files.getFileStore(root.toPath()).toString();
+            int paren = store.lastIndexOf(" (");
+            return paren > 0 ? store.substring(0, paren) : store;
+        } catch (IOException | SecurityException e) {
+            return root.getAbsolutePath();
+        }
+    }
+
+    /**
+     * 读取按挂载点固定的策略
+     */
+    private Map<String, ScanStrategy> loadPins() {
+        Map<String, ScanStrategy> pins = new ConcurrentHashMap<>();
+        if (!PIN_FILE.isFile()) {
+            return pins;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = new InputStreamReader(Files.newInputStream(PIN_FILE.toPath()), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            System.err.println("无法读取策略配置: " + e.getMessage());
+            return pins;
+        }
+        for (String mount : properties.stringPropertyNames()) {
+            ScanStrategy strategy = ScanStrategy.parse(properties.getProperty(mount));
+            if (strategy != null) {
+                pins.put(mount, strategy);
+            } else {
+                System.err.println("无效的扫描策略: " + mount + "=" + properties.getProperty(mount));
+            }
+        }
+        return pins;
+    }
+
+    private void log(String message) {
+        String time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+        CONFIG_DIR.mkdirs();
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(
+                new FileOutputStream(LOG_FILE, true), StandardCharsets.UTF_8))) {
+            writer.println(time + " " + message);
+        } catch (IOException e) {
+            System.err.println("无法写入策略日志: " + e.getMessage());
+        }
+    }
+}
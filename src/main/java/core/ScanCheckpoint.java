@@ -0,0 +1,341 @@
+package com.foldertree.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * 扫描断点日志 - 定期保存已完成的子树和待处理目录的前沿，
+ * 中断后对同一根目录、同一选项的扫描可以从最后一个断点继续
+ *
+ * 日志由带长度的记录组成：第一条是文件头，之后每个断点追加一条，
+ * 只含上次断点之后新增的名称和节点以及当时的前沿和打开的目录栈，按顺序应用即可恢复；
+ * 日志超过最近一次完整重写的COMPACT_RATIO倍时重新写出完整状态。
+ * 记录的长度在写完后才补上，写到一半中断的记录长度为0，读取时连同之后的内容一起忽略
+ */
+public class ScanCheckpoint {
+
+    private static final int MAGIC = 0x46544350; // "FTCP"
+    private static final int VERSION = 10;
+    // 两次写入断点之间的最短间隔
+    private static final long INTERVAL_MS = 30_000;
+    // 日志超过完整状态的这么多倍时重写
+    private static final int COMPACT_RATIO = 2;
+
+    private static final File CHECKPOINT_DIR = new File(System.getProperty("user.home"),
+            ".foldertree" + File.separator + "checkpoints");
+
+    /**
+     * 前沿中的一个打开目录：续扫时重新列出该目录，并从resumeAfter之后的子项继续
+     */
+    public static class PendingDirectory {
+        public final String path;
+        public final int node;
+        public final int depth;
+        // 最后一个已开始处理的子项名称，为null表示还没有处理任何子项
+        public final String resumeAfter;
+
+        public PendingDirectory(String path, int node, int depth, String resumeAfter) {
+            this.path = path;
+            this.node = node;
+            this.depth = depth;
+            this.resumeAfter = resumeAfter;
+        }
+    }
+
+    /**
+     * 从断点恢复出的扫描状态
+     */
+    public static class State {
+        public final ScanTree tree;
+        public final List<PendingDirectory> frontier;
+        public final int processed;
+        public final int totalItems;
+
+        State(ScanTree tree, List<PendingDirectory> frontier, int processed, int totalItems) {
+            this.tree = tree;
+            this.frontier = frontier;
+            this.processed = processed;
+            this.totalItems = totalItems;
+        }
+    }
+
+    private final String key;
+    private final String id;
+    private final File journalFile;
+    private long lastWriteTime = System.currentTimeMillis();
+    // 磁盘上的日志是否与扫描状态上次写出的位置衔接，不衔接时下次写入完整状态
+    private boolean appendable;
+    // 日志长度和其中完整状态那条记录的长度
+    private long journalBytes;
+    private long baseBytes;
+
+    private ScanCheckpoint(String key) {
+        this.key = key;
+        this.id = UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
+        this.journalFile = new File(CHECKPOINT_DIR, id + ".ckpt");
+    }
+
+    /**
+     * 获取某个根目录和选项对应的断点
+     */
+    public static ScanCheckpoint forScan(String folderPath, ScanOptions options) {
+        String rootPath = new File(folderPath).getAbsolutePath();
+        return new ScanCheckpoint(rootPath + "|" + options.getResultKey());
+    }
+
+    /**
+     * 为一次新扫描分配溢出文件，和日志放在一起以便崩溃后仍然可用；
+     * 每次扫描的文件名都不同，扫描完成后由扫描结果独占，重新扫描不会碰到仍在显示的结果
+     */
+    public File newSpillFile() {
+        return new File(CHECKPOINT_DIR, id + "-" + UUID.randomUUID() + ".spill");
+    }
+
+    public boolean exists() {
+        return journalFile.isFile();
+    }
+
+    /**
+     * 读取断点中已处理的项目数，断点不存在或不匹配时返回-1
+     */
+    public int getSavedProcessed() {
+        if (!exists()) {
+            return -1;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(journalFile, "r")) {
+            long length = raf.length();
+            int headerLength = raf.readInt();
+            if (!isComplete(0, headerLength, length) || !readHeader(raf)) {
+                return -1;
+            }
+            int processed = -1;
+            long position = 4 + headerLength;
+            while (position + 4 <= length) {
+                raf.seek(position);
+                int recordLength = raf.readInt();
+                if (!isComplete(position, recordLength, length)) {
+                    break;
+                }
+                processed = raf.readInt();
+                position += 4 + recordLength;
+            }
+            return processed;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 距上次写入是否已超过间隔
+     */
+    public boolean isDue() {
+        return System.currentTimeMillis() - lastWriteTime >= INTERVAL_MS;
+    }
+
+    /**
+     * 写入断点：通常只在日志末尾追加上次之后的变化；
+     * 日志不衔接或已经过长时先写临时文件再原子替换，避免写到一半时中断留下损坏的日志
+     */
+    public void write(ScanTree tree, List<PendingDirectory> frontier,
+                      int processed, int totalItems) throws IOException {
+        Files.createDirectories(CHECKPOINT_DIR.toPath());
+        boolean rewrite = !appendable || !exists() || journalBytes > baseBytes * COMPACT_RATIO;
+        // 写入失败时不知道日志停在哪里，下次重写
+        appendable = false;
+        if (rewrite) {
+            tree.resetJournal();
+            File tempFile = new File(CHECKPOINT_DIR, journalFile.getName() + ".tmp");
+            try (RandomAccessFile raf = new RandomAccessFile(tempFile, "rw")) {
+                raf.setLength(0);
+                File spillFile = tree.getSpillFile();
+                writeRecord(raf, out -> {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+                    out.writeUTF(key);
+                    out.writeBoolean(spillFile != null);
+                    if (spillFile != null) {
+                        out.writeUTF(spillFile.getName());
+                    }
+                });
+                baseBytes = writeRecord(raf, out -> writeState(out, tree, frontier, processed, totalItems));
+                journalBytes = raf.length();
+            }
+            Files.move(tempFile.toPath(), journalFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+                writeRecord(raf, out -> writeState(out, tree, frontier, processed, totalItems));
+                journalBytes = raf.length();
+            }
+        }
+        appendable = true;
+        lastWriteTime = System.currentTimeMillis();
+    }
+
+    private static void writeState(DataOutputStream out, ScanTree tree, List<PendingDirectory> frontier,
+                                   int processed, int totalItems) throws IOException {
+        out.writeInt(processed);
+        out.writeInt(totalItems);
+        out.writeInt(frontier.size());
+        for (PendingDirectory pending : frontier) {
+            out.writeUTF(pending.path);
+            out.writeInt(pending.node);
+            out.writeInt(pending.depth);
+            out.writeBoolean(pending.resumeAfter != null);
+            if (pending.resumeAfter != null) {
+                out.writeUTF(pending.resumeAfter);
+            }
+        }
+        tree.writeJournal(out);
+    }
+
+    private interface RecordWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * 在文件末尾追加一条记录，写完内容后再补上长度，返回记录的长度
+     */
+    private static long writeRecord(RandomAccessFile raf, RecordWriter writer) throws IOException {
+        long start = raf.length();
+        raf.seek(start);
+        raf.writeInt(0);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Channels.newOutputStream(raf.getChannel()), 64 * 1024));
+        writer.write(out);
+        out.flush();
+        long length = raf.getFilePointer() - start - 4;
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("断点记录过大: " + length);
+        }
+        raf.seek(start);
+        raf.writeInt((int) length);
+        return length;
+    }
+
+    /**
+     * 位于position、长度为recordLength的记录是否已完整写入
+     */
+    private static boolean isComplete(long position, int recordLength, long fileLength) {
+        return recordLength > 0 && position + 4 + recordLength <= fileLength;
+    }
+
+    /**
+     * 按顺序应用日志中完整的记录恢复扫描状态，断点不存在或不属于当前扫描时返回null；
+     * 末尾写到一半的记录被截掉，之后的断点接着追加
+     */
+    public State read() throws IOException {
+        if (!exists()) {
+            return null;
+        }
+        long length = journalFile.length();
+        ScanTree tree = new ScanTree();
+        int processed = 0;
+        int totalItems = 0;
+        List<PendingDirectory> frontier = null;
+        File spillFile;
+        long position;
+        try (DataInputStream in = openJournal()) {
+            int headerLength = in.readInt();
+            if (!isComplete(0, headerLength, length) || !readHeader(in)) {
+                return null;
+            }
+            spillFile = in.readBoolean() ? new File(CHECKPOINT_DIR, in.readUTF()) : null;
+            position = 4 + headerLength;
+            while (position + 4 <= length) {
+                int recordLength = in.readInt();
+                if (!isComplete(position, recordLength, length)) {
+                    break;
+                }
+                processed = in.readInt();
+                totalItems = in.readInt();
+                int frontierSize = in.readInt();
+                frontier = new ArrayList<>(frontierSize);
+                for (int i = 0; i < frontierSize; i++) {
+                    String path = in.readUTF();
+                    int node = in.readInt();
+                    int depth = in.readInt();
+                    String resumeAfter = in.readBoolean() ? in.readUTF() : null;
+                    frontier.add(new PendingDirectory(path, node, depth, resumeAfter));
+                }
+                tree.readJournal(in);
+                if (frontier != null && baseBytes == 0) {
+                    baseBytes = recordLength;
+                }
+                position += 4 + recordLength;
+            }
+        }
+        if (frontier == null) {
+            return null;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+            raf.setLength(position);
+        }
+        journalBytes = position;
+        appendable = true;
+        tree.resumeSpillFile(spillFile);
+        return new State(tree, frontier, processed, totalItems);
+    }
+
+    /**
+     * 扫描完成后删除日志；溢出文件已归扫描结果所有，随其释放
+     */
+    public void complete() {
+        if (journalFile.exists() && !journalFile.delete()) {
+            System.err.println("无法删除断点日志: " + journalFile);
+        }
+    }
+
+    /**
+     * 放弃断点，删除日志和日志中记录的未完成扫描的溢出文件；
+     * 已完成的扫描没有日志，它的溢出文件不会被删除
+     */
+    public void discard() {
+        File spillFile = readSpillFile();
+        complete();
+        if (spillFile != null && spillFile.exists() && !spillFile.delete()) {
+            System.err.println("无法删除断点溢出文件: " + spillFile);
+        }
+    }
+
+    /**
+     * 读取日志中记录的溢出文件，没有日志或日志不匹配时返回null
+     */
+    private File readSpillFile() {
+        if (!exists()) {
+            return null;
+        }
+        try (DataInputStream in = openJournal()) {
+            in.readInt();
+            if (!readHeader(in)) {
+                return null;
+            }
+            return in.readBoolean() ? new File(CHECKPOINT_DIR, in.readUTF()) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private DataInputStream openJournal() throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile), 64 * 1024));
+    }
+
+    private boolean readHeader(DataInput in) throws IOException {
+        return in.readInt() == MAGIC && in.readInt() == VERSION && key.equals(in.readUTF());
+    }
+}
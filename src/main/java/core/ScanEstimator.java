@@ -0,0 +1,339 @@
+package com.foldertree.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 抽样估算器 - 不遍历整棵树，通过随机下探抽样估算项目数和总大小
+ *
+ * 每次下探从根目录出发，在每一层随机选择一个子目录继续，
+ * 把每层的项目数乘以沿途各层子目录数的乘积作为整棵树的一个无偏估计（Knuth估计），
+ * 多次下探取平均并给出95%置信区间。
+ * 在Linux上读取目录的硬链接数（子目录数 = nlink - 2），无需对每个子项stat即可得到子目录数
+ */
+public class ScanEstimator {
+
+    // 默认的抽样时间预算
+    public static final long DEFAULT_TIME_BUDGET_MS = 700;
+    private static final int MAX_PROBES = 20_000;
+    // 使用链接数时，每个目录抽样多少个文件估算平均大小
+    private static final int SIZE_SAMPLES = 16;
+    // 随机挑选子目录时最多尝试的次数，超过后退回逐个判断
+    private static final int PICK_ATTEMPTS = 64;
+    private static final double Z_95 = 1.96;
+
+    /**
+     * 估算结果
+     */
+    public static class Estimate {
+        public final int probes;
+        public final int directoriesListed;
+        public final double entries;
+        public final double entriesMargin;
+        public final double directories;
+        public final double bytes;
+        public final double bytesMargin;
+        public final long elapsedMillis;
+        public final boolean usedLinkCounts;
+
+        Estimate(int probes, int directoriesListed, double entries, double entriesMargin,
+                 double directories, double bytes, double bytesMargin,
+                 long elapsedMillis, boolean usedLinkCounts) {
+            this.probes = probes;
+            this.directoriesListed = directoriesListed;
+            this.entries = entries;
+            this.entriesMargin = entriesMargin;
+            this.directories = directories;
+            this.bytes = bytes;
+            this.bytesMargin = bytesMargin;
+            this.elapsedMillis = elapsedMillis;
+            this.usedLinkCounts = usedLinkCounts;
+        }
+
+        /**
+         * 适合显示在状态栏中的摘要
+         */
+        public String getSummary() {
+            return String.format("估算: 约 %s 项 (95%%: %s–%s), 其中文件夹约 %s, 约 %s (95%%: %s–%s) | %d 次抽样, 列出 %d 个目录, 用时 %d 毫秒%s",
+                    formatCount(entries),
+                    formatCount(Math.max(0, entries - entriesMargin)),
+                    formatCount(entries + entriesMargin),
+                    formatCount(directories),
+                    TreeRenderer.formatSize(Math.round(bytes)),
+                    TreeRenderer.formatSize(Math.round(Math.max(0, bytes - bytesMargin))),
+                    TreeRenderer.formatSize(Math.round(bytes + bytesMargin)),
+                    probes, directoriesListed, elapsedMillis,
+                    usedLinkCounts ? ", 使用链接数" : "");
+        }
+    }
+
+    private final Random random;
+    // 每次列出目录或读取属性前取一个许可，与扫描共用限速；读取缓存不占用许可
+    private final RateLimiter limiter;
+
+    public ScanEstimator(RateLimiter limiter) {
+        this(new Random(), limiter);
+    }
+
+    public ScanEstimator(Random random, RateLimiter limiter) {
+        this.random = random;
+        this.limiter = limiter;
+    }
+
+    /**
+     * 在时间预算内抽样估算，至少下探一次
+     */
+    public Estimate estimate(String folderPath, int maxDepth, long timeBudgetMillis) {
+        File root = new File(folderPath);
+        long start = System.currentTimeMillis();
+        long deadline = start + timeBudgetMillis;
+        // 每次下探都从根目录出发，已列出的目录及其子项属性在本次估算中缓存
+        Map<File, Listing> listings = new HashMap<>();
+        Listing rootListing = list(root, listings);
+        boolean linkCounts = linkCount(rootListing) >= 2;
+
+        // 逐次下探的估计值，用于计算均值和方差
+        double sumEntries = 0;
+        double sumEntriesSq = 0;
+        double sumDirs = 0;
+        double sumBytes = 0;
+        double sumBytesSq = 0;
+        int probes = 0;
+
+        while (probes < MAX_PROBES && (probes == 0 || System.currentTimeMillis() < deadline)) {
+            double[] probe = probe(rootListing, maxDepth, linkCounts, listings);
+            sumEntries += probe[0];
+            sumEntriesSq += probe[0] * probe[0];
+            sumDirs += probe[1];
+            sumBytes += probe[2];
+            sumBytesSq += probe[2] * probe[2];
+            probes++;
+        }
+
+        double meanEntries = sumEntries / probes;
+        double meanBytes = sumBytes / probes;
+        return new Estimate(probes, listings.size(),
+                meanEntries, margin(sumEntries, sumEntriesSq, probes),
+                sumDirs / probes,
+                meanBytes, margin(sumBytes, sumBytesSq, probes),
+                System.currentTimeMillis() - start, linkCounts);
+    }
+
+    /**
+     * 一次随机下探，返回 {项目数, 文件夹数, 字节数} 的估计
+     */
+    private double[] probe(Listing rootListing, int maxDepth, boolean linkCounts, Map<File, Listing> listings) {
+        double entries = 0;
+        double dirs = 0;
+        double bytes = 0;
+        double weight = 1;
+
+        Listing listing = rootListing;
+        int depth = 0;
+        while (maxDepth <= 0 || depth < maxDepth) {
+            File[] items = listing.items;
+            if (items == null || items.length == 0) {
+                break;
+            }
+
+            DirectorySample sample = linkCounts ? sampleWithLinkCount(listing) : sampleAll(listing);
+            entries += weight * items.length;
+            dirs += weight * sample.subdirCount;
+            bytes += weight * sample.fileBytes;
+
+            if (sample.subdirCount == 0 || (maxDepth > 0 && depth + 1 >= maxDepth)) {
+                break;
+            }
+            weight *= sample.subdirCount;
+            listing = list(sample.randomSubdir, listings);
+            depth++;
+        }
+        return new double[]{entries, dirs, bytes};
+    }
+
+    private static class DirectorySample {
+        int subdirCount;
+        double fileBytes;
+        File randomSubdir;
+    }
+
+    // 子项类型：未读取、目录、普通文件、其他（失效的链接、设备等）
+    private static final byte UNKNOWN = 0;
+    private static final byte DIRECTORY = 1;
+    private static final byte FILE = 2;
+    private static final byte OTHER = 3;
+
+    /**
+     * 一个目录的列举结果，以及已经读取过的硬链接数和子项属性
+     */
+    private static class Listing {
+        final File dir;
+        final File[] items;
+        final byte[] types;
+        final long[] sizes;
+        // 未读取时为null
+        Long nlink;
+        // 逐个判断过全部子项后才有
+        List<File> subdirs;
+        double fileBytes;
+
+        Listing(File dir, File[] items) {
+            this.dir = dir;
+            this.items = items;
+            types = new byte[items == null ? 0 : items.length];
+            sizes = new long[types.length];
+        }
+    }
+
+    private Listing list(File dir, Map<File, Listing> listings) {
+        Listing listing = listings.get(dir);
+        if (listing == null) {
+            limiter.acquire(1);
+            listing = new Listing(dir, dir.listFiles());
+            listings.put(dir, listing);
+        }
+        return listing;
+    }
+
+    /**
+     * 子项的类型，第一次用到时读取属性（同时记下大小）
+     */
+    private byte type(Listing listing, int i) {
+        if (listing.types[i] == UNKNOWN) {
+            limiter.acquire(1);
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(listing.items[i].toPath(),
+                        BasicFileAttributes.class);
+                listing.types[i] = attributes.isDirectory() ? DIRECTORY
+                        : attributes.isRegularFile() ? FILE : OTHER;
+                listing.sizes[i] = attributes.isDirectory() ? 0 : attributes.size();
+            } catch (IOException | SecurityException e) {
+                listing.types[i] = OTHER;
+            }
+        }
+        return listing.types[i];
+    }
+
+    /**
+     * 逐个判断每个子项的类型（没有可信的链接数时），结果缓存在listing中，每次只重新随机挑选子目录
+     */
+    private DirectorySample sampleAll(Listing listing) {
+        if (listing.subdirs == null) {
+            List<File> subdirs = new ArrayList<>();
+            double fileBytes = 0;
+            for (int i = 0; i < listing.items.length; i++) {
+                if (type(listing, i) == DIRECTORY) {
+                    subdirs.add(listing.items[i]);
+                } else {
+                    fileBytes += listing.sizes[i];
+                }
+            }
+            listing.subdirs = subdirs;
+            listing.fileBytes = fileBytes;
+        }
+
+        DirectorySample sample = new DirectorySample();
+        sample.subdirCount = listing.subdirs.size();
+        sample.fileBytes = listing.fileBytes;
+        if (!listing.subdirs.isEmpty()) {
+            sample.randomSubdir = listing.subdirs.get(random.nextInt(listing.subdirs.size()));
+        }
+        return sample;
+    }
+
+    /**
+     * 通过链接数得到子目录数，只对少量随机子项读取属性
+     */
+    private DirectorySample sampleWithLinkCount(Listing listing) {
+        if (listing.subdirs != null) {
+            return sampleAll(listing);
+        }
+        long nlink = linkCount(listing);
+        if (nlink < 2) {
+            return sampleAll(listing);
+        }
+
+        File[] items = listing.items;
+        DirectorySample sample = new DirectorySample();
+        sample.subdirCount = (int) Math.min(items.length, nlink - 2);
+        int fileCount = items.length - sample.subdirCount;
+
+        if (sample.subdirCount > 0) {
+            for (int i = 0; i < PICK_ATTEMPTS && sample.randomSubdir == null; i++) {
+                int candidate = random.nextInt(items.length);
+                if (type(listing, candidate) == DIRECTORY) {
+                    sample.randomSubdir = items[candidate];
+                }
+            }
+            if (sample.randomSubdir == null) {
+                return sampleAll(listing);
+            }
+        }
+
+        if (fileCount > 0) {
+            int samples = Math.min(SIZE_SAMPLES, fileCount);
+            double sampledBytes = 0;
+            int sampledFiles = 0;
+            for (int i = 0; i < samples * 4 && sampledFiles < samples; i++) {
+                int candidate = random.nextInt(items.length);
+                if (type(listing, candidate) == FILE) {
+                    sampledBytes += listing.sizes[candidate];
+                    sampledFiles++;
+                }
+            }
+            if (sampledFiles > 0) {
+                sample.fileBytes = sampledBytes / sampledFiles * fileCount;
+            }
+        }
+        return sample;
+    }
+
+    /**
+     * 已列出目录的硬链接数，只读取一次
+     */
+    private long linkCount(Listing listing) {
+        if (listing.nlink == null) {
+            listing.nlink = linkCount(listing.dir);
+        }
+        return listing.nlink;
+    }
+
+    /**
+     * 目录的硬链接数，不支持unix属性视图时返回-1
+     */
+    private long linkCount(File dir) {
+        limiter.acquire(1);
+        try {
+            Object nlink = Files.getAttribute(dir.toPath(), "unix:nlink", LinkOption.NOFOLLOW_LINKS);
+            return ((Number) nlink).longValue();
+        } catch (IOException | UnsupportedOperationException | IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 95%置信区间的半宽
+     */
+    private static double margin(double sum, double sumSq, int n) {
+        if (n < 2) {
+            return 0;
+        }
+        double mean = sum / n;
+        double variance = Math.max(0, (sumSq - n * mean * mean) / (n - 1));
+        return Z_95 * Math.sqrt(variance / n);
+    }
+
+    private static String formatCount(double count) {
+        if (count < 10_000) return String.format("%.0f", count);
+        if (count < 10_000_000) return String.format("%.1f万", count / 10_000);
+        return String.format("%.2f亿", count / 100_000_000);
+    }
+}
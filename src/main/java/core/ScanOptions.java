@@ -0,0 +1,155 @@
+package com.foldertree.core;
+
+import java.util.Set;
+
+/**
+ * 扫描选项
+ */
+public class ScanOptions {
+    private int maxDepth;
+    private boolean showFiles = true;
+    // 扫描时模型可占用的内存预算（字节），0表示不限制
+    private long memoryBudget;
+    // 是否定期写入断点日志
+    private boolean checkpointEnabled;
+    // 是否从已有断点继续
+    private boolean resume;
+    // 分片扫描的工作进程数，小于等于1时在当前进程内扫描
+    private int workerProcesses = 1;
+    // 只扫描根目录下的这些子项（分片工作进程使用），为null表示全部
+    private Set<String> topLevelNames;
+    // 列目录的策略
+    private ScanStrategy strategy = ScanStrategy.DEFAULT;
+    // 是否在扫描前自动测试并选择策略，选中的策略会写回strategy
+    private boolean autoStrategy;
+    // 同一目录内子项的排序方式
+    private SortMode sortMode = SortMode.NAME;
+    // 是否同时读取权限和属主进行安全审计
+    private boolean audit;
+    // 是否不展开识别为构建产物和缓存的文件夹（如node_modules）
+    private boolean pruneArtifacts;
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    public boolean isShowFiles() {
+        return showFiles;
+    }
+
+    public void setShowFiles(boolean showFiles) {
+        this.showFiles = showFiles;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public boolean isCheckpointEnabled() {
+        return checkpointEnabled;
+    }
+
+    public void setCheckpointEnabled(boolean checkpointEnabled) {
+        this.checkpointEnabled = checkpointEnabled;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    public void setResume(boolean resume) {
+        this.resume = resume;
+    }
+
+    public int getWorkerProcesses() {
+        return workerProcesses;
+    }
+
+    public void setWorkerProcesses(int workerProcesses) {
+        this.workerProcesses = workerProcesses;
+    }
+
+    public Set<String> getTopLevelNames() {
+        return topLevelNames;
+    }
+
+    public void setTopLevelNames(Set<String> topLevelNames) {
+        this.topLevelNames = topLevelNames;
+    }
+
+    public ScanStrategy getStrategy() {
+        return strategy;
+    }
+
+    public void setStrategy(ScanStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    public boolean isAutoStrategy() {
+        return autoStrategy;
+    }
+
+    public void setAutoStrategy(boolean autoStrategy) {
+        this.autoStrategy = autoStrategy;
+    }
+
+    public SortMode getSortMode() {
+        return sortMode;
+    }
+
+    public void setSortMode(SortMode sortMode) {
+        this.sortMode = sortMode;
+    }
+
+    public boolean isAudit() {
+        return audit;
+    }
+
+    public void setAudit(boolean audit) {
+        this.audit = audit;
+    }
+
+    public boolean isPruneArtifacts() {
+        return pruneArtifacts;
+    }
+
+    public void setPruneArtifacts(boolean pruneArtifacts) {
+        this.pruneArtifacts = pruneArtifacts;
+    }
+
+    /**
+     * 复制一份选项
+     */
+    public ScanOptions copy() {
+        ScanOptions copy = new ScanOptions();
+        copy.maxDepth = maxDepth;
+        copy.showFiles = showFiles;
+        copy.memoryBudget = memoryBudget;
+        copy.checkpointEnabled = checkpointEnabled;
+        copy.resume = resume;
+        copy.workerProcesses = workerProcesses;
+        copy.topLevelNames = topLevelNames;
+        copy.strategy = strategy;
+        copy.autoStrategy = autoStrategy;
+        copy.sortMode = sortMode;
+        copy.audit = audit;
+        copy.pruneArtifacts = pruneArtifacts;
+        return copy;
+    }
+
+    /**
+     * 会影响扫描结果的选项组成的键，只有键相同的断点才能续扫
+     */
+    public String getResultKey() {
+        String key = "depth=" + maxDepth + ";files=" + showFiles + ";sort=" + sortMode;
+        return pruneArtifacts ? key + ";prune" : key;
+    }
+}
@@ -0,0 +1,179 @@
+package com.foldertree.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * 扫描快照 - 把完整的扫描结果（名称字典加全部先序节点）写入单个文件
+ * 用于多进程分片扫描的部分结果交换，以及缓存上一次的扫描结果供变化查询使用
+ */
+public class ScanSnapshot {
+
+    private static final int MAGIC = 0x4654534E; // "FTSN"
+    private static final int VERSION = 3;
+
+    /**
+     * 写出快照，已溢出的子树会被流式读回并一起写入
+     */
+    public static void write(ScanTree tree, String rootPath, ScanOptions options,
+                             File file) throws IOException {
+        write(tree, rootPath, options, file, System.currentTimeMillis());
+    }
+
+    /**
+     * 写出快照，createdTime为快照对应的时间点（通常是扫描开始的时间）
+     */
+    public static void write(ScanTree tree, String rootPath, ScanOptions options,
+                             File file, long createdTime) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(rootPath);
+            out.writeUTF(options.getResultKey());
+            out.writeLong(createdTime);
+
+            tree.getNames().writeTo(out);
+            out.writeLong(tree.size());
+            try {
+                tree.visit(node -> {
+                    try {
+                        node.write(out);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * 打开快照进行顺序读取
+     */
+    public static Reader open(File file) throws IOException {
+        return new Reader(file);
+    }
+
+    /**
+     * 把整个快照读入内存中的模型
+     */
+    public static ScanTree read(File file) throws IOException {
+        try (Reader reader = open(file)) {
+            ScanTree tree = new ScanTree();
+            while (reader.hasNext()) {
+                ScanTree.NodeRecord node = reader.next();
+                tree.addNode(node, reader.getNames().name(node.nameId));
+            }
+            return tree;
+        }
+    }
+
+    /**
+     * 快照的顺序读取器，支持预读下一个节点的深度
+     */
+    public static class Reader implements Closeable {
+        private final DataInputStream in;
+        private final String rootPath;
+        private final String optionsKey;
+        private final long createdTime;
+        private final NameDictionary names;
+        private final long nodeCount;
+        private long remaining;
+
+        private final ScanTree.NodeRecord current = new ScanTree.NodeRecord();
+        private final ScanTree.NodeRecord lookahead = new ScanTree.NodeRecord();
+        private boolean hasLookahead;
+
+        private Reader(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new IOException("不是有效的快照文件: " + file);
+                }
+                rootPath = in.readUTF();
+                optionsKey = in.readUTF();
+                createdTime = in.readLong();
+                names = NameDictionary.readFrom(in);
+                nodeCount = in.readLong();
+                remaining = nodeCount;
+                fill();
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        private void fill() throws IOException {
+            hasLookahead = remaining > 0;
+            if (hasLookahead) {
+                lookahead.read(in);
+                remaining--;
+            }
+        }
+
+        public boolean hasNext() {
+            return hasLookahead;
+        }
+
+        /**
+         * 预读下一个节点但不前进，没有更多节点时返回null
+         */
+        public ScanTree.NodeRecord peek() {
+            return hasLookahead ? lookahead : null;
+        }
+
+        /**
+         * 下一个节点的深度，没有更多节点时返回-1
+         */
+        public int peekDepth() {
+            return hasLookahead ? lookahead.depth : -1;
+        }
+
+        /**
+         * 读取下一个节点，返回的记录在下次调用前有效
+         */
+        public ScanTree.NodeRecord next() throws IOException {
+            current.copyFrom(lookahead);
+            fill();
+            return current;
+        }
+
+        public String getRootPath() {
+            return rootPath;
+        }
+
+        public String getOptionsKey() {
+            return optionsKey;
+        }
+
+        public long getCreatedTime() {
+            return createdTime;
+        }
+
+        public NameDictionary getNames() {
+            return names;
+        }
+
+        /**
+         * 快照中的节点总数
+         */
+        public long getNodeCount() {
+            return nodeCount;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.foldertree.core;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 扫描策略：列目录使用的API、并行方式和并发数
+ * 文本形式为 "API+并行方式+并发数"，例如 "NIO+FORK_JOIN+16"，用于日志和按挂载点固定策略
+ */
+public class ScanStrategy {
+
+    public enum Api {
+        IO, NIO
+    }
+
+    public enum Pool {
+        // 在扫描线程中顺序列目录
+        NONE,
+        FORK_JOIN,
+        // 高并发线程池，运行在Java 21及以上时使用虚拟线程
+        HIGH_CONCURRENCY
+    }
+
+    // 与最初的扫描方式相同
+    public static final ScanStrategy DEFAULT = new ScanStrategy(Api.IO, Pool.NONE, 1);
+
+    // 并行预取时每个线程平均在途的目录数
+    static final int PREFETCH_PER_THREAD = 4;
+    // 自适应时并发数的上限
+    static final int MAX_CONCURRENCY = 256;
+
+    private final Api api;
+    private final Pool pool;
+    private final int concurrency;
+
+    public ScanStrategy(Api api, Pool pool, int concurrency) {
+        this.api = api;
+        this.pool = pool;
+        this.concurrency = pool == Pool.NONE ? 1 : Math.max(1, concurrency);
+    }
+
+    public Api getApi() {
+        return api;
+    }
+
+    public Pool getPool() {
+        return pool;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * 换一个并发数
+     */
+    public ScanStrategy withConcurrency(int concurrency) {
+        return new ScanStrategy(api, pool, concurrency);
+    }
+
+    /**
+     * 创建受限速器约束的目录列举器，用完后需要close
+     */
+    public DirectoryLister createLister(RateLimiter limiter) {
+        return createLister(limiter, false);
+    }
+
+    /**
+     * audit为true时底层总是使用NIO并读取unix属性（java.io无法取得权限和属主），
+     * 系统不支持unix属性视图时与普通扫描相同
+     */
+    public DirectoryLister createLister(RateLimiter limiter, boolean audit) {
+        return createLister(limiter, audit, false);
+    }
+
+    /**
+     * adaptive为true时并行列举器在扫描中按实测延迟调整并发数，见PrefetchingLister
+     */
+    public DirectoryLister createLister(RateLimiter limiter, boolean audit, boolean adaptive) {
+        DirectoryLister base = audit && SecurityAudit.isSupported()
+                ? new NioDirectoryLister(limiter, true) : createBaseLister(limiter);
+        if (pool == Pool.NONE) {
+            return base;
+        }
+        int window = concurrency * PREFETCH_PER_THREAD;
+        if (!adaptive) {
+            return new PrefetchingLister(base, createExecutor(), window);
+        }
+        return new PrefetchingLister(base, createExecutor(), window,
+                PREFETCH_PER_THREAD, MAX_CONCURRENCY * PREFETCH_PER_THREAD);
+    }
+
+    /**
+     * 并行列举器在扫描中调整后的策略，其他列举器返回自身
+     */
+    public ScanStrategy observedIn(DirectoryLister lister) {
+        if (!(lister instanceof PrefetchingLister)) {
+            return this;
+        }
+        return withConcurrency(((PrefetchingLister) lister).getConcurrency());
+    }
+
+    /**
+     * 不带并行的底层列举器，线程安全
+     */
+    DirectoryLister createBaseLister(RateLimiter limiter) {
+        return api == Api.NIO ? new NioDirectoryLister(limiter) : new IoDirectoryLister(limiter);
+    }
+
+    /**
+     * 并行方式对应的线程池
+     */
+    ExecutorService createExecutor() {
+        if (pool == Pool.FORK_JOIN) {
+            return new ForkJoinPool(concurrency);
+        }
+        ExecutorService virtual = newVirtualThreadExecutor();
+        if (virtual != null) {
+            return virtual;
+        }
+        return Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "foldertree-lister");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 虚拟线程从Java 21开始可用，项目以Java 17编译，因此通过反射获取
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 解析文本形式，格式不正确时返回null
+     */
+    public static ScanStrategy parse(String text) {
+        if (text == null) {
+            return null;
+        }
+        String[] parts = text.trim().split("\\+");
+        try {
+            Api api = Api.valueOf(parts[0].trim().toUpperCase());
+            Pool pool = parts.length > 1 ? Pool.valueOf(parts[1].trim().toUpperCase()) : Pool.NONE;
+            int concurrency = parts.length > 2 ? Integer.parseInt(parts[2].trim()) : 1;
+            return new ScanStrategy(api, pool, concurrency);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return api + "+" + pool + "+" + concurrency;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof ScanStrategy)) {
+            return false;
+        }
+        ScanStrategy strategy = (ScanStrategy) other;
+        return api == strategy.api && pool == strategy.pool && concurrency == strategy.concurrency;
+    }
+
+    @Override
+    public int hashCode() {
+        return (api.hashCode() * 31 + pool.hashCode()) * 31 + concurrency;
+    }
+}
@@ -0,0 +1,1178 @@
+package com.foldertree.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * 扫描结果模型 - 按先序顺序保存每个节点的名称编号、深度、标志、大小和文件数
+ * 名称通过NameDictionary去重存储，树状图文本在需要时再渲染
+ * 文件夹的大小和文件数在其子节点追加完毕时由子节点汇总得到（只统计扫描深度以内的部分）
+ *
+ * 设置内存预算后，已完成的子树在接近预算时会被写入临时文件，
+ * 内存中只留下一个溢出标记节点，渲染时再从文件中流式读回；
+ * 名称字典和按先序编号记录的各项统计同时把写满的页改为内存映射
+ */
+public class ScanTree {
+
+    public static final byte FLAG_DIRECTORY = 1;
+    public static final byte FLAG_LAST = 2;
+    public static final byte FLAG_DENIED = 4;
+    // 溢出标记节点：nameId字段保存段编号
+    static final byte FLAG_SPILLED = 8;
+    // 目标不存在的符号链接（按大小为0的文件统计）
+    public static final byte FLAG_BROKEN_LINK = 16;
+    // 扫描时识别为构建产物而没有展开的文件夹，没有子项，大小未知
+    public static final byte FLAG_PRUNED = 32;
+
+    static final String DENIED_NAME = "[权限拒绝]";
+
+    // 每个节点在内存和溢出文件中占用的字节数：nameId(4) + depth(2) + flags(1) + size(8) + fileCount(4) + modified(4)
+    private static final int NODE_BYTES = 23;
+    // 达到预算的该比例时开始溢出
+    private static final double SPILL_THRESHOLD = 0.9;
+    // 少于该节点数的尾部不值得单独溢出
+    private static final int MIN_SPILL_NODES = 1024;
+
+    /**
+     * 单个节点的记录，遍历时复用同一个实例
+     * 溢出文件、断点和快照都使用同样的记录格式
+     */
+    public static class NodeRecord {
+        public int nameId;
+        public int depth;
+        public byte flags;
+        // 文件的大小；文件夹为子树中所有文件的总大小
+        public long size;
+        // 文件为1；文件夹为子树中的文件总数
+        public int fileCount;
+        // 修改时间，按无符号数解释的秒数，0表示未知
+        public int modified;
+
+        public boolean isDirectory() {
+            return (flags & FLAG_DIRECTORY) != 0;
+        }
+
+        /**
+         * 修改时间（毫秒），未知时返回0
+         */
+        public long getModifiedMillis() {
+            return Integer.toUnsignedLong(modified) * 1000;
+        }
+
+        public boolean isDenied() {
+            return (flags & FLAG_DENIED) != 0;
+        }
+
+        public void copyFrom(NodeRecord other) {
+            nameId = other.nameId;
+            depth = other.depth;
+            flags = other.flags;
+            size = other.size;
+            fileCount = other.fileCount;
+            modified = other.modified;
+        }
+
+        public boolean isBrokenLink() {
+            return (flags & FLAG_BROKEN_LINK) != 0;
+        }
+
+        public boolean isPruned() {
+            return (flags & FLAG_PRUNED) != 0;
+        }
+
+        public boolean isLast() {
+            return (flags & FLAG_LAST) != 0;
+        }
+
+        public void write(DataOutput out) throws IOException {
+            out.writeInt(nameId);
+            out.writeShort(depth);
+            out.writeByte(flags);
+            out.writeLong(size);
+            out.writeInt(fileCount);
+            out.writeInt(modified);
+        }
+
+        public void read(DataInput in) throws IOException {
+            nameId = in.readInt();
+            depth = in.readShort();
+            flags = in.readByte();
+            size = in.readLong();
+            fileCount = in.readInt();
+            modified = in.readInt();
+        }
+    }
+
+    /**
+     * 节点访问接口，按先序依次回调每个节点（溢出的节点会被透明读回）
+     */
+    public interface NodeVisitor {
+        void visit(NodeRecord node);
+    }
+
+    /**
+     * 带先序编号和完整路径的遍历回调
+     */
+    public interface PathVisitor {
+        void visit(NodeRecord node, long ordinal, String path);
+    }
+
+    private final NameDictionary names;
+    private int[] nameIds = new int[1024];
+    private short[] depths = new short[1024];
+    private byte[] flags = new byte[1024];
+    private long[] sizes = new long[1024];
+    private int[] fileCounts = new int[1024];
+    private int[] modifieds = new int[1024];
+    private int count;
+    private long logicalCount;
+
+    // 打开的目录栈：记录每层目录可以开始溢出的位置、目录节点及其先序编号以及正在累加的大小和文件数
+    private int[] spillFloors = new int[64];
+    private int[] openNodes = new int[64];
+    private long[] openOrdinals = new long[64];
+    private long[] openSizes = new long[64];
+    private int[] openFileCounts = new int[64];
+    private int openDirs;
+
+    // 溢出相关
+    private long memoryBudget;
+    private File spillFile;
+    private DataOutputStream spillOut;
+    private long spillBytes;
+    private long spilledNodes;
+    private long[] segmentOffsets = new long[16];
+    private int[] segmentLengths = new int[16];
+    // 每个溢出段展开后的节点数（包括嵌套的段），用于整段跳过
+    private long[] segmentNodes = new long[16];
+    private int segmentCount;
+    // 按编号定位用：驻留数组中顶层溢出标记的位置及其先序编号，节点数或段数变化后重建
+    private int[] markerSlots = new int[0];
+    private long[] markerOrdinals = new long[0];
+    private int markerCount;
+    private int markersBuiltAt = -1;
+    private int markersBuiltSegments;
+
+    // 断点日志：上次写入之后只需写出新增的名称、从journalFrom开始的驻留节点和新增的溢出段，
+    // 以及编号在journalFrom之前、期间才汇总出大小的目录节点
+    private int journalNames;
+    private int journalFrom;
+    private int journalSegments;
+    private int[] journalClosed = new int[64];
+    private int journalClosedCount;
+
+    // 最大的文件和文件夹排行，为null时不统计
+    private SizeRanking ranking;
+    // 按扩展名的统计，为null时不统计
+    private ExtensionStats extensionStats;
+    // 文件大小分布，为null时不统计
+    private SizeDistribution sizeDistribution;
+    // 按修改时间的文件年龄统计，为null时不统计
+    private AgeStats ageStats;
+    // 扫描后按文件头检测的内容类型，为null时未检测
+    private ContentTypeStats contentTypes;
+    private LineCounts lineCounts;
+    // 审计扫描时的权限和属主统计，为null时未审计
+    private SecurityAudit securityAudit;
+
+    public ScanTree() {
+        this(new NameDictionary());
+    }
+
+    public ScanTree(NameDictionary names) {
+        this.names = names;
+    }
+
+    /**
+     * 设置内存预算（字节），0表示不限制
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * 在追加节点的同时统计最大的文件和文件夹
+     */
+    public void setRanking(SizeRanking ranking) {
+        this.ranking = ranking;
+    }
+
+    public SizeRanking getRanking() {
+        return ranking;
+    }
+
+    /**
+     * 在追加节点的同时按扩展名统计文件
+     */
+    public void setExtensionStats(ExtensionStats extensionStats) {
+        this.extensionStats = extensionStats;
+    }
+
+    public ExtensionStats getExtensionStats() {
+        return extensionStats;
+    }
+
+    /**
+     * 在追加节点的同时记录文件大小分布
+     */
+    public void setSizeDistribution(SizeDistribution sizeDistribution) {
+        this.sizeDistribution = sizeDistribution;
+    }
+
+    public SizeDistribution getSizeDistribution() {
+        return sizeDistribution;
+    }
+
+    /**
+     * 在追加节点的同时按修改时间统计文件年龄
+     */
+    public void setAgeStats(AgeStats ageStats) {
+        this.ageStats = ageStats;
+    }
+
+    public AgeStats getAgeStats() {
+        return ageStats;
+    }
+
+    /**
+     * 保存扫描完成后检测出的内容类型
+     */
+    public void setContentTypes(ContentTypeStats contentTypes) {
+        this.contentTypes = contentTypes;
+    }
+
+    public ContentTypeStats getContentTypes() {
+        return contentTypes;
+    }
+
+    /**
+     * 保存扫描完成后统计出的行数
+     */
+    public void setLineCounts(LineCounts lineCounts) {
+        this.lineCounts = lineCounts;
+    }
+
+    public LineCounts getLineCounts() {
+        return lineCounts;
+    }
+
+    /**
+     * 审计扫描时由扫描器逐项记录权限和属主
+     */
+    public void setSecurityAudit(SecurityAudit securityAudit) {
+        this.securityAudit = securityAudit;
+    }
+
+    public SecurityAudit getSecurityAudit() {
+        return securityAudit;
+    }
+
+    /**
+     * 指定溢出文件的位置（例如断点目录），不指定时使用临时文件
+     */
+    public void setSpillFile(File spillFile) {
+        this.spillFile = spillFile;
+    }
+
+    /**
+     * 本树独占的溢出文件，还没有指定或创建时为null
+     */
+    public File getSpillFile() {
+        return spillFile;
+    }
+
+    /**
+     * 按先序追加一个节点，返回节点在内存中的位置
+     */
+    public int addNode(String name, int depth, byte nodeFlags) {
+        return addNode(name, depth, nodeFlags, 0);
+    }
+
+    /**
+     * 按先序追加一个节点并记录文件大小（文件夹的大小在子节点追加完毕时汇总）
+     */
+    public int addNode(String name, int depth, byte nodeFlags, long size) {
+        return addNode(name, depth, nodeFlags, size, 0);
+    }
+
+    /**
+     * 按先序追加一个节点并记录文件大小和修改时间（毫秒，不大于0表示未知）
+     */
+    public int addNode(String name, int depth, byte nodeFlags, long size, long lastModified) {
+        logicalCount++;
+        boolean isFile = (nodeFlags & (FLAG_DIRECTORY | FLAG_DENIED)) == 0;
+        return addToParent(append(names.intern(name), depth, nodeFlags,
+                isFile ? size : 0, isFile ? 1 : 0, toSeconds(lastModified)), name);
+    }
+
+    private static int toSeconds(long millis) {
+        return millis <= 0 ? 0 : (int) Math.min(0xFFFFFFFFL, millis / 1000);
+    }
+
+    /**
+     * 按先序追加一个从其他模型复制来的节点（名称重新驻留到本模型的字典）
+     */
+    public int addNode(NodeRecord node, String name) {
+        logicalCount++;
+        return addToParent(append(names.intern(name), node.depth, node.flags, node.size, node.fileCount,
+                node.modified), name);
+    }
+
+    /**
+     * 文件的大小直接计入所在目录；文件夹在endChildren时再计入
+     */
+    private int addToParent(int index, String name) {
+        if (openDirs > 0 && (flags[index] & FLAG_DIRECTORY) == 0) {
+            openSizes[openDirs - 1] += sizes[index];
+            openFileCounts[openDirs - 1] += fileCounts[index];
+        }
+        if ((flags[index] & (FLAG_DIRECTORY | FLAG_DENIED)) == 0) {
+            if (ranking != null) {
+                ranking.offerFile(sizes[index], logicalCount - 1);
+            }
+            if (extensionStats != null) {
+                extensionStats.addFile(logicalCount - 1, name, sizes[index]);
+            }
+            if (sizeDistribution != null) {
+                sizeDistribution.addFile(logicalCount - 1, sizes[index]);
+            }
+            if (ageStats != null) {
+                ageStats.addFile(logicalCount - 1, sizes[index], Integer.toUnsignedLong(modifieds[index]) * 1000);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 在目录下追加一个"权限拒绝"占位节点
+     */
+    public int addDeniedNode(int depth) {
+        return addNode(DENIED_NAME, depth, FLAG_DENIED);
+    }
+
+    private void load(int index, NodeRecord node) {
+        node.nameId = nameIds[index];
+        node.depth = depths[index];
+        node.flags = flags[index];
+        node.size = sizes[index];
+        node.fileCount = fileCounts[index];
+        node.modified = modifieds[index];
+    }
+
+    private int append(int nameId, int depth, byte nodeFlags, long size, int fileCount, int modified) {
+        journalFrom = Math.min(journalFrom, count);
+        if (count == nameIds.length) {
+            int newLength = nameIds.length * 2;
+            nameIds = Arrays.copyOf(nameIds, newLength);
+            depths = Arrays.copyOf(depths, newLength);
+            flags = Arrays.copyOf(flags, newLength);
+            sizes = Arrays.copyOf(sizes, newLength);
+            fileCounts = Arrays.copyOf(fileCounts, newLength);
+            modifieds = Arrays.copyOf(modifieds, newLength);
+        }
+        nameIds[count] = nameId;
+        depths[count] = (short) depth;
+        flags[count] = nodeFlags;
+        sizes[count] = size;
+        fileCounts[count] = fileCount;
+        modifieds[count] = modified;
+        return count++;
+    }
+
+    /**
+     * 开始追加某个目录的子节点，需要在追加该目录节点之后立即调用
+     */
+    public void beginChildren(int node) {
+        if (openDirs == spillFloors.length) {
+            int newLength = openDirs * 2;
+            spillFloors = Arrays.copyOf(spillFloors, newLength);
+            openNodes = Arrays.copyOf(openNodes, newLength);
+            openOrdinals = Arrays.copyOf(openOrdinals, newLength);
+            openSizes = Arrays.copyOf(openSizes, newLength);
+            openFileCounts = Arrays.copyOf(openFileCounts, newLength);
+        }
+        spillFloors[openDirs] = node + 1;
+        openNodes[openDirs] = node;
+        openOrdinals[openDirs] = logicalCount - 1;
+        openSizes[openDirs] = 0;
+        openFileCounts[openDirs] = 0;
+        openDirs++;
+    }
+
+    /**
+     * 当前目录的子节点追加完毕：汇总出目录的大小和文件数，并计入上一层目录
+     * 打开的目录节点位于溢出位置之前，始终驻留在内存中
+     */
+    public void endChildren() {
+        openDirs--;
+        int node = openNodes[openDirs];
+        sizes[node] = openSizes[openDirs];
+        fileCounts[node] = openFileCounts[openDirs];
+        if (node < journalFrom) {
+            if (journalClosedCount == journalClosed.length) {
+                journalClosed = Arrays.copyOf(journalClosed, journalClosedCount * 2);
+            }
+            journalClosed[journalClosedCount++] = node;
+        }
+        if (openDirs > 0) {
+            openSizes[openDirs - 1] += sizes[node];
+            openFileCounts[openDirs - 1] += fileCounts[node];
+            if (ranking != null) {
+                ranking.offerDirectory(sizes[node], openOrdinals[openDirs]);
+            }
+        }
+    }
+
+    /**
+     * 检查内存预算，接近预算时把当前目录下已完成的子节点溢出到磁盘
+     * 只能在两个兄弟节点之间调用（此时尾部节点都已完成）
+     */
+    public void checkBudget() {
+        if (memoryBudget <= 0 || openDirs == 0) {
+            return;
+        }
+        long threshold = (long) (memoryBudget * SPILL_THRESHOLD);
+        if (getUsedBytes() < threshold) {
+            return;
+        }
+        try {
+            // 先把字典和统计写满的页改为映射，这一步只写出新增的页
+            spillColumns();
+            long used = getUsedBytes();
+            if (used < threshold) {
+                return;
+            }
+            int from = spillFloors[openDirs - 1];
+            long tailBytes = (long) NODE_BYTES * (count - from);
+            // 其余部分（打开的目录、字典的哈希表、各列正在写的页）本身已超出预算时，溢出节点也降不到预算以下，
+            // 这时只在尾部至少与超出的部分相当时才溢出，而不是每个子树之后都写出一个小段
+            if (count - from < MIN_SPILL_NODES || tailBytes < used - tailBytes - threshold) {
+                return;
+            }
+            spillTail(from);
+            spillFloors[openDirs - 1] = from + 1;
+        } catch (IOException e) {
+            throw new UncheckedIOException("写入溢出文件失败", e);
+        }
+    }
+
+    private void spillColumns() throws IOException {
+        names.spill();
+        if (extensionStats != null) {
+            extensionStats.spill();
+        }
+        if (sizeDistribution != null) {
+            sizeDistribution.spill();
+        }
+        if (ageStats != null) {
+            ageStats.spill();
+        }
+        if (securityAudit != null) {
+            securityAudit.spill();
+        }
+    }
+
+    private void spillTail(int from) throws IOException {
+        if (spillOut == null) {
+            if (spillFile == null) {
+                spillFile = File.createTempFile("foldertree-", ".spill");
+                spillFile.deleteOnExit();
+            } else if (spillFile.getParentFile() != null) {
+                Files.createDirectories(spillFile.getParentFile().toPath());
+            }
+            spillOut = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(spillFile), 64 * 1024));
+        }
+        if (segmentCount == segmentOffsets.length) {
+            segmentOffsets = Arrays.copyOf(segmentOffsets, segmentCount * 2);
+            segmentLengths = Arrays.copyOf(segmentLengths, segmentCount * 2);
+            segmentNodes = Arrays.copyOf(segmentNodes, segmentCount * 2);
+        }
+
+        int segment = segmentCount++;
+        segmentOffsets[segment] = spillBytes;
+        segmentLengths[segment] = count - from;
+
+        NodeRecord node = new NodeRecord();
+        long nodes = 0;
+        for (int i = from; i < count; i++) {
+            load(i, node);
+            node.write(spillOut);
+            if ((flags[i] & FLAG_SPILLED) == 0) {
+                spilledNodes++;
+                nodes++;
+            } else {
+                nodes += segmentNodes[nameIds[i]];
+            }
+        }
+        segmentNodes[segment] = nodes;
+        spillBytes += (long) NODE_BYTES * (count - from);
+
+        count = from;
+        append(segment, depths[from], FLAG_SPILLED, 0, 0, 0);
+    }
+
+    /**
+     * 节点总数（包括已溢出的节点）
+     */
+    public long size() {
+        return logicalCount;
+    }
+
+    public NameDictionary getNames() {
+        return names;
+    }
+
+    /**
+     * 按先序遍历全部节点，已溢出的子树从临时文件中流式读回
+     */
+    public void visit(NodeVisitor visitor) {
+        try {
+            if (spillOut != null) {
+                spillOut.flush();
+            }
+            NodeRecord node = new NodeRecord();
+            for (int i = 0; i < count; i++) {
+                load(i, node);
+                if ((node.flags & FLAG_SPILLED) != 0) {
+                    visitSegment(node.nameId, node, visitor);
+                } else {
+                    visitor.visit(node);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取溢出文件失败", e);
+        }
+    }
+
+    private void visitSegment(int segment, NodeRecord node, NodeVisitor visitor) throws IOException {
+        try (FileInputStream fis = new FileInputStream(spillFile)) {
+            fis.getChannel().position(segmentOffsets[segment]);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(fis, 64 * 1024));
+            for (int i = 0; i < segmentLengths[segment]; i++) {
+                node.read(in);
+                if ((node.flags & FLAG_SPILLED) != 0) {
+                    visitSegment(node.nameId, node, visitor);
+                } else {
+                    visitor.visit(node);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按先序只访问编号在ordinals（升序）中的节点，访问到最后一个编号就停止；
+     * 不含所需编号的溢出段整段跳过，不从临时文件读回
+     */
+    public void visit(long[] ordinals, NodeVisitor visitor) {
+        if (ordinals.length > 0) {
+            visit(new OrdinalCursor(ordinals), visitor);
+        }
+    }
+
+    /**
+     * 按先序访问编号在[from, to)内的节点，到to就停止，之前的溢出段整段跳过
+     */
+    public void visit(long from, long to, NodeVisitor visitor) {
+        if (from < to) {
+            visit(new RangeCursor(from, to), visitor);
+        }
+    }
+
+    private void visit(Cursor cursor, NodeVisitor visitor) {
+        try {
+            if (spillOut != null) {
+                spillOut.flush();
+            }
+            NodeRecord node = new NodeRecord();
+            for (int i = seek(cursor); i < count && !cursor.isDone(); i++) {
+                load(i, node);
+                if ((node.flags & FLAG_SPILLED) != 0) {
+                    visitSegment(node.nameId, node, cursor, visitor);
+                } else {
+                    cursor.offer(node, visitor);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取溢出文件失败", e);
+        }
+    }
+
+    /**
+     * 找到第一个要访问的编号所在的驻留位置并设置cursor.position，不必从头逐个跳过前面的节点
+     */
+    private int seek(Cursor cursor) {
+        long target = cursor.first();
+        if (markersBuiltAt != count || markersBuiltSegments != segmentCount) {
+            buildMarkers();
+        }
+        // 最后一个起始编号不大于target的溢出标记
+        int lo = 0;
+        int hi = markerCount - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (markerOrdinals[mid] <= target) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (hi < 0) {
+            cursor.position = Math.min(target, count);
+            return (int) cursor.position;
+        }
+        long end = markerOrdinals[hi] + segmentNodes[nameIds[markerSlots[hi]]];
+        if (target < end) {
+            cursor.position = markerOrdinals[hi];
+            return markerSlots[hi];
+        }
+        long slot = Math.min(markerSlots[hi] + 1 + (target - end), count);
+        cursor.position = end + (slot - markerSlots[hi] - 1);
+        return (int) slot;
+    }
+
+    private void buildMarkers() {
+        markerCount = 0;
+        long ordinal = 0;
+        for (int i = 0; i < count; i++) {
+            if ((flags[i] & FLAG_SPILLED) != 0) {
+                if (markerCount == markerSlots.length) {
+                    markerSlots = Arrays.copyOf(markerSlots, Math.max(16, markerCount * 2));
+                    markerOrdinals = Arrays.copyOf(markerOrdinals, markerSlots.length);
+                }
+                markerSlots[markerCount] = i;
+                markerOrdinals[markerCount++] = ordinal;
+                ordinal += segmentNodes[nameIds[i]];
+            } else {
+                ordinal++;
+            }
+        }
+        markersBuiltAt = count;
+        markersBuiltSegments = segmentCount;
+    }
+
+    private void visitSegment(int segment, NodeRecord node, Cursor cursor, NodeVisitor visitor) throws IOException {
+        if (!cursor.wants(segmentNodes[segment])) {
+            cursor.position += segmentNodes[segment];
+            return;
+        }
+        try (FileInputStream fis = new FileInputStream(spillFile)) {
+            fis.getChannel().position(segmentOffsets[segment]);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(fis, 64 * 1024));
+            for (int i = 0; i < segmentLengths[segment] && !cursor.isDone(); i++) {
+                node.read(in);
+                if ((node.flags & FLAG_SPILLED) != 0) {
+                    visitSegment(node.nameId, node, cursor, visitor);
+                } else {
+                    cursor.offer(node, visitor);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按编号访问时的位置，position为下一个节点的先序编号
+     */
+    private abstract static class Cursor {
+        long position;
+
+        /**
+         * 第一个要访问的编号
+         */
+        abstract long first();
+
+        abstract boolean isDone();
+
+        /**
+         * 接下来的nodes个节点中是否有要访问的
+         */
+        abstract boolean wants(long nodes);
+
+        abstract void offer(NodeRecord node, NodeVisitor visitor);
+    }
+
+    /**
+     * 访问一组升序的编号，next为下一个要访问的编号
+     */
+    private static class OrdinalCursor extends Cursor {
+        final long[] ordinals;
+        int next;
+
+        OrdinalCursor(long[] ordinals) {
+            this.ordinals = ordinals;
+        }
+
+        @Override
+        long first() {
+            return ordinals[0];
+        }
+
+        @Override
+        boolean isDone() {
+            return next >= ordinals.length;
+        }
+
+        @Override
+        boolean wants(long nodes) {
+            return ordinals[next] < position + nodes;
+        }
+
+        @Override
+        void offer(NodeRecord node, NodeVisitor visitor) {
+            if (ordinals[next] == position) {
+                visitor.visit(node);
+            }
+            while (next < ordinals.length && ordinals[next] <= position) {
+                next++;
+            }
+            position++;
+        }
+    }
+
+    /**
+     * 访问一段连续的编号[from, to)
+     */
+    private static class RangeCursor extends Cursor {
+        final long from;
+        final long to;
+
+        RangeCursor(long from, long to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        long first() {
+            return from;
+        }
+
+        @Override
+        boolean isDone() {
+            return position >= to;
+        }
+
+        @Override
+        boolean wants(long nodes) {
+            return position + nodes > from;
+        }
+
+        @Override
+        void offer(NodeRecord node, NodeVisitor visitor) {
+            if (position >= from) {
+                visitor.visit(node);
+            }
+            position++;
+        }
+    }
+
+    /**
+     * 按先序遍历全部节点，并给出每个节点的完整路径（root为扫描的根目录）
+     */
+    public void visitPaths(File root, PathVisitor visitor) {
+        visit(new PathTracker(root, new String[64], 0, visitor));
+    }
+
+    /**
+     * 只访问先序编号为from的节点的子树并给出完整路径，子树之外的溢出段整段跳过；
+     * 祖先链借助index沿兄弟节点跳过找到，只读回祖先的名称
+     */
+    public void visitPaths(File root, TreeIndex index, int from, PathVisitor visitor) {
+        int[] chain = new int[16];
+        int depth = 0;
+        int node = 0;
+        while (node != from) {
+            if (depth == chain.length) {
+                chain = Arrays.copyOf(chain, depth * 2);
+            }
+            chain[depth++] = node;
+            int child = node + 1;
+            while (index.getSubtreeEnd(child) <= from) {
+                child = index.getSubtreeEnd(child);
+            }
+            node = child;
+        }
+
+        long[] ordinals = new long[depth];
+        for (int i = 0; i < depth; i++) {
+            ordinals[i] = chain[i];
+        }
+        String[] pathStack = new String[Math.max(64, depth * 2)];
+        PathTracker ancestors = new PathTracker(root, pathStack, 0, null);
+        visit(ordinals, ancestors);
+        visit(from, index.getSubtreeEnd(from), new PathTracker(root, ancestors.pathStack, from, visitor));
+    }
+
+    /**
+     * 按节点深度维护当前路径栈，visitor为null时只记录路径
+     */
+    private class PathTracker implements NodeVisitor {
+        private final File root;
+        private String[] pathStack;
+        private long ordinal;
+        private final PathVisitor visitor;
+
+        PathTracker(File root, String[] pathStack, long ordinal, PathVisitor visitor) {
+            this.root = root;
+            this.pathStack = pathStack;
+            this.ordinal = ordinal;
+            this.visitor = visitor;
+        }
+
+        @Override
+        public void visit(NodeRecord node) {
+            String path;
+            if (node.depth == 0) {
+                path = root.getPath();
+            } else {
+                String parent = pathStack[node.depth - 1];
+                path = parent.endsWith(File.separator) ? parent + names.name(node.nameId)
+                        : parent + File.separator + names.name(node.nameId);
+            }
+            if (node.depth >= pathStack.length) {
+                pathStack = Arrays.copyOf(pathStack, node.depth * 2);
+            }
+            pathStack[node.depth] = path;
+            if (visitor != null) {
+                visitor.visit(node, ordinal++, path);
+            }
+        }
+    }
+
+    /**
+     * 渲染为树状图文本
+     */
+    public String render() {
+        return new TreeRenderer(this).render();
+    }
+
+    /**
+     * 按先序编号取得节点，找到就停止；之前的溢出段整段跳过，只读回节点所在的段
+     */
+    public boolean getNode(long ordinal, NodeRecord out) {
+        boolean[] found = {false};
+        if (ordinal < 0) {
+            return false;
+        }
+        visit(ordinal, ordinal + 1, node -> {
+            out.copyFrom(node);
+            found[0] = true;
+        });
+        return found[0];
+    }
+
+    /**
+     * 根目录下所有文件的总大小
+     */
+    public long getTotalSize() {
+        return count == 0 ? 0 : sizes[0];
+    }
+
+    /**
+     * 根目录下的文件总数
+     */
+    public int getTotalFiles() {
+        return count == 0 ? 0 : fileCounts[0];
+    }
+
+    /**
+     * 写出上次写入之后的变化，按顺序应用每次写出的内容（readJournal）即可恢复扫描状态；
+     * 驻留节点只写出从最低的变化位置开始的部分，之前的节点只补上期间汇总出的目录大小
+     */
+    public void writeJournal(DataOutputStream out) throws IOException {
+        if (spillOut != null) {
+            spillOut.flush();
+        }
+        names.writeDelta(out, journalNames);
+        out.writeInt(journalFrom);
+        out.writeInt(count);
+        int patches = 0;
+        for (int i = 0; i < journalClosedCount; i++) {
+            if (journalClosed[i] < journalFrom) {
+                patches++;
+            }
+        }
+        out.writeInt(patches);
+        for (int i = 0; i < journalClosedCount; i++) {
+            int node = journalClosed[i];
+            if (node < journalFrom) {
+                out.writeInt(node);
+                out.writeLong(sizes[node]);
+                out.writeInt(fileCounts[node]);
+            }
+        }
+        NodeRecord node = new NodeRecord();
+        for (int i = journalFrom; i < count; i++) {
+            load(i, node);
+            node.write(out);
+        }
+        out.writeLong(logicalCount);
+        out.writeInt(openDirs);
+        for (int i = 0; i < openDirs; i++) {
+            out.writeInt(spillFloors[i]);
+            out.writeInt(openNodes[i]);
+            out.writeLong(openOrdinals[i]);
+            out.writeLong(openSizes[i]);
+            out.writeInt(openFileCounts[i]);
+        }
+        out.writeInt(journalSegments);
+        out.writeInt(segmentCount);
+        for (int i = journalSegments; i < segmentCount; i++) {
+            out.writeLong(segmentOffsets[i]);
+            out.writeInt(segmentLengths[i]);
+            out.writeLong(segmentNodes[i]);
+        }
+        out.writeLong(spillBytes);
+        out.writeLong(spilledNodes);
+        out.writeLong(memoryBudget);
+        out.writeBoolean(ranking != null);
+        if (ranking != null) {
+            ranking.writeTo(out);
+        }
+        out.writeBoolean(extensionStats != null);
+        if (extensionStats != null) {
+            extensionStats.writeJournal(out);
+        }
+        out.writeBoolean(sizeDistribution != null);
+        if (sizeDistribution != null) {
+            sizeDistribution.writeJournal(out);
+        }
+        out.writeBoolean(ageStats != null);
+        if (ageStats != null) {
+            ageStats.writeJournal(out);
+        }
+        out.writeBoolean(securityAudit != null);
+        if (securityAudit != null) {
+            securityAudit.writeJournal(out);
+        }
+        markJournal();
+    }
+
+    /**
+     * 应用writeJournal写出的一次变化
+     */
+    public void readJournal(DataInputStream in) throws IOException {
+        names.readDelta(in);
+        int from = in.readInt();
+        int newCount = in.readInt();
+        if (from > count) {
+            throw new IOException("节点不连续: " + from + " > " + count);
+        }
+        count = from;
+        int patches = in.readInt();
+        for (int i = 0; i < patches; i++) {
+            int node = in.readInt();
+            sizes[node] = in.readLong();
+            fileCounts[node] = in.readInt();
+        }
+        NodeRecord node = new NodeRecord();
+        for (int i = from; i < newCount; i++) {
+            node.read(in);
+            append(node.nameId, node.depth, node.flags, node.size, node.fileCount, node.modified);
+        }
+        logicalCount = in.readLong();
+        openDirs = in.readInt();
+        if (openDirs > spillFloors.length) {
+            int newLength = openDirs * 2;
+            spillFloors = Arrays.copyOf(spillFloors, newLength);
+            openNodes = Arrays.copyOf(openNodes, newLength);
+            openOrdinals = Arrays.copyOf(openOrdinals, newLength);
+            openSizes = Arrays.copyOf(openSizes, newLength);
+            openFileCounts = Arrays.copyOf(openFileCounts, newLength);
+        }
+        for (int i = 0; i < openDirs; i++) {
+            spillFloors[i] = in.readInt();
+            openNodes[i] = in.readInt();
+            openOrdinals[i] = in.readLong();
+            openSizes[i] = in.readLong();
+            openFileCounts[i] = in.readInt();
+        }
+        int fromSegment = in.readInt();
+        if (fromSegment != segmentCount) {
+            throw new IOException("溢出段不连续: " + fromSegment + " != " + segmentCount);
+        }
+        int newSegmentCount = in.readInt();
+        if (newSegmentCount > segmentOffsets.length) {
+            int newLength = newSegmentCount * 2;
+            segmentOffsets = Arrays.copyOf(segmentOffsets, newLength);
+            segmentLengths = Arrays.copyOf(segmentLengths, newLength);
+            segmentNodes = Arrays.copyOf(segmentNodes, newLength);
+        }
+        for (int i = fromSegment; i < newSegmentCount; i++) {
+            segmentOffsets[i] = in.readLong();
+            segmentLengths[i] = in.readInt();
+            segmentNodes[i] = in.readLong();
+        }
+        segmentCount = newSegmentCount;
+        spillBytes = in.readLong();
+        spilledNodes = in.readLong();
+        memoryBudget = in.readLong();
+        if (in.readBoolean()) {
+            ranking = SizeRanking.readFrom(in);
+        }
+        if (in.readBoolean()) {
+            extensionStats = ExtensionStats.readJournal(in, extensionStats);
+        }
+        if (in.readBoolean()) {
+            sizeDistribution = SizeDistribution.readJournal(in, sizeDistribution);
+        }
+        if (in.readBoolean()) {
+            ageStats = AgeStats.readJournal(in, ageStats);
+        }
+        if (in.readBoolean()) {
+            securityAudit = SecurityAudit.readJournal(in, securityAudit);
+        }
+        markJournal();
+    }
+
+    private void markJournal() {
+        journalNames = names.size();
+        journalFrom = count;
+        journalSegments = segmentCount;
+        journalClosedCount = 0;
+    }
+
+    /**
+     * 下次写入断点日志时写出全部状态，用于重写整个日志
+     */
+    public void resetJournal() {
+        journalNames = 0;
+        journalFrom = 0;
+        journalSegments = 0;
+        journalClosedCount = 0;
+        if (extensionStats != null) {
+            extensionStats.resetJournal();
+        }
+        if (sizeDistribution != null) {
+            sizeDistribution.resetJournal();
+        }
+        if (ageStats != null) {
+            ageStats.resetJournal();
+        }
+        if (securityAudit != null) {
+            securityAudit.resetJournal();
+        }
+    }
+
+    /**
+     * 从断点日志恢复后接着使用溢出文件：截断到最后一次写入断点时的长度后继续追加
+     */
+    public void resumeSpillFile(File spillFile) throws IOException {
+        this.spillFile = spillFile;
+        if (spillBytes > 0) {
+            if (spillFile == null) {
+                throw new IOException("断点没有记录溢出文件");
+            }
+            try (RandomAccessFile raf = new RandomAccessFile(spillFile, "rw")) {
+                if (raf.length() < spillBytes) {
+                    throw new IOException("溢出文件不完整: " + spillFile);
+                }
+                raf.setLength(spillBytes);
+            }
+            spillOut = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(spillFile, true), 64 * 1024));
+        }
+    }
+
+    /**
+     * 释放溢出文件；溢出文件只属于这一棵树，其他树不会引用它
+     */
+    public void dispose() {
+        try {
+            if (spillOut != null) {
+                spillOut.close();
+            }
+        } catch (IOException e) {
+            System.err.println("关闭溢出文件失败: " + e.getMessage());
+        }
+        if (spillFile != null && !spillFile.delete()) {
+            spillFile.deleteOnExit();
+        }
+        spillOut = null;
+        spillFile = null;
+        names.dispose();
+        if (extensionStats != null) {
+            extensionStats.dispose();
+        }
+        if (sizeDistribution != null) {
+            sizeDistribution.dispose();
+        }
+        if (ageStats != null) {
+            ageStats.dispose();
+        }
+        if (securityAudit != null) {
+            securityAudit.dispose();
+        }
+    }
+
+    /**
+     * 当前留在堆中的节点、名称字典和各项按节点记录的统计（包括安全审计的属主和属组）占用的字节数
+     */
+    public long getUsedBytes() {
+        long bytes = (long) NODE_BYTES * count + names.getMemoryBytes();
+        if (extensionStats != null) {
+            bytes += extensionStats.getMemoryBytes();
+        }
+        if (sizeDistribution != null) {
+            bytes += sizeDistribution.getMemoryBytes();
+        }
+        if (ageStats != null) {
+            bytes += ageStats.getMemoryBytes();
+        }
+        if (securityAudit != null) {
+            bytes += securityAudit.getMemoryBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * 节点数组加名称字典占用的近似内存（字节）
+     */
+    public long getMemoryBytes() {
+        return (long) NODE_BYTES * nameIds.length + names.getMemoryBytes();
+    }
+
+    public long getSpilledNodes() {
+        return spilledNodes;
+    }
+
+    public long getSpilledBytes() {
+        return spillBytes;
+    }
+
+    /**
+     * 模型统计摘要：去重率与每节点字节数
+     */
+    public String getStatsSummary() {
+        long resident = logicalCount - spilledNodes;
+        double bytesPerNode = resident == 0 ? 0 : (double) getMemoryBytes() / resident;
+        return String.format("节点: %d, 不同名称: %d (去重率 %.1f%%), 每节点 %.1f 字节",
+                logicalCount, names.size(), names.getDedupRatio() * 100, bytesPerNode);
+    }
+
+    /**
+     * 溢出情况摘要，没有溢出时返回空字符串
+     */
+    public String getSpillSummary() {
+        if (spilledNodes == 0) {
+            return "";
+        }
+        return String.format("已溢出到磁盘: %d 节点 (%.1f MB)",
+                spilledNodes, spillBytes / (1024.0 * 1024.0));
+    }
+}
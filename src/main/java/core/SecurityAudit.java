@@ -0,0 +1,421 @@
+package com.foldertree.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 安全审计 - 扫描时利用列目录已经读取的unix权限位和属主、属组（每项只读取一次属性），
+ * 按属主和属组统计文件数与总大小，并找出有风险的权限：全局可写的文件、
+ * 全局可写且没有粘滞位的文件夹、setuid/setgid可执行文件、属主或属组已不存在的项目
+ * 属主和属组的名称按编号缓存，每个编号第一次出现时才解析一次
+ */
+public class SecurityAudit {
+
+    // 最多保留的风险项，超出的只计数
+    public static final int MAX_FINDINGS = 10000;
+
+    private static final int S_IFMT = 0170000;
+    private static final int S_IFREG = 0100000;
+    private static final int S_IFDIR = 0040000;
+    private static final int S_ISUID = 04000;
+    private static final int S_ISGID = 02000;
+    private static final int S_ISVTX = 01000;
+    private static final int OTHERS_WRITE = 0002;
+    private static final int GROUP_EXECUTE = 0010;
+    private static final int ANY_EXECUTE = 0111;
+
+    public enum Risk {
+        WORLD_WRITABLE_FILE("全局可写的文件"),
+        WORLD_WRITABLE_DIRECTORY("全局可写且无粘滞位的文件夹"),
+        SETUID("setuid可执行文件"),
+        SETGID("setgid可执行文件"),
+        UNKNOWN_OWNER("属主已不存在"),
+        UNKNOWN_GROUP("属组已不存在");
+
+        private final String displayName;
+
+        Risk(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    /**
+     * 一个风险项
+     */
+    public static class Finding {
+        public final Risk risk;
+        public final String path;
+        public final long ordinal;
+        public final int mode;
+        public final String owner;
+        public final String group;
+
+        Finding(Risk risk, String path, long ordinal, int mode, String owner, String group) {
+            this.risk = risk;
+            this.path = path;
+            this.ordinal = ordinal;
+            this.mode = mode;
+            this.owner = owner;
+            this.group = group;
+        }
+
+        /**
+         * ls风格的权限字符串，例如 drwxrwxrwt、-rwsr-xr-x
+         */
+        public String getModeString() {
+            return formatMode(mode);
+        }
+    }
+
+    /**
+     * 扫描过程中发现风险项时的回调，在扫描线程中调用
+     */
+    public interface Listener {
+        void onFinding(Finding finding);
+    }
+
+    private final ExtensionStats owners = new ExtensionStats();
+    private final ExtensionStats groups = new ExtensionStats();
+    private final Map<Integer, String> userNames = new HashMap<>();
+    private final Map<Integer, String> groupNames = new HashMap<>();
+    private final Map<Integer, Boolean> unknownUsers = new HashMap<>();
+    private final Map<Integer, Boolean> unknownGroups = new HashMap<>();
+    private final List<Finding> findings = new ArrayList<>();
+    // 上次写入断点日志时的风险项数，之后只追加新增的风险项
+    private int journalFindings;
+    private final long[] riskCounts = new long[Risk.values().length];
+    private long auditedEntries;
+    private Listener listener;
+
+    // 按深度记录最近一个文件夹已报告（或继承）的已不存在属主和属组，子项相同时不重复列出
+    private int[] reportedOwners = new int[64];
+    private int[] reportedGroups = new int[64];
+
+    public SecurityAudit() {
+        Arrays.fill(reportedOwners, -1);
+        Arrays.fill(reportedGroups, -1);
+    }
+
+    /**
+     * 当前文件系统是否提供unix属性视图
+     */
+    public static boolean isSupported() {
+        return FileSystems.getDefault().supportedFileAttributeViews().contains("unix");
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 记录扫描到的一项（ordinal为其先序编号），没有读取到权限的项目被忽略
+     */
+    synchronized void record(long ordinal, int depth, DirEntry entry) {
+        if (entry.mode < 0) {
+            return;
+        }
+        auditedEntries++;
+        String owner = userName(entry);
+        String group = groupName(entry);
+        if (!entry.directory) {
+            owners.addToCategory(ordinal, owner, Math.max(0, entry.size));
+            groups.addToCategory(ordinal, group, Math.max(0, entry.size));
+        }
+
+        int mode = entry.mode;
+        int type = mode & S_IFMT;
+        if (type == S_IFREG) {
+            if ((mode & OTHERS_WRITE) != 0) {
+                add(Risk.WORLD_WRITABLE_FILE, ordinal, entry, owner, group);
+            }
+            if ((mode & S_ISUID) != 0 && (mode & ANY_EXECUTE) != 0) {
+                add(Risk.SETUID, ordinal, entry, owner, group);
+            }
+            // 没有组执行位的setgid表示强制锁，不是提权
+            if ((mode & S_ISGID) != 0 && (mode & GROUP_EXECUTE) != 0) {
+                add(Risk.SETGID, ordinal, entry, owner, group);
+            }
+        } else if (type == S_IFDIR && (mode & OTHERS_WRITE) != 0 && (mode & S_ISVTX) == 0) {
+            add(Risk.WORLD_WRITABLE_DIRECTORY, ordinal, entry, owner, group);
+        }
+
+        ensureDepth(depth);
+        int reportedOwner = reportOrphan(Risk.UNKNOWN_OWNER, unknownUsers.get(entry.uid), entry.uid,
+                reportedOwners, ordinal, depth, entry, owner, group);
+        int reportedGroup = reportOrphan(Risk.UNKNOWN_GROUP, unknownGroups.get(entry.gid), entry.gid,
+                reportedGroups, ordinal, depth, entry, owner, group);
+        if (entry.directory) {
+            reportedOwners[depth] = reportedOwner;
+            reportedGroups[depth] = reportedGroup;
+        }
+    }
+
+    /**
+     * 属主或属组已不存在时计数，上级文件夹已因同一编号列出时不再列出；返回应由子项继承的编号
+     */
+    private int reportOrphan(Risk risk, Boolean unknown, int id, int[] reported, long ordinal, int depth,
+                             DirEntry entry, String owner, String group) {
+        if (unknown == null || !unknown) {
+            return -1;
+        }
+        if (depth > 1 && reported[depth - 1] == id) {
+            riskCounts[risk.ordinal()]++;
+        } else {
+            add(risk, ordinal, entry, owner, group);
+        }
+        return id;
+    }
+
+    private void ensureDepth(int depth) {
+        if (depth >= reportedOwners.length) {
+            int length = Math.max(depth + 1, reportedOwners.length * 2);
+            int oldLength = reportedOwners.length;
+            reportedOwners = Arrays.copyOf(reportedOwners, length);
+            reportedGroups = Arrays.copyOf(reportedGroups, length);
+            Arrays.fill(reportedOwners, oldLength, length, -1);
+            Arrays.fill(reportedGroups, oldLength, length, -1);
+        }
+    }
+
+    private void add(Risk risk, long ordinal, DirEntry entry, String owner, String group) {
+        riskCounts[risk.ordinal()]++;
+        if (findings.size() >= MAX_FINDINGS) {
+            return;
+        }
+        Finding finding = new Finding(risk, entry.file.getPath(), ordinal, entry.mode, owner, group);
+        findings.add(finding);
+        if (listener != null) {
+            listener.onFinding(finding);
+        }
+    }
+
+    private String userName(DirEntry entry) {
+        String name = userNames.get(entry.uid);
+        if (name == null) {
+            resolveNames(entry);
+            name = userNames.get(entry.uid);
+        }
+        return name;
+    }
+
+    private String groupName(DirEntry entry) {
+        String name = groupNames.get(entry.gid);
+        if (name == null) {
+            resolveNames(entry);
+            name = groupNames.get(entry.gid);
+        }
+        return name;
+    }
+
+    /**
+     * 编号第一次出现时读取一次名称；系统中找不到时JDK返回编号本身，据此判断已不存在
+     */
+    private void resolveNames(DirEntry entry) {
+        String user = null;
+        String group = null;
+        try {
+            PosixFileAttributes attributes = Files.readAttributes(entry.file.toPath(), PosixFileAttributes.class);
+            user = attributes.owner().getName();
+            group = attributes.group().getName();
+        } catch (IOException | UnsupportedOperationException e) {
+            // 项目已被删除等，只显示编号，不判断是否存在
+        }
+        if (!userNames.containsKey(entry.uid)) {
+            boolean unknown = String.valueOf(entry.uid).equals(user);
+            userNames.put(entry.uid, user == null || unknown ? "#" + entry.uid : user);
+            unknownUsers.put(entry.uid, unknown);
+        }
+        if (!groupNames.containsKey(entry.gid)) {
+            boolean unknown = String.valueOf(entry.gid).equals(group);
+            groupNames.put(entry.gid, group == null || unknown ? "#" + entry.gid : group);
+            unknownGroups.put(entry.gid, unknown);
+        }
+    }
+
+    /**
+     * 按属主的文件统计
+     */
+    public ExtensionStats getOwners() {
+        return owners;
+    }
+
+    /**
+     * 按属组的文件统计
+     */
+    public ExtensionStats getGroups() {
+        return groups;
+    }
+
+    /**
+     * 保留的风险项，最多MAX_FINDINGS个
+     */
+    public synchronized List<Finding> getFindings() {
+        return new ArrayList<>(findings);
+    }
+
+    public synchronized long getCount(Risk risk) {
+        return riskCounts[risk.ordinal()];
+    }
+
+    public synchronized long getTotalCount() {
+        return Arrays.stream(riskCounts).sum();
+    }
+
+    /**
+     * 读取到权限的项目数
+     */
+    public synchronized long getAuditedEntries() {
+        return auditedEntries;
+    }
+
+    /**
+     * 各类风险项的数量
+     */
+    public synchronized String getSummary() {
+        StringBuilder sb = new StringBuilder(String.format("审计 %d 项", auditedEntries));
+        for (Risk risk : Risk.values()) {
+            if (riskCounts[risk.ordinal()] > 0) {
+                sb.append(String.format(", %s %d", risk.getDisplayName(), riskCounts[risk.ordinal()]));
+            }
+        }
+        return sb.toString();
+    }
+
+    static String formatMode(int mode) {
+        char[] chars = new char[10];
+        int type = mode & S_IFMT;
+        chars[0] = type == S_IFDIR ? 'd' : type == S_IFREG ? '-' : type == 0120000 ? 'l' : '?';
+        String rwx = "rwxrwxrwx";
+        for (int i = 0; i < 9; i++) {
+            chars[i + 1] = (mode & (0400 >> i)) != 0 ? rwx.charAt(i) : '-';
+        }
+        if ((mode & S_ISUID) != 0) {
+            chars[3] = chars[3] == 'x' ? 's' : 'S';
+        }
+        if ((mode & S_ISGID) != 0) {
+            chars[6] = chars[6] == 'x' ? 's' : 'S';
+        }
+        if ((mode & S_ISVTX) != 0) {
+            chars[9] = chars[9] == 'x' ? 't' : 'T';
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 写出上次写入之后的变化：属主和属组统计的新增部分、计数和新增的风险项
+     */
+    synchronized void writeJournal(DataOutput out) throws IOException {
+        owners.writeJournal(out);
+        groups.writeJournal(out);
+        writeNames(out, userNames, unknownUsers);
+        writeNames(out, groupNames, unknownGroups);
+        out.writeLong(auditedEntries);
+        for (long count : riskCounts) {
+            out.writeLong(count);
+        }
+        out.writeInt(journalFindings);
+        out.writeInt(findings.size());
+        for (Finding finding : findings.subList(journalFindings, findings.size())) {
+            out.writeByte(finding.risk.ordinal());
+            out.writeUTF(finding.path);
+            out.writeLong(finding.ordinal);
+            out.writeInt(finding.mode);
+            out.writeUTF(finding.owner);
+            out.writeUTF(finding.group);
+        }
+        journalFindings = findings.size();
+    }
+
+    /**
+     * 在audit上应用writeJournal写出的变化，audit为null时新建
+     */
+    static SecurityAudit readJournal(DataInput in, SecurityAudit audit) throws IOException {
+        if (audit == null) {
+            audit = new SecurityAudit();
+        }
+        ExtensionStats.readJournal(in, audit.owners);
+        ExtensionStats.readJournal(in, audit.groups);
+        readNames(in, audit.userNames, audit.unknownUsers);
+        readNames(in, audit.groupNames, audit.unknownGroups);
+        audit.auditedEntries = in.readLong();
+        for (int i = 0; i < audit.riskCounts.length; i++) {
+            audit.riskCounts[i] = in.readLong();
+        }
+        int from = in.readInt();
+        int count = in.readInt();
+        if (from != audit.findings.size()) {
+            throw new IOException("风险项不连续: " + from + " != " + audit.findings.size());
+        }
+        for (int i = from; i < count; i++) {
+            Risk risk = Risk.values()[in.readByte()];
+            String path = in.readUTF();
+            long ordinal = in.readLong();
+            int mode = in.readInt();
+            audit.findings.add(new Finding(risk, path, ordinal, mode, in.readUTF(), in.readUTF()));
+        }
+        audit.journalFindings = count;
+        return audit;
+    }
+
+    /**
+     * 下次写入断点日志时写出全部内容
+     */
+    synchronized void resetJournal() {
+        owners.resetJournal();
+        groups.resetJournal();
+        journalFindings = 0;
+    }
+
+    /**
+     * 把属主和属组统计写满的页改为映射
+     */
+    synchronized void spill() throws IOException {
+        owners.spill();
+        groups.spill();
+    }
+
+    /**
+     * 属主和属组统计留在堆中的字节数
+     */
+    synchronized long getMemoryBytes() {
+        return owners.getMemoryBytes() + groups.getMemoryBytes();
+    }
+
+    synchronized void dispose() {
+        owners.dispose();
+        groups.dispose();
+    }
+
+    private static void writeNames(DataOutput out, Map<Integer, String> names,
+                                   Map<Integer, Boolean> unknown) throws IOException {
+        out.writeInt(names.size());
+        for (Map.Entry<Integer, String> entry : names.entrySet()) {
+            out.writeInt(entry.getKey());
+            out.writeUTF(entry.getValue());
+            out.writeBoolean(unknown.get(entry.getKey()));
+        }
+    }
+
+    private static void readNames(DataInput in, Map<Integer, String> names,
+                                  Map<Integer, Boolean> unknown) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int id = in.readInt();
+            names.put(id, in.readUTF());
+            unknown.put(id, in.readBoolean());
+        }
+    }
+}
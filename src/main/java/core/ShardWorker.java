@@ -0,0 +1,103 @@
+package com.foldertree.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 分片扫描工作进程入口
+ * 参数: 根目录 分片清单文件 输出快照 递归深度 是否显示文件 内存预算 [扫描策略] [排序方式]
+ * 标准输出协议: "total 总数" 和 "progress 已处理数 当前路径"，每行一条
+ * 标准输入协议: "rate 每秒次数 每秒字节数"，用于在扫描过程中调整限速
+ */
+public class ShardWorker {
+
+    // 每处理多少项向协调进程报告一次进度
+    private static final int PROGRESS_INTERVAL = 500;
+
+    public static void main(String[] args) {
+        if (args.length < 6) {
+            System.err.println("用法: ShardWorker <根目录> <分片清单> <输出快照> <深度> <显示文件> <内存预算> [扫描策略] [排序方式] [跳过构建产物]");
+            System.exit(2);
+        }
+
+        PrintStream out = new PrintStream(new FileOutputStream(FileDescriptor.out), true,
+                StandardCharsets.UTF_8);
+        try {
+            String rootPath = args[0];
+            Set<String> names = new HashSet<>(Files.readAllLines(new File(args[1]).toPath(),
+                    StandardCharsets.UTF_8));
+            File snapshotFile = new File(args[2]);
+
+            ScanOptions options = new ScanOptions();
+            options.setMaxDepth(Integer.parseInt(args[3]));
+            options.setShowFiles(Boolean.parseBoolean(args[4]));
+            options.setMemoryBudget(Long.parseLong(args[5]));
+            options.setTopLevelNames(names);
+            if (args.length > 6) {
+                ScanStrategy strategy = ScanStrategy.parse(args[6]);
+                if (strategy != null) {
+                    options.setStrategy(strategy);
+                }
+            }
+            if (args.length > 7) {
+                options.setSortMode(SortMode.valueOf(args[7]));
+            }
+            if (args.length > 8) {
+                options.setPruneArtifacts(Boolean.parseBoolean(args[8]));
+            }
+
+            FolderScanner scanner = new FolderScanner();
+            readRates(scanner.getThrottle());
+
+            int[] lastProcessed = {-1};
+            ScanTree tree = scanner.scan(rootPath, options, (processed, total, currentPath) -> {
+                if (lastProcessed[0] < 0) {
+                    out.println("total " + total);
+                }
+                lastProcessed[0] = processed;
+                if (processed % PROGRESS_INTERVAL == 0) {
+                    out.println("progress " + processed + " " + currentPath.replace('\n', ' '));
+                }
+            });
+
+            ScanSnapshot.write(tree, rootPath, options, snapshotFile);
+            out.println("progress " + Math.max(0, lastProcessed[0]) + " ");
+            tree.dispose();
+            System.exit(0);
+        } catch (Throwable e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * 在后台读取协调进程转发的限速设置
+     */
+    private static void readRates(IoThrottle throttle) {
+        Thread thread = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.trim().split(" ");
+                    if (parts.length == 3 && parts[0].equals("rate")) {
+                        throttle.getOperations().setRate(Double.parseDouble(parts[1]));
+                        throttle.getBytes().setRate(Double.parseDouble(parts[2]));
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                System.err.println("读取限速设置失败: " + e.getMessage());
+            }
+        }, "foldertree-rate-reader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
@@ -0,0 +1,363 @@
+package com.foldertree.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 多进程分片扫描 - 把根目录下的一级子目录分给多个本地工作JVM，
+ * 每个工作进程扫描自己的分片并写出部分快照，最后由协调进程按顺序合并成一棵树
+ * 工作进程失败时重新调度该分片，多次失败后在当前进程内扫描
+ */
+public class ShardedScanner {
+
+    // 每个分片最多尝试的工作进程次数
+    private static final int MAX_ATTEMPTS = 3;
+    // 每个工作进程平均分到的分片数，分片越多负载越均衡
+    private static final int SHARDS_PER_WORKER = 4;
+    // 检查限速设置是否变化并转发给工作进程的间隔
+    private static final long RATE_POLL_MS = 500;
+
+    private final FolderScanner scanner;
+
+    // 各分片的进度，用于汇总
+    private int[] shardProcessed;
+    private int[] shardTotal;
+
+    public ShardedScanner(FolderScanner scanner) {
+        this.scanner = scanner;
+    }
+
+    /**
+     * 分片扫描并合并结果
+     */
+    public ScanTree scan(String folderPath, ScanOptions options,
+                         FolderScanner.ProgressCallback callback) {
+        File root = new File(folderPath);
+        List<DirEntry> items;
+        try {
+            items = scanner.listSorted(root, options.getSortMode());
+        } catch (UnreadableDirectoryException e) {
+            items = new ArrayList<>();
+        }
+
+        List<String> directories = new ArrayList<>();
+        for (DirEntry item : items) {
+            // 跳过的构建产物不分给工作进程，合并时直接作为未展开的文件夹加入
+            if (item.directory && !FolderScanner.isPruned(item, root, items, options)) {
+                directories.add(item.name);
+            }
+        }
+
+        int workers = options.getWorkerProcesses();
+        int shardCount = Math.min(directories.size(), workers * SHARDS_PER_WORKER);
+        if (shardCount <= 1 || options.getMaxDepth() == 1) {
+            ScanOptions local = options.copy();
+            local.setWorkerProcesses(1);
+            return scanner.scan(folderPath, local, callback);
+        }
+
+        // 按顺序轮流分配，使每个分片都包含不同位置的目录
+        List<List<String>> shards = new ArrayList<>();
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new ArrayList<>());
+        }
+        Map<String, Integer> shardOf = new HashMap<>();
+        for (int i = 0; i < directories.size(); i++) {
+            shards.get(i % shardCount).add(directories.get(i));
+            shardOf.put(directories.get(i), i % shardCount);
+        }
+
+        shardProcessed = new int[shardCount];
+        shardTotal = new int[shardCount];
+
+        File workDir;
+        try {
+            workDir = Files.createTempDirectory("foldertree-shards").toFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException("无法创建分片工作目录", e);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(workers, shardCount));
+        try {
+            List<Future<File>> futures = new ArrayList<>();
+            for (int i = 0; i < shardCount; i++) {
+                int shard = i;
+                futures.add(pool.submit(() -> runShard(shard, shards.get(shard), root,
+                        options, workers, workDir, callback)));
+            }
+
+            File[] snapshots = new File[shardCount];
+            for (int i = 0; i < shardCount; i++) {
+                snapshots[i] = futures.get(i).get();
+            }
+
+            return merge(root, items, shardOf, snapshots, options);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("分片扫描被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("分片扫描失败: " + cause.getMessage(), cause);
+        } catch (IOException e) {
+            throw new UncheckedIOException("合并分片快照失败", e);
+        } finally {
+            pool.shutdownNow();
+            deleteRecursive(workDir);
+        }
+    }
+
+    /**
+     * 运行一个分片，失败时重新调度，多次失败后在当前进程内扫描
+     */
+    private File runShard(int shard, List<String> names, File root, ScanOptions options,
+                          int workers, File workDir, FolderScanner.ProgressCallback callback)
+            throws IOException, InterruptedException {
+        File shardFile = new File(workDir, "shard-" + shard + ".txt");
+        File snapshotFile = new File(workDir, "shard-" + shard + ".snap");
+        Files.write(shardFile.toPath(), names, StandardCharsets.UTF_8);
+
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            Files.deleteIfExists(snapshotFile.toPath());
+            int exitCode = runWorker(shard, root, shardFile, snapshotFile, options, workers, callback);
+            if (exitCode == 0 && snapshotFile.isFile()) {
+                return snapshotFile;
+            }
+            System.err.println(String.format("分片 %d 第 %d 次运行失败 (退出码 %d)，重新调度",
+                    shard, attempt, exitCode));
+            reportProgress(shard, 0, shardTotal[shard], "", callback);
+        }
+
+        // 工作进程反复失败，改为在当前进程内扫描该分片
+        ScanOptions local = options.copy();
+        local.setWorkerProcesses(1);
+        local.setCheckpointEnabled(false);
+        local.setTopLevelNames(new HashSet<>(names));
+        ScanTree tree = scanner.scan(root.getPath(), local, (processed, total, currentPath) ->
+                reportProgress(shard, processed, total, currentPath, callback));
+        try {
+            ScanSnapshot.write(tree, root.getAbsolutePath(), local, snapshotFile);
+        } finally {
+            tree.dispose();
+        }
+        return snapshotFile;
+    }
+
+    private int runWorker(int shard, File root, File shardFile, File snapshotFile,
+                          ScanOptions options, int workers,
+                          FolderScanner.ProgressCallback callback)
+            throws IOException, InterruptedException {
+        String javaBin = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        long workerBudget = options.getMemoryBudget() / workers;
+
+        ProcessBuilder builder = new ProcessBuilder(Arrays.asList(
+                javaBin, "-cp", System.getProperty("java.class.path"),
+                "-Dfile.encoding=UTF-8",
+                ShardWorker.class.getName(),
+                root.getAbsolutePath(),
+                shardFile.getAbsolutePath(),
+                snapshotFile.getAbsolutePath(),
+                String.valueOf(options.getMaxDepth()),
+                String.valueOf(options.isShowFiles()),
+                String.valueOf(workerBudget),
+                options.getStrategy().toString(),
+                options.getSortMode().name(),
+                String.valueOf(options.isPruneArtifacts())));
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+        Process process = builder.start();
+        Thread rateForwarder = startRateForwarder(process, workers);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("total ")) {
+                    shardTotal[shard] = Integer.parseInt(line.substring(6).trim());
+                } else if (line.startsWith("progress ")) {
+                    int space = line.indexOf(' ', 9);
+                    int processed = Integer.parseInt(space < 0 ? line.substring(9) : line.substring(9, space));
+                    String path = space < 0 ? "" : line.substring(space + 1);
+                    reportProgress(shard, processed, shardTotal[shard], path, callback);
+                }
+            }
+            return process.waitFor();
+        } catch (InterruptedException | IOException | RuntimeException e) {
+            process.destroyForcibly();
+            throw e;
+        } finally {
+            rateForwarder.interrupt();
+        }
+    }
+
+    /**
+     * 把当前的限速设置平均分给各工作进程，设置变化时通过标准输入转发 "rate 每秒次数 每秒字节数"
+     */
+    private Thread startRateForwarder(Process process, int workers) {
+        IoThrottle throttle = scanner.getThrottle();
+        Thread thread = new Thread(() -> {
+            PrintStream out = new PrintStream(process.getOutputStream(), true, StandardCharsets.UTF_8);
+            double sentOperations = Double.NaN;
+            double sentBytes = Double.NaN;
+            try {
+                while (process.isAlive()) {
+                    double operations = throttle.getOperations().getRate() / workers;
+                    double bytes = throttle.getBytes().getRate() / workers;
+                    if (operations != sentOperations || bytes != sentBytes) {
+                        out.println("rate " + operations + " " + bytes);
+                        sentOperations = operations;
+                        sentBytes = bytes;
+                    }
+                    Thread.sleep(RATE_POLL_MS);
+                }
+            } catch (InterruptedException e) {
+                // 工作进程已结束
+            } finally {
+                out.close();
+            }
+        }, "foldertree-shard-rate");
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * 汇总所有分片的进度后回调
+     */
+    private synchronized void reportProgress(int shard, int processed, int total, String currentPath,
+                                             FolderScanner.ProgressCallback callback) {
+        shardProcessed[shard] = processed;
+        shardTotal[shard] = total;
+        if (callback == null) {
+            return;
+        }
+        int sumProcessed = 0;
+        int sumTotal = 0;
+        for (int i = 0; i < shardProcessed.length; i++) {
+            sumProcessed += shardProcessed[i];
+            sumTotal += shardTotal[i];
+        }
+        callback.onProgress(sumProcessed, sumTotal, currentPath);
+    }
+
+    /**
+     * 按根目录的排序顺序把各分片的子树合并成一棵树
+     * 每个分片内的一级目录保持相同的相对顺序，因此每个分片只需顺序读取一遍
+     */
+    private ScanTree merge(File root, List<DirEntry> items, Map<String, Integer> shardOf,
+                           File[] snapshots, ScanOptions options) throws IOException {
+        ScanSnapshot.Reader[] readers = new ScanSnapshot.Reader[snapshots.length];
+        ScanTree tree = new ScanTree();
+        tree.setMemoryBudget(options.getMemoryBudget());
+        tree.setRanking(new SizeRanking(SizeRanking.DEFAULT_LIMIT));
+        tree.setExtensionStats(new ExtensionStats());
+        tree.setSizeDistribution(new SizeDistribution());
+        tree.setAgeStats(new AgeStats());
+        try {
+            for (int i = 0; i < snapshots.length; i++) {
+                readers[i] = ScanSnapshot.open(snapshots[i]);
+                // 跳过分片自己的根节点
+                readers[i].next();
+            }
+
+            int rootNode = tree.addNode(root.getName(), 0, ScanTree.FLAG_DIRECTORY);
+            tree.beginChildren(rootNode);
+
+            ScanTree.NodeRecord top = new ScanTree.NodeRecord();
+            for (int i = 0; i < items.size(); i++) {
+                DirEntry item = items.get(i);
+                byte lastFlag = i == items.size() - 1 ? ScanTree.FLAG_LAST : 0;
+                Integer shard = shardOf.get(item.name);
+                ScanSnapshot.Reader reader = shard == null ? null : readers[shard];
+                ScanTree.NodeRecord next = reader == null ? null : reader.peek();
+
+                if (next == null || next.depth != 1
+                        || !reader.getNames().name(next.nameId).equals(item.name)) {
+                    // 根目录下的文件，或在工作进程扫描前已被删除的目录
+                    byte flags = (byte) ((item.directory ? ScanTree.FLAG_DIRECTORY : 0) | lastFlag
+                            | (FolderScanner.isPruned(item, root, items, options) ? ScanTree.FLAG_PRUNED : 0));
+                    tree.addNode(item.name, 1, flags, Math.max(0, item.size), item.lastModified);
+                } else {
+                    top.copyFrom(reader.next());
+                    top.flags = (byte) ((top.flags & ~ScanTree.FLAG_LAST) | lastFlag);
+                    copySubtree(tree, top, reader);
+                }
+                tree.checkBudget();
+            }
+
+            tree.endChildren();
+            return tree;
+        } catch (IOException | RuntimeException e) {
+            tree.dispose();
+            throw e;
+        } finally {
+            for (ScanSnapshot.Reader reader : readers) {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * 复制一个一级节点及其整个子树，同时维护打开的目录以便按预算溢出
+     */
+    private void copySubtree(ScanTree tree, ScanTree.NodeRecord top,
+                             ScanSnapshot.Reader reader) throws IOException {
+        NameDictionary names = reader.getNames();
+        List<Integer> openDepths = new ArrayList<>();
+
+        ScanTree.NodeRecord node = top;
+        while (true) {
+            while (!openDepths.isEmpty() && openDepths.get(openDepths.size() - 1) >= node.depth) {
+                openDepths.remove(openDepths.size() - 1);
+                tree.endChildren();
+                tree.checkBudget();
+            }
+
+            int index = tree.addNode(node, names.name(node.nameId));
+            if (node.isDirectory()) {
+                tree.beginChildren(index);
+                openDepths.add(node.depth);
+            }
+
+            if (reader.peekDepth() <= 1) {
+                break;
+            }
+            node = reader.next();
+        }
+
+        for (int i = 0; i < openDepths.size(); i++) {
+            tree.endChildren();
+        }
+    }
+
+    private void deleteRecursive(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursive(child);
+            }
+        }
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+}
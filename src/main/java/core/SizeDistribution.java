@@ -0,0 +1,177 @@
+package com.foldertree.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * 按先序编号记录每个文件所在的大小桶（每个节点1字节，非文件为NOT_A_FILE，存放在NodeColumn中），
+ * 任意子树的大小分布就是这一段连续编号的桶计数之和，等价于自底向上合并各目录的草图，
+ * 但不需要为每个目录单独保存草图
+ * 每BLOCK个节点另存一次各桶的累计数，查询子树时相减，只需逐个读取两端不足一段的节点
+ */
+public class SizeDistribution {
+
+    private static final byte NOT_A_FILE = (byte) 0xFF;
+
+    private final SizeHistogram totals = new SizeHistogram();
+    private final NodeColumn nodeBuckets = new NodeColumn(1, NOT_A_FILE);
+    private int nodeCount;
+    // 上次写入断点日志时的节点数，之后只追加新增节点的桶
+    private int journalNodes;
+
+    private static final int BLOCK = 4096;
+    // blockCounts[b * BUCKETS + bucket]：编号小于b * BLOCK的文件在各桶中的数量，节点数变化后重新建立
+    private int[] blockCounts;
+    private int blockCountNodes = -1;
+
+
+    /**
+     * 记录先序编号为ordinal的文件
+     */
+    void addFile(long ordinal, long size) {
+        int bucket = SizeHistogram.bucketOf(size);
+        totals.addToBucket(bucket, 1);
+        if (ordinal >= Integer.MAX_VALUE) {
+            return;
+        }
+        int index = (int) ordinal;
+        nodeBuckets.setByte(index, (byte) bucket);
+        nodeCount = Math.max(nodeCount, index + 1);
+    }
+
+    /**
+     * 整个扫描结果的分布
+     */
+    public SizeHistogram getTotals() {
+        SizeHistogram copy = new SizeHistogram();
+        copy.merge(totals);
+        return copy;
+    }
+
+    /**
+     * 先序编号为ordinal的节点的子树的分布
+     */
+    public SizeHistogram getSubtree(TreeIndex index, int ordinal) {
+        int[] prefix = blockCounts();
+        long[] counts = new long[SizeHistogram.BUCKETS];
+        int end = Math.min(index.getSubtreeEnd(ordinal), nodeCount);
+        int firstBlock = (ordinal + BLOCK - 1) / BLOCK;
+        int lastBlock = end / BLOCK;
+        if (firstBlock >= lastBlock) {
+            countRange(ordinal, end, counts);
+        } else {
+            int from = firstBlock * SizeHistogram.BUCKETS;
+            int to = lastBlock * SizeHistogram.BUCKETS;
+            for (int bucket = 0; bucket < counts.length; bucket++) {
+                counts[bucket] = prefix[to + bucket] - prefix[from + bucket];
+            }
+            countRange(ordinal, firstBlock * BLOCK, counts);
+            countRange(lastBlock * BLOCK, end, counts);
+        }
+        SizeHistogram histogram = new SizeHistogram();
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            if (counts[bucket] > 0) {
+                histogram.addToBucket(bucket, counts[bucket]);
+            }
+        }
+        return histogram;
+    }
+
+    private void countRange(int from, int to, long[] counts) {
+        for (int i = from; i < to; i++) {
+            byte bucket = nodeBuckets.getByte(i);
+            if (bucket != NOT_A_FILE) {
+                counts[bucket & 0xFF]++;
+            }
+        }
+    }
+
+    /**
+     * 建立按段累计的桶计数；扫描结束后在后台线程调用一次，之后的子树查询不必再建立
+     */
+    public void buildBlockCounts() {
+        blockCounts();
+    }
+
+    private synchronized int[] blockCounts() {
+        if (blockCountNodes == nodeCount) {
+            return blockCounts;
+        }
+        int blocks = nodeCount / BLOCK;
+        int[] prefix = new int[(blocks + 1) * SizeHistogram.BUCKETS];
+        for (int b = 0; b < blocks; b++) {
+            int base = b * SizeHistogram.BUCKETS;
+            System.arraycopy(prefix, base, prefix, base + SizeHistogram.BUCKETS, SizeHistogram.BUCKETS);
+            int next = base + SizeHistogram.BUCKETS;
+            for (int i = b * BLOCK; i < (b + 1) * BLOCK; i++) {
+                byte bucket = nodeBuckets.getByte(i);
+                if (bucket != NOT_A_FILE) {
+                    prefix[next + (bucket & 0xFF)]++;
+                }
+            }
+        }
+        blockCounts = prefix;
+        blockCountNodes = nodeCount;
+        return prefix;
+    }
+
+    /**
+     * 写出各桶的总数和上次写入之后新增节点的桶
+     */
+    void writeJournal(DataOutput out) throws IOException {
+        for (int bucket = 0; bucket < SizeHistogram.BUCKETS; bucket++) {
+            out.writeLong(totals.getBucketCount(bucket));
+        }
+        out.writeInt(journalNodes);
+        out.writeInt(nodeCount);
+        nodeBuckets.write(out, journalNodes, nodeCount);
+        journalNodes = nodeCount;
+    }
+
+    /**
+     * 在distribution上应用writeJournal写出的变化，distribution为null时新建
+     */
+    static SizeDistribution readJournal(DataInput in, SizeDistribution distribution) throws IOException {
+        if (distribution == null) {
+            distribution = new SizeDistribution();
+        }
+        for (int bucket = 0; bucket < SizeHistogram.BUCKETS; bucket++) {
+            distribution.totals.addToBucket(bucket, in.readLong() - distribution.totals.getBucketCount(bucket));
+        }
+        int from = in.readInt();
+        int count = in.readInt();
+        if (from != distribution.nodeCount) {
+            throw new IOException("大小分布不连续: " + from + " != " + distribution.nodeCount);
+        }
+        distribution.nodeBuckets.read(in, from, count);
+        distribution.nodeCount = count;
+        distribution.journalNodes = count;
+        return distribution;
+    }
+
+    /**
+     * 下次写入断点日志时写出全部内容
+     */
+    void resetJournal() {
+        journalNodes = 0;
+    }
+
+    /**
+     * 把写满的页改为映射，不再占用堆内存
+     */
+    void spill() throws IOException {
+        nodeBuckets.spill();
+    }
+
+    /**
+     * 留在堆中的字节数
+     */
+    synchronized long getMemoryBytes() {
+        return nodeBuckets.getResidentBytes() + (blockCounts == null ? 0 : 4L * blockCounts.length);
+    }
+
+    void dispose() {
+        nodeBuckets.dispose();
+    }
+}
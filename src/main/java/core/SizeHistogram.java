@@ -0,0 +1,101 @@
+package com.foldertree.core;
+
+/**
+ * 文件大小分布草图 - HDR直方图式的对数线性分桶：小于4字节的大小各占一个桶，
+ * 此后每个2的幂区间再等分为4个子桶，共248个桶覆盖全部long范围，
+ * 分位数的相对误差不超过12.5%；两个草图按桶相加即可合并
+ */
+public class SizeHistogram {
+
+    // 每个2的幂区间的子桶数的对数
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    public static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] counts = new long[BUCKETS];
+    private long total;
+
+    /**
+     * 大小所在的桶，结果在 [0, BUCKETS) 之间
+     */
+    static int bucketOf(long size) {
+        if (size < SUB_BUCKETS) {
+            return (int) Math.max(0, size);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(size);
+        int sub = (int) (size >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * 桶的下界（含）
+     */
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * 桶的上界（含）
+     */
+    static long upperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowerBound(bucket + 1) - 1;
+    }
+
+    public void add(long size) {
+        addToBucket(bucketOf(size), 1);
+    }
+
+    void addToBucket(int bucket, long count) {
+        counts[bucket] += count;
+        total += count;
+    }
+
+    public void merge(SizeHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+    }
+
+    long getBucketCount(int bucket) {
+        return counts[bucket];
+    }
+
+    public long getCount() {
+        return total;
+    }
+
+    /**
+     * 分位数q（0到1之间）的近似值，取所在桶的中点；没有数据时返回0
+     */
+    public long getQuantile(double q) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                long low = lowerBound(i);
+                return low + (upperBound(i) - low) / 2;
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    /**
+     * p50/p90/p99的简短描述
+     */
+    public String getSummary() {
+        return String.format("中位数 %s, p90 %s, p99 %s",
+                TreeRenderer.formatSize(getQuantile(0.5)),
+                TreeRenderer.formatSize(getQuantile(0.9)),
+                TreeRenderer.formatSize(getQuantile(0.99)));
+    }
+}
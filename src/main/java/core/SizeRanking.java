@@ -0,0 +1,105 @@
+package com.foldertree.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 最大的文件和文件夹排行 - 扫描过程中用两个容量固定的最小堆保留前N项，
+ * 堆中只有大小和节点先序编号两个long，内存只与N有关，与树的大小无关
+ * 文件夹的大小是汇总后的大小（只统计扫描深度以内），不包括根目录
+ */
+public class SizeRanking {
+
+    public static final int DEFAULT_LIMIT = 100;
+
+    private final TopHeap files;
+    private final TopHeap directories;
+
+    public SizeRanking(int limit) {
+        files = new TopHeap(limit);
+        directories = new TopHeap(limit);
+    }
+
+    /**
+     * 排行中的一项，路径需要调用resolvePaths后才有
+     */
+    public static class Entry {
+        public final long ordinal;
+        public final long size;
+        public final boolean directory;
+        public String path;
+
+        Entry(long ordinal, long size, boolean directory) {
+            this.ordinal = ordinal;
+            this.size = size;
+            this.directory = directory;
+        }
+    }
+
+    public int getLimit() {
+        return files.keys.length;
+    }
+
+    void offerFile(long size, long ordinal) {
+        files.offer(size, ordinal);
+    }
+
+    void offerDirectory(long size, long ordinal) {
+        directories.offer(size, ordinal);
+    }
+
+    /**
+     * 最大的文件，从大到小
+     */
+    public List<Entry> getLargestFiles() {
+        return files.toList(false);
+    }
+
+    /**
+     * 最大的文件夹，从大到小
+     */
+    public List<Entry> getLargestDirectories() {
+        return directories.toList(true);
+    }
+
+    /**
+     * 遍历一次扫描结果，为各项填上相对于根目录的路径
+     */
+    public static void resolvePaths(ScanTree tree, List<Entry> entries) {
+        Map<Long, Entry> wanted = new HashMap<>();
+        for (Entry entry : entries) {
+            wanted.put(entry.ordinal, entry);
+        }
+        NameDictionary names = tree.getNames();
+        String[][] pathStack = {new String[64]};
+        long[] ordinal = {0};
+        tree.visit(node -> {
+            if (node.depth >= pathStack[0].length) {
+                pathStack[0] = Arrays.copyOf(pathStack[0], node.depth * 2);
+            }
+            pathStack[0][node.depth] = names.name(node.nameId);
+            Entry entry = wanted.get(ordinal[0]++);
+            if (entry != null) {
+                entry.path = String.join("/", Arrays.asList(pathStack[0]).subList(0, node.depth + 1));
+            }
+        });
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(getLimit());
+        files.writeTo(out);
+        directories.writeTo(out);
+    }
+
+    static SizeRanking readFrom(DataInput in) throws IOException {
+        SizeRanking ranking = new SizeRanking(in.readInt());
+        ranking.files.readFrom(in);
+        ranking.directories.readFrom(in);
+        return ranking;
+    }
+}
@@ -0,0 +1,80 @@
+package com.foldertree.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * 快照缓存 - 每个根目录和选项保存最近一次完整扫描的快照，
+ * 之后可以对照快照查询变化而不必重新扫描
+ */
+public class SnapshotCache {
+
+    private static final File SNAPSHOT_DIR = new File(System.getProperty("user.home"),
+            ".foldertree" + File.separator + "snapshots");
+
+    private final File file;
+
+    private SnapshotCache(String key) {
+        String id = UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
+        this.file = new File(SNAPSHOT_DIR, id + ".snap");
+    }
+
+    /**
+     * 获取某个根目录和选项对应的快照
+     */
+    public static SnapshotCache forScan(String folderPath, ScanOptions options) {
+        String rootPath = new File(folderPath).getAbsolutePath();
+        return new SnapshotCache(rootPath + "|" + options.getResultKey());
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * 同一根目录和选项的全文索引文件，与快照放在一起
+     */
+    public File getIndexFile() {
+        String name = file.getName();
+        return new File(SNAPSHOT_DIR, name.substring(0, name.length() - ".snap".length()) + ".idx");
+    }
+
+    public boolean exists() {
+        return file.isFile();
+    }
+
+    /**
+     * 快照对应的时间点，快照不存在或无法读取时返回-1
+     */
+    public long getCreatedTime() {
+        if (!exists()) {
+            return -1;
+        }
+        try (ScanSnapshot.Reader reader = ScanSnapshot.open(file)) {
+            return reader.getCreatedTime();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 保存扫描结果，scanStartTime为扫描开始的时间，之后修改的项目都会被视为可能变化；
+     * 先写临时文件再原子替换，写到一半中断时保留旧的快照
+     */
+    public void save(ScanTree tree, String folderPath, ScanOptions options,
+                     long scanStartTime) throws IOException {
+        Files.createDirectories(SNAPSHOT_DIR.toPath());
+        File tempFile = new File(SNAPSHOT_DIR, file.getName() + ".tmp");
+        try {
+            ScanSnapshot.write(tree, new File(folderPath).getAbsolutePath(), options, tempFile, scanStartTime);
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+}
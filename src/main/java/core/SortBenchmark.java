@@ -0,0 +1,88 @@
+package com.foldertree.core;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 排序基准测试 - 对比最初的 Comparator.comparing(File::getName) 和各排序方式
+ * 用法: SortBenchmark [目录 | 生成的名称数量]，默认生成20万个名称
+ */
+public class SortBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURE_ROUNDS = 7;
+
+    private static final String[] WORDS = {"file", "报告", "IMG_", "数据", "backup", "日志", "Test", "项目"};
+    private static final String[] EXTENSIONS = {"txt", "jpg", "java", "log", "pdf", "", "tar.gz"};
+
+    public static void main(String[] args) {
+        List<DirEntry> entries;
+        File dir = args.length > 0 ? new File(args[0]) : null;
+        if (dir != null && dir.isDirectory()) {
+            entries = new NioDirectoryLister().list(dir);
+            System.out.println("目录: " + dir.getAbsolutePath());
+        } else {
+            int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+            entries = generate(count, new Random(42));
+            System.out.println("生成的名称");
+        }
+        System.out.println("子项数: " + entries.size() + ", 并行阈值: " + EntrySorter.PARALLEL_THRESHOLD);
+        System.out.println();
+
+        List<File> files = new ArrayList<>(entries.size());
+        for (DirEntry entry : entries) {
+            files.add(entry.file);
+        }
+        report("File::getName (原排序)", measure(() -> {
+            List<File> copy = new ArrayList<>(files);
+            copy.sort(Comparator.comparing(File::getName));
+        }));
+
+        for (SortMode mode : SortMode.values()) {
+            report("SortMode." + mode + " (" + mode.getDisplayName() + ")", measure(() ->
+                    EntrySorter.sort(new ArrayList<>(entries), mode)));
+        }
+    }
+
+    /**
+     * 生成混合了数字、中文和不同扩展名的名称，大小和修改时间随机
+     */
+    private static List<DirEntry> generate(int count, Random random) {
+        List<DirEntry> entries = new ArrayList<>(count);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            String ext = EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+            String name = WORDS[random.nextInt(WORDS.length)] + random.nextInt(count)
+                    + (ext.isEmpty() ? "" : "." + ext);
+            entries.add(new DirEntry(new File("bench", name), false,
+                    random.nextInt(1 << 30), now - random.nextInt(Integer.MAX_VALUE)));
+        }
+        return entries;
+    }
+
+    /**
+     * 预热后多次运行，返回各次耗时（毫秒）
+     */
+    private static double[] measure(Runnable task) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            task.run();
+        }
+        double[] times = new double[MEASURE_ROUNDS];
+        for (int i = 0; i < MEASURE_ROUNDS; i++) {
+            long start = System.nanoTime();
+            task.run();
+            times[i] = (System.nanoTime() - start) / 1e6;
+        }
+        return times;
+    }
+
+    private static void report(String label, double[] times) {
+        Arrays.sort(times);
+        System.out.println(String.format("%-32s 中位数 %8.2f 毫秒   最快 %8.2f 毫秒",
+                label, times[times.length / 2], times[0]));
+    }
+}
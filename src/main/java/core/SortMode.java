@@ -0,0 +1,29 @@
+package com.foldertree.core;
+
+/**
+ * 同一目录内子项的排序方式（文件夹始终排在文件之前）
+ */
+public enum SortMode {
+    // 按UTF-16编码顺序，与最初的排序相同
+    NAME("名称"),
+    // 名称中的数字按数值比较，file2排在file10之前，忽略大小写
+    NATURAL("自然"),
+    // 按中文区域设置排序，汉字按拼音
+    COLLATOR("拼音"),
+    // 文件从大到小，文件夹按名称
+    SIZE("大小"),
+    // 从新到旧
+    MTIME("修改时间"),
+    // 按扩展名，再按名称
+    EXTENSION("扩展名");
+
+    private final String displayName;
+
+    SortMode(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+}
@@ -0,0 +1,87 @@
+package com.foldertree.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 容量固定的最小堆，堆顶是当前保留项中最小的一个，新项更大时替换堆顶
+ */
+class TopHeap {
+    final long[] keys;
+    final long[] ids;
+    int size;
+
+    TopHeap(int capacity) {
+        keys = new long[capacity];
+        ids = new long[capacity];
+    }
+
+    void offer(long key, long id) {
+        if (size < keys.length) {
+            int i = size++;
+            // 上浮
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                keys[i] = keys[parent];
+                ids[i] = ids[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            ids[i] = id;
+        } else if (size > 0 && key > keys[0]) {
+            siftDown(key, id);
+        }
+    }
+
+    private void siftDown(long key, long id) {
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child]) {
+                child++;
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            keys[i] = keys[child];
+            ids[i] = ids[child];
+            i = child;
+        }
+        keys[i] = key;
+        ids[i] = id;
+    }
+
+    List<SizeRanking.Entry> toList(boolean directory) {
+        List<SizeRanking.Entry> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(new SizeRanking.Entry(ids[i], keys[i], directory));
+        }
+        // 从大到小，大小相同时按在树中的顺序
+        list.sort((a, b) -> a.size != b.size ? Long.compare(b.size, a.size)
+                : Long.compare(a.ordinal, b.ordinal));
+        return list;
+    }
+
+    void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(keys[i]);
+            out.writeLong(ids[i]);
+        }
+    }
+
+    void readFrom(DataInput in) throws IOException {
+        size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            keys[i] = in.readLong();
+            ids[i] = in.readLong();
+        }
+    }
+}
@@ -0,0 +1,529 @@
+package com.foldertree.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * 树状图渲染器 - 可以在每行末尾显示对齐的文件数和大小列，并可以让同级节点按大小从大到小排列
+ * 按大小排序时借助子树索引逐个目录读回节点，内存只与较大目录的子节点数和一批子树的大小有关
+ * 可以限制渲染的行数，只渲染从某一行开始的一部分；完整的树状图可以直接流式写入文件，不在内存中拼成字符串
+ */
+public class TreeRenderer {
+
+    private static final String PREFIX_ENTRY = "├── ";
+    private static final String PREFIX_LAST_ENTRY = "└── ";
+    private static final String PREFIX_VERTICAL = "│   ";
+    private static final String PREFIX_SPACE = "    ";
+    // 每层缩进的显示宽度
+    private static final int INDENT_WIDTH = 4;
+    // 文件数列和大小列的显示宽度
+    private static final int FILES_COLUMN_WIDTH = 12;
+    private static final int SIZE_COLUMN_WIDTH = 10;
+    // 按大小排序时，不超过这么多节点的子树一次读入
+    private static final int BATCH_NODES = 64 * 1024;
+
+    private final ScanTree tree;
+    // 按大小排序时用来找子节点，没有提供时在第一次按大小渲染时建立
+    private TreeIndex index;
+    private boolean showSizes;
+    private boolean sortBySize;
+    // 最多渲染的行数，0表示不限
+    private int maxLines;
+    // 从这一行开始输出，之前的行只用来确定树状前缀
+    private int firstLine;
+    // 按大小排序时每行对应的先序编号，不排序时为null（行号即先序编号）
+    private int[] lineOrdinals;
+    // 按大小排序时的行号索引：(先序编号 << 32 | 行号) 升序排列
+    private long[] lineIndex;
+    // 上次渲染输出的行数，以及是否因为起始行或行数限制没有渲染完
+    private int renderedLines;
+    private boolean truncated;
+
+    public TreeRenderer(ScanTree tree) {
+        this(tree, null);
+    }
+
+    public TreeRenderer(ScanTree tree, TreeIndex index) {
+        this.tree = tree;
+        this.index = index;
+    }
+
+    public boolean isShowSizes() {
+        return showSizes;
+    }
+
+    public void setShowSizes(boolean showSizes) {
+        this.showSizes = showSizes;
+    }
+
+    public boolean isSortBySize() {
+        return sortBySize;
+    }
+
+    public void setSortBySize(boolean sortBySize) {
+        this.sortBySize = sortBySize;
+    }
+
+    public void setMaxLines(int maxLines) {
+        this.maxLines = Math.max(0, maxLines);
+    }
+
+    /**
+     * 完整渲染结果中从第firstLine行（从0开始）起输出，输出的行号和编号都相对于这一行
+     */
+    public void setFirstLine(int firstLine) {
+        this.firstLine = Math.max(0, firstLine);
+    }
+
+    public int getFirstLine() {
+        return firstLine;
+    }
+
+    /**
+     * 上次渲染是否因为起始行或行数限制只输出了一部分
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public int getRenderedLines() {
+        return renderedLines;
+    }
+
+    /**
+     * 渲染后第line行（从0开始）对应节点的先序编号
+     */
+    public long getOrdinal(int line) {
+        if (lineOrdinals == null) {
+            return line >= 0 && line < renderedLines ? (long) firstLine + line : -1;
+        }
+        return line >= 0 && line < lineOrdinals.length ? lineOrdinals[line] : -1;
+    }
+
+    /**
+     * 先序编号为ordinal的节点在渲染结果中的行号，不存在时返回-1
+     */
+    public int getLine(long ordinal) {
+        if (lineOrdinals == null) {
+            return ordinal >= firstLine && ordinal < (long) firstLine + renderedLines ? (int) (ordinal - firstLine) : -1;
+        }
+        if (ordinal < 0 || ordinal > Integer.MAX_VALUE) {
+            return -1;
+        }
+        int i = Arrays.binarySearch(lineIndex, ordinal << 32);
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return i < lineIndex.length && lineIndex[i] >>> 32 == ordinal ? (int) lineIndex[i] : -1;
+    }
+
+    /**
+     * 先序编号为ordinal的节点在完整渲染结果中的行号（不受起始行和行数限制），不存在时返回-1
+     * 按大小排序时沿祖先链逐层读回兄弟节点，把排在前面的兄弟的子树大小累加起来
+     */
+    public int findLine(long ordinal) {
+        if (ordinal < 0 || ordinal >= tree.size()) {
+            return -1;
+        }
+        if (!sortBySize) {
+            return (int) ordinal;
+        }
+        if (index == null) {
+            index = TreeIndex.build(tree);
+        }
+        int target = (int) ordinal;
+        int line = 0;
+        for (int dir = 0; dir != target; ) {
+            int[] children = children(dir);
+            // 子树包含target的子节点
+            int k = Arrays.binarySearch(children, target);
+            if (k < 0) {
+                k = -k - 2;
+            }
+            Group group = new Group(children);
+            long size = group.sizes[k];
+            line++;
+            for (int c = 0; c < children.length; c++) {
+                if (group.sizes[c] > size || group.sizes[c] == size && c < k) {
+                    line += index.getSubtreeEnd(children[c]) - children[c];
+                }
+            }
+            dir = children[k];
+        }
+        return line;
+    }
+
+    /**
+     * 渲染为树状图文本，设置了起始行或行数限制时只渲染其中的行
+     */
+    public String render() {
+        LineWriter writer = new LineWriter(null);
+        render(writer);
+        return writer.out.toString();
+    }
+
+    /**
+     * 渲染并按块写入sink，适合把完整的树状图保存到文件
+     */
+    public void render(Writer sink) throws IOException {
+        LineWriter writer = new LineWriter(sink);
+        try {
+            render(writer);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        writer.flush();
+    }
+
+    private void render(LineWriter writer) {
+        lineOrdinals = null;
+        lineIndex = null;
+        renderedLines = 0;
+        truncated = false;
+        if (sortBySize) {
+            renderSortedBySize(writer);
+            return;
+        }
+
+        long from = Math.min(firstLine, tree.size());
+        long to = maxLines > 0 ? Math.min(from + maxLines, tree.size()) : tree.size();
+        truncated = from > 0 || to < tree.size();
+        if (showSizes) {
+            int[] max = {0};
+            NameDictionary names = tree.getNames();
+            tree.visit(from, to, node -> max[0] = Math.max(max[0], labelWidth(node.depth,
+                    names.name(node.nameId), node.isDirectory())));
+            writer.width = max[0];
+        }
+
+        // 起始行之前的行只记录前缀状态
+        NameDictionary names = tree.getNames();
+        writer.skip = from;
+        tree.visit(0, to, node -> writer.line(node.depth, node.isLast(), names.name(node.nameId),
+                node.isDirectory(), node.isDenied(), node.size, node.fileCount));
+        renderedLines = (int) (to - from);
+    }
+
+    /**
+     * 把每个目录的子节点按大小从大到小排列后渲染（大小相同时保持原顺序）
+     * 借助子树索引一次只读入一个目录的子节点；子树不超过BATCH_NODES个节点时整棵子树一次读入
+     */
+    private void renderSortedBySize(LineWriter writer) {
+        int n = (int) tree.size();
+        if (n == 0) {
+            return;
+        }
+        if (index == null) {
+            index = TreeIndex.build(tree);
+        }
+        NameDictionary names = tree.getNames();
+        if (showSizes) {
+            tree.visit(node -> writer.width = Math.max(writer.width, labelWidth(node.depth,
+                    names.name(node.nameId), node.isDirectory())));
+        }
+
+        int from = Math.min(firstLine, n);
+        int limit = maxLines > 0 ? Math.min(maxLines, n - from) : n - from;
+        truncated = from > 0 || from + limit < n;
+        writer.skip = from;
+        // 写入文件时不记录行号
+        lineOrdinals = new int[writer.sink == null ? limit : 0];
+
+        Group root = n <= BATCH_NODES ? new Group(0, n) : new Group(new int[]{0});
+        writeNode(writer, names, root, 0, true);
+        Level[] stack = new Level[64];
+        int top = -1;
+        if (n > 1) {
+            stack[++top] = n <= BATCH_NODES ? new Level(root, childrenOf(root, 0)) : loadChildren(0);
+        }
+
+        // 深度优先输出，栈中每层是一个目录排好序的子节点及下一个要输出的位置
+        while (top >= 0 && renderedLines < limit) {
+            Level level = stack[top];
+            if (level.next == level.items.length) {
+                stack[top--] = null;
+                continue;
+            }
+            int i = level.items[level.next++];
+            writeNode(writer, names, level.data, i, level.next == level.items.length);
+
+            int child = level.data.ordinals[i];
+            int end = index.getSubtreeEnd(child);
+            if (end - child == 1) {
+                continue;
+            }
+            if (++top == stack.length) {
+                stack = Arrays.copyOf(stack, top * 2);
+            }
+            if (level.data.contiguous) {
+                stack[top] = new Level(level.data, childrenOf(level.data, i));
+            } else if (end - child <= BATCH_NODES) {
+                Group subtree = new Group(child, end - child);
+                stack[top] = new Level(subtree, childrenOf(subtree, 0));
+            } else {
+                stack[top] = loadChildren(child);
+            }
+        }
+
+        lineIndex = new long[Math.min(renderedLines, lineOrdinals.length)];
+        for (int line = 0; line < lineIndex.length; line++) {
+            lineIndex[line] = (long) lineOrdinals[line] << 32 | line;
+        }
+        Arrays.sort(lineIndex);
+    }
+
+    /**
+     * 沿兄弟节点跳过找出目录的子节点
+     */
+    private int[] children(int dir) {
+        int end = index.getSubtreeEnd(dir);
+        int[] children = new int[16];
+        int count = 0;
+        for (int child = dir + 1; child < end; child = index.getSubtreeEnd(child)) {
+            if (count == children.length) {
+                children = Arrays.copyOf(children, count * 2);
+            }
+            children[count++] = child;
+        }
+        return Arrays.copyOf(children, count);
+    }
+
+    /**
+     * 只读回目录的子节点并按大小排序
+     */
+    private Level loadChildren(int dir) {
+        Group group = new Group(children(dir));
+        return new Level(group, sortBySize(group.sizes, group.sizes.length));
+    }
+
+    /**
+     * 已整段读入的子树中第i个节点的子节点，按大小排序后的位置
+     */
+    private int[] childrenOf(Group subtree, int i) {
+        int[] children = children(subtree.ordinals[i]);
+        long[] sizes = new long[children.length];
+        for (int c = 0; c < children.length; c++) {
+            children[c] -= subtree.ordinals[0];
+            sizes[c] = subtree.sizes[children[c]];
+        }
+        int[] order = sortBySize(sizes, children.length);
+        for (int c = 0; c < order.length; c++) {
+            order[c] = children[order[c]];
+        }
+        return order;
+    }
+
+    /**
+     * 按大小从大到小排列的位置，大小相同时保持原顺序
+     * 大小先换成在去重排序后的名次，再与位置拼成long一起排序，不装箱也不用比较器
+     */
+    static int[] sortBySize(long[] sizes, int count) {
+        long[] sorted = Arrays.copyOf(sizes, count);
+        Arrays.sort(sorted);
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            // 相同的大小得到相同的名次
+            long rank = Arrays.binarySearch(sorted, sizes[i]);
+            keys[i] = (count - 1 - rank) << 32 | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = (int) keys[i];
+        }
+        return order;
+    }
+
+    private void writeNode(LineWriter writer, NameDictionary names, Group group, int i, boolean isLast) {
+        if (!writer.line(group.depths[i], isLast, names.name(group.nameIds[i]),
+                (group.flags[i] & ScanTree.FLAG_DIRECTORY) != 0, (group.flags[i] & ScanTree.FLAG_DENIED) != 0,
+                group.sizes[i], group.fileCounts[i])) {
+            return;
+        }
+        if (renderedLines < lineOrdinals.length) {
+            lineOrdinals[renderedLines] = group.ordinals[i];
+        }
+        renderedLines++;
+    }
+
+    /**
+     * 从树中读回的一组节点；contiguous为true时是以ordinals[0]为根、连续编号的整棵子树
+     */
+    private class Group {
+        final int[] ordinals;
+        final boolean contiguous;
+        final int[] nameIds;
+        final int[] depths;
+        final byte[] flags;
+        final long[] sizes;
+        final int[] fileCounts;
+
+        /**
+         * 读回编号为ordinals（升序）的节点
+         */
+        Group(int[] ordinals) {
+            this(ordinals, false);
+            long[] wanted = new long[ordinals.length];
+            for (int i = 0; i < ordinals.length; i++) {
+                wanted[i] = ordinals[i];
+            }
+            int[] next = {0};
+            tree.visit(wanted, node -> set(next[0]++, node));
+        }
+
+        /**
+         * 读回编号在[from, from + count)内的节点
+         */
+        Group(int from, int count) {
+            this(new int[count], true);
+            for (int i = 0; i < count; i++) {
+                ordinals[i] = from + i;
+            }
+            int[] next = {0};
+            tree.visit(from, from + count, node -> set(next[0]++, node));
+        }
+
+        private Group(int[] ordinals, boolean contiguous) {
+            this.ordinals = ordinals;
+            this.contiguous = contiguous;
+            nameIds = new int[ordinals.length];
+            depths = new int[ordinals.length];
+            flags = new byte[ordinals.length];
+            sizes = new long[ordinals.length];
+            fileCounts = new int[ordinals.length];
+        }
+
+        private void set(int i, ScanTree.NodeRecord node) {
+            nameIds[i] = node.nameId;
+            depths[i] = node.depth;
+            flags[i] = node.flags;
+            sizes[i] = node.size;
+            fileCounts[i] = node.fileCount;
+        }
+    }
+
+    /**
+     * 一个目录排好序的子节点（data中的位置）和下一个要输出的位置
+     */
+    private static class Level {
+        final Group data;
+        final int[] items;
+        int next;
+
+        Level(Group data, int[] items) {
+            this.data = data;
+            this.items = items;
+        }
+    }
+
+    /**
+     * 逐行输出，记录每层是否为最后一个子节点以决定前缀；有sink时攒够一块就写出
+     * 前skip行只记录前缀状态，不输出
+     */
+    private class LineWriter {
+        private static final int FLUSH_CHARS = 64 * 1024;
+
+        final StringBuilder out = new StringBuilder();
+        final Writer sink;
+        int width;
+        long skip;
+        boolean[] last = new boolean[16];
+
+        LineWriter(Writer sink) {
+            this.sink = sink;
+        }
+
+        void flush() throws IOException {
+            if (sink != null) {
+                sink.write(out.toString());
+                out.setLength(0);
+            }
+        }
+
+        /**
+         * 输出一行，被跳过时返回false
+         */
+        boolean line(int depth, boolean isLast, String name, boolean directory, boolean denied,
+                     long size, int fileCount) {
+            if (depth >= last.length) {
+                last = Arrays.copyOf(last, depth * 2);
+            }
+            if (skip > 0) {
+                skip--;
+                last[depth] = isLast;
+                return false;
+            }
+            if (depth > 0) {
+                for (int d = 1; d < depth; d++) {
+                    out.append(last[d] ? PREFIX_SPACE : PREFIX_VERTICAL);
+                }
+                out.append(isLast ? PREFIX_LAST_ENTRY : PREFIX_ENTRY);
+            }
+            out.append(name);
+            if (directory) {
+                out.append("/");
+            }
+            if (showSizes) {
+                appendColumns(labelWidth(depth, name, directory), directory, denied, size, fileCount);
+            }
+            out.append("\n");
+            last[depth] = isLast;
+            if (sink != null && out.length() >= FLUSH_CHARS) {
+                try {
+                    flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return true;
+        }
+
+        private void appendColumns(int labelWidth, boolean directory, boolean denied,
+                                   long size, int fileCount) {
+            String files = directory ? fileCount + " 个文件" : "";
+            String sizeText = denied ? "-" : formatSize(size);
+            pad(width - labelWidth + 2 + FILES_COLUMN_WIDTH - displayWidth(files));
+            out.append(files);
+            pad(2 + SIZE_COLUMN_WIDTH - sizeText.length());
+            out.append(sizeText);
+        }
+
+        private void pad(int spaces) {
+            for (int i = 0; i < spaces; i++) {
+                out.append(' ');
+            }
+        }
+    }
+
+    private static int labelWidth(int depth, String name, boolean directory) {
+        return depth * INDENT_WIDTH + displayWidth(name) + (directory ? 1 : 0);
+    }
+
+    /**
+     * 等宽字体下的显示宽度，中日韩字符和全角字符按2计算
+     */
+    static int displayWidth(String text) {
+        int width = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLowSurrogate(c)) {
+                continue;
+            }
+            width += c >= 0x2E80 ? 2 : 1;
+        }
+        return width;
+    }
+
+    /**
+     * 格式化文件大小
+     */
+    public static String formatSize(long size) {
+        if (size < 1024) return size + " B";
+        if (size < 1024 * 1024) return String.format("%.1f KB", size / 1024.0);
+        if (size < 1024L * 1024 * 1024) return String.format("%.1f MB", size / (1024.0 * 1024.0));
+        if (size < 1024L * 1024 * 1024 * 1024) return String.format("%.1f GB", size / (1024.0 * 1024.0 * 1024.0));
+        return String.format("%.1f TB", size / (1024.0 * 1024.0 * 1024.0 * 1024.0));
+    }
+}
@@ -0,0 +1,19 @@
+package com.foldertree.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * 目录无法列出（没有权限、已被删除或读取出错），与空目录区分开
+ */
+public class UnreadableDirectoryException extends UncheckedIOException {
+
+    public UnreadableDirectoryException(File dir, IOException cause) {
+        super("无法列出目录: " + dir.getPath(), cause);
+    }
+
+    public UnreadableDirectoryException(File dir) {
+        this(dir, new IOException("无法列出目录: " + dir.getPath()));
+    }
+}
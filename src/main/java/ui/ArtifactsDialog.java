@@ -0,0 +1,204 @@
+package com.foldertree.ui;
+
+import com.foldertree.core.ArtifactFinder;
+import com.foldertree.core.IoThrottle;
+import com.foldertree.core.ScanOptions;
+import com.foldertree.core.ScanTree;
+import com.foldertree.core.TreeRenderer;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+/**
+ * 可回收的构建产物和缓存对话框 - 按大小列出识别出的文件夹，可按类型筛选，
+ * 扫描时跳过的文件夹点击计算大小后才有大小，双击跳转到树状图中对应的行
+ */
+public class ArtifactsDialog extends JDialog {
+
+    private static final String ALL_KINDS = "全部类型";
+
+    private final IoThrottle throttle;
+    private final DefaultListModel<ArtifactFinder.Candidate> model = new DefaultListModel<>();
+    private final JComboBox<Object> kindComboBox = new JComboBox<>();
+    private final JButton measureButton = new JButton("计算大小");
+    private final JLabel summaryLabel = new JLabel();
+    private ArtifactFinder.Result result;
+
+    public ArtifactsDialog(JFrame parent, ScanTree tree, File root, ScanOptions options, IoThrottle throttle,
+                           LongPredicate jumpToOrdinal) {
+        super(parent, "可回收的构建产物和缓存", false);
+        this.throttle = throttle;
+        setSize(900, 500);
+        setLocationRelativeTo(parent);
+        initUI(jumpToOrdinal);
+        find(tree, root, options);
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+    }
+
+    private void initUI(LongPredicate jumpToOrdinal) {
+        setLayout(new BorderLayout(5, 5));
+
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        top.add(new JLabel("类型:"));
+        kindComboBox.addItem(ALL_KINDS);
+        kindComboBox.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                Object text = value instanceof ArtifactFinder.Kind
+                        ? ((ArtifactFinder.Kind) value).getDisplayName() : value;
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        kindComboBox.addActionListener(e -> refresh());
+        top.add(kindComboBox);
+        measureButton.setToolTipText("逐个遍历扫描时跳过或超出扫描深度的文件夹，计算它们的大小");
+        measureButton.setEnabled(false);
+        measureButton.addActionListener(e -> measure());
+        top.add(measureButton);
+        add(top, BorderLayout.NORTH);
+
+        JList<ArtifactFinder.Candidate> list = new JList<>(model);
+        list.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                ArtifactFinder.Candidate candidate = (ArtifactFinder.Candidate) value;
+                String size = candidate.sized ? TreeRenderer.formatSize(candidate.size) : "未计算";
+                String text = String.format("%3d. %10s  %-24s %s", index + 1, size,
+                        candidate.kind.getDisplayName(), candidate.path);
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                ArtifactFinder.Candidate candidate = list.getSelectedValue();
+                if (e.getClickCount() == 2 && candidate != null && !jumpToOrdinal.test(candidate.ordinal)) {
+                    JOptionPane.showMessageDialog(ArtifactsDialog.this, "树状图中找不到该文件夹，请重新生成",
+                            "提示", JOptionPane.WARNING_MESSAGE);
+                }
+            }
+        });
+        add(new JScrollPane(list), BorderLayout.CENTER);
+
+        summaryLabel.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        add(summaryLabel, BorderLayout.SOUTH);
+    }
+
+    /**
+     * 识别需要遍历一次扫描结果（可能要读回溢出的节点），放在后台线程
+     */
+    private void find(ScanTree tree, File root, ScanOptions options) {
+        summaryLabel.setText("正在查找...");
+        new SwingWorker<ArtifactFinder.Result, Void>() {
+            @Override
+            protected ArtifactFinder.Result doInBackground() {
+                return ArtifactFinder.find(tree, root, options);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    result = get();
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    summaryLabel.setText("查找失败: " + cause.getMessage());
+                    return;
+                }
+                for (ArtifactFinder.Kind kind : result.getKinds()) {
+                    kindComboBox.addItem(kind);
+                }
+                refresh();
+            }
+        }.execute();
+    }
+
+    private ArtifactFinder.Kind getSelectedKind() {
+        Object selected = kindComboBox.getSelectedItem();
+        return selected instanceof ArtifactFinder.Kind ? (ArtifactFinder.Kind) selected : null;
+    }
+
+    private void refresh() {
+        if (result == null) {
+            return;
+        }
+        ArtifactFinder.Kind kind = getSelectedKind();
+        model.clear();
+        int count = 0;
+        for (ArtifactFinder.Candidate candidate : result.getCandidates()) {
+            if (kind == null || candidate.kind == kind) {
+                model.addElement(candidate);
+                count++;
+            }
+        }
+        int unsized = result.getUnsizedCount();
+        measureButton.setEnabled(unsized > 0);
+
+        String summary = String.format("可回收 %s，共 %d 个文件夹；双击跳转",
+                TreeRenderer.formatSize(result.getReclaimableBytes(kind)), count);
+        if (unsized > 0) {
+            summary += String.format("（%d 个扫描时没有展开，尚未计算大小）", unsized);
+        }
+        summaryLabel.setText(summary);
+    }
+
+    /**
+     * 在后台逐个计算未展开的候选的大小，读取使用扫描的限速设置
+     */
+    private void measure() {
+        List<ArtifactFinder.Candidate> unsized = new ArrayList<>();
+        for (ArtifactFinder.Candidate candidate : result.getCandidates()) {
+            if (!candidate.sized) {
+                unsized.add(candidate);
+            }
+        }
+        measureButton.setEnabled(false);
+        kindComboBox.setEnabled(false);
+        new SwingWorker<List<String>, Integer>() {
+            @Override
+            protected List<String> doInBackground() {
+                List<String> failures = new ArrayList<>();
+                for (int i = 0; i < unsized.size() && isDisplayable(); i++) {
+                    ArtifactFinder.Candidate candidate = unsized.get(i);
+                    try {
+                        ArtifactFinder.measure(candidate, throttle);
+                    } catch (IOException e) {
+                        failures.add(candidate.path + ": " + e.getMessage());
+                    }
+                    publish(i + 1);
+                }
+                return failures;
+            }
+
+            @Override
+            protected void process(List<Integer> chunks) {
+                summaryLabel.setText(String.format("正在计算大小... %d/%d",
+                        chunks.get(chunks.size() - 1), unsized.size()));
+            }
+
+            @Override
+            protected void done() {
+                kindComboBox.setEnabled(true);
+                result.sort();
+                refresh();
+                try {
+                    List<String> failures = get();
+                    if (!failures.isEmpty()) {
+                        System.err.println("计算大小失败: " + String.join(", ", failures));
+                    }
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    summaryLabel.setText("计算失败: " + cause.getMessage());
+                }
+            }
+        }.execute();
+    }
+}
@@ -0,0 +1,150 @@
+package com.foldertree.ui;
+
+import com.foldertree.core.ChangeDetector;
+import com.foldertree.core.IoThrottle;
+import com.foldertree.core.SnapshotCache;
+import com.foldertree.core.TreeRenderer;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 变化查询对话框 - 对照上次扫描保存的快照列出新增、删除和修改的项目，
+ * 只重新列出修改时间有变化的文件夹，不需要重新扫描
+ */
+public class ChangesDialog extends JDialog {
+
+    private final SnapshotCache snapshot;
+    private final int maxDepth;
+    private final IoThrottle throttle;
+    private final DefaultListModel<ChangeDetector.Change> model = new DefaultListModel<>();
+    private final JCheckBox checkFilesCheckBox = new JCheckBox("逐个检查文件");
+    private final JButton startButton = new JButton("查询");
+    private final JLabel summaryLabel = new JLabel();
+    private ChangeDetector detector;
+
+    /**
+     * @param maxDepth 生成快照时的扫描深度
+     */
+    public ChangesDialog(JFrame parent, SnapshotCache snapshot, int maxDepth, IoThrottle throttle) {
+        super(parent, "自上次快照以来的变化", false);
+        this.snapshot = snapshot;
+        this.maxDepth = maxDepth;
+        this.throttle = throttle;
+        setSize(800, 500);
+        setLocationRelativeTo(parent);
+        initUI();
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                if (detector != null) {
+                    detector.cancel();
+                }
+            }
+        });
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+    }
+
+    private void initUI() {
+        setLayout(new BorderLayout(5, 5));
+
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        String time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(snapshot.getCreatedTime()));
+        top.add(new JLabel("快照时间: " + time));
+        checkFilesCheckBox.setToolTipText("读取未变化文件夹中每个文件的属性，以发现原地改写的文件（较慢）");
+        top.add(checkFilesCheckBox);
+        startButton.addActionListener(e -> start());
+        top.add(startButton);
+        add(top, BorderLayout.NORTH);
+
+        JList<ChangeDetector.Change> list = new JList<>(model);
+        list.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                ChangeDetector.Change change = (ChangeDetector.Change) value;
+                String text = String.format("%c %s %10s  %s%s", change.kind.getSymbol(),
+                        change.kind.getDisplayName(), formatSizes(change), change.path,
+                        change.directory ? File.separator : "");
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        add(new JScrollPane(list), BorderLayout.CENTER);
+
+        summaryLabel.setText("点击查询开始比较");
+        summaryLabel.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        add(summaryLabel, BorderLayout.SOUTH);
+    }
+
+    private static String formatSizes(ChangeDetector.Change change) {
+        switch (change.kind) {
+            case ADDED:
+                return change.newSize < 0 ? "" : TreeRenderer.formatSize(change.newSize);
+            case REMOVED:
+                return TreeRenderer.formatSize(change.oldSize);
+            default:
+                return TreeRenderer.formatSize(change.oldSize) + " → " + TreeRenderer.formatSize(change.newSize);
+        }
+    }
+
+    private void start() {
+        if (detector != null) {
+            detector.cancel();
+            return;
+        }
+        ChangeDetector current = new ChangeDetector(throttle);
+        current.setCheckFiles(checkFilesCheckBox.isSelected());
+        detector = current;
+        model.clear();
+        checkFilesCheckBox.setEnabled(false);
+        startButton.setText("取消");
+        summaryLabel.setText("正在比较...");
+
+        new SwingWorker<ChangeDetector.Result, String>() {
+            @Override
+            protected ChangeDetector.Result doInBackground() throws Exception {
+                return current.detect(snapshot.getFile(), maxDepth,
+                        (processed, total, currentPath) -> publish(String.format("正在比较 %d/%d: %s",
+                                processed, total, currentPath)));
+            }
+
+            @Override
+            protected void process(List<String> chunks) {
+                if (detector == current) {
+                    summaryLabel.setText(chunks.get(chunks.size() - 1));
+                }
+            }
+
+            @Override
+            protected void done() {
+                detector = null;
+                checkFilesCheckBox.setEnabled(true);
+                startButton.setText("查询");
+                ChangeDetector.Result result;
+                try {
+                    result = get();
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    summaryLabel.setText("查询失败: " + cause.getMessage());
+                    return;
+                }
+                if (result == null) {
+                    summaryLabel.setText("已取消");
+                    return;
+                }
+                result.getChanges().forEach(model::addElement);
+                String summary = result.getSummary();
+                if (result.getTotalCount() > result.getChanges().size()) {
+                    summary += String.format("（只列出前 %d 项）", result.getChanges().size());
+                }
+                summaryLabel.setText(summary);
+            }
+        }.execute();
+    }
+}
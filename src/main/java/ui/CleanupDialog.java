@@ -0,0 +1,256 @@
+package com.foldertree.ui;
+
+import com.foldertree.core.CleanupFinder;
+import com.foldertree.core.IoThrottle;
+import com.foldertree.core.ParallelDeleter;
+import com.foldertree.core.ScanTree;
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.LongPredicate;
+
+/**
+ * 清理对话框 - 按类别列出空文件夹、只含空文件夹的文件夹、零字节文件和失效的符号链接，
+ * 可按路径筛选，双击跳转到树状图中对应的行，并可并行批量删除
+ */
+public class CleanupDialog extends JDialog {
+
+    private final IoThrottle throttle;
+    private final LongPredicate jumpToOrdinal;
+    private final JComboBox<CleanupFinder.Category> categoryComboBox =
+            new JComboBox<>(CleanupFinder.Category.values());
+    private final JTextField filterField = new JTextField(20);
+    private final DefaultListModel<CleanupFinder.Item> model = new DefaultListModel<>();
+    private final JList<CleanupFinder.Item> list = new JList<>(model);
+    private final JButton deleteButton = new JButton("删除");
+    private final JProgressBar progressBar = new JProgressBar();
+    private final JLabel summaryLabel = new JLabel();
+    private CleanupFinder.Result result;
+    // 已删除的条目，不再显示
+    private final Set<CleanupFinder.Item> deleted = new HashSet<>();
+    private ParallelDeleter deleter;
+
+    public CleanupDialog(JFrame parent, ScanTree tree, File root, int maxDepth, IoThrottle throttle,
+                         LongPredicate jumpToOrdinal) {
+        super(parent, "清理", false);
+        this.throttle = throttle;
+        this.jumpToOrdinal = jumpToOrdinal;
+        setSize(800, 500);
+        setLocationRelativeTo(parent);
+        initUI();
+        find(tree, root, maxDepth);
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+    }
+
+    private void initUI() {
+        setLayout(new BorderLayout(5, 5));
+
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        top.add(new JLabel("类别:"));
+        categoryComboBox.setRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                CleanupFinder.Category category = (CleanupFinder.Category) value;
+                String text = category.getDisplayName();
+                if (result != null) {
+                    text += String.format(" (%d)", result.getCount(category));
+                }
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        categoryComboBox.addActionListener(e -> refresh());
+        top.add(categoryComboBox);
+        top.add(new JLabel("筛选:"));
+        filterField.setToolTipText("只显示路径中包含该文字的项目（不区分大小写）");
+        filterField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                refresh();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                refresh();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                refresh();
+            }
+        });
+        top.add(filterField);
+        deleteButton.setToolTipText("删除选中的项目，没有选中时删除当前列出的全部项目");
+        deleteButton.setEnabled(false);
+        deleteButton.addActionListener(e -> deleteItems());
+        top.add(deleteButton);
+        add(top, BorderLayout.NORTH);
+
+        list.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                String text = ((CleanupFinder.Item) value).path;
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                CleanupFinder.Item item = list.getSelectedValue();
+                if (e.getClickCount() == 2 && item != null && !jumpToOrdinal.test(item.ordinal)) {
+                    JOptionPane.showMessageDialog(CleanupDialog.this, "树状图中找不到该项目，请重新生成",
+                            "提示", JOptionPane.WARNING_MESSAGE);
+                }
+            }
+        });
+        add(new JScrollPane(list), BorderLayout.CENTER);
+
+        JPanel bottom = new JPanel(new BorderLayout(5, 5));
+        bottom.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        progressBar.setStringPainted(true);
+        progressBar.setVisible(false);
+        bottom.add(progressBar, BorderLayout.NORTH);
+        bottom.add(summaryLabel, BorderLayout.CENTER);
+        add(bottom, BorderLayout.SOUTH);
+    }
+
+    /**
+     * 遍历扫描结果可能要读回溢出的节点，放在后台线程
+     */
+    private void find(ScanTree tree, File root, int maxDepth) {
+        summaryLabel.setText("正在查找...");
+        new SwingWorker<CleanupFinder.Result, Void>() {
+            @Override
+            protected CleanupFinder.Result doInBackground() {
+                return CleanupFinder.find(tree, root, maxDepth);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    result = get();
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    summaryLabel.setText("查找失败: " + cause.getMessage());
+                    return;
+                }
+                categoryComboBox.repaint();
+                refresh();
+            }
+        }.execute();
+    }
+
+    private void refresh() {
+        if (result == null) {
+            return;
+        }
+        CleanupFinder.Category category = (CleanupFinder.Category) categoryComboBox.getSelectedItem();
+        String filter = filterField.getText().trim().toLowerCase(Locale.ROOT);
+        List<CleanupFinder.Item> items = new ArrayList<>();
+        for (CleanupFinder.Item item : result.getItems(category)) {
+            if (!deleted.contains(item) && (filter.isEmpty() || item.path.toLowerCase(Locale.ROOT).contains(filter))) {
+                items.add(item);
+            }
+        }
+        model.clear();
+        model.addAll(items);
+        deleteButton.setEnabled(deleter == null && !items.isEmpty());
+
+        long total = result.getCount(category);
+        String summary = String.format("%s共 %d 个，列出 %d 个", category.getDisplayName(), total, items.size());
+        if (total > result.getItems(category).size()) {
+            summary += String.format("（只保留了前 %d 个）", result.getItems(category).size());
+        }
+        summaryLabel.setText(summary + "；双击跳转到树状图中的位置");
+    }
+
+    private void deleteItems() {
+        List<CleanupFinder.Item> items = list.getSelectedValuesList();
+        if (items.isEmpty()) {
+            items = new ArrayList<>();
+            for (int i = 0; i < model.size(); i++) {
+                items.add(model.get(i));
+            }
+        }
+        int answer = JOptionPane.showConfirmDialog(this,
+                String.format("确定要删除这 %d 个项目吗？此操作无法撤销。", items.size()),
+                "确认删除", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+        if (answer != JOptionPane.YES_OPTION) {
+            return;
+        }
+
+        List<CleanupFinder.Item> targets = items;
+        ParallelDeleter current = new ParallelDeleter(throttle);
+        deleter = current;
+        deleteButton.setEnabled(false);
+        categoryComboBox.setEnabled(false);
+        progressBar.setValue(0);
+        progressBar.setMaximum(targets.size());
+        progressBar.setVisible(true);
+
+        new SwingWorker<ParallelDeleter.Outcome, int[]>() {
+            @Override
+            protected ParallelDeleter.Outcome doInBackground() throws Exception {
+                return current.delete(targets, (done, total, failed) -> publish(new int[]{done, total, failed}));
+            }
+
+            @Override
+            protected void process(List<int[]> chunks) {
+                int[] progress = chunks.get(chunks.size() - 1);
+                progressBar.setValue(progress[0]);
+                progressBar.setString(String.format("%d/%d，失败 %d", progress[0], progress[1], progress[2]));
+            }
+
+            @Override
+            protected void done() {
+                deleter = null;
+                categoryComboBox.setEnabled(true);
+                progressBar.setVisible(false);
+                ParallelDeleter.Outcome outcome;
+                try {
+                    outcome = get();
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    refresh();
+                    summaryLabel.setText("删除失败: " + cause.getMessage());
+                    return;
+                }
+                deleted.addAll(outcome.deleted);
+                refresh();
+                String summary = String.format("已删除 %d 个，失败 %d 个（刷新后树状图才会更新）",
+                        outcome.deleted.size(), outcome.failures.size());
+                summaryLabel.setText(summary);
+                if (!outcome.failures.isEmpty()) {
+                    showFailures(outcome.failures);
+                }
+            }
+        }.execute();
+    }
+
+    private void showFailures(List<String> failures) {
+        JTextArea area = new JTextArea(String.join("\n", failures.subList(0, Math.min(failures.size(), 1000))));
+        area.setEditable(false);
+        JScrollPane scrollPane = new JScrollPane(area);
+        scrollPane.setPreferredSize(new Dimension(600, 300));
+        JOptionPane.showMessageDialog(this, scrollPane, "以下项目没有删除", JOptionPane.WARNING_MESSAGE);
+    }
+
+    @Override
+    public void dispose() {
+        if (deleter != null) {
+            deleter.cancel();
+        }
+        super.dispose();
+    }
+}
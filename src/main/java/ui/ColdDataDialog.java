@@ -0,0 +1,126 @@
+package com.foldertree.ui;
+
+import com.foldertree.core.AgeStats;
+import com.foldertree.core.ScanTree;
+import com.foldertree.core.SizeRanking;
+import com.foldertree.core.TreeIndex;
+import com.foldertree.core.TreeRenderer;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+/**
+ * 冷数据报告对话框 - 列出长期未修改的数据最多的子树（子树中至少90%的数据超过所选年龄），
+ * 双击跳转到树状图中对应的行
+ */
+public class ColdDataDialog extends JDialog {
+
+    private static final String[] THRESHOLD_NAMES = {"超过1个月", "超过6个月", "超过12个月", "超过3年"};
+    private static final int[] THRESHOLD_BUCKETS = {AgeStats.ONE_TO_SIX_MONTHS, AgeStats.SIX_TO_TWELVE_MONTHS,
+            AgeStats.ONE_TO_THREE_YEARS, AgeStats.OVER_THREE_YEARS};
+
+    private final ScanTree tree;
+    private final TreeIndex index;
+    private final AgeStats ages;
+    private final DefaultListModel<SizeRanking.Entry> model = new DefaultListModel<>();
+    private final JComboBox<String> thresholdComboBox = new JComboBox<>(THRESHOLD_NAMES);
+    private final JLabel summaryLabel = new JLabel();
+
+    public ColdDataDialog(JFrame parent, ScanTree tree, TreeIndex index, LongPredicate jumpToOrdinal) {
+        super(parent, "冷数据报告", false);
+        this.tree = tree;
+        this.index = index;
+        this.ages = tree.getAgeStats();
+        setSize(800, 500);
+        setLocationRelativeTo(parent);
+        initUI(jumpToOrdinal);
+        thresholdComboBox.setSelectedIndex(1);
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+    }
+
+    private void initUI(LongPredicate jumpToOrdinal) {
+        setLayout(new BorderLayout(5, 5));
+
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        top.add(new JLabel("未修改:"));
+        thresholdComboBox.addActionListener(e -> refresh());
+        top.add(thresholdComboBox);
+        add(top, BorderLayout.NORTH);
+
+        JList<SizeRanking.Entry> list = new JList<>(model);
+        list.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                SizeRanking.Entry entry = (SizeRanking.Entry) value;
+                long total = ColdDataDialog.this.index.getTotalSize((int) entry.ordinal);
+                String text = String.format("%3d. %10s  %5.1f%%  %s", index + 1,
+                        TreeRenderer.formatSize(entry.size), total == 0 ? 0.0 : entry.size * 100.0 / total,
+                        entry.path);
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                SizeRanking.Entry entry = list.getSelectedValue();
+                if (e.getClickCount() == 2 && entry != null && !jumpToOrdinal.test(entry.ordinal)) {
+                    JOptionPane.showMessageDialog(ColdDataDialog.this, "树状图中找不到该文件夹，请重新生成",
+                            "提示", JOptionPane.WARNING_MESSAGE);
+                }
+            }
+        });
+        add(new JScrollPane(list), BorderLayout.CENTER);
+
+        summaryLabel.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        add(summaryLabel, BorderLayout.SOUTH);
+    }
+
+    private void refresh() {
+        int minBucket = THRESHOLD_BUCKETS[thresholdComboBox.getSelectedIndex()];
+        thresholdComboBox.setEnabled(false);
+        summaryLabel.setText("正在计算...");
+        // 填写路径需要遍历一次扫描结果（可能要读回溢出的节点），放在后台线程
+        new SwingWorker<List<SizeRanking.Entry>, Void>() {
+            @Override
+            protected List<SizeRanking.Entry> doInBackground() {
+                List<SizeRanking.Entry> entries = ages.findColdSubtrees(index, minBucket, SizeRanking.DEFAULT_LIMIT);
+                SizeRanking.resolvePaths(tree, entries);
+                return entries;
+            }
+
+            @Override
+            protected void done() {
+                thresholdComboBox.setEnabled(true);
+                model.clear();
+                try {
+                    get().forEach(model::addElement);
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    summaryLabel.setText("计算失败: " + cause.getMessage());
+                    return;
+                }
+                summaryLabel.setText(buildSummary(minBucket));
+            }
+        }.execute();
+    }
+
+    private String buildSummary(int minBucket) {
+        long cold = 0;
+        for (int bucket = minBucket; bucket <= AgeStats.OVER_THREE_YEARS; bucket++) {
+            cold += ages.getBytes(bucket);
+        }
+        long all = ages.getTotals().getTotalBytes();
+        long unknown = ages.getCount(AgeStats.UNKNOWN);
+        String summary = String.format("冷数据共 %s，占 %.1f%%；列出其中至少%.0f%%是冷数据的子树，双击跳转",
+                TreeRenderer.formatSize(cold), all == 0 ? 0.0 : cold * 100.0 / all, AgeStats.COLD_SHARE * 100);
+        if (unknown > 0) {
+            summary += String.format("（%d 个文件没有修改时间，java.io策略不读取修改时间）", unknown);
+        }
+        return summary;
+    }
+}
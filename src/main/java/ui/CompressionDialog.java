@@ -0,0 +1,271 @@
+package com.foldertree.ui;
+
+import com.foldertree.core.CompressionEstimator;
+import com.foldertree.core.IoThrottle;
+import com.foldertree.core.ScanTree;
+import com.foldertree.core.TreeIndex;
+import com.foldertree.core.TreeRenderer;
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableRowSorter;
+import java.awt.*;
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 可压缩性估算对话框 - 对整个扫描结果或树状图中选中的文件夹抽样压缩，
+ * 按文件夹和扩展名列出估算的压缩后大小和误差范围，读取总量受读取上限限制
+ */
+public class CompressionDialog extends JDialog {
+
+    private final ScanTree tree;
+    private final TreeIndex index;
+    private final File root;
+    private final FileTreeTextPane textPane;
+    private final IoThrottle throttle;
+    private final JRadioButton subtreeButton = new JRadioButton("选中的文件夹");
+    private final JSpinner budgetSpinner = new JSpinner(new SpinnerNumberModel(
+            (int) (CompressionEstimator.DEFAULT_READ_BUDGET / (1024 * 1024)), 1, 1024 * 1024, 16));
+    private final JButton estimateButton = new JButton("估算");
+    private final JProgressBar progressBar = new JProgressBar();
+    private final GroupTableModel directoryModel = new GroupTableModel("文件夹", false);
+    private final GroupTableModel extensionModel = new GroupTableModel("扩展名", true);
+    private final JLabel summaryLabel = new JLabel("抽样读取文件中的块并压缩，推算压缩后的大小");
+    private CompressionEstimator estimator;
+
+    public CompressionDialog(JFrame parent, ScanTree tree, TreeIndex index, File root,
+                             FileTreeTextPane textPane, IoThrottle throttle) {
+        super(parent, "可压缩性估算", false);
+        this.tree = tree;
+        this.index = index;
+        this.root = root;
+        this.textPane = textPane;
+        this.throttle = throttle;
+        setSize(800, 550);
+        setLocationRelativeTo(parent);
+        initUI();
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+    }
+
+    private void initUI() {
+        setLayout(new BorderLayout(5, 5));
+
+        JRadioButton allButton = new JRadioButton("整个扫描结果", true);
+        ButtonGroup scope = new ButtonGroup();
+        scope.add(allButton);
+        scope.add(subtreeButton);
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        top.add(new JLabel("范围:"));
+        top.add(allButton);
+        top.add(subtreeButton);
+        top.add(Box.createHorizontalStrut(20));
+        top.add(new JLabel("读取上限(MB):"));
+        budgetSpinner.setToolTipText("最多读取的数据量，数据少于上限时全部读取，结果是精确值");
+        top.add(budgetSpinner);
+        estimateButton.addActionListener(e -> {
+            if (estimator != null) {
+                estimator.cancel();
+            } else {
+                estimate();
+            }
+        });
+        top.add(estimateButton);
+        add(top, BorderLayout.NORTH);
+
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("按文件夹", new JScrollPane(createTable(directoryModel)));
+        tabs.addTab("按扩展名", new JScrollPane(createTable(extensionModel)));
+        add(tabs, BorderLayout.CENTER);
+
+        JPanel bottom = new JPanel(new BorderLayout(5, 5));
+        bottom.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        progressBar.setStringPainted(true);
+        progressBar.setVisible(false);
+        bottom.add(progressBar, BorderLayout.NORTH);
+        bottom.add(summaryLabel, BorderLayout.CENTER);
+        add(bottom, BorderLayout.SOUTH);
+    }
+
+    private JTable createTable(GroupTableModel model) {
+        JTable table = new JTable(model);
+        TableRowSorter<GroupTableModel> sorter = new TableRowSorter<>(model);
+        // 默认按原始大小从大到小
+        sorter.setSortKeys(Collections.singletonList(new RowSorter.SortKey(2, SortOrder.DESCENDING)));
+        table.setRowSorter(sorter);
+        DefaultTableCellRenderer sizeRenderer = new DefaultTableCellRenderer() {
+            {
+                setHorizontalAlignment(RIGHT);
+            }
+
+            @Override
+            protected void setValue(Object value) {
+                setText(TreeRenderer.formatSize((Long) value));
+            }
+        };
+        for (int column = 2; column <= 4; column++) {
+            table.getColumnModel().getColumn(column).setCellRenderer(sizeRenderer);
+        }
+        table.getColumnModel().getColumn(5).setCellRenderer(new DefaultTableCellRenderer() {
+            {
+                setHorizontalAlignment(RIGHT);
+            }
+
+            @Override
+            protected void setValue(Object value) {
+                setText(String.format("%.1f%%", (Double) value));
+            }
+        });
+        return table;
+    }
+
+    private void estimate() {
+        int ordinal = 0;
+        String scopeName = root.getPath();
+        if (subtreeButton.isSelected()) {
+            long selected = textPane.getSelectedOrdinal();
+            if (!index.contains(selected) || !index.isDirectory((int) selected)) {
+                JOptionPane.showMessageDialog(this, "请在树状图中选中一个文件夹", "提示",
+                        JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            ordinal = (int) selected;
+            scopeName = textPane.getSelectedLabel();
+        }
+        int scope = ordinal;
+        String name = scopeName;
+        CompressionEstimator current = new CompressionEstimator(throttle);
+        current.setReadBudget(((Integer) budgetSpinner.getValue()) * 1024L * 1024);
+        estimator = current;
+        estimateButton.setText("取消");
+        progressBar.setValue(0);
+        progressBar.setVisible(true);
+        summaryLabel.setText("正在估算 " + name + "...");
+
+        new SwingWorker<CompressionEstimator.Result, int[]>() {
+            @Override
+            protected CompressionEstimator.Result doInBackground() throws Exception {
+                return current.estimate(tree, index, root, scope,
+                        (sampled, planned) -> publish(new int[]{sampled, planned}));
+            }
+
+            @Override
+            protected void process(List<int[]> chunks) {
+                int[] progress = chunks.get(chunks.size() - 1);
+                progressBar.setMaximum(Math.max(1, progress[1]));
+                progressBar.setValue(progress[0]);
+                progressBar.setString(String.format("%d/%d 块", progress[0], progress[1]));
+            }
+
+            @Override
+            protected void done() {
+                estimator = null;
+                estimateButton.setText("估算");
+                progressBar.setVisible(false);
+                CompressionEstimator.Result result;
+                try {
+                    result = get();
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    summaryLabel.setText("估算失败: " + cause.getMessage());
+                    return;
+                }
+                if (result == null) {
+                    summaryLabel.setText("已取消");
+                    return;
+                }
+                directoryModel.setGroups(result.byDirectory);
+                extensionModel.setGroups(result.byExtension);
+                String summary = name + ": " + result.getSummary();
+                if (result.unreadableFiles > 0) {
+                    summary += String.format("，%d 个文件无法读取", result.unreadableFiles);
+                }
+                summaryLabel.setText(summary);
+            }
+        }.execute();
+    }
+
+    @Override
+    public void dispose() {
+        if (estimator != null) {
+            estimator.cancel();
+        }
+        super.dispose();
+    }
+
+    /**
+     * 表格模型，数值列保持为数值以便正确排序
+     */
+    private static class GroupTableModel extends AbstractTableModel {
+        private final String[] columns;
+        private final boolean byExtension;
+        private List<CompressionEstimator.Group> groups = Collections.emptyList();
+
+        GroupTableModel(String groupName, boolean byExtension) {
+            this.byExtension = byExtension;
+            columns = new String[]{groupName, "文件数", "原始大小", "估算压缩后", "±误差", "节省", "样本块数"};
+        }
+
+        void setGroups(List<CompressionEstimator.Group> groups) {
+            this.groups = groups;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return groups.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columns.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columns[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            switch (column) {
+                case 1:
+                case 6:
+                    return Integer.class;
+                case 2:
+                case 3:
+                case 4:
+                    return Long.class;
+                case 5:
+                    return Double.class;
+                default:
+                    return String.class;
+            }
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            CompressionEstimator.Group group = groups.get(row);
+            switch (column) {
+                case 0:
+                    if (!byExtension) {
+                        return group.name;
+                    }
+                    return group.name.isEmpty() ? "(无扩展名)" : "." + group.name;
+                case 1:
+                    return group.files;
+                case 2:
+                    return group.bytes;
+                case 3:
+                    return group.getEstimatedBytes();
+                case 4:
+                    return group.getErrorBytes();
+                case 5:
+                    return group.getSavingPercent();
+                default:
+                    return group.samples;
+            }
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.foldertree.ui;
+
+import com.foldertree.core.ContentIndex;
+import com.foldertree.core.ContentIndexer;
+import com.foldertree.core.IoThrottle;
+import com.foldertree.core.ScanTree;
+import com.foldertree.core.TreeRenderer;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 全文索引对话框 - 为扫描结果中的文本文件建立或增量更新保存在快照缓存旁边的倒排索引，
+ * 之后可以直接查询词和短语而不必逐个读取文件；双击结果跳转到树状图中对应的行
+ */
+public class ContentIndexDialog extends JDialog {
+
+    private final ScanTree tree;
+    private final File root;
+    private final File indexFile;
+    private final FileTreeTextPane textPane;
+    private final IoThrottle throttle;
+    private final JLabel statusLabel = new JLabel();
+    private final JButton updateButton = new JButton("建立/更新索引");
+    private final JTextField queryField = new JTextField(30);
+    private final JButton searchButton = new JButton("查询");
+    private final DefaultListModel<ContentIndex.Hit> model = new DefaultListModel<>();
+    private final JProgressBar progressBar = new JProgressBar();
+    private final JLabel summaryLabel = new JLabel("空格分开的词都要出现，用双引号括起来按短语查询");
+    private ContentIndex index;
+    private ContentIndexer indexer;
+
+    public ContentIndexDialog(JFrame parent, ScanTree tree, File root, File indexFile,
+                              FileTreeTextPane textPane, IoThrottle throttle) {
+        super(parent, "全文索引", false);
+        this.tree = tree;
+        this.root = root;
+        this.indexFile = indexFile;
+        this.textPane = textPane;
+        this.throttle = throttle;
+        setSize(850, 550);
+        setLocationRelativeTo(parent);
+        initUI();
+        openIndex();
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+    }
+
+    private void initUI() {
+        setLayout(new BorderLayout(5, 5));
+
+        JPanel statusPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        statusPanel.add(statusLabel);
+        updateButton.setToolTipText("只重新读取大小或修改时间有变化的文件");
+        updateButton.addActionListener(e -> {
+            if (indexer != null) {
+                indexer.cancel();
+            } else {
+                updateIndex();
+            }
+        });
+        statusPanel.add(updateButton);
+
+        JPanel queryPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        queryPanel.add(new JLabel("查询:"));
+        queryField.addActionListener(e -> search());
+        queryPanel.add(queryField);
+        searchButton.addActionListener(e -> search());
+        queryPanel.add(searchButton);
+
+        JPanel top = new JPanel(new GridLayout(2, 1));
+        top.add(statusPanel);
+        top.add(queryPanel);
+        add(top, BorderLayout.NORTH);
+
+        JList<ContentIndex.Hit> list = new JList<>(model);
+        list.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                ContentIndex.Hit hit = (ContentIndex.Hit) value;
+                String text = String.format("%6d 次 %10s  %s", hit.count, TreeRenderer.formatSize(hit.size), hit.path);
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                ContentIndex.Hit hit = list.getSelectedValue();
+                if (e.getClickCount() == 2 && hit != null) {
+                    jumpTo(hit.path);
+                }
+            }
+        });
+        add(new JScrollPane(list), BorderLayout.CENTER);
+
+        JPanel bottom = new JPanel(new BorderLayout(5, 5));
+        bottom.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        progressBar.setStringPainted(true);
+        progressBar.setVisible(false);
+        bottom.add(progressBar, BorderLayout.NORTH);
+        bottom.add(summaryLabel, BorderLayout.CENTER);
+        add(bottom, BorderLayout.SOUTH);
+    }
+
+    /**
+     * 在后台读入索引的文件表和词典
+     */
+    private void openIndex() {
+        closeIndex();
+        searchButton.setEnabled(false);
+        if (!indexFile.isFile()) {
+            statusLabel.setText("还没有索引");
+            return;
+        }
+        statusLabel.setText("正在打开索引...");
+        new SwingWorker<ContentIndex, Void>() {
+            @Override
+            protected ContentIndex doInBackground() throws IOException {
+                return ContentIndex.open(indexFile);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    index = get();
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    statusLabel.setText("无法打开索引: " + cause.getMessage());
+                    return;
+                }
+                if (!index.getRootPath().equals(root.getPath())) {
+                    statusLabel.setText("索引属于其他文件夹，请重新建立");
+                    closeIndex();
+                    return;
+                }
+                searchButton.setEnabled(true);
+                statusLabel.setText(String.format("索引: %,d 个文本文件，%d 段，更新于 %s",
+                        index.getDocumentCount(), index.getSegmentCount(),
+                        new SimpleDateFormat("yyyy-MM-dd HH:mm").format(new Date(index.getCreatedTime()))));
+            }
+        }.execute();
+    }
+
+    private void closeIndex() {
+        if (index != null) {
+            try {
+                index.close();
+            } catch (IOException e) {
+                System.err.println("关闭索引失败: " + e.getMessage());
+            }
+            index = null;
+        }
+    }
+
+    private void updateIndex() {
+        // 更新完成时会替换索引文件，先关闭当前打开的
+        closeIndex();
+        searchButton.setEnabled(false);
+        ContentIndexer current = new ContentIndexer(throttle);
+        indexer = current;
+        updateButton.setText("取消");
+        progressBar.setValue(0);
+        progressBar.setVisible(true);
+        summaryLabel.setText("正在更新索引...");
+
+        new SwingWorker<ContentIndexer.Result, int[]>() {
+            @Override
+            protected ContentIndexer.Result doInBackground() throws Exception {
+                return current.update(tree, root, indexFile,
+                        (processed, total, path) -> publish(new int[]{processed, total}));
+            }
+
+            @Override
+            protected void process(List<int[]> chunks) {
+                int[] progress = chunks.get(chunks.size() - 1);
+                progressBar.setMaximum(Math.max(1, progress[1]));
+                progressBar.setValue(progress[0]);
+                progressBar.setString(String.format("%d/%d 个文件", progress[0], progress[1]));
+            }
+
+            @Override
+            protected void done() {
+                indexer = null;
+                updateButton.setText("建立/更新索引");
+                progressBar.setVisible(false);
+                try {
+                    ContentIndexer.Result result = get();
+                    summaryLabel.setText(result == null ? "已取消，索引保持不变" : result.getSummary());
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    summaryLabel.setText("更新索引失败: " + cause.getMessage());
+                }
+                openIndex();
+            }
+        }.execute();
+    }
+
+    private void search() {
+        String query = queryField.getText();
+        ContentIndex current = index;
+        if (current == null || query.trim().isEmpty()) {
+            return;
+        }
+        new SwingWorker<ContentIndex.Result, Void>() {
+            @Override
+            protected ContentIndex.Result doInBackground() throws IOException {
+                return current.search(query, ContentIndex.DEFAULT_MAX_RESULTS);
+            }
+
+            @Override
+            protected void done() {
+                model.clear();
+                ContentIndex.Result result;
+                try {
+                    result = get();
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    summaryLabel.setText("查询失败: " + cause.getMessage());
+                    return;
+                }
+                for (ContentIndex.Hit hit : result.hits) {
+                    model.addElement(hit);
+                }
+                String summary = String.format("%,d 个文件匹配，用时 %.1f 毫秒", result.totalMatches,
+                        result.elapsedMicros / 1000.0);
+                if (result.totalMatches > result.hits.size()) {
+                    summary += String.format("，只列出出现次数最多的 %,d 个", result.hits.size());
+                }
+                summaryLabel.setText(summary);
+            }
+        }.execute();
+    }
+
+    /**
+     * 按路径在扫描结果中找到对应的行，需要遍历一次扫描结果，放在后台线程
+     */
+    private void jumpTo(String path) {
+        new SwingWorker<Long, Void>() {
+            @Override
+            protected Long doInBackground() {
+                long[] found = {-1};
+                tree.visitPaths(root, (node, ordinal, nodePath) -> {
+                    if (found[0] < 0 && nodePath.equals(path)) {
+                        found[0] = ordinal;
+                    }
+                });
+                return found[0];
+            }
+
+            @Override
+            protected void done() {
+                long ordinal;
+                try {
+                    ordinal = get();
+                } catch (Exception e) {
+                    ordinal = -1;
+                }
+                if (ordinal < 0 || !textPane.selectOrdinal(tree, ordinal)) {
+                    JOptionPane.showMessageDialog(ContentIndexDialog.this, "树状图中找不到该文件，请重新生成",
+                            "提示", JOptionPane.WARNING_MESSAGE);
+                }
+            }
+        }.execute();
+    }
+
+    @Override
+    public void dispose() {
+        if (indexer != null) {
+            indexer.cancel();
+        }
+        closeIndex();
+        super.dispose();
+    }
+}
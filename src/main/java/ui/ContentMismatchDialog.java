@@ -0,0 +1,74 @@
+package com.foldertree.ui;
+
+import com.foldertree.core.ContentTypeStats;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+/**
+ * 扩展名与内容不符的文件对话框 - 列出扩展名、按文件头识别出的类型和路径，
+ * 双击或回车跳转到树状图中对应的行
+ */
+public class ContentMismatchDialog extends JDialog {
+
+    public ContentMismatchDialog(JFrame parent, ContentTypeStats contentTypes, LongPredicate jumpToOrdinal) {
+        super(parent, "扩展名与内容不符的文件", false);
+        setSize(800, 500);
+        setLocationRelativeTo(parent);
+
+        List<ContentTypeStats.Mismatch> mismatches = contentTypes.getMismatches();
+        DefaultListModel<ContentTypeStats.Mismatch> model = new DefaultListModel<>();
+        for (ContentTypeStats.Mismatch mismatch : mismatches) {
+            model.addElement(mismatch);
+        }
+
+        JList<ContentTypeStats.Mismatch> list = new JList<>(model);
+        list.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                ContentTypeStats.Mismatch mismatch = (ContentTypeStats.Mismatch) value;
+                String text = String.format(".%-8s 实际是 %-14s %s", mismatch.extension,
+                        mismatch.type.getDisplayName(), mismatch.path);
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+
+        Runnable jump = () -> {
+            ContentTypeStats.Mismatch mismatch = list.getSelectedValue();
+            if (mismatch != null && !jumpToOrdinal.test(mismatch.ordinal)) {
+                JOptionPane.showMessageDialog(this, "树状图中找不到该文件，请重新生成", "提示",
+                        JOptionPane.WARNING_MESSAGE);
+            }
+        };
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    jump.run();
+                }
+            }
+        });
+        list.getInputMap().put(KeyStroke.getKeyStroke("ENTER"), "jump");
+        list.getActionMap().put("jump", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                jump.run();
+            }
+        });
+        add(new JScrollPane(list), BorderLayout.CENTER);
+
+        long total = contentTypes.getMismatchCount();
+        String summary = total > mismatches.size()
+                ? String.format("共 %d 个，只列出前 %d 个；双击跳转到树状图中的位置", total, mismatches.size())
+                : String.format("共 %d 个；双击跳转到树状图中的位置", total);
+        JLabel hint = new JLabel(summary);
+        hint.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        add(hint, BorderLayout.SOUTH);
+    }
+}
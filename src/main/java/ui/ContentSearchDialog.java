@@ -0,0 +1,204 @@
+package com.foldertree.ui;
+
+import com.foldertree.core.ContentPattern;
+import com.foldertree.core.ContentSearcher;
+import com.foldertree.core.IoThrottle;
+import com.foldertree.core.ScanTree;
+import com.foldertree.core.TreeIndex;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.File;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * 内容搜索对话框 - 在扫描结果中的文本文件里查找文字或正则表达式，
+ * 命中的行边找边列出，可随时取消；双击跳转到树状图中该文件所在的行
+ */
+public class ContentSearchDialog extends JDialog {
+
+    private final ScanTree tree;
+    private final TreeIndex index;
+    private final File root;
+    private final FileTreeTextPane textPane;
+    private final IoThrottle throttle;
+    private final JTextField queryField = new JTextField(30);
+    private final JCheckBox regexCheckBox = new JCheckBox("正则表达式");
+    private final JCheckBox ignoreCaseCheckBox = new JCheckBox("忽略大小写");
+    private final JRadioButton subtreeButton = new JRadioButton("选中的文件夹");
+    private final JButton searchButton = new JButton("搜索");
+    private final JProgressBar progressBar = new JProgressBar();
+    private final DefaultListModel<ContentSearcher.Hit> model = new DefaultListModel<>();
+    private final JLabel summaryLabel = new JLabel("在扫描到的文本文件中查找，二进制文件会跳过");
+    private ContentSearcher searcher;
+
+    public ContentSearchDialog(JFrame parent, ScanTree tree, TreeIndex index, File root,
+                               FileTreeTextPane textPane, IoThrottle throttle) {
+        super(parent, "内容搜索", false);
+        this.tree = tree;
+        this.index = index;
+        this.root = root;
+        this.textPane = textPane;
+        this.throttle = throttle;
+        setSize(900, 550);
+        setLocationRelativeTo(parent);
+        initUI();
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+    }
+
+    private void initUI() {
+        setLayout(new BorderLayout(5, 5));
+
+        JPanel queryPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        queryPanel.add(new JLabel("查找:"));
+        queryField.addActionListener(e -> {
+            if (searcher == null) {
+                search();
+            }
+        });
+        queryPanel.add(queryField);
+        queryPanel.add(regexCheckBox);
+        queryPanel.add(ignoreCaseCheckBox);
+        searchButton.addActionListener(e -> {
+            if (searcher != null) {
+                searcher.cancel();
+            } else {
+                search();
+            }
+        });
+        queryPanel.add(searchButton);
+
+        JRadioButton allButton = new JRadioButton("整个扫描结果", true);
+        ButtonGroup scope = new ButtonGroup();
+        scope.add(allButton);
+        scope.add(subtreeButton);
+        JPanel scopePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        scopePanel.add(new JLabel("范围:"));
+        scopePanel.add(allButton);
+        scopePanel.add(subtreeButton);
+
+        JPanel top = new JPanel(new GridLayout(2, 1));
+        top.add(queryPanel);
+        top.add(scopePanel);
+        add(top, BorderLayout.NORTH);
+
+        String prefix = root.getPath().endsWith(File.separator) ? root.getPath() : root.getPath() + File.separator;
+        JList<ContentSearcher.Hit> list = new JList<>(model);
+        list.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                ContentSearcher.Hit hit = (ContentSearcher.Hit) value;
+                String path = hit.path.startsWith(prefix) ? hit.path.substring(prefix.length()) : hit.path;
+                String text = path + ":" + hit.line + ": " + hit.text;
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                ContentSearcher.Hit hit = list.getSelectedValue();
+                if (e.getClickCount() == 2 && hit != null && !textPane.selectOrdinal(tree, hit.ordinal)) {
+                    JOptionPane.showMessageDialog(ContentSearchDialog.this, "树状图中找不到该文件，请重新生成",
+                            "提示", JOptionPane.WARNING_MESSAGE);
+                }
+            }
+        });
+        add(new JScrollPane(list), BorderLayout.CENTER);
+
+        JPanel bottom = new JPanel(new BorderLayout(5, 5));
+        bottom.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        progressBar.setStringPainted(true);
+        progressBar.setVisible(false);
+        bottom.add(progressBar, BorderLayout.NORTH);
+        bottom.add(summaryLabel, BorderLayout.CENTER);
+        add(bottom, BorderLayout.SOUTH);
+    }
+
+    private void search() {
+        String query = queryField.getText();
+        if (query.isEmpty()) {
+            return;
+        }
+        ContentPattern pattern;
+        try {
+            pattern = regexCheckBox.isSelected()
+                    ? ContentPattern.regex(query, ignoreCaseCheckBox.isSelected())
+                    : ContentPattern.literal(query, ignoreCaseCheckBox.isSelected());
+        } catch (PatternSyntaxException e) {
+            JOptionPane.showMessageDialog(this, "正则表达式有误: " + e.getDescription(), "错误",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        int ordinal = 0;
+        if (subtreeButton.isSelected()) {
+            long selected = textPane.getSelectedOrdinal();
+            if (!index.contains(selected) || !index.isDirectory((int) selected)) {
+                JOptionPane.showMessageDialog(this, "请在树状图中选中一个文件夹", "提示",
+                        JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            ordinal = (int) selected;
+        }
+        int scope = ordinal;
+        ContentSearcher current = new ContentSearcher(throttle);
+        searcher = current;
+        model.clear();
+        searchButton.setText("取消");
+        progressBar.setValue(0);
+        progressBar.setVisible(true);
+        summaryLabel.setText("正在搜索...");
+
+        new SwingWorker<ContentSearcher.Result, Object>() {
+            @Override
+            protected ContentSearcher.Result doInBackground() throws Exception {
+                return current.search(tree, index, root, scope, pattern, this::publish,
+                        (processed, total, path) -> publish(new int[]{processed, total}));
+            }
+
+            @Override
+            protected void process(List<Object> chunks) {
+                // 命中和进度混在一起发布，界面线程批量取出
+                for (Object chunk : chunks) {
+                    if (chunk instanceof ContentSearcher.Hit) {
+                        model.addElement((ContentSearcher.Hit) chunk);
+                    } else {
+                        int[] progress = (int[]) chunk;
+                        progressBar.setMaximum(Math.max(1, progress[1]));
+                        progressBar.setValue(progress[0]);
+                        progressBar.setString(String.format("%d/%d 个文件，%d 处命中",
+                                progress[0], progress[1], model.size()));
+                    }
+                }
+            }
+
+            @Override
+            protected void done() {
+                searcher = null;
+                searchButton.setText("搜索");
+                progressBar.setVisible(false);
+                ContentSearcher.Result result;
+                try {
+                    result = get();
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    summaryLabel.setText("搜索失败: " + cause.getMessage());
+                    return;
+                }
+                summaryLabel.setText(result == null
+                        ? String.format("已取消，找到 %,d 处", model.size()) : result.getSummary());
+            }
+        }.execute();
+    }
+
+    @Override
+    public void dispose() {
+        if (searcher != null) {
+            searcher.cancel();
+        }
+        super.dispose();
+    }
+}
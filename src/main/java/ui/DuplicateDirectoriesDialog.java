@@ -0,0 +1,162 @@
+package com.foldertree.ui;
+
+import com.foldertree.core.DirectoryHasher;
+import com.foldertree.core.DuplicateFinder;
+import com.foldertree.core.IoThrottle;
+import com.foldertree.core.ScanOptions;
+import com.foldertree.core.ScanTree;
+import com.foldertree.core.TreeRenderer;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+/**
+ * 重复文件夹对话框 - 在后台计算各文件夹的Merkle哈希，完成后按可节省空间列出重复组
+ * 选中一组后在下方列出其中的文件夹，双击跳转到树状图中对应的行
+ */
+public class DuplicateDirectoriesDialog extends JDialog {
+
+    private final DirectoryHasher hasher;
+    private final boolean compareContent;
+    private final DefaultListModel<DirectoryHasher.DirectoryGroup> groupModel = new DefaultListModel<>();
+    private final DefaultListModel<String> directoryModel = new DefaultListModel<>();
+    private final JList<DirectoryHasher.DirectoryGroup> groupList = new JList<>(groupModel);
+    private final JLabel progressLabel = new JLabel("正在计算...");
+    private final JButton stopButton = new JButton("停止");
+
+    public DuplicateDirectoriesDialog(JFrame parent, ScanTree tree, File root, ScanOptions scanOptions,
+                                      boolean compareContent, IoThrottle throttle,
+                                      LongPredicate jumpToOrdinal) {
+        super(parent, (compareContent ? "重复文件夹（按内容） - " : "重复文件夹（按结构） - ")
+                + root.getName(), false);
+        setSize(800, 600);
+        setLocationRelativeTo(parent);
+        this.compareContent = compareContent;
+        hasher = new DirectoryHasher(compareContent, throttle);
+        initUI(jumpToOrdinal);
+        start(tree, root, scanOptions);
+
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                hasher.cancel();
+            }
+        });
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+    }
+
+    private void initUI(LongPredicate jumpToOrdinal) {
+        setLayout(new BorderLayout(5, 5));
+
+        groupList.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        groupList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        groupList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                DirectoryHasher.DirectoryGroup group = (DirectoryHasher.DirectoryGroup) value;
+                String text = String.format("%10s × %-3d 可节省 %10s   %d 个文件   %s",
+                        TreeRenderer.formatSize(group.size), group.ordinals.length,
+                        TreeRenderer.formatSize(group.getWastedBytes()), group.fileCount,
+                        group.paths.isEmpty() ? "" : new File(group.paths.get(0)).getName() + "/");
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        groupList.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) {
+                directoryModel.clear();
+                DirectoryHasher.DirectoryGroup group = groupList.getSelectedValue();
+                if (group != null) {
+                    group.paths.forEach(directoryModel::addElement);
+                }
+            }
+        });
+
+        JList<String> directoryList = new JList<>(directoryModel);
+        directoryList.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        directoryList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                DirectoryHasher.DirectoryGroup group = groupList.getSelectedValue();
+                int index = directoryList.getSelectedIndex();
+                if (e.getClickCount() == 2 && group != null && index >= 0
+                        && !jumpToOrdinal.test(group.ordinals[index])) {
+                    JOptionPane.showMessageDialog(DuplicateDirectoriesDialog.this,
+                            "树状图中找不到该文件夹，请重新生成", "提示", JOptionPane.WARNING_MESSAGE);
+                }
+            }
+        });
+
+        JScrollPane groupScroll = new JScrollPane(groupList);
+        groupScroll.setBorder(BorderFactory.createTitledBorder("重复组"));
+        JScrollPane directoryScroll = new JScrollPane(directoryList);
+        directoryScroll.setBorder(BorderFactory.createTitledBorder("文件夹（双击跳转）"));
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, groupScroll, directoryScroll);
+        split.setResizeWeight(0.6);
+        add(split, BorderLayout.CENTER);
+
+        JPanel bottom = new JPanel(new BorderLayout());
+        progressLabel.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        stopButton.addActionListener(e -> {
+            hasher.cancel();
+            stopButton.setEnabled(false);
+        });
+        bottom.add(progressLabel, BorderLayout.CENTER);
+        bottom.add(stopButton, BorderLayout.EAST);
+        add(bottom, BorderLayout.SOUTH);
+    }
+
+    private void start(ScanTree tree, File root, ScanOptions scanOptions) {
+        long startTime = System.currentTimeMillis();
+        new SwingWorker<List<DirectoryHasher.DirectoryGroup>, String>() {
+            @Override
+            protected List<DirectoryHasher.DirectoryGroup> doInBackground() throws Exception {
+                return hasher.find(tree, root, scanOptions, new DuplicateFinder.Listener() {
+                    @Override
+                    public void onGroup(DuplicateFinder.DuplicateGroup group) {
+                    }
+
+                    @Override
+                    public void onProgress(String stage, long hashedFiles, long totalFiles) {
+                        publish(String.format("读取文件内容 - %s: %d / %d 个文件", stage, hashedFiles, totalFiles));
+                    }
+                });
+            }
+
+            @Override
+            protected void process(List<String> chunks) {
+                progressLabel.setText(chunks.get(chunks.size() - 1));
+            }
+
+            @Override
+            protected void done() {
+                stopButton.setEnabled(false);
+                try {
+                    List<DirectoryHasher.DirectoryGroup> groups = get();
+                    if (groups == null) {
+                        progressLabel.setText("已停止");
+                        return;
+                    }
+                    long wasted = 0;
+                    for (DirectoryHasher.DirectoryGroup group : groups) {
+                        groupModel.addElement(group);
+                        wasted += group.getWastedBytes();
+                    }
+                    progressLabel.setText(String.format("完成: %d 组重复, 可节省 %s, 用时 %d 毫秒%s",
+                            groups.size(), TreeRenderer.formatSize(wasted),
+                            System.currentTimeMillis() - startTime,
+                            compareContent ? "" : "（只比较名称和大小，结果是近似的）"));
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    progressLabel.setText("查找失败: " + cause.getMessage());
+                }
+            }
+        }.execute();
+    }
+}
@@ -0,0 +1,164 @@
+package com.foldertree.ui;
+
+import com.foldertree.core.DuplicateFinder;
+import com.foldertree.core.IoThrottle;
+import com.foldertree.core.ScanTree;
+import com.foldertree.core.TreeRenderer;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+/**
+ * 重复文件对话框 - 查找在后台进行，确认的重复组陆续加入列表
+ * 选中一组后在下方列出其中的文件，双击文件跳转到树状图中对应的行
+ */
+public class DuplicatesDialog extends JDialog {
+
+    private final DuplicateFinder finder;
+    private final DefaultListModel<DuplicateFinder.DuplicateGroup> groupModel = new DefaultListModel<>();
+    private final DefaultListModel<String> fileModel = new DefaultListModel<>();
+    private final JList<DuplicateFinder.DuplicateGroup> groupList = new JList<>(groupModel);
+    private final JLabel progressLabel = new JLabel("准备中...");
+    private final JButton stopButton = new JButton("停止");
+    private long wastedBytes;
+
+    public DuplicatesDialog(JFrame parent, ScanTree tree, File root, IoThrottle throttle,
+                            LongPredicate jumpToOrdinal) {
+        super(parent, "重复文件 - " + root.getName(), false);
+        setSize(800, 600);
+        setLocationRelativeTo(parent);
+        finder = new DuplicateFinder(throttle);
+        initUI(jumpToOrdinal);
+        start(tree, root);
+
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                finder.cancel();
+            }
+        });
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+    }
+
+    private void initUI(LongPredicate jumpToOrdinal) {
+        setLayout(new BorderLayout(5, 5));
+
+        groupList.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        groupList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        groupList.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                DuplicateFinder.DuplicateGroup group = (DuplicateFinder.DuplicateGroup) value;
+                String text = String.format("%10s × %-3d 可节省 %10s   %s",
+                        TreeRenderer.formatSize(group.size), group.paths.size(),
+                        TreeRenderer.formatSize(group.getWastedBytes()),
+                        new File(group.paths.get(0)).getName());
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        groupList.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) {
+                fileModel.clear();
+                DuplicateFinder.DuplicateGroup group = groupList.getSelectedValue();
+                if (group != null) {
+                    group.paths.forEach(fileModel::addElement);
+                }
+            }
+        });
+
+        JList<String> fileList = new JList<>(fileModel);
+        fileList.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        fileList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                DuplicateFinder.DuplicateGroup group = groupList.getSelectedValue();
+                int index = fileList.getSelectedIndex();
+                if (e.getClickCount() == 2 && group != null && index >= 0
+                        && !jumpToOrdinal.test(group.ordinals[index])) {
+                    JOptionPane.showMessageDialog(DuplicatesDialog.this, "树状图中找不到该文件，请重新生成",
+                            "提示", JOptionPane.WARNING_MESSAGE);
+                }
+            }
+        });
+
+        JScrollPane groupScroll = new JScrollPane(groupList);
+        groupScroll.setBorder(BorderFactory.createTitledBorder("重复组"));
+        JScrollPane fileScroll = new JScrollPane(fileList);
+        fileScroll.setBorder(BorderFactory.createTitledBorder("文件（双击跳转）"));
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, groupScroll, fileScroll);
+        split.setResizeWeight(0.6);
+        add(split, BorderLayout.CENTER);
+
+        JPanel bottom = new JPanel(new BorderLayout());
+        progressLabel.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        stopButton.addActionListener(e -> {
+            finder.cancel();
+            stopButton.setEnabled(false);
+        });
+        bottom.add(progressLabel, BorderLayout.CENTER);
+        bottom.add(stopButton, BorderLayout.EAST);
+        add(bottom, BorderLayout.SOUTH);
+    }
+
+    private void start(ScanTree tree, File root) {
+        new SwingWorker<Void, Object>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                finder.find(tree, root, new DuplicateFinder.Listener() {
+                    @Override
+                    public void onGroup(DuplicateFinder.DuplicateGroup group) {
+                        publish(group);
+                    }
+
+                    @Override
+                    public void onProgress(String stage, long hashedFiles, long totalFiles) {
+                        publish(String.format("%s: %d / %d 个文件, 已读取 %s", stage, hashedFiles,
+                                totalFiles, TreeRenderer.formatSize(finder.getHashedBytes())));
+                    }
+                });
+                return null;
+            }
+
+            @Override
+            protected void process(List<Object> chunks) {
+                String progress = null;
+                for (Object chunk : chunks) {
+                    if (chunk instanceof DuplicateFinder.DuplicateGroup) {
+                        DuplicateFinder.DuplicateGroup group = (DuplicateFinder.DuplicateGroup) chunk;
+                        groupModel.addElement(group);
+                        wastedBytes += group.getWastedBytes();
+                    } else {
+                        progress = (String) chunk;
+                    }
+                }
+                if (progress != null) {
+                    progressLabel.setText(progress + summary());
+                }
+            }
+
+            @Override
+            protected void done() {
+                stopButton.setEnabled(false);
+                try {
+                    get();
+                    String failed = finder.getFailedFiles() > 0
+                            ? ", " + finder.getFailedFiles() + " 个文件无法读取" : "";
+                    progressLabel.setText((finder.isCancelled() ? "已停止" : "完成") + summary() + failed);
+                } catch (Exception e) {
+                    progressLabel.setText("查找失败: " + e.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    private String summary() {
+        return String.format(" | %d 组重复, 可节省 %s", groupModel.size(), TreeRenderer.formatSize(wastedBytes));
+    }
+}
@@ -0,0 +1,267 @@
+package com.foldertree.ui;
+
+import com.foldertree.core.AgeStats;
+import com.foldertree.core.ContentTypeStats;
+import com.foldertree.core.ExtensionStats;
+import com.foldertree.core.ScanTree;
+import com.foldertree.core.SecurityAudit;
+import com.foldertree.core.TreeIndex;
+import com.foldertree.core.TreeRenderer;
+import javax.swing.*;
+import javax.swing.event.CaretListener;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableRowSorter;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.Collections;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * 文件分类统计对话框 - 按扩展名、内容类型（扫描后检测过时）、修改时间或属主、属组（审计扫描时）分类，
+ * 可按任意列排序，可以切换为树状图中选中行的子树，选中子树时随选中行变化自动更新
+ */
+public class ExtensionStatsDialog extends JDialog {
+
+    public static final String BY_EXTENSION = "扩展名";
+    public static final String BY_CONTENT_TYPE = "内容类型";
+    public static final String BY_AGE = "修改时间";
+    public static final String BY_OWNER = "属主";
+    public static final String BY_GROUP = "属组";
+
+    /**
+     * 一种分类方式：整体统计和子树统计
+     */
+    private static class Grouping {
+        final String name;
+        final Supplier<ExtensionStats.Table> totals;
+        final BiFunction<TreeIndex, Integer, ExtensionStats.Table> subtree;
+
+        Grouping(String name, Supplier<ExtensionStats.Table> totals,
+                 BiFunction<TreeIndex, Integer, ExtensionStats.Table> subtree) {
+            this.name = name;
+            this.totals = totals;
+            this.subtree = subtree;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private final TreeIndex index;
+    private final FileTreeTextPane textPane;
+    private final StatsTableModel model = new StatsTableModel();
+    private final JRadioButton subtreeButton = new JRadioButton("选中行的子树");
+    private final JComboBox<Grouping> groupingComboBox = new JComboBox<>();
+    private final JLabel summaryLabel = new JLabel();
+    private JTable table;
+    private final CaretListener caretListener = e -> {
+        if (subtreeButton.isSelected()) {
+            refresh();
+        }
+    };
+
+    /**
+     * @param grouping 初始的分类方式，为BY_EXTENSION、BY_CONTENT_TYPE、BY_AGE、BY_OWNER或BY_GROUP之一
+     */
+    public ExtensionStatsDialog(JFrame parent, ScanTree tree, TreeIndex index,
+                                FileTreeTextPane textPane, String grouping) {
+        super(parent, "文件分类统计", false);
+        this.index = index;
+        this.textPane = textPane;
+        setSize(600, 500);
+        setLocationRelativeTo(parent);
+        addGroupings(tree);
+        initUI();
+        for (int i = 0; i < groupingComboBox.getItemCount(); i++) {
+            if (groupingComboBox.getItemAt(i).name.equals(grouping)) {
+                groupingComboBox.setSelectedIndex(i);
+            }
+        }
+        refresh();
+
+        textPane.addCaretListener(caretListener);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                textPane.removeCaretListener(caretListener);
+            }
+        });
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+    }
+
+    /**
+     * 只列出当前扫描结果中有数据的分类方式
+     */
+    private void addGroupings(ScanTree tree) {
+        ExtensionStats extensions = tree.getExtensionStats();
+        if (extensions != null) {
+            groupingComboBox.addItem(new Grouping(BY_EXTENSION, extensions::getTotals, extensions::getSubtree));
+        }
+        ContentTypeStats contentTypes = tree.getContentTypes();
+        if (contentTypes != null) {
+            groupingComboBox.addItem(new Grouping(BY_CONTENT_TYPE, contentTypes::getTotals,
+                    contentTypes::getSubtree));
+        }
+        AgeStats ages = tree.getAgeStats();
+        if (ages != null) {
+            groupingComboBox.addItem(new Grouping(BY_AGE, ages::getTotals, ages::getSubtree));
+        }
+        SecurityAudit audit = tree.getSecurityAudit();
+        if (audit != null) {
+            ExtensionStats owners = audit.getOwners();
+            ExtensionStats groups = audit.getGroups();
+            groupingComboBox.addItem(new Grouping(BY_OWNER, owners::getTotals, owners::getSubtree));
+            groupingComboBox.addItem(new Grouping(BY_GROUP, groups::getTotals, groups::getSubtree));
+        }
+    }
+
+    private void initUI() {
+        setLayout(new BorderLayout(5, 5));
+
+        JRadioButton allButton = new JRadioButton("整个扫描结果", true);
+        ButtonGroup scope = new ButtonGroup();
+        scope.add(allButton);
+        scope.add(subtreeButton);
+        allButton.addActionListener(e -> refresh());
+        subtreeButton.addActionListener(e -> refresh());
+        JPanel scopePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        scopePanel.add(new JLabel("范围:"));
+        scopePanel.add(allButton);
+        scopePanel.add(subtreeButton);
+        scopePanel.add(Box.createHorizontalStrut(20));
+        scopePanel.add(new JLabel("分类:"));
+        groupingComboBox.setToolTipText("勾选检测文件类型后重新生成才能按内容类型分类");
+        groupingComboBox.addActionListener(e -> refresh());
+        scopePanel.add(groupingComboBox);
+        add(scopePanel, BorderLayout.NORTH);
+
+        table = new JTable(model);
+        TableRowSorter<StatsTableModel> sorter = new TableRowSorter<>(model);
+        // 默认按总大小从大到小
+        sorter.setSortKeys(Collections.singletonList(new RowSorter.SortKey(2, SortOrder.DESCENDING)));
+        table.setRowSorter(sorter);
+        table.getColumnModel().getColumn(2).setCellRenderer(new DefaultTableCellRenderer() {
+            {
+                setHorizontalAlignment(RIGHT);
+            }
+
+            @Override
+            protected void setValue(Object value) {
+                setText(TreeRenderer.formatSize((Long) value));
+            }
+        });
+        table.getColumnModel().getColumn(3).setCellRenderer(new DefaultTableCellRenderer() {
+            {
+                setHorizontalAlignment(RIGHT);
+            }
+
+            @Override
+            protected void setValue(Object value) {
+                setText(String.format("%.1f%%", (Double) value));
+            }
+        });
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        summaryLabel.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        add(summaryLabel, BorderLayout.SOUTH);
+    }
+
+    private void refresh() {
+        Grouping grouping = (Grouping) groupingComboBox.getSelectedItem();
+        if (grouping == null || table == null) {
+            return;
+        }
+        model.setByExtension(grouping.name.equals(BY_EXTENSION));
+        // 只改表头文字，不重建列，保留列的渲染器和排序
+        table.getColumnModel().getColumn(0).setHeaderValue(grouping.name);
+        table.getTableHeader().repaint();
+        ExtensionStats.Table rows;
+        String scopeName;
+        if (subtreeButton.isSelected()) {
+            long ordinal = textPane.getSelectedOrdinal();
+            if (!index.contains(ordinal)) {
+                model.setTable(null);
+                summaryLabel.setText("请在树状图中选中一行");
+                return;
+            }
+            rows = grouping.subtree.apply(index, (int) ordinal);
+            scopeName = textPane.getSelectedLabel();
+        } else {
+            rows = grouping.totals.get();
+            scopeName = "全部";
+        }
+        model.setTable(rows);
+        summaryLabel.setText(String.format("%s: %d 种%s, %d 个文件, %s", scopeName, rows.size(),
+                grouping.name, rows.getTotalCount(), TreeRenderer.formatSize(rows.getTotalBytes())));
+    }
+
+    /**
+     * 表格模型，数值列保持为数值以便正确排序
+     */
+    private static class StatsTableModel extends AbstractTableModel {
+        private static final String[] COLUMNS = {"扩展名", "文件数", "总大小", "占比"};
+        private ExtensionStats.Table table;
+        private long totalBytes;
+        private boolean byExtension = true;
+
+        void setByExtension(boolean byExtension) {
+            this.byExtension = byExtension;
+        }
+
+        void setTable(ExtensionStats.Table table) {
+            this.table = table;
+            this.totalBytes = table == null ? 0 : table.getTotalBytes();
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return table == null ? 0 : table.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            switch (column) {
+                case 1:
+                case 2:
+                    return Long.class;
+                case 3:
+                    return Double.class;
+                default:
+                    return String.class;
+            }
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            switch (column) {
+                case 0:
+                    if (!byExtension) {
+                        return table.names[row];
+                    }
+                    return table.names[row].isEmpty() ? "(无扩展名)" : "." + table.names[row];
+                case 1:
+                    return table.counts[row];
+                case 2:
+                    return table.bytes[row];
+                default:
+                    return totalBytes == 0 ? 0.0 : table.bytes[row] * 100.0 / totalBytes;
+            }
+        }
+    }
+}
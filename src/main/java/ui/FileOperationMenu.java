@@ -1,5 +1,6 @@
 package com.foldertree.ui;
 
+import com.foldertree.core.ScanTree;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.datatransfer.*;
@@ -441,7 +442,19 @@ public class FileOperationMenu extends JPopupMenu {
         properties.append("名称: ").append(file.getName()).append("\n");
         properties.append("路径: ").append(file.getAbsolutePath()).append("\n");
         properties.append("类型: ").append(file.isDirectory() ? "文件夹" : "文件").append("\n");
-        properties.append("大小: ").append(formatFileSize(file.length())).append("\n");
+        if (file.isDirectory()) {
+            // 文件夹的大小取扫描时汇总的结果
+            ScanTree.NodeRecord node = textPane.getSelectedNode();
+            if (node != null && node.isDirectory()
+                    && file.getName().equals(textPane.getNodeName(node))) {
+                properties.append("大小: ").append(formatFileSize(node.size))
+                        .append(" (").append(node.fileCount).append(" 个文件，扫描深度以内)\n");
+            } else {
+                properties.append("大小: 未统计\n");
+            }
+        } else {
+            properties.append("大小: ").append(formatFileSize(file.length())).append("\n");
+        }
         properties.append("最后修改: ").append(new java.util.Date(file.lastModified())).append("\n");
         properties.append("可读: ").append(file.canRead()).append("\n");
         properties.append("可写: ").append(file.canWrite()).append("\n");
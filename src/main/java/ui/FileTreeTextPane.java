@@ -1,11 +1,19 @@
 package com.foldertree.ui;
 
+import com.foldertree.core.LineCounts;
+import com.foldertree.core.ScanTree;
+import com.foldertree.core.SizeDistribution;
+import com.foldertree.core.TreeIndex;
+import com.foldertree.core.TreeRenderer;
 import javax.swing.*;
 import javax.swing.text.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.awt.geom.Rectangle2D;
 import java.io.File;
 import java.io.IOException;
+import java.util.function.LongConsumer;
+import java.util.regex.Pattern;
 
 /**
  * 支持文件操作的特殊文本面板
@@ -16,6 +24,17 @@ public class FileTreeTextPane extends JTextPane {
     private FileOperationMenu fileMenu;
     private JLabel statusLabel;
 
+    // 行尾的文件数和大小列
+    private static final Pattern SIZE_COLUMN = Pattern.compile(
+            "\\s{2,}(\\d+ 个文件)?\\s*(\\d+ B|\\d+\\.\\d [KMGT]B|-)$");
+
+    // 当前显示的扫描结果及其渲染方式
+    private ScanTree scanTree;
+    private TreeRenderer renderer;
+    private TreeIndex treeIndex;
+    // 要选中的节点不在显示的行中时，重新渲染它附近的一段树状图
+    private LongConsumer windowLoader;
+
     // 鼠标悬浮相关
     private Timer hoverTimer;
     private String lastHoveredPath;
@@ -41,6 +60,15 @@ public class FileTreeTextPane extends JTextPane {
 
         // 添加右键菜单
         setComponentPopupMenu(fileMenu);
+
+        // 选中行变化时在状态栏显示该行的子树统计
+        // 只读取行文本，不访问文件系统
+        addCaretListener(e -> {
+            String summary = getSubtreeSummary(e.getDot());
+            if (!summary.isEmpty()) {
+                updateStatus("已选中: " + getLabelAtPosition(e.getDot()) + summary);
+            }
+        });
     }
 
     private void setupMouseListener() {
@@ -80,7 +108,8 @@ public class FileTreeTextPane extends JTextPane {
         hoverTimer = new Timer(300, e -> {
             if (lastHoveredLine >= 0 && lastHoveredPath != null) {
                 selectLineAtPosition(lastHoveredLine);
-                updateStatus("已选中: " + new File(lastHoveredPath).getName());
+                updateStatus("已选中: " + new File(lastHoveredPath).getName()
+                        + getSubtreeSummary(lastHoveredLine));
             }
         });
         hoverTimer.setRepeats(false);
@@ -174,6 +203,23 @@ public class FileTreeTextPane extends JTextPane {
         return null;
     }
 
+    /**
+     * 某个位置所在行去掉树状前缀和大小列后的名称
+     */
+    private String getLabelAtPosition(int position) {
+        try {
+            int lineStart = getRowStart(position);
+            int lineEnd = getRowEnd(position);
+            String line = getText(lineStart, lineEnd - lineStart).replace("\n", "");
+            if (renderer != null && renderer.isShowSizes()) {
+                line = SIZE_COLUMN.matcher(line).replaceFirst("");
+            }
+            return line.replaceAll("^[├└│\\s─]*", "").trim();
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
     // 替换Utilities.getRowStart的自定义实现
     private int getRowStart(int pos) {
         try {
@@ -200,6 +246,11 @@ public class FileTreeTextPane extends JTextPane {
 
     // 改为public以便FileOperationMenu访问
     public String extractPathFromLine(String line) {
+        // 移除大小列
+        if (renderer != null && renderer.isShowSizes()) {
+            line = SIZE_COLUMN.matcher(line).replaceFirst("");
+        }
+
         // 移除树状图的前缀符号
         line = line.replaceAll("^[├└│\\s─]*", "").trim();
 
@@ -329,6 +380,118 @@ public class FileTreeTextPane extends JTextPane {
         return basePath;
     }
 
+    /**
+     * 设置当前显示的扫描结果、渲染器和子树统计索引，用于从行号找到对应的节点
+     */
+    public void setScanTree(ScanTree scanTree, TreeRenderer renderer, TreeIndex treeIndex) {
+        this.scanTree = scanTree;
+        this.renderer = renderer;
+        this.treeIndex = treeIndex;
+    }
+
+    /**
+     * 某个位置所在行的子树统计（含文件大小的分位数），没有索引时返回空字符串
+     */
+    private String getSubtreeSummary(int position) {
+        if (treeIndex == null || renderer == null) {
+            return "";
+        }
+        int line = getDocument().getDefaultRootElement().getElementIndex(position);
+        long ordinal = renderer.getOrdinal(line);
+        if (!treeIndex.contains(ordinal)) {
+            return "";
+        }
+        String summary = " | " + treeIndex.getSummary((int) ordinal);
+        SizeDistribution distribution = scanTree == null ? null : scanTree.getSizeDistribution();
+        if (distribution != null && treeIndex.getFileCount((int) ordinal) > 1) {
+            summary += " | 文件大小" + distribution.getSubtree(treeIndex, (int) ordinal).getSummary();
+        }
+        LineCounts lineCounts = scanTree == null ? null : scanTree.getLineCounts();
+        if (lineCounts != null && lineCounts.getTextFiles(treeIndex, (int) ordinal) > 0) {
+            summary += String.format(" | %,d 行", lineCounts.getLines(treeIndex, (int) ordinal));
+        }
+        return summary;
+    }
+
+    /**
+     * 选中行对应节点的先序编号，没有扫描结果时返回-1
+     */
+    public long getSelectedOrdinal() {
+        if (renderer == null) {
+            return -1;
+        }
+        int line = getDocument().getDefaultRootElement().getElementIndex(getSelectionStart());
+        return renderer.getOrdinal(line);
+    }
+
+    /**
+     * 选中行去掉树状前缀和大小列后的名称
+     */
+    public String getSelectedLabel() {
+        return getLabelAtPosition(getSelectionStart());
+    }
+
+    /**
+     * 选中行对应的节点，没有扫描结果时返回null
+     */
+    public ScanTree.NodeRecord getSelectedNode() {
+        if (scanTree == null || renderer == null) {
+            return null;
+        }
+        int line = getDocument().getDefaultRootElement().getElementIndex(getSelectionStart());
+        long ordinal = renderer.getOrdinal(line);
+        ScanTree.NodeRecord node = new ScanTree.NodeRecord();
+        return ordinal >= 0 && scanTree.getNode(ordinal, node) ? node : null;
+    }
+
+    /**
+     * 选中先序编号为ordinal的节点所在的行并滚动到可见位置
+     * 节点在显示范围之外时交给windowLoader重新渲染它附近的行，渲染完成后再选中
+     */
+    public boolean selectOrdinal(long ordinal) {
+        if (renderer == null) {
+            return false;
+        }
+        int line = renderer.getLine(ordinal);
+        if (line < 0 && renderer.isTruncated() && windowLoader != null
+                && scanTree != null && ordinal >= 0 && ordinal < scanTree.size()) {
+            updateStatus("该项不在显示的范围内，正在显示它附近的树状图...");
+            windowLoader.accept(ordinal);
+            return true;
+        }
+        Element root = getDocument().getDefaultRootElement();
+        if (line < 0 || line >= root.getElementCount()) {
+            return false;
+        }
+        Element element = root.getElement(line);
+        try {
+            Rectangle2D view = modelToView2D(element.getStartOffset());
+            if (view != null) {
+                scrollRectToVisible(view.getBounds());
+            }
+        } catch (BadLocationException e) {
+            return false;
+        }
+        setCaretPosition(element.getStartOffset());
+        moveCaretPosition(Math.max(element.getStartOffset(), element.getEndOffset() - 1));
+        requestFocusInWindow();
+        return true;
+    }
+
+    /**
+     * 只在当前显示的是tree时选中编号为ordinal的节点，换成其他扫描结果后编号已经失效
+     */
+    public boolean selectOrdinal(ScanTree tree, long ordinal) {
+        return tree == scanTree && selectOrdinal(ordinal);
+    }
+
+    /**
+     * 节点的名称
+     */
+    public String getNodeName(ScanTree.NodeRecord node) {
+        return scanTree.getNames().name(node.nameId);
+    }
+
     private void copyToClipboard() {
         String selectedText = getSelectedText();
         if (selectedText != null && !selectedText.trim().isEmpty()) {
@@ -339,6 +502,10 @@ public class FileTreeTextPane extends JTextPane {
         }
     }
 
+    public void setWindowLoader(LongConsumer windowLoader) {
+        this.windowLoader = windowLoader;
+    }
+
     public void setFileMenuRefreshCallback(Runnable refreshCallback) {
         if (fileMenu != null) {
             fileMenu.setRefreshCallback(refreshCallback);
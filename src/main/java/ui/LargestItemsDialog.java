@@ -0,0 +1,77 @@
+package com.foldertree.ui;
+
+import com.foldertree.core.SizeRanking;
+import com.foldertree.core.TreeRenderer;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+/**
+ * 最大的文件和文件夹对话框 - 双击或回车跳转到树状图中对应的行
+ */
+public class LargestItemsDialog extends JDialog {
+
+    public LargestItemsDialog(JFrame parent, List<SizeRanking.Entry> files,
+                              List<SizeRanking.Entry> directories, LongPredicate jumpToOrdinal) {
+        super(parent, "最大的文件和文件夹", false);
+        setSize(700, 500);
+        setLocationRelativeTo(parent);
+
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("文件夹 (" + directories.size() + ")", createList(directories, jumpToOrdinal));
+        tabs.addTab("文件 (" + files.size() + ")", createList(files, jumpToOrdinal));
+        add(tabs, BorderLayout.CENTER);
+
+        JLabel hint = new JLabel("双击跳转到树状图中的位置；文件夹大小只统计扫描深度以内的文件");
+        hint.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        add(hint, BorderLayout.SOUTH);
+    }
+
+    private JScrollPane createList(List<SizeRanking.Entry> entries, LongPredicate jumpToOrdinal) {
+        DefaultListModel<SizeRanking.Entry> model = new DefaultListModel<>();
+        for (SizeRanking.Entry entry : entries) {
+            model.addElement(entry);
+        }
+
+        JList<SizeRanking.Entry> list = new JList<>(model);
+        list.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                SizeRanking.Entry entry = (SizeRanking.Entry) value;
+                String text = String.format("%3d. %10s  %s", index + 1,
+                        TreeRenderer.formatSize(entry.size), entry.path);
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+
+        Runnable jump = () -> {
+            SizeRanking.Entry entry = list.getSelectedValue();
+            if (entry != null && !jumpToOrdinal.test(entry.ordinal)) {
+                JOptionPane.showMessageDialog(this, "树状图中找不到该项，请重新生成", "提示",
+                        JOptionPane.WARNING_MESSAGE);
+            }
+        };
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    jump.run();
+                }
+            }
+        });
+        list.getInputMap().put(KeyStroke.getKeyStroke("ENTER"), "jump");
+        list.getActionMap().put("jump", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                jump.run();
+            }
+        });
+        return new JScrollPane(list);
+    }
+}
@@ -0,0 +1,300 @@
+package com.foldertree.ui;
+
+import com.foldertree.core.IoThrottle;
+import com.foldertree.core.LineCounter;
+import com.foldertree.core.LineCounts;
+import com.foldertree.core.ScanTree;
+import com.foldertree.core.TreeIndex;
+import com.foldertree.core.TreeRenderer;
+import javax.swing.*;
+import javax.swing.event.CaretListener;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableRowSorter;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 行数统计对话框 - 统计扫描结果中所有文本文件的行数，跳过二进制文件，
+ * 按文件夹和扩展名列出整个扫描结果或树状图中选中的文件夹的行数
+ * 统计结果保存在扫描结果中，树状图的悬停统计也会显示行数
+ */
+public class LineCountDialog extends JDialog {
+
+    private final ScanTree tree;
+    private final TreeIndex index;
+    private final File root;
+    private final FileTreeTextPane textPane;
+    private final IoThrottle throttle;
+    private final JRadioButton subtreeButton = new JRadioButton("选中的文件夹");
+    private final JButton countButton = new JButton("统计");
+    private final JProgressBar progressBar = new JProgressBar();
+    private final LineTableModel directoryModel = new LineTableModel("文件夹", false);
+    private final LineTableModel extensionModel = new LineTableModel("扩展名", true);
+    private final JLabel summaryLabel = new JLabel();
+    private LineCounter counter;
+    // 每次刷新加一，过时的后台汇总结果不再显示
+    private int refreshGeneration;
+    private final CaretListener caretListener = e -> {
+        if (subtreeButton.isSelected()) {
+            refresh();
+        }
+    };
+
+    public LineCountDialog(JFrame parent, ScanTree tree, TreeIndex index, File root,
+                           FileTreeTextPane textPane, IoThrottle throttle) {
+        super(parent, "行数统计", false);
+        this.tree = tree;
+        this.index = index;
+        this.root = root;
+        this.textPane = textPane;
+        this.throttle = throttle;
+        setSize(750, 550);
+        setLocationRelativeTo(parent);
+        initUI();
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+        if (tree.getLineCounts() != null) {
+            refresh();
+        } else {
+            summaryLabel.setText("读取所有文本文件并统计行数，二进制文件按文件头识别后跳过");
+        }
+
+        textPane.addCaretListener(caretListener);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                textPane.removeCaretListener(caretListener);
+            }
+        });
+    }
+
+    private void initUI() {
+        setLayout(new BorderLayout(5, 5));
+
+        JRadioButton allButton = new JRadioButton("整个扫描结果", true);
+        ButtonGroup scope = new ButtonGroup();
+        scope.add(allButton);
+        scope.add(subtreeButton);
+        allButton.addActionListener(e -> refresh());
+        subtreeButton.addActionListener(e -> refresh());
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        top.add(new JLabel("范围:"));
+        top.add(allButton);
+        top.add(subtreeButton);
+        top.add(Box.createHorizontalStrut(20));
+        countButton.addActionListener(e -> {
+            if (counter != null) {
+                counter.cancel();
+            } else {
+                count();
+            }
+        });
+        top.add(countButton);
+        add(top, BorderLayout.NORTH);
+
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("按文件夹", new JScrollPane(createTable(directoryModel)));
+        tabs.addTab("按扩展名", new JScrollPane(createTable(extensionModel)));
+        add(tabs, BorderLayout.CENTER);
+
+        JPanel bottom = new JPanel(new BorderLayout(5, 5));
+        bottom.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        progressBar.setStringPainted(true);
+        progressBar.setVisible(false);
+        bottom.add(progressBar, BorderLayout.NORTH);
+        bottom.add(summaryLabel, BorderLayout.CENTER);
+        add(bottom, BorderLayout.SOUTH);
+    }
+
+    private JTable createTable(LineTableModel model) {
+        JTable table = new JTable(model);
+        TableRowSorter<LineTableModel> sorter = new TableRowSorter<>(model);
+        // 默认按行数从多到少
+        sorter.setSortKeys(Collections.singletonList(new RowSorter.SortKey(2, SortOrder.DESCENDING)));
+        table.setRowSorter(sorter);
+        table.getColumnModel().getColumn(3).setCellRenderer(new DefaultTableCellRenderer() {
+            {
+                setHorizontalAlignment(RIGHT);
+            }
+
+            @Override
+            protected void setValue(Object value) {
+                setText(TreeRenderer.formatSize((Long) value));
+            }
+        });
+        return table;
+    }
+
+    private void count() {
+        LineCounter current = new LineCounter(throttle);
+        counter = current;
+        countButton.setText("取消");
+        progressBar.setValue(0);
+        progressBar.setVisible(true);
+        summaryLabel.setText("正在统计...");
+
+        new SwingWorker<LineCounts, int[]>() {
+            @Override
+            protected LineCounts doInBackground() throws Exception {
+                return current.count(tree, root,
+                        (processed, total, path) -> publish(new int[]{processed, total}));
+            }
+
+            @Override
+            protected void process(List<int[]> chunks) {
+                int[] progress = chunks.get(chunks.size() - 1);
+                progressBar.setMaximum(Math.max(1, progress[1]));
+                progressBar.setValue(progress[0]);
+                progressBar.setString(String.format("%d/%d 个文件", progress[0], progress[1]));
+            }
+
+            @Override
+            protected void done() {
+                counter = null;
+                countButton.setText("统计");
+                progressBar.setVisible(false);
+                LineCounts counts;
+                try {
+                    counts = get();
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    summaryLabel.setText("统计失败: " + cause.getMessage());
+                    return;
+                }
+                if (counts == null) {
+                    summaryLabel.setText("已取消");
+                    return;
+                }
+                tree.setLineCounts(counts);
+                refresh();
+            }
+        }.execute();
+    }
+
+    /**
+     * 按当前范围刷新表格，还没有统计时不做任何事；汇总在后台线程中计算，
+     * 只显示最后一次刷新的结果
+     */
+    private void refresh() {
+        LineCounts counts = tree.getLineCounts();
+        if (counts == null || counter != null) {
+            return;
+        }
+        int ordinal = 0;
+        String scopeName = root.getPath();
+        if (subtreeButton.isSelected()) {
+            long selected = textPane.getSelectedOrdinal();
+            if (!index.contains(selected) || !index.isDirectory((int) selected)) {
+                refreshGeneration++;
+                directoryModel.setTable(null);
+                extensionModel.setTable(null);
+                summaryLabel.setText("请在树状图中选中一个文件夹");
+                return;
+            }
+            ordinal = (int) selected;
+            scopeName = textPane.getSelectedLabel();
+        }
+        int scope = ordinal;
+        int generation = ++refreshGeneration;
+        String summary = String.format("%s: %,d 个文本文件，%,d 行", scopeName,
+                counts.getTextFiles(index, ordinal), counts.getLines(index, ordinal));
+        summary += String.format("  (全部: 跳过 %,d 个二进制文件", counts.getBinaryFiles());
+        if (counts.getUnreadableFiles() > 0) {
+            summary += String.format("，%,d 个文件无法读取", counts.getUnreadableFiles());
+        }
+        summary += String.format("，用时 %.1f 秒)", counts.getElapsedMillis() / 1000.0);
+        summaryLabel.setText(summary);
+
+        new SwingWorker<LineCounts.Table[], Void>() {
+            @Override
+            protected LineCounts.Table[] doInBackground() {
+                return new LineCounts.Table[]{counts.getByDirectory(tree, index, scope),
+                        counts.getByExtension(index, scope)};
+            }
+
+            @Override
+            protected void done() {
+                if (generation != refreshGeneration) {
+                    return;
+                }
+                try {
+                    LineCounts.Table[] tables = get();
+                    directoryModel.setTable(tables[0]);
+                    extensionModel.setTable(tables[1]);
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    summaryLabel.setText("汇总失败: " + cause.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    @Override
+    public void dispose() {
+        if (counter != null) {
+            counter.cancel();
+        }
+        super.dispose();
+    }
+
+    /**
+     * 表格模型，数值列保持为数值以便正确排序
+     */
+    private static class LineTableModel extends AbstractTableModel {
+        private final String[] columns;
+        private final boolean byExtension;
+        private LineCounts.Table table;
+
+        LineTableModel(String groupName, boolean byExtension) {
+            this.byExtension = byExtension;
+            columns = new String[]{groupName, "文件数", "行数", "大小"};
+        }
+
+        void setTable(LineCounts.Table table) {
+            this.table = table;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return table == null ? 0 : table.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columns.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columns[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return column == 0 ? String.class : Long.class;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            switch (column) {
+                case 0:
+                    String name = table.names[row];
+                    if (!byExtension) {
+                        return name;
+                    }
+                    return name.isEmpty() ? "(无扩展名)" : "." + name;
+                case 1:
+                    return table.files[row];
+                case 2:
+                    return table.lines[row];
+                default:
+                    return table.bytes[row];
+            }
+        }
+    }
+}
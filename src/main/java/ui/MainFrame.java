@@ -1,6 +1,21 @@
 package com.foldertree.ui;
 
+import com.foldertree.core.ContentTypeDetector;
+import com.foldertree.core.ContentTypeStats;
+import com.foldertree.core.ExtensionStats;
 import com.foldertree.core.FolderScanner;
+import com.foldertree.core.IoThrottle;
+import com.foldertree.core.ScanCheckpoint;
+import com.foldertree.core.ScanEstimator;
+import com.foldertree.core.ScanOptions;
+import com.foldertree.core.ScanStrategy;
+import com.foldertree.core.ScanTree;
+import com.foldertree.core.SecurityAudit;
+import com.foldertree.core.SnapshotCache;
+import com.foldertree.core.SizeRanking;
+import com.foldertree.core.SortMode;
+import com.foldertree.core.TreeIndex;
+import com.foldertree.core.TreeRenderer;
 import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
@@ -9,21 +24,45 @@ import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
 import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.function.LongPredicate;
 
 /**
  * 主窗口类 - 带进度监控和文件操作功能
  */
 public class MainFrame extends JFrame {
+    // 树状图最多显示的行数，更多的行只在保存时流式写入文件
+    private static final int MAX_DISPLAY_LINES = 200_000;
+
     private FolderScanner folderScanner;
     private JTextField pathField;
     private JSpinner depthSpinner;
     private JCheckBox showFilesCheckBox;
+    private JSpinner memoryBudgetSpinner;
+    private JCheckBox checkpointCheckBox;
+    private JCheckBox detectTypesCheckBox;
+    private JCheckBox snapshotCheckBox;
+    private JCheckBox auditCheckBox;
+    private JCheckBox pruneCheckBox;
+    private JSpinner workerSpinner;
+    private JComboBox<String> strategyComboBox;
+    private JComboBox<String> sortComboBox;
+    private JCheckBox showSizesCheckBox;
+    private JCheckBox sortBySizeCheckBox;
     private FileTreeTextPane treeTextPane;
     private JButton copyButton;
     private JButton saveButton;
+    private JButton analyzeButton;
     private JLabel statusLabel;
     private JLabel statsLabel;
 
@@ -36,6 +75,17 @@ public class MainFrame extends JFrame {
 
     // 进度监控变量
     private long scanStartTime;
+    // 扫描开始时限速器已累计的等待时间
+    private long scanStartWaitedNanos;
+
+    // 当前显示的扫描结果
+    private ScanTree currentTree;
+    private TreeIndex currentIndex;
+    // 引用当前扫描结果的非模态对话框，换成新的扫描结果时先关闭它们再释放旧结果
+    private final java.util.List<JDialog> treeDialogs = new java.util.ArrayList<>();
+    private TreeRenderer currentRenderer;
+    private File currentRoot;
+    private ScanOptions currentOptions;
 
     public MainFrame() {
         folderScanner = new FolderScanner();
@@ -57,7 +107,6 @@ public class MainFrame extends JFrame {
 
         // 创建进度监控面板
         JPanel progressPanel = createProgressPanel();
-        mainPanel.add(progressPanel, BorderLayout.SOUTH);
 
         // 创建树状图显示区域
         JPanel treePanel = createTreePanel();
@@ -69,9 +118,10 @@ public class MainFrame extends JFrame {
         // 创建状态栏
         JPanel statusPanel = createStatusPanel();
 
-        // 将按钮面板和状态面板放入南部区域
+        // 将进度面板、按钮面板和状态面板放入南部区域
         JPanel southPanel = new JPanel(new BorderLayout());
-        southPanel.add(buttonPanel, BorderLayout.NORTH);
+        southPanel.add(progressPanel, BorderLayout.NORTH);
+        southPanel.add(buttonPanel, BorderLayout.CENTER);
         southPanel.add(statusPanel, BorderLayout.SOUTH);
         mainPanel.add(southPanel, BorderLayout.SOUTH);
 
@@ -105,6 +155,62 @@ public class MainFrame extends JFrame {
         showFilesCheckBox = new JCheckBox("显示文件", true);
         showFilesCheckBox.setToolTipText("是否在树状图中显示文件");
 
+        // 内存预算，默认为最大堆的四分之一
+        JLabel memoryLabel = new JLabel("内存预算(MB):");
+        int maxMemoryMb = (int) Math.max(64, Runtime.getRuntime().maxMemory() / (1024 * 1024));
+        SpinnerNumberModel memoryModel = new SpinnerNumberModel(
+                Math.max(16, maxMemoryMb / 4), 16, maxMemoryMb, 16);
+        memoryBudgetSpinner = new JSpinner(memoryModel);
+        memoryBudgetSpinner.setToolTipText("扫描结果接近该大小时，已完成的子树会暂存到磁盘");
+
+        // 断点续扫选项
+        checkpointCheckBox = new JCheckBox("断点续扫", true);
+        checkpointCheckBox.setToolTipText("定期保存扫描进度，中断后可从上次的断点继续");
+
+        // 扫描后检测文件类型
+        detectTypesCheckBox = new JCheckBox("检测文件类型");
+        detectTypesCheckBox.setToolTipText("扫描完成后读取每个文件开头的512字节识别真实类型，并找出扩展名与内容不符的文件");
+
+        // 扫描后保存快照，供之后查询变化
+        snapshotCheckBox = new JCheckBox("保存快照", true);
+        snapshotCheckBox.setToolTipText("扫描完成后把结果保存到 ~/.foldertree/snapshots，之后可以不重新扫描就查询变化");
+
+        // 安全审计
+        auditCheckBox = new JCheckBox("安全审计");
+        auditCheckBox.setToolTipText("扫描时一并读取权限和属主（每项仍只读取一次属性），列出全局可写、setuid/setgid和属主已不存在的项目（不支持多进程）");
+
+        // 不展开构建产物和缓存
+        pruneCheckBox = new JCheckBox("跳过构建产物");
+        pruneCheckBox.setToolTipText("不展开target、build、node_modules、__pycache__等可重新生成的文件夹（按旁边的pom.xml、package.json等识别），需要时在分析菜单中计算大小");
+
+        // 分片扫描的工作进程数
+        JLabel workerLabel = new JLabel("进程数:");
+        int cores = Runtime.getRuntime().availableProcessors();
+        workerSpinner = new JSpinner(new SpinnerNumberModel(1, 1, Math.max(2, cores * 2), 1));
+        workerSpinner.setToolTipText("大于1时把一级子目录分给多个本地进程并行扫描（不支持断点续扫）");
+
+        // 扫描策略
+        JLabel strategyLabel = new JLabel("策略:");
+        strategyComboBox = new JComboBox<>(new String[]{"自动", "java.io", "NIO", "NIO并行", "NIO高并发"});
+        strategyComboBox.setSelectedIndex(1);
+        strategyComboBox.setToolTipText("自动: 先在目标卷上测试各策略再选择最快的，结果记录在 ~/.foldertree/strategy.log");
+
+        // 排序方式
+        JLabel sortLabel = new JLabel("排序:");
+        sortComboBox = new JComboBox<>();
+        for (SortMode mode : SortMode.values()) {
+            sortComboBox.addItem(mode.getDisplayName());
+        }
+        sortComboBox.setToolTipText("同一文件夹内子项的排序方式，文件夹始终在前");
+
+        // 大小列，切换时直接重新渲染当前结果
+        showSizesCheckBox = new JCheckBox("显示大小");
+        showSizesCheckBox.setToolTipText("在每行末尾显示文件数和汇总后的大小（只统计扫描深度以内）");
+        showSizesCheckBox.addActionListener(e -> renderCurrentTree());
+        sortBySizeCheckBox = new JCheckBox("按大小排序");
+        sortBySizeCheckBox.setToolTipText("同级项按汇总后的大小从大到小排列");
+        sortBySizeCheckBox.addActionListener(e -> renderCurrentTree());
+
         // 生成按钮
         JButton generateButton = new JButton("生成树状图");
         generateButton.setBackground(new Color(70, 130, 180));
@@ -112,6 +218,16 @@ public class MainFrame extends JFrame {
         generateButton.setToolTipText("生成文件夹树状图");
         generateButton.addActionListener(e -> generateTree());
 
+        // 估算按钮
+        JButton estimateButton = new JButton("估算");
+        estimateButton.setToolTipText("随机抽样估算项目数和总大小，不遍历整个文件夹");
+        estimateButton.addActionListener(e -> estimateFolder());
+
+        // 变化查询按钮
+        JButton changesButton = new JButton("查询变化");
+        changesButton.setToolTipText("对照上次扫描保存的快照，只重新列出修改过的文件夹，找出新增、删除和修改的项目");
+        changesButton.addActionListener(e -> showChanges());
+
         // 添加组件到控制面板
         panel.add(pathLabel);
         panel.add(pathField);
@@ -120,8 +236,25 @@ public class MainFrame extends JFrame {
         panel.add(depthLabel);
         panel.add(depthSpinner);
         panel.add(showFilesCheckBox);
+        panel.add(memoryLabel);
+        panel.add(memoryBudgetSpinner);
+        panel.add(checkpointCheckBox);
+        panel.add(detectTypesCheckBox);
+        panel.add(snapshotCheckBox);
+        panel.add(auditCheckBox);
+        panel.add(pruneCheckBox);
+        panel.add(workerLabel);
+        panel.add(workerSpinner);
+        panel.add(strategyLabel);
+        panel.add(strategyComboBox);
+        panel.add(sortLabel);
+        panel.add(sortComboBox);
+        panel.add(showSizesCheckBox);
+        panel.add(sortBySizeCheckBox);
         panel.add(Box.createHorizontalStrut(20));
         panel.add(generateButton);
+        panel.add(estimateButton);
+        panel.add(changesButton);
 
         // 监听路径字段变化
         pathField.getDocument().addDocumentListener(new DocumentListener() {
@@ -143,11 +276,15 @@ public class MainFrame extends JFrame {
             private void updateGenerateButtonState() {
                 String path = pathField.getText().trim();
                 generateButton.setEnabled(!path.isEmpty());
+                estimateButton.setEnabled(!path.isEmpty());
+                changesButton.setEnabled(!path.isEmpty());
             }
         });
 
         // 初始状态
         generateButton.setEnabled(false);
+        estimateButton.setEnabled(false);
+        changesButton.setEnabled(false);
 
         return panel;
     }
@@ -155,7 +292,7 @@ public class MainFrame extends JFrame {
     private JPanel createProgressPanel() {
         JPanel panel = new JPanel(new BorderLayout(5, 5));
         panel.setBorder(BorderFactory.createTitledBorder("扫描进度"));
-        panel.setPreferredSize(new Dimension(800, 100));
+        panel.setPreferredSize(new Dimension(800, 130));
 
         // 进度条
         progressBar = new JProgressBar(0, 100);
@@ -184,6 +321,7 @@ public class MainFrame extends JFrame {
 
         panel.add(progressBar, BorderLayout.NORTH);
         panel.add(labelsPanel, BorderLayout.CENTER);
+        panel.add(createThrottlePanel(), BorderLayout.SOUTH);
 
         // 初始状态
         progressBar.setValue(0);
@@ -199,6 +337,8 @@ public class MainFrame extends JFrame {
         // 创建支持文件操作的文本面板
         treeTextPane = new FileTreeTextPane("", statusLabel);
 
+        treeTextPane.setWindowLoader(this::showTreeAround);
+
         // 设置刷新回调
         treeTextPane.setFileMenuRefreshCallback(() -> {
             // 如果路径不为空，则重新生成树状图
@@ -246,7 +386,69 @@ public class MainFrame extends JFrame {
         saveButton.setEnabled(false);
         saveButton.addActionListener(e -> saveToFile());
 
+        // 分析按钮，弹出各种基于扫描结果的报告
+        analyzeButton = new JButton("分析");
+        analyzeButton.setToolTipText("基于当前扫描结果的报告");
+        analyzeButton.setEnabled(false);
+        JPopupMenu analyzeMenu = new JPopupMenu();
+        JMenuItem largestItem = new JMenuItem("最大的文件和文件夹");
+        largestItem.addActionListener(e -> showLargestItems());
+        analyzeMenu.add(largestItem);
+        JMenuItem duplicatesItem = new JMenuItem("查找重复文件");
+        duplicatesItem.addActionListener(e -> showDuplicates());
+        analyzeMenu.add(duplicatesItem);
+        JMenuItem structureItem = new JMenuItem("查找重复文件夹（按结构，快速）");
+        structureItem.addActionListener(e -> showDuplicateDirectories(false));
+        analyzeMenu.add(structureItem);
+        JMenuItem contentItem = new JMenuItem("查找重复文件夹（按内容）");
+        contentItem.addActionListener(e -> showDuplicateDirectories(true));
+        analyzeMenu.add(contentItem);
+        JMenuItem extensionItem = new JMenuItem("扩展名统计");
+        extensionItem.addActionListener(e -> showExtensionStats(ExtensionStatsDialog.BY_EXTENSION));
+        analyzeMenu.add(extensionItem);
+        JMenuItem ageItem = new JMenuItem("文件年龄统计");
+        ageItem.addActionListener(e -> showExtensionStats(ExtensionStatsDialog.BY_AGE));
+        analyzeMenu.add(ageItem);
+        JMenuItem coldItem = new JMenuItem("冷数据报告");
+        coldItem.addActionListener(e -> showColdData());
+        analyzeMenu.add(coldItem);
+        JMenuItem mismatchItem = new JMenuItem("扩展名与内容不符的文件");
+        mismatchItem.addActionListener(e -> showContentMismatches());
+        analyzeMenu.add(mismatchItem);
+        JMenuItem auditItem = new JMenuItem("安全审计");
+        auditItem.addActionListener(e -> showSecurityAudit());
+        analyzeMenu.add(auditItem);
+        JMenuItem ownerItem = new JMenuItem("按属主统计");
+        ownerItem.addActionListener(e -> {
+            if (currentTree != null && currentTree.getSecurityAudit() != null) {
+                showExtensionStats(ExtensionStatsDialog.BY_OWNER);
+            } else {
+                showSecurityAudit();
+            }
+        });
+        analyzeMenu.add(ownerItem);
+        JMenuItem compressionItem = new JMenuItem("可压缩性估算");
+        compressionItem.addActionListener(e -> showCompression());
+        analyzeMenu.add(compressionItem);
+        JMenuItem lineCountItem = new JMenuItem("行数统计");
+        lineCountItem.addActionListener(e -> showLineCounts());
+        analyzeMenu.add(lineCountItem);
+        JMenuItem contentSearchItem = new JMenuItem("内容搜索");
+        contentSearchItem.addActionListener(e -> showContentSearch());
+        analyzeMenu.add(contentSearchItem);
+        JMenuItem contentIndexItem = new JMenuItem("全文索引");
+        contentIndexItem.addActionListener(e -> showContentIndex());
+        analyzeMenu.add(contentIndexItem);
+        JMenuItem artifactsItem = new JMenuItem("可回收的构建产物和缓存");
+        artifactsItem.addActionListener(e -> showArtifacts());
+        analyzeMenu.add(artifactsItem);
+        JMenuItem cleanupItem = new JMenuItem("清理：空文件夹、零字节文件和失效链接");
+        cleanupItem.addActionListener(e -> showCleanup());
+        analyzeMenu.add(cleanupItem);
+        analyzeButton.addActionListener(e -> analyzeMenu.show(analyzeButton, 0, analyzeButton.getHeight()));
+
         panel.add(refreshButton);
+        panel.add(analyzeButton);
         panel.add(copyButton);
         panel.add(saveButton);
 
@@ -372,9 +574,25 @@ public class MainFrame extends JFrame {
         // 获取用户设置
         int maxDepth = (int) depthSpinner.getValue();
         boolean showFiles = showFilesCheckBox.isSelected();
+        long memoryBudget = ((Integer) memoryBudgetSpinner.getValue()) * 1024L * 1024L;
+
+        ScanOptions options = new ScanOptions();
+        options.setMaxDepth(maxDepth);
+        options.setShowFiles(showFiles);
+        options.setSortMode(SortMode.values()[sortComboBox.getSelectedIndex()]);
+        options.setMemoryBudget(memoryBudget);
+        options.setWorkerProcesses((Integer) workerSpinner.getValue());
+        options.setCheckpointEnabled(checkpointCheckBox.isSelected() && options.getWorkerProcesses() <= 1);
+        options.setAudit(auditCheckBox.isSelected() && options.getWorkerProcesses() <= 1);
+        options.setPruneArtifacts(pruneCheckBox.isSelected());
+        applyStrategy(options);
+        if (options.isCheckpointEnabled()) {
+            options.setResume(askResume(ScanCheckpoint.forScan(folderPath, options)));
+        }
 
         // 初始化进度监控变量
         scanStartTime = System.currentTimeMillis();
+        scanStartWaitedNanos = folderScanner.getThrottle().getWaitedNanos();
 
         // 重置进度显示
         progressBar.setValue(0);
@@ -392,10 +610,27 @@ public class MainFrame extends JFrame {
         treeTextPane.setText("");
 
         // 在后台线程中执行扫描任务
-        SwingWorker<String, ProgressData> worker = new SwingWorker<String, ProgressData>() {
+        boolean detectTypes = detectTypesCheckBox.isSelected() && options.isShowFiles();
+        // 续扫的结果中有一部分早于本次扫描开始，不能以本次的开始时间作为快照时间，不保存
+        boolean saveSnapshot = snapshotCheckBox.isSelected() && !options.isResume();
+        long startTime = scanStartTime;
+        // 审计结果在扫描过程中逐条显示
+        SecurityAuditDialog auditDialog = options.isAudit() ? new SecurityAuditDialog(this) : null;
+        folderScanner.setAuditListener(auditDialog == null ? null : auditDialog::addFinding);
+        if (auditDialog != null) {
+            auditDialog.setVisible(true);
+        }
+        boolean showSizes = showSizesCheckBox.isSelected();
+        boolean sortBySize = sortBySizeCheckBox.isSelected();
+        SwingWorker<ScanTree, ProgressData> worker = new SwingWorker<ScanTree, ProgressData>() {
+            // 子树统计索引和树状图文本也在后台线程生成，界面线程只负责显示
+            private TreeIndex index;
+            private TreeRenderer renderer;
+            private String tree;
+
             @Override
-            protected String doInBackground() throws Exception {
-                return folderScanner.generateTreeWithProgress(folderPath, maxDepth, showFiles,
+            protected ScanTree doInBackground() throws Exception {
+                ScanTree scanTree = folderScanner.scan(folderPath, options,
                         (processed, total, currentPath) -> {
                             int progress = total > 0 ? (int)((processed * 100.0) / total) : 0;
                             long currentTime = System.currentTimeMillis();
@@ -413,6 +648,35 @@ public class MainFrame extends JFrame {
                             publish(new ProgressData(progress, processed, total,
                                     speed, estimatedRemaining, currentPath));
                         });
+                if (detectTypes) {
+                    ContentTypeDetector detector = new ContentTypeDetector(folderScanner.getThrottle());
+                    scanTree.setContentTypes(detector.detect(scanTree, new File(folderPath),
+                            (processed, total, currentPath) -> publish(new ProgressData(
+                                    total > 0 ? (int) (processed * 100L / total) : 0, processed, total,
+                                    0, 0, "检测文件类型 " + currentPath))));
+                }
+                if (saveSnapshot) {
+                    publish(new ProgressData(100, 0, 0, 0, 0, "保存快照"));
+                    try {
+                        SnapshotCache.forScan(folderPath, options).save(scanTree, folderPath, options, startTime);
+                    } catch (IOException e) {
+                        System.err.println("保存快照失败: " + e.getMessage());
+                    }
+                }
+                index = TreeIndex.build(scanTree);
+                if (scanTree.getSizeDistribution() != null) {
+                    scanTree.getSizeDistribution().buildBlockCounts();
+                }
+                publish(new ProgressData(100, 0, 0, 0, 0, "生成树状图"));
+                renderer = createRenderer(scanTree, index, showSizes, sortBySize);
+                try {
+                    tree = renderTree(renderer, scanTree);
+                } catch (RuntimeException | Error e) {
+                    // 结果不会显示，释放它的溢出文件
+                    scanTree.dispose();
+                    throw e;
+                }
+                return scanTree;
             }
 
             @Override
@@ -424,11 +688,12 @@ public class MainFrame extends JFrame {
                     progressBar.setString(String.format("%d%%", data.progress));
                     progressLabel.setText(String.format("进度: %d/%d (%d%%)",
                             data.processed, data.total, data.progress));
-                    speedLabel.setText(String.format("速度: %.1f 项/秒", data.speed));
+                    speedLabel.setText(String.format("速度: %.1f 项/秒", data.speed) + throttleInfo());
 
                     if (data.estimatedRemaining > 0) {
                         String timeStr = formatTime(data.estimatedRemaining);
-                        timeLabel.setText(String.format("预计剩余: %s", timeStr));
+                        boolean limited = folderScanner.getThrottle().isLimited();
+                        timeLabel.setText(String.format("预计剩余: %s%s", timeStr, limited ? " (限速中)" : ""));
                     } else {
                         timeLabel.setText("预计时间: 计算中...");
                     }
@@ -443,19 +708,32 @@ public class MainFrame extends JFrame {
 
             @Override
             protected void done() {
+                folderScanner.setAuditListener(null);
                 try {
-                    String tree = get();
-                    treeTextPane.setText(tree);
+                    ScanTree scanTree = get();
+                    closeTreeDialogs();
+                    if (currentTree != null) {
+                        currentTree.dispose();
+                    }
+                    currentTree = scanTree;
+                    currentIndex = index;
+                    currentRoot = new File(folderPath);
+                    currentOptions = options;
                     treeTextPane.setBasePath(folderPath);
+                    showTree(renderer, tree);
 
-                    String stats = folderScanner.getFolderStats(folderPath);
-                    statsLabel.setText(stats);
+                    String stats = FolderScanner.getFolderStats(scanTree, index);
+                    statsLabel.setText(stats + " | " + scanTree.getStatsSummary()
+                            + " | 总大小: " + TreeRenderer.formatSize(scanTree.getTotalSize()));
 
                     boolean hasContent = !tree.trim().isEmpty() && !tree.startsWith("错误:");
                     copyButton.setEnabled(hasContent);
                     saveButton.setEnabled(hasContent);
+                    analyzeButton.setEnabled(hasContent);
 
-                    statusLabel.setText("就绪");
+                    String status = "就绪 | 策略: " + options.getStrategy();
+                    String spillSummary = scanTree.getSpillSummary();
+                    statusLabel.setText(spillSummary.isEmpty() ? status : status + " | " + spillSummary);
 
                     progressBar.setValue(100);
                     progressBar.setString("完成");
@@ -467,9 +745,21 @@ public class MainFrame extends JFrame {
                     currentPathLabel.setText("当前路径: 扫描完成");
 
                     treeTextPane.setCaretPosition(0);
+                    if (auditDialog != null) {
+                        auditDialog.setAudit(scanTree.getSecurityAudit(), jumpTo(scanTree));
+                        trackTreeDialog(auditDialog);
+                    }
 
                 } catch (Exception e) {
-                    treeTextPane.setText("生成树状图时发生错误: " + e.getMessage());
+                    if (auditDialog != null) {
+                        auditDialog.setAudit(null, null);
+                    }
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof OutOfMemoryError) {
+                        treeTextPane.setText("生成树状图时内存不足，请调低内存预算或减小递归深度");
+                    } else {
+                        treeTextPane.setText("生成树状图时发生错误: " + cause.getMessage());
+                    }
                     statusLabel.setText("错误");
 
                     progressBar.setValue(0);
@@ -483,6 +773,502 @@ public class MainFrame extends JFrame {
         worker.execute();
     }
 
+    /**
+     * 抽样估算文件夹规模，结果显示在统计标签中
+     */
+    private void estimateFolder() {
+        String folderPath = pathField.getText().trim();
+        File folder = new File(folderPath);
+        if (folderPath.isEmpty() || !folder.exists() || !folder.isDirectory()) {
+            JOptionPane.showMessageDialog(this,
+                    "指定的路径不存在或不是一个文件夹",
+                    "错误",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        int maxDepth = (int) depthSpinner.getValue();
+        statusLabel.setText("正在抽样估算...");
+
+        SwingWorker<ScanEstimator.Estimate, Void> worker = new SwingWorker<ScanEstimator.Estimate, Void>() {
+            @Override
+            protected ScanEstimator.Estimate doInBackground() {
+                return new ScanEstimator(folderScanner.getThrottle().getOperations()).estimate(folderPath, maxDepth,
+                        ScanEstimator.DEFAULT_TIME_BUDGET_MS);
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    statsLabel.setText(get().getSummary());
+                    statusLabel.setText("估算完成");
+                } catch (Exception e) {
+                    statusLabel.setText("估算失败: " + e.getMessage());
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    /**
+     * 对照上次保存的快照查询变化，快照按路径和当前的深度、文件、排序选项查找
+     */
+    private void showChanges() {
+        String folderPath = pathField.getText().trim();
+        File folder = new File(folderPath);
+        if (folderPath.isEmpty() || !folder.isDirectory()) {
+            JOptionPane.showMessageDialog(this,
+                    "指定的路径不存在或不是一个文件夹",
+                    "错误",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        ScanOptions options = new ScanOptions();
+        options.setMaxDepth((int) depthSpinner.getValue());
+        options.setShowFiles(showFilesCheckBox.isSelected());
+        options.setSortMode(SortMode.values()[sortComboBox.getSelectedIndex()]);
+        options.setPruneArtifacts(pruneCheckBox.isSelected());
+        SnapshotCache snapshot = SnapshotCache.forScan(folderPath, options);
+        if (snapshot.getCreatedTime() < 0) {
+            JOptionPane.showMessageDialog(this, "没有该文件夹在当前选项下的快照，请勾选保存快照后生成一次树状图",
+                    "提示", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        new ChangesDialog(this, snapshot, options.getMaxDepth(), folderScanner.getThrottle()).setVisible(true);
+    }
+
+    /**
+     * 存在未完成的断点时询问是否继续
+     */
+    private boolean askResume(ScanCheckpoint checkpoint) {
+        int processed = checkpoint.getSavedProcessed();
+        if (processed < 0) {
+            return false;
+        }
+
+        int result = JOptionPane.showConfirmDialog(this,
+                String.format("发现该文件夹上次未完成的扫描（已处理 %d 项）。\n是否从断点继续?", processed),
+                "断点续扫",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.QUESTION_MESSAGE);
+        return result == JOptionPane.YES_OPTION;
+    }
+
+    /**
+     * 显示扫描时统计的最大文件和文件夹，路径在后台解析
+     */
+    private void showLargestItems() {
+        ScanTree tree = currentTree;
+        SizeRanking ranking = tree == null ? null : tree.getRanking();
+        if (ranking == null) {
+            JOptionPane.showMessageDialog(this, "当前结果没有大小排行，请重新生成", "提示",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        java.util.List<SizeRanking.Entry> files = ranking.getLargestFiles();
+        java.util.List<SizeRanking.Entry> directories = ranking.getLargestDirectories();
+        statusLabel.setText("正在整理排行...");
+
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() {
+                java.util.List<SizeRanking.Entry> all = new java.util.ArrayList<>(files);
+                all.addAll(directories);
+                SizeRanking.resolvePaths(tree, all);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                // 期间已经换成了新的扫描结果
+                if (currentTree != tree) {
+                    return;
+                }
+                try {
+                    get();
+                    statusLabel.setText("就绪");
+                    showTreeDialog(new LargestItemsDialog(MainFrame.this, files, directories, jumpTo(tree)));
+                } catch (Exception e) {
+                    statusLabel.setText("整理排行失败: " + e.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * 在当前扫描结果中查找重复文件，读取内容时使用扫描的限速设置
+     */
+    private void showDuplicates() {
+        if (currentTree == null) {
+            return;
+        }
+        showTreeDialog(new DuplicatesDialog(this, currentTree, currentRoot, folderScanner.getThrottle(),
+                jumpTo(currentTree)));
+    }
+
+    /**
+     * 在当前扫描结果中查找重复的文件夹，需要扫描时显示了文件
+     */
+    private void showDuplicateDirectories(boolean compareContent) {
+        if (currentTree == null) {
+            return;
+        }
+        if (!currentOptions.isShowFiles()) {
+            JOptionPane.showMessageDialog(this, "请勾选显示文件后重新生成树状图", "提示",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        showTreeDialog(new DuplicateDirectoriesDialog(this, currentTree, currentRoot, currentOptions,
+                compareContent, folderScanner.getThrottle(), jumpTo(currentTree)));
+    }
+
+    /**
+     * 显示扫描时收集的分类统计，grouping为初始的分类方式
+     */
+    private void showExtensionStats(String grouping) {
+        ExtensionStats stats = currentTree == null ? null : currentTree.getExtensionStats();
+        if (stats == null || currentIndex == null) {
+            JOptionPane.showMessageDialog(this, "当前结果没有扩展名统计，请重新生成", "提示",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        showTreeDialog(new ExtensionStatsDialog(this, currentTree, currentIndex, treeTextPane, grouping));
+    }
+
+    /**
+     * 显示长期未修改的数据最多的子树
+     */
+    private void showColdData() {
+        if (currentTree == null || currentTree.getAgeStats() == null || currentIndex == null) {
+            JOptionPane.showMessageDialog(this, "当前结果没有修改时间统计，请重新生成", "提示",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        showTreeDialog(new ColdDataDialog(this, currentTree, currentIndex, jumpTo(currentTree)));
+    }
+
+    /**
+     * 显示扫描后检测出的扩展名与内容不符的文件
+     */
+    private void showContentMismatches() {
+        ContentTypeStats contentTypes = currentTree == null ? null : currentTree.getContentTypes();
+        if (contentTypes == null) {
+            JOptionPane.showMessageDialog(this, "请勾选检测文件类型后重新生成树状图", "提示",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        showTreeDialog(new ContentMismatchDialog(this, contentTypes, jumpTo(currentTree)));
+    }
+
+    /**
+     * 显示审计扫描的风险项
+     */
+    private void showSecurityAudit() {
+        SecurityAudit audit = currentTree == null ? null : currentTree.getSecurityAudit();
+        if (audit == null) {
+            JOptionPane.showMessageDialog(this, "请勾选安全审计后重新生成树状图", "提示",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        showTreeDialog(new SecurityAuditDialog(this, audit, jumpTo(currentTree)));
+    }
+
+    /**
+     * 抽样压缩估算可以节省的空间，读取时使用扫描的限速设置
+     */
+    private void showCompression() {
+        if (currentTree == null || currentIndex == null) {
+            return;
+        }
+        showTreeDialog(new CompressionDialog(this, currentTree, currentIndex, currentRoot, treeTextPane,
+                folderScanner.getThrottle()));
+    }
+
+    /**
+     * 统计文本文件的行数，需要扫描时显示了文件
+     */
+    private void showLineCounts() {
+        if (currentTree == null || currentIndex == null) {
+            return;
+        }
+        if (!currentOptions.isShowFiles()) {
+            JOptionPane.showMessageDialog(this, "请勾选显示文件后重新生成树状图", "提示",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        showTreeDialog(new LineCountDialog(this, currentTree, currentIndex, currentRoot, treeTextPane,
+                folderScanner.getThrottle()));
+    }
+
+    /**
+     * 在扫描到的文件中查找内容，需要扫描时显示了文件
+     */
+    private void showContentSearch() {
+        if (currentTree == null || currentIndex == null) {
+            return;
+        }
+        if (!currentOptions.isShowFiles()) {
+            JOptionPane.showMessageDialog(this, "请勾选显示文件后重新生成树状图", "提示",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        showTreeDialog(new ContentSearchDialog(this, currentTree, currentIndex, currentRoot, treeTextPane,
+                folderScanner.getThrottle()));
+    }
+
+    /**
+     * 建立或更新全文索引并查询，索引与快照放在一起，需要扫描时显示了文件
+     */
+    private void showContentIndex() {
+        if (currentTree == null) {
+            return;
+        }
+        if (!currentOptions.isShowFiles()) {
+            JOptionPane.showMessageDialog(this, "请勾选显示文件后重新生成树状图", "提示",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        File indexFile = SnapshotCache.forScan(currentRoot.getPath(), currentOptions).getIndexFile();
+        showTreeDialog(new ContentIndexDialog(this, currentTree, currentRoot, indexFile, treeTextPane,
+                folderScanner.getThrottle()));
+    }
+
+    /**
+     * 按大小列出可回收的构建产物和缓存，标记文件需要扫描时显示了文件
+     */
+    private void showArtifacts() {
+        if (currentTree == null) {
+            return;
+        }
+        if (!currentOptions.isShowFiles()) {
+            JOptionPane.showMessageDialog(this, "请勾选显示文件后重新生成树状图", "提示",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        showTreeDialog(new ArtifactsDialog(this, currentTree, currentRoot, currentOptions,
+                folderScanner.getThrottle(), jumpTo(currentTree)));
+    }
+
+    /**
+     * 列出可以清理的空文件夹、零字节文件和失效的符号链接，需要扫描时显示了文件，
+     * 否则只有文件的文件夹也会被当成空文件夹
+     */
+    private void showCleanup() {
+        if (currentTree == null) {
+            return;
+        }
+        if (!currentOptions.isShowFiles()) {
+            JOptionPane.showMessageDialog(this, "请勾选显示文件后重新生成树状图", "提示",
+                    JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        showTreeDialog(new CleanupDialog(this, currentTree, currentRoot, currentOptions.getMaxDepth(),
+                folderScanner.getThrottle(), jumpTo(currentTree)));
+    }
+
+    /**
+     * 显示引用当前扫描结果的对话框，换成新的扫描结果时会被关闭
+     */
+    private void showTreeDialog(JDialog dialog) {
+        trackTreeDialog(dialog);
+        dialog.setVisible(true);
+    }
+
+    private void trackTreeDialog(JDialog dialog) {
+        treeDialogs.add(dialog);
+        dialog.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                treeDialogs.remove(dialog);
+            }
+        });
+    }
+
+    /**
+     * 关闭引用当前扫描结果的对话框，对话框关闭时会取消各自的后台任务
+     */
+    private void closeTreeDialogs() {
+        for (JDialog dialog : new java.util.ArrayList<>(treeDialogs)) {
+            dialog.dispose();
+        }
+        treeDialogs.clear();
+    }
+
+    /**
+     * 跳转到tree中编号为ordinal的节点；树状图已经换成其他扫描结果时编号失效，返回false
+     */
+    private LongPredicate jumpTo(ScanTree tree) {
+        return ordinal -> currentTree == tree && treeTextPane.selectOrdinal(ordinal);
+    }
+
+    /**
+     * 按当前的显示选项渲染扫描结果，返回渲染出的文本
+     */
+    private void renderCurrentTree() {
+        ScanTree scanTree = currentTree;
+        if (scanTree == null) {
+            return;
+        }
+        TreeRenderer renderer = createRenderer(scanTree, currentIndex, showSizesCheckBox.isSelected(),
+                sortBySizeCheckBox.isSelected());
+        statusLabel.setText("正在生成树状图...");
+        new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() {
+                return renderTree(renderer, scanTree);
+            }
+
+            @Override
+            protected void done() {
+                // 期间已经换成了新的扫描结果
+                if (currentTree != scanTree) {
+                    return;
+                }
+                try {
+                    showTree(renderer, get());
+                    statusLabel.setText("就绪");
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    statusLabel.setText("生成树状图失败: " + cause.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * 显示的树状图只有一部分且不含要选中的节点时，在后台重新渲染以该节点为中心的一段并选中它
+     */
+    private void showTreeAround(long ordinal) {
+        ScanTree scanTree = currentTree;
+        if (scanTree == null || currentRenderer == null) {
+            return;
+        }
+        TreeRenderer renderer = createRenderer(scanTree, currentIndex, currentRenderer.isShowSizes(),
+                currentRenderer.isSortBySize());
+        new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() {
+                renderer.setFirstLine(renderer.findLine(ordinal) - MAX_DISPLAY_LINES / 2);
+                return renderTree(renderer, scanTree);
+            }
+
+            @Override
+            protected void done() {
+                if (currentTree != scanTree) {
+                    return;
+                }
+                try {
+                    showTree(renderer, get());
+                    if (renderer.getLine(ordinal) >= 0) {
+                        treeTextPane.selectOrdinal(ordinal);
+                        statusLabel.setText("就绪");
+                    } else {
+                        statusLabel.setText("树状图中找不到该项");
+                    }
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    statusLabel.setText("生成树状图失败: " + cause.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    private static TreeRenderer createRenderer(ScanTree scanTree, TreeIndex index,
+                                               boolean showSizes, boolean sortBySize) {
+        TreeRenderer renderer = new TreeRenderer(scanTree, index);
+        renderer.setShowSizes(showSizes);
+        renderer.setSortBySize(sortBySize);
+        renderer.setMaxLines(MAX_DISPLAY_LINES);
+        return renderer;
+    }
+
+    /**
+     * 渲染树状图文本，在后台线程调用；只显示了一部分时在末尾注明
+     */
+    private static String renderTree(TreeRenderer renderer, ScanTree scanTree) {
+        String tree = renderer.render();
+        if (renderer.getFirstLine() > 0) {
+            tree += String.format("... 共 %,d 项，只显示第 %,d 至 %,d 行；用“保存树状图”可以保存完整内容%n",
+                    scanTree.size(), renderer.getFirstLine() + 1,
+                    (long) renderer.getFirstLine() + renderer.getRenderedLines());
+        } else if (renderer.isTruncated()) {
+            tree += String.format("... 共 %,d 项，只显示前 %,d 行；用“保存树状图”可以保存完整内容%n",
+                    scanTree.size(), renderer.getRenderedLines());
+        }
+        return tree;
+    }
+
+    private void showTree(TreeRenderer renderer, String tree) {
+        currentRenderer = renderer;
+        treeTextPane.setScanTree(currentTree, renderer, currentIndex);
+        treeTextPane.setText(tree);
+        treeTextPane.setCaretPosition(0);
+    }
+
+    /**
+     * 按下拉框设置扫描策略
+     */
+    private void applyStrategy(ScanOptions options) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        switch (strategyComboBox.getSelectedIndex()) {
+            case 0:
+                options.setAutoStrategy(true);
+                break;
+            case 2:
+                options.setStrategy(new ScanStrategy(ScanStrategy.Api.NIO, ScanStrategy.Pool.NONE, 1));
+                break;
+            case 3:
+                options.setStrategy(new ScanStrategy(ScanStrategy.Api.NIO, ScanStrategy.Pool.FORK_JOIN, cores));
+                break;
+            case 4:
+                options.setStrategy(new ScanStrategy(ScanStrategy.Api.NIO, ScanStrategy.Pool.HIGH_CONCURRENCY,
+                        Math.max(32, cores * 8)));
+                break;
+            default:
+                options.setStrategy(ScanStrategy.DEFAULT);
+                break;
+        }
+    }
+
+    /**
+     * 创建限速设置面板，修改后立即作用于正在进行的扫描
+     */
+    private JPanel createThrottlePanel() {
+        JPanel panel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 0));
+        IoThrottle throttle = folderScanner.getThrottle();
+
+        JSpinner operationsSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 1_000_000, 100));
+        operationsSpinner.setToolTipText("每秒最多列目录和读取属性的次数，0表示不限速");
+        operationsSpinner.addChangeListener(e ->
+                throttle.getOperations().setRate((Integer) operationsSpinner.getValue()));
+
+        JSpinner bytesSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 10_000, 10));
+        bytesSpinner.setToolTipText("读取文件内容时每秒最多读取的MB数，0表示不限速");
+        bytesSpinner.addChangeListener(e ->
+                throttle.getBytes().setRate((Integer) bytesSpinner.getValue() * 1024.0 * 1024.0));
+
+        panel.add(new JLabel("限速(次/秒, 0=不限):"));
+        panel.add(operationsSpinner);
+        panel.add(new JLabel("读取限速(MB/秒):"));
+        panel.add(bytesSpinner);
+        return panel;
+    }
+
+    /**
+     * 限速时附加在速度标签后的说明，包括因限速等待的时间占比
+     */
+    private String throttleInfo() {
+        IoThrottle throttle = folderScanner.getThrottle();
+        if (!throttle.isLimited()) {
+            return "";
+        }
+        long elapsedNanos = Math.max(1, (System.currentTimeMillis() - scanStartTime) * 1_000_000L);
+        long waited = throttle.getWaitedNanos() - scanStartWaitedNanos;
+        int percent = (int) Math.min(100, waited * 100 / elapsedNanos);
+        return String.format(" (%s, 等待 %d%%)", throttle.getSummary(), percent);
+    }
+
     /**
      * 格式化时间（毫秒转换为可读格式）
      */
@@ -573,6 +1359,7 @@ public class MainFrame extends JFrame {
         if (text.trim().isEmpty()) {
             return;
         }
+        boolean complete = currentRenderer == null || !currentRenderer.isTruncated();
 
         JFileChooser fileChooser = new JFileChooser();
         fileChooser.setDialogTitle("保存树状图");
@@ -586,6 +1373,10 @@ public class MainFrame extends JFrame {
                 file = new File(file.getAbsolutePath() + ".txt");
             }
 
+            if (!complete) {
+                saveFullTree(file);
+                return;
+            }
             try {
                 Files.write(Paths.get(file.getAbsolutePath()), text.getBytes());
 
@@ -603,4 +1394,45 @@ public class MainFrame extends JFrame {
             }
         }
     }
+
+    /**
+     * 显示的树状图只有前面一部分时，在后台重新渲染完整的树状图并逐块写入文件
+     */
+    private void saveFullTree(File file) {
+        TreeRenderer renderer = new TreeRenderer(currentTree, currentIndex);
+        renderer.setShowSizes(currentRenderer.isShowSizes());
+        renderer.setSortBySize(currentRenderer.isSortBySize());
+        saveButton.setEnabled(false);
+        statusLabel.setText("正在保存完整的树状图...");
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws IOException {
+                try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(file), Charset.defaultCharset()))) {
+                    renderer.render(out);
+                }
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                saveButton.setEnabled(true);
+                try {
+                    get();
+                    JOptionPane.showMessageDialog(MainFrame.this,
+                            "树状图已保存到: " + file.getAbsolutePath(),
+                            "成功",
+                            JOptionPane.INFORMATION_MESSAGE);
+                    statusLabel.setText("已保存到文件");
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    JOptionPane.showMessageDialog(MainFrame.this,
+                            "保存失败: " + cause.getMessage(),
+                            "错误",
+                            JOptionPane.ERROR_MESSAGE);
+                    statusLabel.setText("保存失败");
+                }
+            }
+        }.execute();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,124 @@
+package com.foldertree.ui;
+
+import com.foldertree.core.SecurityAudit;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongPredicate;
+
+/**
+ * 安全审计对话框 - 扫描过程中逐条显示发现的风险项，扫描完成后显示汇总，
+ * 双击跳转到树状图中对应的行
+ */
+public class SecurityAuditDialog extends JDialog {
+
+    private final DefaultListModel<SecurityAudit.Finding> model = new DefaultListModel<>();
+    // 扫描线程送来的风险项，由界面定时器取出
+    private final ConcurrentLinkedQueue<SecurityAudit.Finding> pending = new ConcurrentLinkedQueue<>();
+    private final Timer drainTimer = new Timer(200, e -> drain());
+    private final JLabel summaryLabel = new JLabel();
+    private SecurityAudit audit;
+    private LongPredicate jumpToOrdinal;
+
+    /**
+     * 扫描开始时创建，之后通过addFinding接收风险项
+     */
+    public SecurityAuditDialog(JFrame parent) {
+        super(parent, "安全审计", false);
+        setSize(900, 500);
+        setLocationRelativeTo(parent);
+        initUI();
+        summaryLabel.setText(SecurityAudit.isSupported() ? "正在扫描..." : "当前系统不支持读取unix权限和属主");
+        drainTimer.start();
+        setDefaultCloseOperation(DISPOSE_ON_CLOSE);
+    }
+
+    /**
+     * 显示已完成的审计结果
+     */
+    public SecurityAuditDialog(JFrame parent, SecurityAudit audit, LongPredicate jumpToOrdinal) {
+        this(parent);
+        setAudit(audit, jumpToOrdinal);
+    }
+
+    private void initUI() {
+        setLayout(new BorderLayout(5, 5));
+
+        JList<SecurityAudit.Finding> list = new JList<>(model);
+        list.setFont(new Font("Monospaced", Font.PLAIN, 13));
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                                                          boolean isSelected, boolean cellHasFocus) {
+                SecurityAudit.Finding finding = (SecurityAudit.Finding) value;
+                String text = String.format("%-14s %s %-10s %-10s %s", finding.risk.getDisplayName(),
+                        finding.getModeString(), finding.owner, finding.group, finding.path);
+                return super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+            }
+        });
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                SecurityAudit.Finding finding = list.getSelectedValue();
+                if (e.getClickCount() != 2 || finding == null) {
+                    return;
+                }
+                // 扫描完成前树状图中还是上一次的结果
+                if (jumpToOrdinal == null || !jumpToOrdinal.test(finding.ordinal)) {
+                    JOptionPane.showMessageDialog(SecurityAuditDialog.this, "树状图中找不到该项目，请等待扫描完成",
+                            "提示", JOptionPane.WARNING_MESSAGE);
+                }
+            }
+        });
+        add(new JScrollPane(list), BorderLayout.CENTER);
+
+        summaryLabel.setBorder(BorderFactory.createEmptyBorder(5, 10, 5, 10));
+        add(summaryLabel, BorderLayout.SOUTH);
+    }
+
+    /**
+     * 接收一个风险项，可在任意线程调用
+     */
+    public void addFinding(SecurityAudit.Finding finding) {
+        pending.add(finding);
+    }
+
+    private void drain() {
+        SecurityAudit.Finding finding;
+        while ((finding = pending.poll()) != null) {
+            model.addElement(finding);
+        }
+        if (audit == null && !model.isEmpty()) {
+            summaryLabel.setText(String.format("正在扫描... 已发现 %d 项", model.size()));
+        }
+    }
+
+    /**
+     * 扫描完成：以审计结果替换逐条收到的列表并显示汇总，audit为null表示扫描失败
+     */
+    public void setAudit(SecurityAudit audit, LongPredicate jumpToOrdinal) {
+        drainTimer.stop();
+        pending.clear();
+        if (audit == null) {
+            summaryLabel.setText("扫描未完成");
+            return;
+        }
+        this.audit = audit;
+        this.jumpToOrdinal = jumpToOrdinal;
+        model.clear();
+        audit.getFindings().forEach(model::addElement);
+        String summary = audit.getSummary();
+        if (audit.getTotalCount() > model.size()) {
+            summary += String.format("（列出 %d 项，属主或属组已不存在的子项与上级相同时只列出上级）", model.size());
+        }
+        summaryLabel.setText(summary);
+    }
+
+    @Override
+    public void dispose() {
+        drainTimer.stop();
+        super.dispose();
+    }
+}